@@ -0,0 +1,131 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.rendering;
+
+import java.util.concurrent.TimeUnit;
+import org.apereo.portal.character.stream.CharacterEventReader;
+import org.apereo.portal.character.stream.events.CharacterDataEvent;
+import org.apereo.portal.character.stream.events.CharacterEvent;
+import org.apereo.portal.character.stream.events.CharacterEventTypes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * Measures a full page render through the rendering pipeline, from the user layout through the
+ * structure and theme transforms to portlet content incorporation.
+ *
+ * <p>Each op is one page view. Run with the GC profiler (the default for this module) to get the
+ * bytes allocated per page as {@code gc.alloc.rate.norm}.
+ *
+ * <p>The {@code cacheScenario} parameter controls which of the pipeline caches are populated
+ * before each page view:
+ *
+ * <ul>
+ *   <li>{@code ALL_HIT} - both STRUCTURE_TRANSFORM and THEME_TRANSFORM hit, the steady state for
+ *       a returning user
+ *   <li>{@code THEME_MISS} - the structure transform output is cached, the theme transform and
+ *       serialization run for every page
+ *   <li>{@code ALL_MISS} - both transforms run for every page, as for a first page view
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+public class RenderingPipelineBenchmark {
+    public enum CacheScenario {
+        ALL_HIT,
+        THEME_MISS,
+        ALL_MISS
+    }
+
+    @Param({"5", "25", "100"})
+    public int portletCount;
+
+    @Param({"ALL_HIT", "THEME_MISS", "ALL_MISS"})
+    public CacheScenario cacheScenario;
+
+    private RenderingPipelineFixture fixture;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.fixture = new RenderingPipelineFixture(this.portletCount);
+
+        // Populate both caches, the events have to be drained for the pipeline to complete
+        final PipelineEventReader<CharacterEventReader, CharacterEvent> eventReader =
+                this.fixture.render(new MockHttpServletRequest(), new MockHttpServletResponse());
+        for (final CharacterEvent event : eventReader) {
+            event.getEventType();
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void prepareCaches() {
+        switch (this.cacheScenario) {
+            case ALL_MISS:
+                this.fixture.clearStructureCache();
+                this.fixture.clearThemeCache();
+                break;
+            case THEME_MISS:
+                this.fixture.clearThemeCache();
+                break;
+            default:
+                // Leave the caches populated
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.fixture.shutdown();
+    }
+
+    @Benchmark
+    public long renderPage(Blackhole blackhole) {
+        final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/uPortal/f/s2");
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+
+        final PipelineEventReader<CharacterEventReader, CharacterEvent> eventReader =
+                this.fixture.render(request, response);
+
+        // Drain the events the same way DynamicRenderingPipeline does
+        long characters = 0;
+        for (final CharacterEvent event : eventReader) {
+            if (CharacterEventTypes.CHARACTER != event.getEventType()) {
+                throw new IllegalStateException(
+                        "Unexpected " + event.getEventType() + " event at the top of the pipeline");
+            }
+            final String data = ((CharacterDataEvent) event).getData();
+            blackhole.consume(data);
+            characters += data.length();
+        }
+        return characters;
+    }
+}
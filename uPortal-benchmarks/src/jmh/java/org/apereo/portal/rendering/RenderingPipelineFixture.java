@@ -0,0 +1,366 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.rendering;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import org.apereo.portal.character.stream.CharacterEventReader;
+import org.apereo.portal.character.stream.CharacterEventSource;
+import org.apereo.portal.character.stream.PortletContentPlaceholderEventSource;
+import org.apereo.portal.character.stream.PortletHeaderPlaceholderEventSource;
+import org.apereo.portal.character.stream.PortletTitlePlaceholderEventSource;
+import org.apereo.portal.character.stream.events.CharacterEvent;
+import org.apereo.portal.layout.IUserLayoutManager;
+import org.apereo.portal.portlet.om.IPortletWindow;
+import org.apereo.portal.portlet.om.IPortletWindowId;
+import org.apereo.portal.portlet.registry.IPortletWindowRegistry;
+import org.apereo.portal.rendering.cache.CachingCharacterPipelineComponent;
+import org.apereo.portal.rendering.cache.CachingStAXPipelineComponent;
+import org.apereo.portal.rendering.xslt.TransformerSource;
+import org.apereo.portal.rendering.xslt.XSLTComponent;
+import org.apereo.portal.utils.Tuple;
+import org.apereo.portal.utils.cache.CacheKey;
+import org.apereo.portal.xml.XmlUtilitiesImpl;
+import org.apereo.portal.xml.stream.XMLEventBufferReader;
+import org.jasig.resourceserver.aggr.om.Included;
+import org.jasig.resourceserver.utils.aggr.ResourcesElementsProvider;
+import org.springframework.core.io.DefaultResourceLoader;
+
+/**
+ * Assembles the same chain of components that {@code RenderingPipelineConfiguration} wires up for
+ * the standard rendering pipeline, backed by a canned layout with a fixed number of portlets:
+ *
+ * <pre>
+ * UserLayoutStoreComponent
+ *   -> XSLTComponent (structure)
+ *   -> CachingStAXPipelineComponent (STRUCTURE_TRANSFORM)
+ *   -> PortletRenderingInitiationStAXComponent
+ *   -> XSLTComponent (theme)
+ *   -> StAXSerializingComponent
+ *   -> CachingCharacterPipelineComponent (THEME_TRANSFORM)
+ *   -> PortletRenderingInitiationCharacterComponent
+ *   -> PortletRenderingIncorporationComponent
+ * </pre>
+ *
+ * The logging and attribute incorporation components are left out since they are pass-through
+ * unless their loggers are enabled or the attribute sources are configured with real services.
+ */
+class RenderingPipelineFixture {
+    static final String STRUCTURE_CACHE_NAME = "org.apereo.portal.rendering.STRUCTURE_TRANSFORM";
+    static final String THEME_CACHE_NAME = "org.apereo.portal.rendering.THEME_TRANSFORM";
+
+    private static final String PORTLET_TITLE_PATTERN = "\\{up-portlet-title\\(([^\\)]+)\\)\\}";
+    private static final String STRUCTURE_STYLESHEET = "benchmark-structure.xsl";
+    private static final String THEME_STYLESHEET = "benchmark-theme.xsl";
+    private static final int PORTLET_OUTPUT_SIZE = 2048;
+    private static final QName ID_ATTRIBUTE = new QName("ID");
+
+    private final int portletCount;
+    private final List<XMLEvent> layoutEvents;
+    private final Map<String, IPortletWindow> portletWindows;
+    private final CacheManager cacheManager;
+    private final Cache structureCache;
+    private final Cache themeCache;
+    private final CharacterPipelineComponent pipeline;
+
+    RenderingPipelineFixture(int portletCount) {
+        this.portletCount = portletCount;
+        this.layoutEvents = parseLayout(createLayoutXml(portletCount));
+        this.portletWindows = createPortletWindows(portletCount);
+
+        final Configuration configuration =
+                new Configuration().name("uPortalBenchmarks-" + portletCount).updateCheck(false);
+        this.cacheManager = CacheManager.newInstance(configuration);
+        this.structureCache = createCache(this.cacheManager, STRUCTURE_CACHE_NAME);
+        this.themeCache = createCache(this.cacheManager, THEME_CACHE_NAME);
+
+        this.pipeline = this.createPipeline();
+    }
+
+    /** @return The root of the pipeline, same as the portletRenderingIncorporationComponent bean */
+    CharacterPipelineComponent getPipeline() {
+        return this.pipeline;
+    }
+
+    int getPortletCount() {
+        return this.portletCount;
+    }
+
+    /** Empties the STRUCTURE_TRANSFORM cache so the next request runs the structure transform */
+    void clearStructureCache() {
+        this.structureCache.removeAll();
+    }
+
+    /** Empties the THEME_TRANSFORM cache so the next request runs the theme transform */
+    void clearThemeCache() {
+        this.themeCache.removeAll();
+    }
+
+    /** Render a single page, returning the pipeline's character events */
+    PipelineEventReader<CharacterEventReader, CharacterEvent> render(
+            HttpServletRequest request, HttpServletResponse response) {
+        return this.pipeline.getEventReader(request, response);
+    }
+
+    void shutdown() {
+        this.cacheManager.shutdown();
+    }
+
+    private CharacterPipelineComponent createPipeline() {
+        final IPortletWindowRegistry portletWindowRegistry = this.createPortletWindowRegistry();
+        final StubPortletExecutionManager portletExecutionManager =
+                new StubPortletExecutionManager(PORTLET_OUTPUT_SIZE);
+        final ResourcesElementsProvider resourcesElementsProvider =
+                mock(ResourcesElementsProvider.class);
+        when(resourcesElementsProvider.getDefaultIncludedType()).thenReturn(Included.AGGREGATED);
+
+        final IUserLayoutManager userLayoutManager = mock(IUserLayoutManager.class);
+        when(userLayoutManager.getCacheKey()).thenReturn("benchmark-layout-" + this.portletCount);
+        when(userLayoutManager.getUserLayoutReader())
+                .thenAnswer(
+                        invocation -> new XMLEventBufferReader(this.layoutEvents.listIterator()));
+
+        final UserLayoutStoreComponent userLayoutStoreComponent =
+                new UserLayoutStoreComponent() {
+                    @Override
+                    protected IUserLayoutManager getUserLayoutManager(
+                            HttpServletRequest request) {
+                        return userLayoutManager;
+                    }
+                };
+
+        final XSLTComponent structureTransformComponent = new XSLTComponent();
+        structureTransformComponent.setBeanName("structureTransformComponent");
+        structureTransformComponent.setResourceLoader(new DefaultResourceLoader());
+        structureTransformComponent.setWrappedComponent(userLayoutStoreComponent);
+        structureTransformComponent.setTransformerSource(
+                new CannedTransformerSource(STRUCTURE_STYLESHEET));
+
+        final CachingStAXPipelineComponent structureCachingComponent =
+                new CachingStAXPipelineComponent();
+        structureCachingComponent.setBeanName("structureCachingComponent");
+        structureCachingComponent.setWrappedComponent(structureTransformComponent);
+        structureCachingComponent.setCache(this.structureCache);
+        structureCachingComponent.setResourcesElementsProvider(resourcesElementsProvider);
+
+        final PortletRenderingInitiationStAXComponent portletRenderingInitiationComponent =
+                new PortletRenderingInitiationStAXComponent();
+        portletRenderingInitiationComponent.setWrappedComponent(structureCachingComponent);
+        portletRenderingInitiationComponent.setPortletExecutionManager(portletExecutionManager);
+        portletRenderingInitiationComponent.setPortletWindowRegistry(portletWindowRegistry);
+
+        final XSLTComponent themeTransformComponent = new XSLTComponent();
+        themeTransformComponent.setBeanName("themeTransformComponent");
+        themeTransformComponent.setResourceLoader(new DefaultResourceLoader());
+        themeTransformComponent.setWrappedComponent(portletRenderingInitiationComponent);
+        themeTransformComponent.setTransformerSource(new CannedTransformerSource(THEME_STYLESHEET));
+
+        final PortletContentPlaceholderEventSource contentPlaceholderEventSource =
+                new PortletContentPlaceholderEventSource();
+        contentPlaceholderEventSource.setPortletWindowRegistry(portletWindowRegistry);
+        final PortletHeaderPlaceholderEventSource headerPlaceholderEventSource =
+                new PortletHeaderPlaceholderEventSource();
+        headerPlaceholderEventSource.setPortletWindowRegistry(portletWindowRegistry);
+        final PortletTitlePlaceholderEventSource titlePlaceholderEventSource =
+                new PortletTitlePlaceholderEventSource();
+        titlePlaceholderEventSource.setPortletWindowRegistry(portletWindowRegistry);
+
+        final Map<String, CharacterEventSource> chunkingElements = new HashMap<>();
+        chunkingElements.put(IUserLayoutManager.CHANNEL, contentPlaceholderEventSource);
+        chunkingElements.put(IUserLayoutManager.CHANNEL_HEADER, headerPlaceholderEventSource);
+        final Map<String, CharacterEventSource> chunkingPatterns = new LinkedHashMap<>();
+        chunkingPatterns.put(PORTLET_TITLE_PATTERN, titlePlaceholderEventSource);
+
+        final StAXSerializingComponent staxSerializingComponent = new StAXSerializingComponent();
+        staxSerializingComponent.setXmlUtilities(new XmlUtilitiesImpl());
+        staxSerializingComponent.setWrappedComponent(themeTransformComponent);
+        staxSerializingComponent.setChunkingElements(chunkingElements);
+        staxSerializingComponent.setChunkingPatterns(chunkingPatterns);
+
+        final CachingCharacterPipelineComponent themeCachingComponent =
+                new CachingCharacterPipelineComponent();
+        themeCachingComponent.setBeanName("themeCachingComponent");
+        themeCachingComponent.setWrappedComponent(staxSerializingComponent);
+        themeCachingComponent.setCache(this.themeCache);
+        themeCachingComponent.setResourcesElementsProvider(resourcesElementsProvider);
+
+        final PortletRenderingInitiationCharacterComponent
+                portletRenderingInitiationCharacterComponent =
+                        new PortletRenderingInitiationCharacterComponent();
+        portletRenderingInitiationCharacterComponent.setWrappedComponent(themeCachingComponent);
+        portletRenderingInitiationCharacterComponent.setPortletExecutionManager(
+                portletExecutionManager);
+
+        final PortletRenderingIncorporationComponent portletRenderingIncorporationComponent =
+                new PortletRenderingIncorporationComponent();
+        portletRenderingIncorporationComponent.setWrappedComponent(
+                portletRenderingInitiationCharacterComponent);
+        portletRenderingIncorporationComponent.setPortletExecutionManager(portletExecutionManager);
+
+        return portletRenderingIncorporationComponent;
+    }
+
+    private IPortletWindowRegistry createPortletWindowRegistry() {
+        final IPortletWindowRegistry portletWindowRegistry = mock(IPortletWindowRegistry.class);
+        when(portletWindowRegistry.getPortletWindow(
+                        any(HttpServletRequest.class), any(StartElement.class)))
+                .thenAnswer(
+                        invocation -> {
+                            final StartElement element = invocation.getArgument(1);
+                            final Attribute idAttribute = element.getAttributeByName(ID_ATTRIBUTE);
+                            if (idAttribute == null) {
+                                return null;
+                            }
+                            final IPortletWindow portletWindow =
+                                    this.portletWindows.get(idAttribute.getValue());
+                            return new Tuple<IPortletWindow, StartElement>(portletWindow, element);
+                        });
+        when(portletWindowRegistry.getOrCreateDefaultPortletWindowByLayoutNodeId(
+                        any(HttpServletRequest.class), anyString()))
+                .thenAnswer(invocation -> this.portletWindows.get(invocation.getArgument(1)));
+        return portletWindowRegistry;
+    }
+
+    private static Map<String, IPortletWindow> createPortletWindows(int portletCount) {
+        final Map<String, IPortletWindow> portletWindows = new HashMap<>();
+        for (int i = 1; i <= portletCount; i++) {
+            final String nodeId = "n" + i;
+            final IPortletWindowId portletWindowId = new StubPortletWindowId("P." + i + ".tw");
+            final IPortletWindow portletWindow = mock(IPortletWindow.class);
+            when(portletWindow.getPortletWindowId()).thenReturn(portletWindowId);
+            portletWindows.put(nodeId, portletWindow);
+        }
+        return portletWindows;
+    }
+
+    private static Cache createCache(CacheManager cacheManager, String name) {
+        final Cache cache = new Cache(new CacheConfiguration(name, 1000).eternal(true));
+        cacheManager.addCache(cache);
+        return cache;
+    }
+
+    /**
+     * Builds a DLM style layout with a single tab containing two columns, the portlets are split
+     * evenly between the columns
+     */
+    static String createLayoutXml(int portletCount) {
+        final StringBuilder layout = new StringBuilder();
+        layout.append("<layout xmlns:dlm=\"http://www.uportal.org/layout/dlm\" ID=\"u1l1\">");
+        layout.append("<folder ID=\"s1\" type=\"root\" hidden=\"false\" name=\"Root\">");
+        layout.append("<folder ID=\"s2\" type=\"regular\" hidden=\"false\" name=\"Home\">");
+        for (int column = 0; column < 2; column++) {
+            layout.append("<folder ID=\"s")
+                    .append(3 + column)
+                    .append("\" type=\"regular\" hidden=\"false\" name=\"Column\">");
+            for (int i = 1 + column; i <= portletCount; i += 2) {
+                layout.append("<channel ID=\"n")
+                        .append(i)
+                        .append("\" fname=\"portlet-")
+                        .append(i)
+                        .append("\" title=\"Portlet ")
+                        .append(i)
+                        .append("\" chanID=\"")
+                        .append(i)
+                        .append("\" typeID=\"3\" timeout=\"10000\" hidden=\"false\"")
+                        .append(" dlm:fragmentId=\"1\" dlm:precedence=\"100.0\">")
+                        .append("<parameter name=\"showPlaceholder\" value=\"false\"/>")
+                        .append("</channel>");
+            }
+            layout.append("</folder>");
+        }
+        layout.append("</folder></folder></layout>");
+        return layout.toString();
+    }
+
+    private static List<XMLEvent> parseLayout(String layoutXml) {
+        final XMLInputFactory inputFactory = XMLInputFactory.newFactory();
+        final List<XMLEvent> events = new ArrayList<>();
+        try {
+            final XMLEventReader reader =
+                    inputFactory.createXMLEventReader(new StringReader(layoutXml));
+            while (reader.hasNext()) {
+                events.add(reader.nextEvent());
+            }
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException("Failed to parse benchmark layout", e);
+        }
+        return events;
+    }
+
+    /** Provides Transformers from a stylesheet that is compiled once */
+    private static final class CannedTransformerSource implements TransformerSource {
+        private final Templates templates;
+        private final CacheKey cacheKey;
+
+        CannedTransformerSource(String stylesheet) {
+            final TransformerFactory transformerFactory = TransformerFactory.newInstance();
+            try (final InputStream stylesheetStream =
+                    RenderingPipelineFixture.class.getResourceAsStream(stylesheet)) {
+                this.templates =
+                        transformerFactory.newTemplates(new StreamSource(stylesheetStream));
+            } catch (TransformerConfigurationException e) {
+                throw new IllegalStateException("Failed to compile " + stylesheet, e);
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to read " + stylesheet, e);
+            }
+            this.cacheKey = CacheKey.build(CannedTransformerSource.class.getName(), stylesheet);
+        }
+
+        @Override
+        public Transformer getTransformer(
+                HttpServletRequest request, HttpServletResponse response) {
+            try {
+                return this.templates.newTransformer();
+            } catch (TransformerConfigurationException e) {
+                throw new IllegalStateException("Failed to create Transformer", e);
+            }
+        }
+
+        @Override
+        public CacheKey getCacheKey(HttpServletRequest request, HttpServletResponse response) {
+            return this.cacheKey;
+        }
+    }
+}
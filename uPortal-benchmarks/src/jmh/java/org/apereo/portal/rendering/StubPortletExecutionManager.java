@@ -0,0 +1,171 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.rendering;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apereo.portal.character.stream.events.BufferedCharacterDataEventImpl;
+import org.apereo.portal.character.stream.events.CharacterDataEvent;
+import org.apereo.portal.portlet.om.IPortletWindowId;
+import org.apereo.portal.portlet.rendering.IPortletExecutionManager;
+import org.apereo.portal.utils.ChunkedCharArrayWriter;
+
+/**
+ * {@link IPortletExecutionManager} that returns canned markup for every portlet window. Used by the
+ * rendering benchmarks so that measurements cover the pipeline itself and not portlet execution.
+ */
+class StubPortletExecutionManager implements IPortletExecutionManager {
+    private final Map<IPortletWindowId, String> portletOutput = new ConcurrentHashMap<>();
+    private final int portletOutputSize;
+
+    /** @param portletOutputSize Approximate number of characters of markup each portlet renders */
+    StubPortletExecutionManager(int portletOutputSize) {
+        this.portletOutputSize = portletOutputSize;
+    }
+
+    @Override
+    public void doPortletAction(
+            IPortletWindowId portletWindowId,
+            HttpServletRequest request,
+            HttpServletResponse response) {
+        // NO-OP
+    }
+
+    @Override
+    public void startPortletHeaderRender(
+            IPortletWindowId portletWindowId,
+            HttpServletRequest request,
+            HttpServletResponse response) {
+        // NO-OP
+    }
+
+    @Override
+    public void startPortletRender(
+            IPortletWindowId portletWindowId,
+            HttpServletRequest request,
+            HttpServletResponse response) {
+        // NO-OP
+    }
+
+    @Override
+    public void doPortletServeResource(
+            IPortletWindowId portletWindowId,
+            HttpServletRequest request,
+            HttpServletResponse response) {
+        // NO-OP
+    }
+
+    @Override
+    public boolean isPortletRenderHeaderRequested(
+            IPortletWindowId portletWindowId,
+            HttpServletRequest request,
+            HttpServletResponse response) {
+        return false;
+    }
+
+    @Override
+    public boolean isPortletRenderRequested(
+            IPortletWindowId portletWindowId,
+            HttpServletRequest request,
+            HttpServletResponse response) {
+        return false;
+    }
+
+    @Override
+    public String getPortletHeadOutput(
+            IPortletWindowId portletWindowId,
+            HttpServletRequest request,
+            HttpServletResponse response) {
+        return "<link rel=\"stylesheet\" href=\"/"
+                + portletWindowId.getStringId()
+                + "/main.css\" type=\"text/css\"/>";
+    }
+
+    @Override
+    public String getPortletOutput(
+            IPortletWindowId portletWindowId,
+            HttpServletRequest request,
+            HttpServletResponse response) {
+        return this.portletOutput.computeIfAbsent(portletWindowId, this::createPortletOutput);
+    }
+
+    @Override
+    public CharacterDataEvent getPortletHeadOutputEvent(
+            IPortletWindowId portletWindowId,
+            HttpServletRequest request,
+            HttpServletResponse response) {
+        return renderOutput(this.getPortletHeadOutput(portletWindowId, request, response));
+    }
+
+    @Override
+    public CharacterDataEvent getPortletOutputEvent(
+            IPortletWindowId portletWindowId,
+            HttpServletRequest request,
+            HttpServletResponse response) {
+        return renderOutput(this.getPortletOutput(portletWindowId, request, response));
+    }
+
+    @Override
+    public String getPortletTitle(
+            IPortletWindowId portletWindowId,
+            HttpServletRequest request,
+            HttpServletResponse response) {
+        return "Portlet " + portletWindowId.getStringId();
+    }
+
+    @Override
+    public int getPortletNewItemCount(
+            IPortletWindowId portletWindowId,
+            HttpServletRequest request,
+            HttpServletResponse response) {
+        return 0;
+    }
+
+    @Override
+    public String getPortletLink(
+            IPortletWindowId portletWindowId,
+            String defaultUrl,
+            HttpServletRequest request,
+            HttpServletResponse response) {
+        return defaultUrl;
+    }
+
+    /** Copies the canned markup into a buffer the same way a rendering portlet would */
+    private CharacterDataEvent renderOutput(String output) {
+        final ChunkedCharArrayWriter buffer = new ChunkedCharArrayWriter();
+        buffer.write(output);
+        return BufferedCharacterDataEventImpl.create(buffer);
+    }
+
+    private String createPortletOutput(IPortletWindowId portletWindowId) {
+        final StringBuilder output = new StringBuilder(this.portletOutputSize + 64);
+        output.append("<div class=\"portlet-")
+                .append(portletWindowId.getStringId())
+                .append("\"><ul>");
+        int item = 0;
+        while (output.length() < this.portletOutputSize) {
+            output.append("<li><a href=\"/item/")
+                    .append(item)
+                    .append("\">Item ")
+                    .append(item)
+                    .append("</a></li>");
+            item++;
+        }
+        output.append("</ul></div>");
+        return output.toString();
+    }
+}
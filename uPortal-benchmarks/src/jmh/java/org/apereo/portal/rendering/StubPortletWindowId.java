@@ -0,0 +1,50 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.rendering;
+
+import org.apereo.portal.portlet.om.IPortletWindowId;
+
+/** Minimal {@link IPortletWindowId} used by the rendering benchmarks */
+class StubPortletWindowId implements IPortletWindowId {
+    private static final long serialVersionUID = 1L;
+
+    private final String stringId;
+
+    StubPortletWindowId(String stringId) {
+        this.stringId = stringId;
+    }
+
+    @Override
+    public String getStringId() {
+        return this.stringId;
+    }
+
+    @Override
+    public int hashCode() {
+        return this.stringId.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof StubPortletWindowId)) return false;
+        return this.stringId.equals(((StubPortletWindowId) obj).stringId);
+    }
+
+    @Override
+    public String toString() {
+        return "StubPortletWindowId [" + this.stringId + "]";
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.security.provider;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.apereo.portal.security.IPermission;
+import org.apereo.portal.security.IPermissionSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the linear scan AuthorizationImpl used to do over a principal's permissions with the
+ * indexed lookup of {@link PermissionSetImpl}, for a principal with {@code permissionCount}
+ * inherited grants. Each operation is one (owner, activity, target) check of a portlet target
+ * contained in {@code groupCount} groups, as made by canPrincipalSubscribe.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class PermissionSetBenchmark {
+    private static final String[] OWNERS = {
+        IPermission.PORTAL_SUBSCRIBE, IPermission.PORTAL_PUBLISH, IPermission.PORTAL_SYSTEM, "OTHER"
+    };
+    private static final String[] ACTIVITIES = {
+        IPermission.PORTLET_SUBSCRIBER_ACTIVITY,
+        IPermission.PORTLET_BROWSE_ACTIVITY,
+        IPermission.PORTLET_MANAGER_ACTIVITY,
+        IPermission.PORTLET_MANAGER_APPROVED_ACTIVITY,
+        IPermission.PORTLET_MANAGER_CREATED_ACTIVITY
+    };
+
+    @Param({"10000", "50000"})
+    public int permissionCount;
+
+    @Param({"8"})
+    public int groupCount;
+
+    private IPermission[] permissions;
+    private IPermissionSet permissionSet;
+    private String[] targets;
+    private List<Set<String>> targetGroups;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        final int portletCount = this.permissionCount / 10;
+        final int groupTotal = Math.max(this.groupCount * 4, portletCount / 20);
+
+        this.permissions = new IPermission[this.permissionCount];
+        for (int i = 0; i < this.permissionCount; i++) {
+            final PermissionImpl permission =
+                    new PermissionImpl(OWNERS[random.nextInt(OWNERS.length)]);
+            permission.setActivity(ACTIVITIES[random.nextInt(ACTIVITIES.length)]);
+            permission.setPrincipal("2.local." + random.nextInt(100));
+            permission.setType(IPermission.PERMISSION_TYPE_GRANT);
+            if (random.nextBoolean()) {
+                permission.setTarget(IPermission.PORTLET_PREFIX + random.nextInt(portletCount));
+            } else {
+                permission.setTarget("local." + random.nextInt(groupTotal));
+            }
+            this.permissions[i] = permission;
+        }
+        this.permissionSet = new PermissionSetImpl(this.permissions, "admin", IPermissionSet.class);
+
+        this.targets = new String[1024];
+        this.targetGroups = new ArrayList<>(this.targets.length);
+        for (int i = 0; i < this.targets.length; i++) {
+            this.targets[i] = IPermission.PORTLET_PREFIX + random.nextInt(portletCount);
+            final Set<String> groups = new HashSet<>();
+            while (groups.size() < this.groupCount) {
+                groups.add("local." + random.nextInt(groupTotal));
+            }
+            this.targetGroups.add(groups);
+        }
+    }
+
+    @Benchmark
+    public IPermission[] scan() {
+        final int i = this.next++ & (this.targets.length - 1);
+        return scan(
+                this.permissions,
+                IPermission.PORTAL_SUBSCRIBE,
+                IPermission.PORTLET_SUBSCRIBER_ACTIVITY,
+                this.targets[i],
+                this.targetGroups.get(i));
+    }
+
+    @Benchmark
+    public IPermission[] indexed() {
+        final int i = this.next++ & (this.targets.length - 1);
+        return this.permissionSet.getPermissions(
+                IPermission.PORTAL_SUBSCRIBE,
+                IPermission.PORTLET_SUBSCRIBER_ACTIVITY,
+                this.targets[i],
+                this.targetGroups.get(i));
+    }
+
+    /** The filtering loop AuthorizationImpl ran before permission sets were indexed */
+    private static IPermission[] scan(
+            IPermission[] perms,
+            String owner,
+            String activity,
+            String target,
+            Set<String> containingGroups) {
+        final List<IPermission> al = new ArrayList<>(perms.length);
+        for (int i = 0; i < perms.length; i++) {
+            final String permissionTarget = perms[i].getTarget();
+            if ((owner == null || owner.equals(perms[i].getOwner()))
+                    && (activity == null || activity.equals(perms[i].getActivity()))
+                    && (target == null
+                            || target.equals(permissionTarget)
+                            || containingGroups.contains(permissionTarget))) {
+                al.add(perms[i]);
+            }
+        }
+        return al.toArray(new IPermission[al.size()]);
+    }
+}
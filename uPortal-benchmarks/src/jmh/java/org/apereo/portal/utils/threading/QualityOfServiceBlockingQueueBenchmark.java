@@ -0,0 +1,153 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.utils.threading;
+
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link QualityOfServiceBlockingQueue} and {@link
+ * ConcurrentQualityOfServiceBlockingQueue} under contention, with 6 producer threads offering
+ * elements spread over {@code keyCount} keys and 2 consumer threads polling them round-robin by
+ * key.
+ *
+ * <p>Offers and polls do not block so a group can always finish its iteration, the throughput of
+ * the {@code offer} and {@code poll} methods is reported separately.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+public class QualityOfServiceBlockingQueueBenchmark {
+    public enum Implementation {
+        LOCKING,
+        CONCURRENT
+    }
+
+    @Param({"LOCKING", "CONCURRENT"})
+    public Implementation implementation;
+
+    @Param({"4", "64"})
+    public int keyCount;
+
+    @Param({"10000"})
+    public int capacity;
+
+    private BlockingQueue<Integer> queue;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        switch (this.implementation) {
+            case LOCKING:
+                this.queue = new RoundRobinQueue(this.capacity);
+                break;
+            case CONCURRENT:
+                this.queue = new ConcurrentRoundRobinQueue(this.capacity);
+                break;
+            default:
+                throw new IllegalStateException("Unknown implementation " + this.implementation);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ProducerState {
+        private int next;
+    }
+
+    @Benchmark
+    @Group("queue")
+    @GroupThreads(6)
+    public boolean offer(ProducerState producer) {
+        return this.queue.offer(producer.next++ % this.keyCount);
+    }
+
+    @Benchmark
+    @Group("queue")
+    @GroupThreads(2)
+    public Integer poll() {
+        return this.queue.poll();
+    }
+
+    private static final class RoundRobinQueue
+            extends QualityOfServiceBlockingQueue<Integer, Integer> {
+        private Iterator<Integer> keys;
+
+        RoundRobinQueue(int capacity) {
+            super(capacity);
+        }
+
+        @Override
+        protected Integer getElementKey(Integer e) {
+            return e;
+        }
+
+        @Override
+        protected Integer getNextElementKey() {
+            while (true) {
+                if (this.keys == null || !this.keys.hasNext()) {
+                    this.keys = this.getKeySet().iterator();
+                }
+                final Integer key = this.keys.next();
+                if (!this.isKeyEmpty(key)) {
+                    return key;
+                }
+            }
+        }
+    }
+
+    private static final class ConcurrentRoundRobinQueue
+            extends ConcurrentQualityOfServiceBlockingQueue<Integer, Integer> {
+        private Iterator<Integer> keys;
+
+        ConcurrentRoundRobinQueue(int capacity) {
+            super(capacity);
+        }
+
+        @Override
+        protected Integer getElementKey(Integer e) {
+            return e;
+        }
+
+        @Override
+        protected Integer getNextElementKey() {
+            while (true) {
+                if (this.keys == null || !this.keys.hasNext()) {
+                    this.keys = this.getKeySet().iterator();
+                }
+                final Integer key = this.keys.next();
+                if (!this.isKeyEmpty(key)) {
+                    return key;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+<?xml version="1.0" encoding="UTF-8"?>
+<!--
+
+    Licensed to Apereo under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Apereo licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License.  You may obtain a
+    copy of the License at the following location:
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+
+-->
+
+<!--
+ | Simplified structure transform used by the rendering benchmarks. Produces the same element
+ | vocabulary the uPortal structure transforms emit (header/navigation/content, channel and
+ | channel-header) so the downstream pipeline components do realistic work.
+ +-->
+<xsl:stylesheet version="1.0"
+    xmlns:xsl="http://www.w3.org/1999/XSL/Transform"
+    xmlns:dlm="http://www.uportal.org/layout/dlm"
+    exclude-result-prefixes="dlm">
+
+  <xsl:output method="xml" indent="no"/>
+
+  <xsl:template match="/layout">
+    <layout>
+      <header>
+        <xsl:for-each select="//channel">
+          <channel-header ID="{@ID}"/>
+        </xsl:for-each>
+      </header>
+      <navigation>
+        <xsl:for-each select="folder[@type='root']/folder[@type='regular']">
+          <tab ID="{@ID}" name="{@name}" activeTab="{position() = 1}"/>
+        </xsl:for-each>
+      </navigation>
+      <content>
+        <xsl:apply-templates select="folder[@type='root']/folder[@type='regular'][1]/folder"/>
+      </content>
+    </layout>
+  </xsl:template>
+
+  <xsl:template match="folder">
+    <column ID="{@ID}" width="{100 div count(../folder)}%">
+      <xsl:apply-templates select="channel"/>
+    </column>
+  </xsl:template>
+
+  <xsl:template match="channel">
+    <channel>
+      <xsl:copy-of select="@*"/>
+      <xsl:copy-of select="parameter"/>
+    </channel>
+  </xsl:template>
+
+</xsl:stylesheet>
@@ -0,0 +1,82 @@
+<?xml version="1.0" encoding="UTF-8"?>
+<!--
+
+    Licensed to Apereo under one or more contributor license
+    agreements. See the NOTICE file distributed with this work
+    for additional information regarding copyright ownership.
+    Apereo licenses this file to you under the Apache License,
+    Version 2.0 (the "License"); you may not use this file
+    except in compliance with the License.  You may obtain a
+    copy of the License at the following location:
+
+      http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing,
+    software distributed under the License is distributed on an
+    "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+    KIND, either express or implied.  See the License for the
+    specific language governing permissions and limitations
+    under the License.
+
+-->
+
+<!--
+ | Simplified theme transform used by the rendering benchmarks. Wraps every portlet in chrome
+ | and passes the channel and channel-header elements through so StAXSerializingComponent
+ | chunks the output into portlet placeholders.
+ +-->
+<xsl:stylesheet version="1.0" xmlns:xsl="http://www.w3.org/1999/XSL/Transform">
+
+  <xsl:output method="xml" indent="no" media-type="text/html" omit-xml-declaration="yes"/>
+
+  <xsl:template match="/layout">
+    <html lang="en">
+      <head>
+        <meta charset="UTF-8"/>
+        <title>uPortal Benchmark</title>
+        <link rel="stylesheet" href="/ResourceServingWebapp/rs/bootstrap/3.3.7/css/bootstrap.min.css" type="text/css"/>
+        <xsl:copy-of select="header/channel-header"/>
+      </head>
+      <body class="up dashboard portal fl-theme-mist">
+        <div id="up-page" class="container-fluid">
+          <nav class="portal-nav">
+            <ul class="fl-tabs">
+              <xsl:for-each select="navigation/tab">
+                <li id="portalNavigation_{@ID}" class="portal-navigation">
+                  <a href="/uPortal/f/{@ID}/normal/render.uP" title="{@name}"><span><xsl:value-of select="@name"/></span></a>
+                </li>
+              </xsl:for-each>
+            </ul>
+          </nav>
+          <div id="portalPageBodyColumns" class="row">
+            <xsl:apply-templates select="content/column"/>
+          </div>
+        </div>
+      </body>
+    </html>
+  </xsl:template>
+
+  <xsl:template match="column">
+    <div id="column_{@ID}" class="portal-page-column col-md-6">
+      <div class="portal-page-column-inner">
+        <xsl:apply-templates select="channel"/>
+      </div>
+    </div>
+  </xsl:template>
+
+  <xsl:template match="channel">
+    <section id="portlet_{@ID}" class="up-portlet-wrapper {@fname}" role="region">
+      <div class="up-portlet-wrapper-inner">
+        <div class="up-portlet-titlebar">
+          <h2><a href="/uPortal/p/{@fname}/max/render.uP">{up-portlet-title(<xsl:value-of select="@ID"/>)}</a></h2>
+        </div>
+        <div class="up-portlet-content-wrapper">
+          <div class="up-portlet-content-wrapper-inner">
+            <xsl:copy-of select="."/>
+          </div>
+        </div>
+      </div>
+    </section>
+  </xsl:template>
+
+</xsl:stylesheet>
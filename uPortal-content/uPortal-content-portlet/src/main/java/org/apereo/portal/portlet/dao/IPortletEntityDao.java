@@ -14,6 +14,8 @@
  */
 package org.apereo.portal.portlet.dao;
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.Set;
 import org.apereo.portal.portlet.om.IPortletDefinitionId;
 import org.apereo.portal.portlet.om.IPortletEntity;
@@ -95,6 +97,18 @@ public interface IPortletEntityDao {
      */
     Set<IPortletEntity> getPortletEntitiesForUser(int userId);
 
+    /**
+     * Get the {@link IPortletEntity}s for a set of layout node ids of the specified user, loaded
+     * from the persistent store in one lookup instead of one per node.
+     *
+     * @param layoutNodeIds The node ids from the user's layout to get the entities for
+     * @param userId The user id to get the entities for
+     * @return Map of layout node id to portlet entity, nodes with no entity are not in the map,
+     *     will never be null.
+     * @throws IllegalArgumentException if layoutNodeIds is null.
+     */
+    Map<String, IPortletEntity> getPortletEntities(Collection<String> layoutNodeIds, int userId);
+
     /**
      * Removes the specified {@link IPortletEntity} from the persistent store.
      *
@@ -14,6 +14,7 @@
  */
 package org.apereo.portal.portlet.registry;
 
+import java.util.Set;
 import java.util.concurrent.locks.Lock;
 import javax.servlet.http.HttpServletRequest;
 import org.apereo.portal.portlet.om.IPortletDefinitionId;
@@ -79,6 +80,17 @@ public interface IPortletEntityRegistry {
     public IPortletEntity getOrCreatePortletEntity(
             HttpServletRequest request, IUserInstance userInstance, String layoutNodeId);
 
+    /**
+     * Loads the persistent entities for the layout nodes in a single lookup. The following calls
+     * to {@link #getOrCreatePortletEntity(HttpServletRequest, IUserInstance, String)} for those
+     * nodes in the same request use the loaded entities instead of each going to the persistent
+     * store.
+     *
+     * @param layoutNodeIds The node ids from the user's layout that are about to be requested
+     */
+    public void preloadPortletEntities(
+            HttpServletRequest request, IUserInstance userInstance, Set<String> layoutNodeIds);
+
     /** Gets or creates a portlet entity for a specific fname. */
     public IPortletEntity getOrCreatePortletEntityByFname(
             HttpServletRequest request, IUserInstance userInstance, String fname);
@@ -0,0 +1,41 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events.handlers.db;
+
+import java.io.IOException;
+import java.io.Writer;
+import org.apereo.portal.events.PortalEvent;
+
+/**
+ * Converts {@link PortalEvent}s to and from the event data stored in {@link PersistentPortalEvent}.
+ * Every codec must be able to recognize its own output so that rows written in different formats
+ * can be read side by side.
+ */
+public interface IPortalEventCodec {
+    /** @return Name the codec is selected by */
+    String getName();
+
+    /** @return true if the stored event data was written by this codec */
+    boolean canDecode(String eventData);
+
+    /** Write the stored representation of the event */
+    void encode(PortalEvent event, Writer writer) throws IOException;
+
+    /**
+     * Read the event stored in the persistent event, the event type and the columns of the
+     * persistent event are available to the codec.
+     */
+    PortalEvent decode(PersistentPortalEvent persistentPortalEvent) throws IOException;
+}
@@ -14,11 +14,16 @@
  */
 package org.apereo.portal.events.handlers.db;
 
-import com.fasterxml.jackson.core.JsonParseException;
-import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Function;
 import java.io.IOException;
+import java.io.Serializable;
+import java.io.StringWriter;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import javax.persistence.Query;
 import javax.persistence.TypedQuery;
@@ -33,6 +38,12 @@ import org.hibernate.FlushMode;
 import org.hibernate.ScrollMode;
 import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.jdbc.Work;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.type.Type;
 import org.joda.time.DateTime;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -43,15 +54,26 @@ import org.springframework.stereotype.Repository;
  * Stores portal events using JPA/Hibenate no internal batch segmentation is done to the passed list
  * of {@link PortalEvent}s. If a {@link PortalEvent} is not mapped as a persistent entity a message
  * is logged at the WARN level and the event is ignored.
+ *
+ * <p>Lists of events passed to {@link #storePortalEvents(Iterable)} are written with JDBC batched
+ * inserts of {@link #setStoreBatchSize(int)} events, bypassing the persistence context.
+ *
+ * <p>Event data is written with the {@link IPortalEventCodec} selected by {@link
+ * #setEventCodec(String)} and read with whichever of the {@link #setEventCodecs(List)} recognizes
+ * the stored data, so events written in different formats can be read side by side.
  */
 @Repository
 public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalEventDao {
 
     private ObjectMapper mapper;
+    private List<IPortalEventCodec> eventCodecs;
+    private String eventCodecName = JsonPortalEventCodec.NAME;
+    private IPortalEventCodec eventEncoder;
     private String deleteQuery;
     private String selectQuery;
     private String selectUnaggregatedQuery;
     private int flushPeriod = 1000;
+    private int storeBatchSize = 100;
     private CriteriaQuery<DateTime> findNewestPersistentPortalEventTimestampQuery;
     private CriteriaQuery<DateTime> findOldestPersistentPortalEventTimestampQuery;
     private ParameterExpression<DateTime> startTimeParameter;
@@ -72,8 +94,54 @@ public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalE
         this.flushPeriod = flushPeriod;
     }
 
+    /**
+     * Number of events inserted per JDBC batch by {@link #storePortalEvents(Iterable)}, defaults to
+     * 100. A value less than 2 persists each event through the EntityManager instead.
+     */
+    @Value(
+            "${org.apereo.portal.events.handlers.db.JpaPortalEventStore.storeBatchSize:100}")
+    public void setStoreBatchSize(int storeBatchSize) {
+        this.storeBatchSize = storeBatchSize;
+    }
+
+    /**
+     * Name of the {@link IPortalEventCodec} used to write event data, defaults to {@link
+     * JsonPortalEventCodec#NAME}.
+     */
+    @Value(
+            "${org.apereo.portal.events.handlers.db.JpaPortalEventStore.eventCodec:json}")
+    public void setEventCodec(String eventCodecName) {
+        this.eventCodecName = eventCodecName;
+    }
+
+    /**
+     * Codecs available for reading and writing event data, defaults to {@link
+     * JsonPortalEventCodec} and {@link SmilePortalEventCodec}.
+     */
+    public void setEventCodecs(List<IPortalEventCodec> eventCodecs) {
+        this.eventCodecs = eventCodecs;
+    }
+
     @Override
     public void afterPropertiesSet() throws Exception {
+        if (this.eventCodecs == null) {
+            this.eventCodecs =
+                    Arrays.<IPortalEventCodec>asList(
+                            new JsonPortalEventCodec(this.mapper), new SmilePortalEventCodec());
+        }
+        for (final IPortalEventCodec eventCodec : this.eventCodecs) {
+            if (eventCodec.getName().equals(this.eventCodecName)) {
+                this.eventEncoder = eventCodec;
+            }
+        }
+        if (this.eventEncoder == null) {
+            throw new IllegalArgumentException(
+                    "No IPortalEventCodec named '"
+                            + this.eventCodecName
+                            + "' exists in: "
+                            + this.eventCodecs);
+        }
+
         this.startTimeParameter = this.createParameterExpression(DateTime.class, "startTime");
         this.endTimeParameter = this.createParameterExpression(DateTime.class, "endTime");
 
@@ -182,35 +250,36 @@ public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalE
     @Override
     @RawEventsTransactional
     public void storePortalEvents(PortalEvent... portalEvents) {
-        for (final PortalEvent portalEvent : portalEvents) {
-            try {
-                storePortalEvent(portalEvent);
-            } catch (IllegalArgumentException iae) {
-                this.logger.warn(
-                        portalEvent.getClass().getName()
-                                + " is not mapped as a persistent entity and will not be stored. "
-                                + portalEvent
-                                + " Exception="
-                                + iae.getMessage());
-            }
-        }
+        this.storePortalEvents(Arrays.asList(portalEvents));
     }
 
     @Override
     @RawEventsTransactional
     public void storePortalEvents(Iterable<PortalEvent> portalEvents) {
-        for (final PortalEvent portalEvent : portalEvents) {
-            try {
-                storePortalEvent(portalEvent);
-            } catch (IllegalArgumentException iae) {
-                this.logger.warn(
-                        portalEvent.getClass().getName()
-                                + " is not mapped as a persistent entity and will not be stored. "
-                                + portalEvent
-                                + " Exception="
-                                + iae.getMessage());
+        if (this.storeBatchSize < 2) {
+            for (final PortalEvent portalEvent : portalEvents) {
+                try {
+                    storePortalEvent(portalEvent);
+                } catch (IllegalArgumentException iae) {
+                    this.logger.warn(
+                            portalEvent.getClass().getName()
+                                    + " is not mapped as a persistent entity and will not be stored. "
+                                    + portalEvent
+                                    + " Exception="
+                                    + iae.getMessage());
+                }
             }
+            return;
+        }
+
+        final List<PersistentPortalEvent> persistentPortalEvents =
+                this.wrapPortalEvents(portalEvents);
+        if (persistentPortalEvents.isEmpty()) {
+            return;
         }
+
+        final Session session = this.getEntityManager().unwrap(Session.class);
+        session.doWork(new BatchInsertWork((SessionImplementor) session, persistentPortalEvents));
     }
 
     @Override
@@ -252,10 +321,7 @@ public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalE
                     (PersistentPortalEvent) results.get(0);
             final PortalEvent portalEvent;
             try {
-                portalEvent =
-                        this.toPortalEvent(
-                                persistentPortalEvent.getEventData(),
-                                persistentPortalEvent.getEventType());
+                portalEvent = this.toPortalEvent(persistentPortalEvent);
             } catch (RuntimeException e) {
                 this.logger.warn(
                         "Failed to convert PersistentPortalEvent to PortalEvent: "
@@ -329,10 +395,7 @@ public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalE
                 results.next(); ) {
             final PersistentPortalEvent persistentPortalEvent =
                     (PersistentPortalEvent) results.get(0);
-            final PortalEvent portalEvent =
-                    this.toPortalEvent(
-                            persistentPortalEvent.getEventData(),
-                            persistentPortalEvent.getEventType());
+            final PortalEvent portalEvent = this.toPortalEvent(persistentPortalEvent);
             handler.apply(portalEvent);
             persistentPortalEvent.setAggregated(true);
             session.evict(persistentPortalEvent);
@@ -352,27 +415,153 @@ public class JpaPortalEventStore extends BaseRawEventsJpaDao implements IPortalE
         return new PersistentPortalEvent(event, portalEventData);
     }
 
-    protected <E extends PortalEvent> E toPortalEvent(final String eventData, Class<E> eventType) {
-        try {
-            return mapper.readValue(eventData, eventType);
-        } catch (JsonParseException e) {
-            throw new RuntimeException("Failed to deserialize PortalEvent data", e);
-        } catch (JsonMappingException e) {
-            throw new RuntimeException("Failed to deserialize PortalEvent data", e);
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to deserialize PortalEvent data", e);
+    /**
+     * Wraps the events for storage, serializing all of them through a single reused buffer. Events
+     * that fail to serialize are logged at the WARN level and skipped.
+     */
+    protected List<PersistentPortalEvent> wrapPortalEvents(Iterable<PortalEvent> events) {
+        final List<PersistentPortalEvent> persistentPortalEvents =
+                new ArrayList<PersistentPortalEvent>();
+        final StringWriter buffer = new StringWriter(1024);
+        for (final PortalEvent event : events) {
+            buffer.getBuffer().setLength(0);
+            try {
+                this.eventEncoder.encode(event, buffer);
+            } catch (IOException | RuntimeException e) {
+                this.logger.warn(
+                        "Failed to serialize PortalEvent data, the event will not be stored: "
+                                + event,
+                        e);
+                continue;
+            }
+            persistentPortalEvents.add(new PersistentPortalEvent(event, buffer.toString()));
+        }
+        return persistentPortalEvents;
+    }
+
+    protected PortalEvent toPortalEvent(PersistentPortalEvent persistentPortalEvent) {
+        final String eventData = persistentPortalEvent.getEventData();
+        for (final IPortalEventCodec eventCodec : this.eventCodecs) {
+            if (eventCodec.canDecode(eventData)) {
+                try {
+                    return eventCodec.decode(persistentPortalEvent);
+                } catch (IOException e) {
+                    throw new RuntimeException("Failed to deserialize PortalEvent data", e);
+                }
+            }
         }
+
+        throw new RuntimeException(
+                "No IPortalEventCodec can deserialize PortalEvent data: " + eventData);
     }
 
     protected String toString(PortalEvent event) {
+        final StringWriter writer = new StringWriter();
         try {
-            return mapper.writeValueAsString(event);
-        } catch (JsonParseException e) {
-            throw new RuntimeException("Failed to serialize PortalEvent data", e);
-        } catch (JsonMappingException e) {
-            throw new RuntimeException("Failed to serialize PortalEvent data", e);
+            this.eventEncoder.encode(event, writer);
         } catch (IOException e) {
             throw new RuntimeException("Failed to serialize PortalEvent data", e);
         }
+        return writer.toString();
+    }
+
+    /**
+     * Inserts {@link PersistentPortalEvent}s with a single JDBC statement executed in batches of
+     * {@link #storeBatchSize}. Ids come from the entity's identifier generator and column values
+     * are bound by the mapped Hibernate types, so rows are identical to those written by {@link
+     * javax.persistence.EntityManager#persist(Object)}.
+     */
+    private final class BatchInsertWork implements Work {
+        private final SessionImplementor session;
+        private final List<PersistentPortalEvent> persistentPortalEvents;
+
+        BatchInsertWork(
+                SessionImplementor session, List<PersistentPortalEvent> persistentPortalEvents) {
+            this.session = session;
+            this.persistentPortalEvents = persistentPortalEvents;
+        }
+
+        @Override
+        public void execute(Connection connection) throws SQLException {
+            final SessionFactoryImplementor factory = this.session.getFactory();
+            final AbstractEntityPersister persister =
+                    (AbstractEntityPersister)
+                            factory.getEntityPersister(PersistentPortalEvent.class.getName());
+            final IdentifierGenerator identifierGenerator = persister.getIdentifierGenerator();
+            final Type identifierType = persister.getIdentifierType();
+            final Type[] propertyTypes = persister.getPropertyTypes();
+            final boolean[] insertable = persister.getPropertyInsertability();
+
+            final PreparedStatement statement =
+                    connection.prepareStatement(createInsertSql(persister));
+            try {
+                int batched = 0;
+                int batches = 0;
+                for (final PersistentPortalEvent persistentPortalEvent :
+                        this.persistentPortalEvents) {
+                    final Serializable id =
+                            identifierGenerator.generate(this.session, persistentPortalEvent);
+
+                    int index = 1;
+                    identifierType.nullSafeSet(statement, id, index, this.session);
+                    index += identifierType.getColumnSpan(factory);
+
+                    final Object[] values = persister.getPropertyValues(persistentPortalEvent);
+                    for (int i = 0; i < propertyTypes.length; i++) {
+                        if (insertable[i]) {
+                            propertyTypes[i].nullSafeSet(statement, values[i], index, this.session);
+                            index += propertyTypes[i].getColumnSpan(factory);
+                        }
+                    }
+
+                    statement.addBatch();
+                    if (++batched == storeBatchSize) {
+                        statement.executeBatch();
+                        batches++;
+                        batched = 0;
+                    }
+                }
+                if (batched > 0) {
+                    statement.executeBatch();
+                    batches++;
+                }
+
+                logger.debug(
+                        "Stored {} events in {} JDBC batches",
+                        this.persistentPortalEvents.size(),
+                        batches);
+            } finally {
+                statement.close();
+            }
+        }
+
+        private String createInsertSql(AbstractEntityPersister persister) {
+            final List<String> columns = new ArrayList<String>();
+            columns.addAll(Arrays.asList(persister.getIdentifierColumnNames()));
+
+            final boolean[] insertable = persister.getPropertyInsertability();
+            for (int i = 0; i < insertable.length; i++) {
+                if (insertable[i]) {
+                    columns.addAll(Arrays.asList(persister.getPropertyColumnNames(i)));
+                }
+            }
+
+            final StringBuilder sql = new StringBuilder("insert into ");
+            sql.append(persister.getTableName()).append(" (");
+            for (int i = 0; i < columns.size(); i++) {
+                if (i > 0) {
+                    sql.append(", ");
+                }
+                sql.append(columns.get(i));
+            }
+            sql.append(") values (");
+            for (int i = 0; i < columns.size(); i++) {
+                if (i > 0) {
+                    sql.append(", ");
+                }
+                sql.append('?');
+            }
+            return sql.append(')').toString();
+        }
     }
 }
@@ -0,0 +1,55 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events.handlers.db;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.Writer;
+import org.apereo.portal.events.PortalEvent;
+
+/**
+ * Stores events as self describing JSON documents, including the event class and all of the event
+ * fields. This is the original storage format.
+ */
+public class JsonPortalEventCodec implements IPortalEventCodec {
+    public static final String NAME = "json";
+
+    private final ObjectMapper mapper;
+
+    public JsonPortalEventCodec(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean canDecode(String eventData) {
+        return eventData.startsWith("{");
+    }
+
+    @Override
+    public void encode(PortalEvent event, Writer writer) throws IOException {
+        this.mapper.writeValue(writer, event);
+    }
+
+    @Override
+    public PortalEvent decode(PersistentPortalEvent persistentPortalEvent) throws IOException {
+        return this.mapper.readValue(
+                persistentPortalEvent.getEventData(), persistentPortalEvent.getEventType());
+    }
+}
@@ -61,17 +61,14 @@ public class PersistentPortalEvent implements Serializable {
 
     @Index(name = "IDX_UP_RAW_EVENTS_SERVER_ID")
     @Column(name = "SERVER_ID", length = 200, nullable = false, updatable = false)
-    @SuppressWarnings("unused")
     private final String serverId;
 
     @Index(name = "IDX_UP_RAW_EVENTS_SESSION_ID")
     @Column(name = "SESSION_ID", length = 500, nullable = false, updatable = false)
-    @SuppressWarnings("unused")
     private final String eventSessionId;
 
     @Index(name = "IDX_UP_RAW_EVENTS_USER_NAME")
     @Column(name = "USER_NAME", length = 100, nullable = false, updatable = false)
-    @SuppressWarnings("unused")
     private final String userName;
 
     @Column(name = "EVENT_TYPE", length = 200, nullable = false, updatable = false)
@@ -113,6 +110,18 @@ public class PersistentPortalEvent implements Serializable {
         this.eventType = (Class<PortalEvent>) portalEvent.getClass();
     }
 
+    public String getServerId() {
+        return this.serverId;
+    }
+
+    public String getEventSessionId() {
+        return this.eventSessionId;
+    }
+
+    public String getUserName() {
+        return this.userName;
+    }
+
     public Class<PortalEvent> getEventType() {
         return this.eventType;
     }
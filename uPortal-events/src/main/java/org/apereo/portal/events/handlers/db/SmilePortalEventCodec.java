@@ -0,0 +1,115 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events.handlers.db;
+
+import com.fasterxml.jackson.annotation.JacksonInject;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.annotation.JsonTypeInfo.Id;
+import com.fasterxml.jackson.databind.InjectableValues;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Base64;
+import org.apereo.portal.events.PortalEvent;
+
+/**
+ * Stores events as Base64 encoded Smile, the binary JSON format supported by Jackson, behind a
+ * {@value #HEADER} header.
+ *
+ * <p>Version 1 of the format only contains the event specific fields. The event class, server id,
+ * event session id and user name are already stored in columns of {@link PersistentPortalEvent}
+ * and are restored from there when the event is decoded.
+ */
+public class SmilePortalEventCodec implements IPortalEventCodec {
+    public static final String NAME = "smile";
+
+    /** Prefix identifying the format and version of the stored data */
+    public static final String HEADER = "smile:1:";
+
+    private static final String SERVER_ID = "serverId";
+    private static final String EVENT_SESSION_ID = "eventSessionId";
+    private static final String USER_NAME = "userName";
+
+    private final ObjectMapper mapper;
+    private final ObjectWriter writer;
+
+    public SmilePortalEventCodec() {
+        final SmileFactory smileFactory = new SmileFactory();
+        smileFactory.enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES);
+
+        this.mapper = new ObjectMapper(smileFactory);
+        this.mapper.findAndRegisterModules();
+        this.mapper.addMixIn(PortalEvent.class, CompactPortalEventMixIn.class);
+
+        this.writer = this.mapper.writer();
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean canDecode(String eventData) {
+        return eventData.startsWith(HEADER);
+    }
+
+    @Override
+    public void encode(PortalEvent event, Writer writer) throws IOException {
+        final byte[] data = this.writer.writeValueAsBytes(event);
+        writer.write(HEADER);
+        writer.write(Base64.getEncoder().encodeToString(data));
+    }
+
+    @Override
+    public PortalEvent decode(PersistentPortalEvent persistentPortalEvent) throws IOException {
+        final String eventData = persistentPortalEvent.getEventData();
+        final byte[] data = Base64.getDecoder().decode(eventData.substring(HEADER.length()));
+
+        final InjectableValues columns =
+                new InjectableValues.Std()
+                        .addValue(SERVER_ID, persistentPortalEvent.getServerId())
+                        .addValue(EVENT_SESSION_ID, persistentPortalEvent.getEventSessionId())
+                        .addValue(USER_NAME, persistentPortalEvent.getUserName());
+
+        return this.mapper
+                .readerFor(persistentPortalEvent.getEventType())
+                .with(columns)
+                .readValue(data);
+    }
+
+    /**
+     * Drops the type information and the fields stored in {@link PersistentPortalEvent} columns
+     * from the serialized form, the fields are injected from the columns when reading.
+     */
+    @JsonTypeInfo(use = Id.NONE)
+    private abstract static class CompactPortalEventMixIn {
+        @JsonIgnore
+        @JacksonInject(SERVER_ID)
+        private String serverId;
+
+        @JsonIgnore
+        @JacksonInject(EVENT_SESSION_ID)
+        private String eventSessionId;
+
+        @JsonIgnore
+        @JacksonInject(USER_NAME)
+        private String userName;
+    }
+}
@@ -19,6 +19,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.naming.Name;
 import net.sf.ehcache.Cache;
 import net.sf.ehcache.CacheManager;
@@ -66,6 +67,15 @@ public class EntityGroupImpl extends GroupMemberImpl implements IEntityGroup {
      */
     private HashMap<String, IGroupMember> addedMembers;
     private HashMap<String, IGroupMember> removedMembers;
+
+    /*
+     * Groups in this JVM with uncommitted membership changes.  Those changes are only
+     * visible in the children cache, so deep membership checks walk the children while
+     * there are any instead of using the cached ancestor groups.
+     */
+    private static final Set<EntityIdentifier> groupsWithPendingUpdates =
+            ConcurrentHashMap.newKeySet();
+
     /** EntityGroupImpl */
     public EntityGroupImpl(String groupKey, Class<? extends IBasicEntity> entityType)
             throws GroupsException {
@@ -103,6 +113,7 @@ public class EntityGroupImpl extends GroupMemberImpl implements IEntityGroup {
             } else {
                 getAddedMembers().put(cacheKey, gm);
             }
+            trackPendingUpdates();
         }
 
         primAddMember(gm);
@@ -127,8 +138,8 @@ public class EntityGroupImpl extends GroupMemberImpl implements IEntityGroup {
             throw new GroupsException(this + " and " + gm + " have different entity types.");
         }
 
-        // Circular reference check:
-        if (gm.isGroup() && gm.asGroup().deepContains(this)) {
+        // Circular reference check, walks the children so pending changes are seen:
+        if (gm.isGroup() && ((EntityGroupImpl) gm.asGroup()).primDeepContains(this)) {
             throw new GroupsException(
                     "Adding " + gm + " to " + this + " creates a circular reference.");
         }
@@ -137,6 +148,25 @@ public class EntityGroupImpl extends GroupMemberImpl implements IEntityGroup {
     protected void clearPendingUpdates() {
         addedMembers = null;
         removedMembers = null;
+        groupsWithPendingUpdates.remove(getUnderlyingEntityIdentifier());
+    }
+
+    /** Records whether this group has uncommitted membership changes. */
+    private void trackPendingUpdates() {
+        if (isDirty()) {
+            groupsWithPendingUpdates.add(getUnderlyingEntityIdentifier());
+        } else {
+            groupsWithPendingUpdates.remove(getUnderlyingEntityIdentifier());
+        }
+    }
+
+    /**
+     * Answers if any group in this JVM has membership changes not yet committed to the database.
+     *
+     * @return boolean
+     */
+    /* package-private */ static boolean hasPendingUpdates() {
+        return !groupsWithPendingUpdates.isEmpty();
     }
 
     /**
@@ -163,13 +193,29 @@ public class EntityGroupImpl extends GroupMemberImpl implements IEntityGroup {
     }
 
     /**
-     * Checks recursively if <code>GroupMember</code> gm is a member of this.
+     * Checks recursively if <code>GroupMember</code> gm is a member of this, using the cached
+     * ancestor groups of gm. While any group has uncommitted membership changes the member groups
+     * are walked instead so the changes are seen.
      *
      * @return boolean
      * @param gm org.apereo.portal.groups.IGroupMember
      */
     @Override
     public boolean deepContains(IGroupMember gm) throws GroupsException {
+        if (hasPendingUpdates()) {
+            return primDeepContains(gm);
+        }
+        return this.contains(gm) || gm.isDeepMemberOf(this);
+    }
+
+    /**
+     * Checks recursively if <code>GroupMember</code> gm is a member of this by walking the member
+     * groups.
+     *
+     * @return boolean
+     * @param gm org.apereo.portal.groups.IGroupMember
+     */
+    private boolean primDeepContains(IGroupMember gm) throws GroupsException {
         if (this.contains(gm)) {
             return true;
         }
@@ -178,7 +224,9 @@ public class EntityGroupImpl extends GroupMemberImpl implements IEntityGroup {
         Iterator<IEntityGroup> it = getMemberGroups();
         while (it.hasNext() && !found) {
             IEntityGroup group = it.next();
-            if (group != null) {
+            if (group instanceof EntityGroupImpl) {
+                found = ((EntityGroupImpl) group).primDeepContains(gm);
+            } else if (group != null) {
                 found = group.deepContains(gm);
             } else {
                 // Something bad has happened:  we've abruptly lost a group node to
@@ -199,7 +247,23 @@ public class EntityGroupImpl extends GroupMemberImpl implements IEntityGroup {
     /** Delegates to the factory. */
     @Override
     public void delete() throws GroupsException {
+        final Set<IGroupMember> members = getChildren();
         getLocalGroupService().deleteGroup(this);
+
+        // The members and the groups beneath them lose this group and its ancestors
+        this.invalidateInAncestorGroupsCache(members);
+    }
+
+    /**
+     * Returns the members added or removed since the last commit.
+     *
+     * @return Set
+     */
+    protected Set<IGroupMember> getPendingMembers() {
+        final Set<IGroupMember> rslt = new HashSet<>();
+        rslt.addAll(getAddedMembers().values());
+        rslt.addAll(getRemovedMembers().values());
+        return rslt;
     }
 
     /** @return HashMap */
@@ -464,6 +528,7 @@ public class EntityGroupImpl extends GroupMemberImpl implements IEntityGroup {
         } else {
             getRemovedMembers().put(cacheKey, gm);
         }
+        trackPendingUpdates();
 
         primRemoveMember(gm);
     }
@@ -514,23 +579,26 @@ public class EntityGroupImpl extends GroupMemberImpl implements IEntityGroup {
     /** Delegate to the factory. */
     @Override
     public void update() throws GroupsException {
+        final Set<IGroupMember> invalidate = getPendingMembers();
+
         getLocalGroupService().updateGroup(this);
         clearPendingUpdates();
+
+        this.invalidateInAncestorGroupsCache(invalidate);
     }
     /** Delegate to the factory. */
     @Override
     public void updateMembers() throws GroupsException {
 
         // Track objects to invalidate
-        Set<IGroupMember> invalidate = new HashSet<>();
-        invalidate.addAll(getAddedMembers().values());
-        invalidate.addAll(getRemovedMembers().values());
+        Set<IGroupMember> invalidate = getPendingMembers();
 
         getLocalGroupService().updateGroupMembers(this);
         clearPendingUpdates();
 
         // Invalidate objects that changed their relationship with us
         this.invalidateInParentGroupsCache(invalidate);
+        this.invalidateInAncestorGroupsCache(invalidate);
     }
 
     /** Casts to IEntityGroup. */
@@ -35,6 +35,13 @@ import org.springframework.context.ApplicationContext;
 /**
  * This is the base class for every node in the graph.
  *
+ * <p>The transitive closure of each group's parent groups is cached in the <code>
+ * GroupMemberImpl.ancestorGroups</code> cache, so ancestor and deep membership queries for a group
+ * are a single cache lookup, and for other members one lookup per parent group. When the members
+ * of a group are updated or the group is deleted the closures of the changed members and of all the
+ * groups beneath them are invalidated. While any group has uncommitted membership changes deep
+ * membership is answered by walking the children instead.
+ *
  * @see IGroupMember
  */
 public abstract class GroupMemberImpl implements IGroupMember {
@@ -47,6 +54,7 @@ public abstract class GroupMemberImpl implements IGroupMember {
     private EntityIdentifier underlyingEntityIdentifier;
 
     private final Cache parentGroupsCache;
+    private final Cache ancestorGroupsCache;
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     /** GroupMemberImpl constructor */
@@ -61,6 +69,8 @@ public abstract class GroupMemberImpl implements IGroupMember {
         CacheManager cacheManager = context.getBean("cacheManager", CacheManager.class);
         this.parentGroupsCache =
                 cacheManager.getCache("org.apereo.portal.groups.GroupMemberImpl.parentGroups");
+        this.ancestorGroupsCache =
+                cacheManager.getCache("org.apereo.portal.groups.GroupMemberImpl.ancestorGroups");
     }
 
     /**
@@ -71,7 +81,31 @@ public abstract class GroupMemberImpl implements IGroupMember {
      */
     @Override
     public Set<IEntityGroup> getAncestorGroups() throws GroupsException {
-        return primGetAncestorGroups(this, new HashSet<>());
+        if (!isGroup()) {
+            // Members that are not groups are numerous, build their ancestors from the cached
+            // ancestors of their parent groups
+            final Set<IEntityGroup> rslt = new HashSet<>();
+            for (IEntityGroup group : getParentGroups()) {
+                if (rslt.add(group)) {
+                    rslt.addAll(group.getAncestorGroups());
+                }
+            }
+            return rslt;
+        }
+
+        final EntityIdentifier cacheKey = getUnderlyingEntityIdentifier();
+        Element element = ancestorGroupsCache.get(cacheKey);
+
+        if (element == null) {
+            final Set<IEntityGroup> groups =
+                    Collections.unmodifiableSet(primGetAncestorGroups(this, new HashSet<>()));
+            element = new Element(cacheKey, groups);
+            ancestorGroupsCache.put(element);
+        }
+
+        @SuppressWarnings("unchecked")
+        final Set<IEntityGroup> rslt = (Set<IEntityGroup>) element.getObjectValue();
+        return rslt;
     }
 
     /**
@@ -135,7 +169,22 @@ public abstract class GroupMemberImpl implements IGroupMember {
      */
     @Override
     public boolean isDeepMemberOf(IEntityGroup group) throws GroupsException {
-        return isMemberOf(group) ? true : group.deepContains(this);
+        if (isMemberOf(group)) {
+            return true;
+        }
+        if (EntityGroupImpl.hasPendingUpdates()) {
+            // Uncommitted changes are only visible in the children of the groups
+            return group.deepContains(this);
+        }
+        if (isGroup()) {
+            return getAncestorGroups().contains(group);
+        }
+        for (IEntityGroup parent : getParentGroups()) {
+            if (parent.getAncestorGroups().contains(group)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /** @return boolean */
@@ -213,6 +262,30 @@ public abstract class GroupMemberImpl implements IGroupMember {
         }
     }
 
+    /**
+     * Removes the cached ancestors of the member groups and, recursively, of the groups they
+     * contain. Members that are not groups have no cached ancestors.
+     */
+    protected void invalidateInAncestorGroupsCache(Set<IGroupMember> members)
+            throws GroupsException {
+        final Set<IGroupMember> visited = new HashSet<>();
+        for (IGroupMember member : members) {
+            primInvalidateInAncestorGroupsCache(member, visited);
+        }
+    }
+
+    private void primInvalidateInAncestorGroupsCache(IGroupMember member, Set<IGroupMember> visited)
+            throws GroupsException {
+        // avoid stack overflow in case of circular group dependencies
+        if (!member.isGroup() || !visited.add(member)) {
+            return;
+        }
+        ancestorGroupsCache.remove(member.getEntityIdentifier());
+        for (IGroupMember child : member.asGroup().getChildren()) {
+            primInvalidateInAncestorGroupsCache(child, visited);
+        }
+    }
+
     protected CacheKey getCacheKey(EntityIdentifier entityIdentifier) {
         // Use tagged keys for users (only) so the cache entries will be dropped when they
         // authenticate
@@ -15,6 +15,7 @@
 package org.apereo.portal.groups;
 
 import java.util.Collections;
+import java.util.Set;
 import org.apereo.portal.concurrency.IEntityLock;
 
 /**
@@ -38,7 +39,9 @@ public class LockableEntityGroupImpl extends EntityGroupImpl implements ILockabl
     /** Delegates to the factory. */
     @Override
     public void delete() throws GroupsException {
+        final Set<IGroupMember> members = getChildren();
         getLockableGroupService().deleteGroup(this);
+        this.invalidateInAncestorGroupsCache(members);
     }
 
     /** @return org.apereo.portal.concurrency.IEntityLock */
@@ -58,9 +61,11 @@ public class LockableEntityGroupImpl extends EntityGroupImpl implements ILockabl
      * have changed during the time the group has been locked.
      */
     private void primUpdate(boolean renewLock) throws GroupsException {
+        final Set<IGroupMember> invalidate = getPendingMembers();
         getLockableGroupService().updateGroup(this, renewLock);
         clearPendingUpdates();
         this.invalidateInParentGroupsCache(Collections.singleton((IGroupMember) this));
+        this.invalidateInAncestorGroupsCache(invalidate);
     }
 
     /**
@@ -69,9 +74,11 @@ public class LockableEntityGroupImpl extends EntityGroupImpl implements ILockabl
      * have changed during the time the group has been locked.
      */
     private void primUpdateMembers(boolean renewLock) throws GroupsException {
+        final Set<IGroupMember> invalidate = getPendingMembers();
         getLockableGroupService().updateGroupMembers(this, renewLock);
         clearPendingUpdates();
         this.invalidateInParentGroupsCache(Collections.singleton((IGroupMember) this));
+        this.invalidateInAncestorGroupsCache(invalidate);
     }
 
     /** @param newLock org.apereo.portal.concurrency.IEntityLock */
@@ -0,0 +1,233 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.groups.pags;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apereo.portal.groups.pags.testers.AbstractIntegerTester;
+import org.apereo.portal.groups.pags.testers.AbstractStringTester;
+import org.apereo.portal.groups.pags.testers.BaseAttributeTester;
+import org.apereo.portal.security.IPerson;
+
+/**
+ * Compiled form of a set of {@link PagsGroup}s that computes all of the groups a person is a
+ * member of in a single pass. Testers with the same type, attribute name and test value are
+ * evaluated only once per person no matter how many groups use them, so patterns and parsed test
+ * values are shared across groups. Testers are indexed by the attribute they read, whether the
+ * person has values for an attribute is checked once and testers whose type always fails on a
+ * missing attribute are then skipped.
+ *
+ * <p>Groups are evaluated exactly as {@link PagsGroup#contains(IPerson)}: test groups are OR-ed,
+ * the tests within a test group are AND-ed and a group without test groups contains nobody.
+ * Instances are immutable and thread safe.
+ *
+ * @since 5.2
+ */
+public final class PagsDecisionIndex {
+    private static final byte UNKNOWN = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+
+    /**
+     * Compile the specified groups
+     *
+     * @param groups The groups to compile, none of their test groups may contain a null tester
+     */
+    public static PagsDecisionIndex compile(Collection<PagsGroup> groups) {
+        return new PagsDecisionIndex(groups);
+    }
+
+    private final Set<PagsGroup> compiledGroups;
+    private final String[] groupKeys;
+    // groupTests[group][testGroup][test] is an index into testers
+    private final int[][][] groupTests;
+    private final IPersonTester[] testers;
+    // Index into attributeNames of the attribute a tester needs values for, -1 if none
+    private final int[] testerAttributes;
+    private final String[] attributeNames;
+
+    private PagsDecisionIndex(Collection<PagsGroup> groups) {
+        final Set<PagsGroup> compiled =
+                Collections.newSetFromMap(new IdentityHashMap<PagsGroup, Boolean>());
+        final Map<Object, Integer> testerIndex = new HashMap<>();
+        final List<IPersonTester> testerList = new ArrayList<>();
+        final List<Integer> testerAttributeList = new ArrayList<>();
+        final Map<String, Integer> attributeIndex = new HashMap<>();
+        final List<String> groupKeyList = new ArrayList<>(groups.size());
+        final List<int[][]> groupTestList = new ArrayList<>(groups.size());
+
+        for (final PagsGroup group : groups) {
+            compiled.add(group);
+            final List<TestGroup> testGroups = group.getTestGroups();
+            if (testGroups.isEmpty()) {
+                // Never contains anyone
+                continue;
+            }
+
+            final int[][] compiledTestGroups = new int[testGroups.size()][];
+            for (int i = 0; i < testGroups.size(); i++) {
+                final List<IPersonTester> tests = testGroups.get(i).getTests();
+                final int[] compiledTests = new int[tests.size()];
+                for (int j = 0; j < tests.size(); j++) {
+                    final IPersonTester tester = tests.get(j);
+                    final Object key = getTesterKey(tester);
+                    Integer index = testerIndex.get(key);
+                    if (index == null) {
+                        index = testerList.size();
+                        testerIndex.put(key, index);
+                        testerList.add(tester);
+                        testerAttributeList.add(getAttributeIndex(tester, attributeIndex));
+                    }
+                    compiledTests[j] = index;
+                }
+                compiledTestGroups[i] = compiledTests;
+            }
+
+            groupKeyList.add(group.getKey());
+            groupTestList.add(compiledTestGroups);
+        }
+
+        this.compiledGroups = Collections.unmodifiableSet(compiled);
+        this.groupKeys = groupKeyList.toArray(new String[groupKeyList.size()]);
+        this.groupTests = groupTestList.toArray(new int[groupTestList.size()][][]);
+        this.testers = testerList.toArray(new IPersonTester[testerList.size()]);
+        this.testerAttributes = new int[testerAttributeList.size()];
+        for (int i = 0; i < this.testerAttributes.length; i++) {
+            this.testerAttributes[i] = testerAttributeList.get(i);
+        }
+        this.attributeNames = new String[attributeIndex.size()];
+        for (final Map.Entry<String, Integer> entry : attributeIndex.entrySet()) {
+            this.attributeNames[entry.getValue()] = entry.getKey();
+        }
+    }
+
+    /**
+     * Testers that depend only on their type and definition are shared, anything else (ad-hoc
+     * group testers for example) is kept per instance.
+     */
+    private static Object getTesterKey(IPersonTester tester) {
+        if (tester instanceof BaseAttributeTester) {
+            final BaseAttributeTester attributeTester = (BaseAttributeTester) tester;
+            return Arrays.asList(
+                    tester.getClass(),
+                    attributeTester.getAttributeName(),
+                    attributeTester.getTestValue());
+        }
+        return tester;
+    }
+
+    /**
+     * String and integer testers never match a person with no values for their attribute, for
+     * other testers the attribute is not indexed.
+     */
+    private static int getAttributeIndex(
+            IPersonTester tester, Map<String, Integer> attributeIndex) {
+        if (!(tester instanceof AbstractStringTester || tester instanceof AbstractIntegerTester)) {
+            return -1;
+        }
+        final String attributeName = ((BaseAttributeTester) tester).getAttributeName();
+        Integer index = attributeIndex.get(attributeName);
+        if (index == null) {
+            index = attributeIndex.size();
+            attributeIndex.put(attributeName, index);
+        }
+        return index;
+    }
+
+    /** @return true if this index was compiled from exactly the specified group instances */
+    public boolean isCompiledFrom(Collection<PagsGroup> groups) {
+        if (groups.size() != this.compiledGroups.size()) {
+            return false;
+        }
+        for (final PagsGroup group : groups) {
+            if (!this.compiledGroups.contains(group)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** @return The keys of every compiled group that contains the person */
+    public Set<String> evaluate(IPerson person) {
+        final byte[] testerResults = new byte[this.testers.length];
+        final byte[] attributePresent = new byte[this.attributeNames.length];
+
+        final Set<String> memberships = new HashSet<>();
+        for (int group = 0; group < this.groupKeys.length; group++) {
+            for (final int[] tests : this.groupTests[group]) {
+                if (this.testAll(person, tests, testerResults, attributePresent)) {
+                    memberships.add(this.groupKeys[group]);
+                    break;
+                }
+            }
+        }
+        return memberships;
+    }
+
+    private boolean testAll(
+            IPerson person, int[] tests, byte[] testerResults, byte[] attributePresent) {
+        for (final int tester : tests) {
+            byte result = testerResults[tester];
+            if (result == UNKNOWN) {
+                result = this.test(person, tester, attributePresent) ? TRUE : FALSE;
+                testerResults[tester] = result;
+            }
+            if (result == FALSE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean test(IPerson person, int tester, byte[] attributePresent) {
+        final int attribute = this.testerAttributes[tester];
+        if (attribute >= 0) {
+            byte present = attributePresent[attribute];
+            if (present == UNKNOWN) {
+                final Object[] values = person.getAttributeValues(this.attributeNames[attribute]);
+                present = values != null && values.length > 0 ? TRUE : FALSE;
+                attributePresent[attribute] = present;
+            }
+            if (present == FALSE) {
+                return false;
+            }
+        }
+        return this.testers[tester].test(person);
+    }
+
+    /** @return Number of distinct testers evaluated by this index */
+    public int getTesterCount() {
+        return this.testers.length;
+    }
+
+    @Override
+    public String toString() {
+        return "PagsDecisionIndex [groups="
+                + this.groupKeys.length
+                + ", testers="
+                + this.testers.length
+                + ", attributes="
+                + this.attributeNames.length
+                + "]";
+    }
+}
@@ -39,4 +39,8 @@ public class TestGroup {
         }
         return true;
     }
+
+    public List<IPersonTester> getTests() {
+        return tests;
+    }
 }
@@ -19,7 +19,9 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import net.sf.ehcache.Cache;
 import net.sf.ehcache.CacheManager;
@@ -36,6 +38,7 @@ import org.apereo.portal.groups.IEntityStore;
 import org.apereo.portal.groups.IGroupMember;
 import org.apereo.portal.groups.ILockableEntityGroup;
 import org.apereo.portal.groups.pags.IPersonTester;
+import org.apereo.portal.groups.pags.PagsDecisionIndex;
 import org.apereo.portal.groups.pags.PagsGroup;
 import org.apereo.portal.groups.pags.TestGroup;
 import org.apereo.portal.security.IPerson;
@@ -74,6 +77,12 @@ public class EntityPersonAttributesGroupStore
      */
     private final Cache membershipCache;
 
+    /**
+     * Compiled form of all PAGS groups, recompiled when the groups cached in {@link
+     * #pagsGroupCache} change
+     */
+    private volatile PagsDecisionIndex decisionIndex;
+
     public EntityPersonAttributesGroupStore() {
         super();
         ApplicationContext applicationContext = ApplicationContextLocator.getApplicationContext();
@@ -246,21 +255,91 @@ public class EntityPersonAttributesGroupStore
         return parents.iterator();
     }
 
+    /**
+     * Membership decisions that are not already cached are computed for all groups at once, the
+     * member's attributes are retrieved a single time and evaluated by the {@link
+     * PagsDecisionIndex}. Every decision is then cached for later {@link #contains(IEntityGroup,
+     * IGroupMember)} calls.
+     */
     private Iterator<IEntityGroup> findParentGroupsForEntity(IEntity member)
             throws GroupsException {
 
         Set<IPersonAttributesGroupDefinition> pagsGroups =
                 personAttributesGroupDefinitionDao.getPersonAttributesGroupDefinitions();
         List<IEntityGroup> results = new ArrayList<IEntityGroup>();
+        Map<MembershipCacheKey, IEntityGroup> uncached =
+                new LinkedHashMap<MembershipCacheKey, IEntityGroup>();
         for (IPersonAttributesGroupDefinition pagsGroup : pagsGroups) {
             IEntityGroup group = convertPagsGroupToEntity(pagsGroup);
-            if (contains(group, member)) {
+            final MembershipCacheKey cacheKey =
+                    new MembershipCacheKey(
+                            group.getEntityIdentifier(), member.getUnderlyingEntityIdentifier());
+            final Element element = membershipCache.get(cacheKey);
+            if (element == null) {
+                uncached.put(cacheKey, group);
+            } else if ((Boolean) element.getObjectValue()) {
                 results.add(group);
             }
         }
+
+        if (!uncached.isEmpty()) {
+            final Set<String> memberships;
+            try {
+                memberships = evaluateMemberships(member, pagsGroups);
+            } catch (Exception ex) {
+                logger.error(
+                        "Exception acquiring attributes for member "
+                                + member
+                                + " while finding the groups that contain this member.",
+                        ex);
+                return results.iterator();
+            }
+
+            for (Map.Entry<MembershipCacheKey, IEntityGroup> entry : uncached.entrySet()) {
+                final IEntityGroup group = entry.getValue();
+                final boolean answer = memberships.contains(group.getName());
+                membershipCache.put(new Element(entry.getKey(), answer));
+                if (answer) {
+                    results.add(group);
+                }
+            }
+        }
+
         return results.iterator();
     }
 
+    /** @return Names of all groups that contain the member */
+    private Set<String> evaluateMemberships(
+            IEntity member, Set<IPersonAttributesGroupDefinition> pagsGroups) {
+        final IPersonAttributeDao pa = PersonAttributeDaoLocator.getPersonAttributeDao();
+        final IPersonAttributes personAttributes = pa.getPerson(member.getKey());
+        if (personAttributes == null) {
+            return Collections.emptySet();
+        }
+
+        final RestrictedPerson rp = PersonFactory.createRestrictedPerson();
+        rp.setAttributes(personAttributes.getAttributes());
+        return getDecisionIndex(pagsGroups).evaluate(rp);
+    }
+
+    private PagsDecisionIndex getDecisionIndex(Set<IPersonAttributesGroupDefinition> pagsGroups) {
+        final List<PagsGroup> groupDefs = new ArrayList<PagsGroup>(pagsGroups.size());
+        for (IPersonAttributesGroupDefinition pagsGroup : pagsGroups) {
+            final PagsGroup groupDef = initGroupDef(pagsGroup);
+            if (groupDef != null) {
+                groupDefs.add(groupDef);
+            }
+        }
+
+        PagsDecisionIndex index = this.decisionIndex;
+        if (index == null || !index.isCompiledFrom(groupDefs)) {
+            index = PagsDecisionIndex.compile(groupDefs);
+            logger.debug("Compiled {}", index);
+            this.decisionIndex = index;
+        }
+        return index;
+    }
+
     @Override
     public Iterator<IEntityGroup> findEntitiesForGroup(IEntityGroup group) throws GroupsException {
         // PAGS groups are synthetic;  we don't support this behavior.
@@ -0,0 +1,131 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.groups.pags;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apereo.portal.groups.pags.testers.IntegerGETester;
+import org.apereo.portal.groups.pags.testers.RegexTester;
+import org.apereo.portal.groups.pags.testers.StringEqualsTester;
+import org.apereo.portal.groups.pags.testers.ValueMissingTester;
+import org.apereo.portal.security.IPerson;
+import org.apereo.portal.security.provider.PersonImpl;
+import org.junit.Test;
+
+public class PagsDecisionIndexTest {
+
+    @Test
+    public void testMatchesPagsGroupContains() {
+        final PagsGroup students =
+                group("Students", testGroup(new RegexTester(definition("affiliation", "stud.*"))));
+        final PagsGroup seniors =
+                group(
+                        "Seniors",
+                        testGroup(
+                                new RegexTester(definition("affiliation", "stud.*")),
+                                new IntegerGETester(definition("credits", "90"))));
+        final PagsGroup staffOrNoAffiliation =
+                group(
+                        "StaffOrNoAffiliation",
+                        testGroup(new StringEqualsTester(definition("affiliation", "staff"))),
+                        testGroup(new ValueMissingTester(definition("affiliation", null))));
+        final PagsGroup nobody = group("Nobody");
+        final List<PagsGroup> groups =
+                Arrays.asList(students, seniors, staffOrNoAffiliation, nobody);
+
+        final PagsDecisionIndex index = PagsDecisionIndex.compile(groups);
+
+        final IPerson[] people = {
+            person("affiliation", "student", "credits", "95"),
+            person("affiliation", "student", "credits", "12"),
+            person("affiliation", "staff"),
+            person("credits", "120"),
+        };
+        for (final IPerson person : people) {
+            final Set<String> expected = new HashSet<String>();
+            for (final PagsGroup group : groups) {
+                if (group.contains(person)) {
+                    expected.add(group.getKey());
+                }
+            }
+            assertEquals(expected, index.evaluate(person));
+        }
+    }
+
+    @Test
+    public void testEquivalentTestersShared() {
+        final PagsGroup a =
+                group("A", testGroup(new RegexTester(definition("affiliation", "x.*"))));
+        final PagsGroup b =
+                group(
+                        "B",
+                        testGroup(
+                                new RegexTester(definition("affiliation", "x.*")),
+                                new RegexTester(definition("affiliation", "y.*"))));
+        final PagsDecisionIndex index = PagsDecisionIndex.compile(Arrays.asList(a, b));
+
+        assertEquals(2, index.getTesterCount());
+    }
+
+    @Test
+    public void testCompiledFrom() {
+        final PagsGroup a = group("A", testGroup(new RegexTester(definition("affiliation", "a"))));
+        final PagsGroup b = group("B", testGroup(new RegexTester(definition("affiliation", "b"))));
+        final PagsDecisionIndex index = PagsDecisionIndex.compile(Arrays.asList(a, b));
+
+        assertTrue(index.isCompiledFrom(Arrays.asList(b, a)));
+        assertFalse(index.isCompiledFrom(Arrays.asList(a)));
+        final PagsGroup reloadedB =
+                group("B", testGroup(new RegexTester(definition("affiliation", "b"))));
+        assertFalse(index.isCompiledFrom(Arrays.asList(a, reloadedB)));
+    }
+
+    private static TestPersonAttributesGroupTestDefinition definition(
+            String attributeName, String testValue) {
+        return new TestPersonAttributesGroupTestDefinition(attributeName, testValue);
+    }
+
+    private static TestGroup testGroup(IPersonTester... testers) {
+        final TestGroup testGroup = new TestGroup();
+        for (final IPersonTester tester : testers) {
+            testGroup.addTest(tester);
+        }
+        return testGroup;
+    }
+
+    private static PagsGroup group(String name, TestGroup... testGroups) {
+        final PagsGroup group = new PagsGroup();
+        group.setKey(name);
+        group.setName(name);
+        for (final TestGroup testGroup : testGroups) {
+            group.addTestGroup(testGroup);
+        }
+        return group;
+    }
+
+    private static IPerson person(String... attributes) {
+        final IPerson person = new PersonImpl();
+        for (int i = 0; i < attributes.length; i += 2) {
+            person.setAttribute(attributes[i], attributes[i + 1]);
+        }
+        return person;
+    }
+}
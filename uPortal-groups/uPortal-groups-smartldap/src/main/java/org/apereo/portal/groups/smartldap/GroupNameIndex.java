@@ -0,0 +1,211 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.groups.smartldap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apereo.portal.groups.IGroupConstants.SearchMethod;
+
+/**
+ * Immutable index of group names used to answer group searches without matching every name.
+ *
+ * <ul>
+ *   <li>DISCRETE and STARTS_WITH queries binary search the sorted names.
+ *   <li>ENDS_WITH queries binary search the sorted reversed names.
+ *   <li>CONTAINS queries only check the names that contain the rarest trigram of the query. Queries
+ *       shorter than a trigram check every name.
+ * </ul>
+ *
+ * <p>All names and queries are upper case, so every search is case insensitive.
+ */
+final class GroupNameIndex {
+    private static final int GRAM_LENGTH = 3;
+    private static final int[] NO_NAMES = new int[0];
+
+    // Names sorted, keys[i] are the keys of the groups named names[i]
+    private final String[] names;
+    private final String[][] keys;
+    // Names reversed and sorted, reversedNameIds[i] is the index in names of reversedNames[i]
+    private final String[] reversedNames;
+    private final int[] reversedNameIds;
+    // Indexes in names of the names that contain each trigram, ascending
+    private final Map<String, int[]> nameIdsByGram;
+
+    /** @param keysByUpperCaseName Group keys indexed by upper case group name */
+    GroupNameIndex(Map<String, List<String>> keysByUpperCaseName) {
+        this.names = keysByUpperCaseName.keySet().toArray(new String[keysByUpperCaseName.size()]);
+        Arrays.sort(this.names);
+
+        this.keys = new String[this.names.length][];
+        final String[] reversed = new String[this.names.length];
+        final Integer[] reversedOrder = new Integer[this.names.length];
+        for (int i = 0; i < this.names.length; i++) {
+            final List<String> groupKeys = keysByUpperCaseName.get(this.names[i]);
+            synchronized (groupKeys) {
+                this.keys[i] = groupKeys.toArray(new String[groupKeys.size()]);
+            }
+            reversed[i] = new StringBuilder(this.names[i]).reverse().toString();
+            reversedOrder[i] = i;
+        }
+
+        Arrays.sort(reversedOrder, (a, b) -> reversed[a].compareTo(reversed[b]));
+        this.reversedNames = new String[reversed.length];
+        this.reversedNameIds = new int[reversed.length];
+        for (int i = 0; i < reversedOrder.length; i++) {
+            this.reversedNames[i] = reversed[reversedOrder[i]];
+            this.reversedNameIds[i] = reversedOrder[i];
+        }
+
+        this.nameIdsByGram = indexGrams(this.names);
+    }
+
+    private static Map<String, int[]> indexGrams(String[] names) {
+        final Map<String, Postings> postingsByGram = new HashMap<>();
+        final Set<String> nameGrams = new HashSet<>();
+        for (int id = 0; id < names.length; id++) {
+            final String name = names[id];
+            nameGrams.clear();
+            for (int i = 0; i + GRAM_LENGTH <= name.length(); i++) {
+                nameGrams.add(name.substring(i, i + GRAM_LENGTH));
+            }
+            for (final String gram : nameGrams) {
+                Postings postings = postingsByGram.get(gram);
+                if (postings == null) {
+                    postings = new Postings();
+                    postingsByGram.put(gram, postings);
+                }
+                postings.add(id);
+            }
+        }
+
+        final Map<String, int[]> rslt = new HashMap<>(postingsByGram.size() * 4 / 3 + 1);
+        for (final Map.Entry<String, Postings> entry : postingsByGram.entrySet()) {
+            rslt.put(entry.getKey(), entry.getValue().toArray());
+        }
+        return rslt;
+    }
+
+    /** @return Number of names in the index */
+    int size() {
+        return this.names.length;
+    }
+
+    /**
+     * @param query Upper case query
+     * @return Keys of all groups whose upper case name matches the query
+     */
+    List<String> findKeys(String query, SearchMethod method) {
+        final List<String> rslt = new ArrayList<>();
+        switch (method) {
+            case DISCRETE:
+            case DISCRETE_CI:
+                {
+                    final int id = Arrays.binarySearch(this.names, query);
+                    if (id >= 0) {
+                        Collections.addAll(rslt, this.keys[id]);
+                    }
+                    break;
+                }
+            case STARTS_WITH:
+            case STARTS_WITH_CI:
+                {
+                    for (int id = findFirst(this.names, query);
+                            id < this.names.length && this.names[id].startsWith(query);
+                            id++) {
+                        Collections.addAll(rslt, this.keys[id]);
+                    }
+                    break;
+                }
+            case ENDS_WITH:
+            case ENDS_WITH_CI:
+                {
+                    final String reversedQuery = new StringBuilder(query).reverse().toString();
+                    for (int i = findFirst(this.reversedNames, reversedQuery);
+                            i < this.reversedNames.length
+                                    && this.reversedNames[i].startsWith(reversedQuery);
+                            i++) {
+                        Collections.addAll(rslt, this.keys[this.reversedNameIds[i]]);
+                    }
+                    break;
+                }
+            case CONTAINS:
+            case CONTAINS_CI:
+                {
+                    if (query.length() < GRAM_LENGTH) {
+                        for (int id = 0; id < this.names.length; id++) {
+                            if (this.names[id].contains(query)) {
+                                Collections.addAll(rslt, this.keys[id]);
+                            }
+                        }
+                    } else {
+                        for (final int id : this.getCandidates(query)) {
+                            if (this.names[id].contains(query)) {
+                                Collections.addAll(rslt, this.keys[id]);
+                            }
+                        }
+                    }
+                    break;
+                }
+            default:
+                throw new IllegalArgumentException("Unsupported search method:  " + method);
+        }
+        return rslt;
+    }
+
+    /** @return The ids of the names containing the rarest trigram of the query */
+    private int[] getCandidates(String query) {
+        int[] candidates = null;
+        for (int i = 0; i + GRAM_LENGTH <= query.length(); i++) {
+            final int[] ids = this.nameIdsByGram.get(query.substring(i, i + GRAM_LENGTH));
+            if (ids == null) {
+                // No name contains this part of the query
+                return NO_NAMES;
+            }
+            if (candidates == null || ids.length < candidates.length) {
+                candidates = ids;
+            }
+        }
+        return candidates;
+    }
+
+    /** @return Index of the first element of the sorted array that is not less than the value */
+    private static int findFirst(String[] sorted, String value) {
+        final int i = Arrays.binarySearch(sorted, value);
+        return i >= 0 ? i : -(i + 1);
+    }
+
+    /** Growable list of name ids used while building the index */
+    private static final class Postings {
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int id) {
+            if (this.size == this.ids.length) {
+                this.ids = Arrays.copyOf(this.ids, this.size * 2);
+            }
+            this.ids[this.size++] = id;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(this.ids, this.size);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.groups.smartldap;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+/**
+ * Holds the groups tree of the {@link SmartLdapGroupStore} and replaces it with a freshly built one
+ * every refreshIntervalSeconds. New trees are built off to the side and swapped in when complete,
+ * so readers never wait on a refresh. Only the first read waits, while the initial tree is built.
+ *
+ * <p>Background refreshes start after the first tree is built successfully; a store that is never
+ * used, or never built, does not schedule any work.
+ *
+ * @param <T> Type of the tree
+ */
+final class GroupsTreeRefresher<T> {
+
+    private final Callable<T> builder;
+
+    /** A value of zero or less disables the background refresh. */
+    private final long refreshIntervalSeconds;
+
+    /** Held while a tree is being built so only one build runs at a time. */
+    private final Object refreshLock = new Object();
+
+    private volatile T tree;
+
+    /** Timestamp (milliseconds) of the last build attempt. */
+    private volatile long lastAttemptTime = 0;
+
+    /** Timestamp (milliseconds) the current tree finished building. */
+    private volatile long lastRefreshTime = 0;
+
+    private volatile long lastRefreshDuration = -1;
+    private final AtomicLong refreshCount = new AtomicLong();
+    private final AtomicLong failedRefreshCount = new AtomicLong();
+
+    /** Guarded by refreshLock. */
+    private ScheduledExecutorService refreshExecutor;
+
+    /** Guarded by refreshLock. */
+    private boolean shutdown = false;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    GroupsTreeRefresher(Callable<T> builder, long refreshIntervalSeconds) {
+        this.builder = builder;
+        this.refreshIntervalSeconds = refreshIntervalSeconds;
+    }
+
+    /**
+     * @return The current tree, building it first if there isn't one yet. Null if the tree could
+     *     not be built; in that case another build is not attempted until refreshIntervalSeconds
+     *     have passed.
+     */
+    T get() {
+        T rslt = tree;
+        if (rslt != null) {
+            return rslt;
+        }
+
+        synchronized (refreshLock) {
+            rslt = tree;
+            if (rslt == null) {
+                final long retryTimestamp = lastAttemptTime + (refreshIntervalSeconds * 1000L);
+                if (lastAttemptTime == 0
+                        || refreshIntervalSeconds <= 0
+                        || System.currentTimeMillis() > retryTimestamp) {
+                    if (refresh()) {
+                        rslt = tree;
+                        startBackgroundRefresh();
+                    }
+                }
+            }
+        }
+
+        return rslt;
+    }
+
+    /** @return The current tree without building it, or null if there isn't one yet */
+    T getCurrent() {
+        return tree;
+    }
+
+    /**
+     * Builds a new tree and swaps it in once complete. Readers keep using the existing tree while
+     * the new one is built. If the build fails the existing tree is kept.
+     *
+     * @return True if the tree was replaced
+     */
+    boolean refresh() {
+        synchronized (refreshLock) {
+            log.info("Refreshing groups tree for SmartLdap");
+
+            final long timestamp = System.currentTimeMillis();
+            try {
+                final T newTree = builder.call();
+
+                // Replace the old with the new...
+                tree = newTree;
+                lastRefreshTime = System.currentTimeMillis();
+                lastRefreshDuration = lastRefreshTime - timestamp;
+                refreshCount.incrementAndGet();
+                return true;
+            } catch (Throwable t) {
+                failedRefreshCount.incrementAndGet();
+                log.error("SmartLdapGroupStore failed to build the groups tree", t);
+                return false;
+            } finally {
+                lastAttemptTime = timestamp;
+            }
+        }
+    }
+
+    /** Stops the background refresh; an in-progress build is interrupted. */
+    void shutdown() {
+        synchronized (refreshLock) {
+            shutdown = true;
+            if (refreshExecutor != null) {
+                refreshExecutor.shutdownNow();
+            }
+        }
+    }
+
+    /** @return True if background refreshes have been scheduled */
+    boolean isRefreshScheduled() {
+        synchronized (refreshLock) {
+            return refreshExecutor != null && !refreshExecutor.isShutdown();
+        }
+    }
+
+    long getLastRefreshTime() {
+        return lastRefreshTime;
+    }
+
+    long getLastRefreshDuration() {
+        return lastRefreshDuration;
+    }
+
+    long getRefreshCount() {
+        return refreshCount.get();
+    }
+
+    long getFailedRefreshCount() {
+        return failedRefreshCount.get();
+    }
+
+    /*
+     * Implementation.
+     */
+
+    /** Must be called holding refreshLock. */
+    private void startBackgroundRefresh() {
+        if (refreshIntervalSeconds <= 0 || refreshExecutor != null || shutdown) {
+            return;
+        }
+
+        final CustomizableThreadFactory threadFactory =
+                new CustomizableThreadFactory("SmartLdap Refresh Worker-");
+        threadFactory.setDaemon(true);
+        refreshExecutor = new ScheduledThreadPoolExecutor(1, threadFactory);
+        refreshExecutor.scheduleWithFixedDelay(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        refresh();
+                    }
+                },
+                refreshIntervalSeconds,
+                refreshIntervalSeconds,
+                TimeUnit.SECONDS);
+    }
+}
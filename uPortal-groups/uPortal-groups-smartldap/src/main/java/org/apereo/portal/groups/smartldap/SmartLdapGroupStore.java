@@ -23,6 +23,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.concurrent.ConcurrentException;
@@ -47,10 +48,19 @@ import org.danann.cernunnos.runtime.ScriptRunner;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Required;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.ldap.core.AttributesMapper;
 import org.springframework.ldap.core.ContextSource;
 
-public final class SmartLdapGroupStore implements IEntityGroupStore {
+/**
+ * Group store for LDAP groups. All groups and their relationships are loaded into an in-memory
+ * tree. When {@link #setGroupsTreeRefreshIntervalSeconds(long)} is positive the tree is rebuilt
+ * in the background on that interval and swapped in when complete, callers never wait for a
+ * refresh. Only the first call waits, while the initial tree is built; the tree is not built, and
+ * no refreshes are scheduled, until the store is used.
+ */
+@ManagedResource("uPortal:section=Groups,name=SmartLdapGroupStore")
+public final class SmartLdapGroupStore implements IEntityGroupStore, SmartLdapGroupStoreMXBean {
 
     // Instance Members.
     private String memberOfAttributeName = "memberOf"; // default
@@ -103,8 +113,9 @@ public final class SmartLdapGroupStore implements IEntityGroupStore {
     }
 
     /**
-     * Period after which SmartLdap will drop and rebuild the groups tree. May be overridden in
-     * SmartLdapGroupStoreConfix.xml. A value of zero or less (negative) disables this feature.
+     * Period after which SmartLdap will rebuild the groups tree in the background. May be
+     * overridden in SmartLdapGroupStoreConfix.xml. A value of zero or less (negative) disables this
+     * feature.
      */
     private long groupsTreeRefreshIntervalSeconds = 900; // default
 
@@ -112,8 +123,10 @@ public final class SmartLdapGroupStore implements IEntityGroupStore {
         this.groupsTreeRefreshIntervalSeconds = groupsTreeRefreshIntervalSeconds;
     }
 
-    /** Timestamp (milliseconds) of the last tree refresh. */
-    private volatile long lastTreeRefreshTime = 0;
+    @Override
+    public long getGroupsTreeRefreshIntervalSeconds() {
+        return groupsTreeRefreshIntervalSeconds;
+    }
 
     // Cernunnos tech...
     private final ScriptRunner runner = new ScriptRunner();
@@ -140,9 +153,13 @@ public final class SmartLdapGroupStore implements IEntityGroupStore {
      *       lists of the 'keys' (DNs) of its children. Includes ROOT_GROUP.
      *   <li>Map of all 'keys' (DNs) of SmartLdap managed groups indexed by group name in upper
      *       case. Includes ROOT_GROUP.
+     *   <li>Index of the same upper case names used to serve searchForGroups().
      * </ul>
+     *
+     * <p>Replaced as a whole when a refresh completes, callers read the tree once and use it for
+     * the rest of the call.
      */
-    private GroupsTree groupsTree;
+    private GroupsTreeRefresher<GroupsTree> groupsTree;
 
     /*
      * Public API.
@@ -185,15 +202,13 @@ public final class SmartLdapGroupStore implements IEntityGroupStore {
      */
     public IEntityGroup find(String key) throws GroupsException {
 
-        if (isTreeRefreshRequired()) {
-            refreshTree();
-        }
+        final GroupsTree tree = getGroupsTree();
 
         log.debug("Invoking find() for key:  {}", key);
 
         // All of our groups (incl. ROOT_GROUP)
         // are indexed in the 'groups' map by key...
-        return groupsTree.getGroups().get(key);
+        return tree.getGroups().get(key);
     }
 
     /**
@@ -205,20 +220,18 @@ public final class SmartLdapGroupStore implements IEntityGroupStore {
      */
     public Iterator findParentGroups(IGroupMember gm) throws GroupsException {
 
-        if (isTreeRefreshRequired()) {
-            refreshTree();
-        }
+        final GroupsTree tree = getGroupsTree();
 
         List<IEntityGroup> rslt = new ArrayList<>();
         final IEntityGroup root = getRootGroup();
         if (gm.isGroup()) {
             // Check the local indeces...
             IEntityGroup group = (IEntityGroup) gm;
-            List<String> list = groupsTree.getParents().get(group.getLocalKey());
+            List<String> list = tree.getParents().get(group.getLocalKey());
             if (list != null) {
                 // should only reach this code if its a SmartLdap managed group...
                 for (String s : list) {
-                    rslt.add(groupsTree.getGroups().get(s));
+                    rslt.add(tree.getGroups().get(s));
                 }
             }
         } else if (!gm.isGroup() && gm.getLeafType().equals(root.getLeafType())) {
@@ -242,8 +255,8 @@ public final class SmartLdapGroupStore implements IEntityGroupStore {
                     }
 
                     for (String s : list) {
-                        if (groupsTree.getGroups().containsKey(s)) {
-                            rslt.add(groupsTree.getGroups().get(s));
+                        if (tree.getGroups().containsKey(s)) {
+                            rslt.add(tree.getGroups().get(s));
                         }
                     }
                 }
@@ -262,10 +275,6 @@ public final class SmartLdapGroupStore implements IEntityGroupStore {
      */
     public Iterator findEntitiesForGroup(IEntityGroup group) throws GroupsException {
 
-        if (isTreeRefreshRequired()) {
-            refreshTree();
-        }
-
         log.debug("Invoking findEntitiesForGroup() for group:  {}", group.getLocalKey());
 
         // We only deal w/ group-group relationships here...
@@ -290,10 +299,6 @@ public final class SmartLdapGroupStore implements IEntityGroupStore {
      */
     public String[] findMemberGroupKeys(IEntityGroup group) throws GroupsException {
 
-        if (isTreeRefreshRequired()) {
-            refreshTree();
-        }
-
         log.debug("Invoking findMemberGroupKeys() for group:  {}", group.getLocalKey());
 
         List<String> rslt = new ArrayList<>();
@@ -315,19 +320,17 @@ public final class SmartLdapGroupStore implements IEntityGroupStore {
      */
     public Iterator findMemberGroups(IEntityGroup group) throws GroupsException {
 
-        if (isTreeRefreshRequired()) {
-            refreshTree();
-        }
+        final GroupsTree tree = getGroupsTree();
 
         log.debug("Invoking findMemberGroups() for group:  {}", group.getLocalKey());
 
         List<IEntityGroup> rslt = new ArrayList<>();
 
-        List<String> list = groupsTree.getChildren().get(group.getLocalKey());
+        List<String> list = tree.getChildren().get(group.getLocalKey());
         if (list != null) {
             // should only reach this code if its a SmartLdap managed group...
             for (String s : list) {
-                rslt.add(groupsTree.getGroups().get(s));
+                rslt.add(tree.getGroups().get(s));
             }
         }
 
@@ -343,9 +346,7 @@ public final class SmartLdapGroupStore implements IEntityGroupStore {
     public EntityIdentifier[] searchForGroups(String query, SearchMethod method, Class leaftype)
             throws GroupsException {
 
-        if (isTreeRefreshRequired()) {
-            refreshTree();
-        }
+        final GroupsTree tree = getGroupsTree();
 
         log.debug(
                 "Invoking searchForGroups():  query={}, method={}, leaftype=",
@@ -359,61 +360,11 @@ public final class SmartLdapGroupStore implements IEntityGroupStore {
             return new EntityIdentifier[0];
         }
 
-        // We need to escape regex special characters that appear in the query string...
-        final String[][] specials =
-                new String[][] {
-                    /* backslash must come first! */
-                    new String[] {"\\", "\\\\"},
-                    new String[] {"[", "\\["},
-                    /* closing ']' isn't needed b/c it's a normal character w/o a preceding '[' */
-                    new String[] {"{", "\\{"},
-                    /* closing '}' isn't needed b/c it's a normal character w/o a preceding '{' */
-                    new String[] {"^", "\\^"},
-                    new String[] {"$", "\\$"},
-                    new String[] {".", "\\."},
-                    new String[] {"|", "\\|"},
-                    new String[] {"?", "\\?"},
-                    new String[] {"*", "\\*"},
-                    new String[] {"+", "\\+"},
-                    new String[] {"(", "\\("},
-                    new String[] {")", "\\)"}
-                };
-        for (String[] s : specials) {
-            query = query.replace(s[0], s[1]);
-        }
-
-        // Establish the regex pattern to match on...
-        String regex;
-        switch (method) {
-            case DISCRETE:
-            case DISCRETE_CI:
-                regex = query.toUpperCase();
-                break;
-            case STARTS_WITH:
-            case STARTS_WITH_CI:
-                regex = query.toUpperCase() + ".*";
-                break;
-            case ENDS_WITH:
-            case ENDS_WITH_CI:
-                regex = ".*" + query.toUpperCase();
-                break;
-            case CONTAINS:
-            case CONTAINS_CI:
-                regex = ".*" + query.toUpperCase() + ".*";
-                break;
-            default:
-                String msg = "Unsupported search method:  " + method;
-                throw new GroupsException(msg);
-        }
-
+        // Names are indexed in upper case, matching on the name index
+        // avoids compiling a regex for each name...
         List<EntityIdentifier> rslt = new ArrayList<>();
-        for (Map.Entry<String, List<String>> y : groupsTree.getKeysByUpperCaseName().entrySet()) {
-            if (y.getKey().matches(regex)) {
-                List<String> keys = y.getValue();
-                for (String k : keys) {
-                    rslt.add(new EntityIdentifier(k, IEntityGroup.class));
-                }
-            }
+        for (String k : tree.getNameIndex().findKeys(query.toUpperCase(), method)) {
+            rslt.add(new EntityIdentifier(k, IEntityGroup.class));
         }
 
         return rslt.toArray(new EntityIdentifier[rslt.size()]);
@@ -485,6 +436,42 @@ public final class SmartLdapGroupStore implements IEntityGroupStore {
         return rslt;
     }
 
+    /*
+     * Statistics.
+     */
+
+    @Override
+    public int getGroupCount() {
+        final GroupsTree tree = groupsTree.getCurrent();
+        return tree != null ? tree.getGroups().size() : 0;
+    }
+
+    @Override
+    public int getGroupNameCount() {
+        final GroupsTree tree = groupsTree.getCurrent();
+        return tree != null ? tree.getNameIndex().size() : 0;
+    }
+
+    @Override
+    public long getLastRefreshTime() {
+        return groupsTree.getLastRefreshTime();
+    }
+
+    @Override
+    public long getLastRefreshDuration() {
+        return groupsTree.getLastRefreshDuration();
+    }
+
+    @Override
+    public long getRefreshCount() {
+        return groupsTree.getRefreshCount();
+    }
+
+    @Override
+    public long getFailedRefreshCount() {
+        return groupsTree.getFailedRefreshCount();
+    }
+
     /*
      * Implementation.
      */
@@ -492,6 +479,13 @@ public final class SmartLdapGroupStore implements IEntityGroupStore {
     @PostConstruct
     private void postConstruct() {
         Factory.setInstance(this);
+        groupsTree =
+                new GroupsTreeRefresher<>(this::buildGroupsTree, groupsTreeRefreshIntervalSeconds);
+    }
+
+    @PreDestroy
+    private void preDestroy() {
+        groupsTree.shutdown();
     }
 
     private IEntityGroup getRootGroup() {
@@ -502,73 +496,21 @@ public final class SmartLdapGroupStore implements IEntityGroupStore {
         }
     }
 
-    private boolean isTreeRefreshRequired() {
-
-        if (groupsTree == null) {
-            // Of course we need it
-            return true;
-        }
-
-        if (groupsTreeRefreshIntervalSeconds <= 0) {
-            // SmartLdap refresh feature may be disabled by setting
-            // groupsTreeRefreshIntervalSeconds to zero or negative.
-            return false;
-        }
-
-        // The 'lastTreeRefreshTime' member variable is volatile.  As of JDK 5,
-        // this fact should make reads of this variable dependable in a multi-
-        // threaded environment.
-        final long treeExpiresTimestamp =
-                lastTreeRefreshTime + (groupsTreeRefreshIntervalSeconds * 1000L);
-        return System.currentTimeMillis() > treeExpiresTimestamp;
-    }
-
     /**
-     * Verifies that the collection of groups needs rebuilding and, if so, spawns a new worker
-     * <code>Thread</code> for that purpose.
+     * Returns the current groups tree. Only blocks while the initial tree is built, after that
+     * refreshes happen in the background.
      */
-    private synchronized void refreshTree() {
-
-        if (!isTreeRefreshRequired()) {
-            // The groupsTree was already re-built while
-            // we were waiting to enter this method.
-            return;
+    private GroupsTree getGroupsTree() throws GroupsException {
+        if (ldapContext == null) {
+            // SmartLdap is not configured;  don't attempt (and log) a build that cannot succeed
+            throw new GroupsException("The SmartLdap ldapContext property is not set");
         }
 
-        log.info("Refreshing groups tree for SmartLdap");
-
-        // We must join the builder thread if
-        // we don't have an existing groupsTree.
-        final boolean doJoin = groupsTree == null;
-
-        // In most cases, re-build the tree in a separate thread;  the current
-        // request can proceed with the newly-expired groupsTree.
-        Thread refresh =
-                new Thread("SmartLdap Refresh Worker") {
-                    @Override
-                    public void run() {
-                        // Replace the old with the new...
-                        try {
-                            groupsTree = buildGroupsTree();
-                        } catch (Throwable t) {
-                            log.error("SmartLdapGroupStore failed to build the groups tree", t);
-                        }
-                    }
-                };
-        refresh.setDaemon(true);
-        refresh.start();
-        if (doJoin) {
-            try {
-                log.info("Joining the SmartLdap Refresh Worker Thread");
-                refresh.join();
-            } catch (InterruptedException ie) {
-                throw new RuntimeException(ie);
-            }
+        final GroupsTree rslt = groupsTree.get();
+        if (rslt == null) {
+            throw new GroupsException("The SmartLdap groups tree could not be built");
         }
-
-        // Even if the refresh thread failed, don't try
-        // again for another groupsTreeRefreshIntervalSeconds.
-        lastTreeRefreshTime = System.currentTimeMillis();
+        return rslt;
     }
 
     private GroupsTree buildGroupsTree() {
@@ -796,6 +738,7 @@ public final class SmartLdapGroupStore implements IEntityGroupStore {
         private final Map<String, List<String>> parents;
         private final Map<String, List<String>> children;
         private final Map<String, List<String>> keysByUpperCaseName;
+        private final GroupNameIndex nameIndex;
 
         /*
          * Public API.
@@ -830,6 +773,7 @@ public final class SmartLdapGroupStore implements IEntityGroupStore {
             this.parents = parents;
             this.children = children;
             this.keysByUpperCaseName = keysByUpperCaseName;
+            this.nameIndex = new GroupNameIndex(keysByUpperCaseName);
         }
 
         public Map<String, IEntityGroup> getGroups() {
@@ -847,6 +791,10 @@ public final class SmartLdapGroupStore implements IEntityGroupStore {
         public Map<String, List<String>> getKeysByUpperCaseName() {
             return keysByUpperCaseName;
         }
+
+        public GroupNameIndex getNameIndex() {
+            return nameIndex;
+        }
     }
 
     private static final class SubQueryCounter {
@@ -0,0 +1,40 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.groups.smartldap;
+
+/** JMX view of the groups tree held by the {@link SmartLdapGroupStore} */
+public interface SmartLdapGroupStoreMXBean {
+
+    /** @return Number of groups in the current tree, including the root group */
+    int getGroupCount();
+
+    /** @return Number of distinct group names in the current tree */
+    int getGroupNameCount();
+
+    /** @return Time (milliseconds since the epoch) the current tree finished building, 0 if none */
+    long getLastRefreshTime();
+
+    /** @return Milliseconds the last successful refresh took to build the tree, -1 if none */
+    long getLastRefreshDuration();
+
+    /** @return Number of refreshes that replaced the tree since startup */
+    long getRefreshCount();
+
+    /** @return Number of refreshes that failed since startup, the previous tree was kept */
+    long getFailedRefreshCount();
+
+    /** @return Seconds between background refreshes, zero or less if they are disabled */
+    long getGroupsTreeRefreshIntervalSeconds();
+}
@@ -0,0 +1,101 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.groups.smartldap;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apereo.portal.groups.IGroupConstants.SearchMethod;
+import org.junit.Test;
+
+public class GroupNameIndexTest {
+
+    private static final String[] NAMES = {
+        "STAFF", "STUDENTS", "ALL STAFF", "STAFF.IT", "FACULTY", "IT", "A", "SMARTLDAP ROOT"
+    };
+
+    @Test
+    public void testMatchesLinearSearch() {
+        final GroupNameIndex index = new GroupNameIndex(keysByName());
+        final String[] queries = {"", "A", "S", "IT", "STAFF", "TAF", "AFF", ".IT", "ROOT", "X"};
+
+        for (final SearchMethod method : SearchMethod.values()) {
+            for (final String query : queries) {
+                assertEquals(
+                        method + " " + query,
+                        linearSearch(query, method),
+                        new HashSet<String>(index.findKeys(query, method)));
+            }
+        }
+    }
+
+    @Test
+    public void testDuplicateNames() {
+        final Map<String, List<String>> keysByName = new HashMap<>();
+        keysByName.put("STAFF", new ArrayList<>(Arrays.asList("cn=staff,o=a", "cn=staff,o=b")));
+        final GroupNameIndex index = new GroupNameIndex(keysByName);
+
+        assertEquals(
+                Arrays.asList("cn=staff,o=a", "cn=staff,o=b"),
+                index.findKeys("STAFF", SearchMethod.DISCRETE));
+    }
+
+    private static Map<String, List<String>> keysByName() {
+        final Map<String, List<String>> keysByName = new HashMap<>();
+        for (final String name : NAMES) {
+            keysByName.put(name, Collections.synchronizedList(new ArrayList<>(key(name))));
+        }
+        return keysByName;
+    }
+
+    private static List<String> key(String name) {
+        return Collections.singletonList("cn=" + name.toLowerCase());
+    }
+
+    private static Set<String> linearSearch(String query, SearchMethod method) {
+        final Set<String> rslt = new HashSet<>();
+        for (final String name : NAMES) {
+            final boolean matches;
+            switch (method) {
+                case DISCRETE:
+                case DISCRETE_CI:
+                    matches = name.equals(query);
+                    break;
+                case STARTS_WITH:
+                case STARTS_WITH_CI:
+                    matches = name.startsWith(query);
+                    break;
+                case ENDS_WITH:
+                case ENDS_WITH_CI:
+                    matches = name.endsWith(query);
+                    break;
+                default:
+                    matches = name.contains(query);
+                    break;
+            }
+            if (matches) {
+                rslt.addAll(key(name));
+            }
+        }
+        return rslt;
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.groups.smartldap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+public class GroupsTreeRefresherTest {
+
+    private GroupsTreeRefresher<String> refresher;
+
+    @After
+    public void tearDown() {
+        if (refresher != null) {
+            refresher.shutdown();
+        }
+    }
+
+    @Test
+    public void testRefreshSwapsTree() {
+        final AtomicInteger builds = new AtomicInteger();
+        refresher = new GroupsTreeRefresher<>(() -> "tree-" + builds.incrementAndGet(), 900);
+
+        assertNull(refresher.getCurrent());
+        assertEquals("tree-1", refresher.get());
+        assertEquals("tree-1", refresher.get());
+        assertEquals(1, builds.get());
+
+        assertTrue(refresher.refresh());
+        assertEquals("tree-2", refresher.get());
+        assertEquals(2, refresher.getRefreshCount());
+        assertEquals(0, refresher.getFailedRefreshCount());
+        assertTrue(refresher.getLastRefreshTime() > 0);
+        assertTrue(refresher.getLastRefreshDuration() >= 0);
+    }
+
+    @Test
+    public void testFailedRefreshKeepsTree() {
+        final AtomicInteger builds = new AtomicInteger();
+        refresher =
+                new GroupsTreeRefresher<>(
+                        () -> {
+                            if (builds.incrementAndGet() > 1) {
+                                throw new IllegalStateException("LDAP is down");
+                            }
+                            return "tree-1";
+                        },
+                        900);
+
+        final String tree = refresher.get();
+        assertFalse(refresher.refresh());
+        assertSame(tree, refresher.get());
+        assertEquals(1, refresher.getRefreshCount());
+        assertEquals(1, refresher.getFailedRefreshCount());
+    }
+
+    @Test
+    public void testBackgroundRefreshStartsAfterFirstBuild() throws Exception {
+        final CountDownLatch backgroundBuild = new CountDownLatch(2);
+        refresher =
+                new GroupsTreeRefresher<>(
+                        () -> {
+                            backgroundBuild.countDown();
+                            return "tree";
+                        },
+                        1);
+
+        // Nothing is scheduled until the tree is first used
+        assertFalse(refresher.isRefreshScheduled());
+
+        assertEquals("tree", refresher.get());
+        assertTrue(refresher.isRefreshScheduled());
+        assertTrue(backgroundBuild.await(5, TimeUnit.SECONDS));
+
+        refresher.shutdown();
+        assertFalse(refresher.isRefreshScheduled());
+    }
+
+    @Test
+    public void testUnconfiguredStoreSchedulesNothing() {
+        final AtomicInteger builds = new AtomicInteger();
+        final Callable<String> unconfigured =
+                () -> {
+                    builds.incrementAndGet();
+                    throw new IllegalStateException("ldapContext property not set");
+                };
+        refresher = new GroupsTreeRefresher<>(unconfigured, 900);
+
+        assertNull(refresher.get());
+        // Further reads within the interval don't attempt another build
+        assertNull(refresher.get());
+        assertEquals(1, builds.get());
+        assertEquals(1, refresher.getFailedRefreshCount());
+        assertFalse(refresher.isRefreshScheduled());
+    }
+
+    @Test
+    public void testRefreshDisabled() {
+        final AtomicInteger builds = new AtomicInteger();
+        refresher = new GroupsTreeRefresher<>(() -> "tree-" + builds.incrementAndGet(), 0);
+
+        assertEquals("tree-1", refresher.get());
+        assertFalse(refresher.isRefreshScheduled());
+    }
+}
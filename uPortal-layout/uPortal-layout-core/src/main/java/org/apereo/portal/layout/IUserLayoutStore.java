@@ -40,6 +40,18 @@ public interface IUserLayoutStore {
      */
     DistributedUserLayout getUserLayout(IPerson Person, IUserProfile profile);
 
+    /**
+     * Brings a layout previously returned by {@link #getUserLayout(IPerson, IUserProfile)} up to
+     * date with any changes made to the fragments it incorporates.
+     *
+     * @param person an <code>IPerson</code> object specifying the user
+     * @param profile a user profile
+     * @param layout the user's current layout, it is not modified
+     * @return <code>layout</code> if it is current, otherwise a new layout
+     */
+    DistributedUserLayout getUpdatedUserLayout(
+            IPerson person, IUserProfile profile, DistributedUserLayout layout);
+
     /**
      * Returns an <code>Element</code> representing the user's layout and <code>UserPreferences
      * </code> (but not portlet preferences) formatted for export. This element <em>must</em> have
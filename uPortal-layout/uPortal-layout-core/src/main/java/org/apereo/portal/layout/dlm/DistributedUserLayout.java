@@ -14,6 +14,9 @@
  */
 package org.apereo.portal.layout.dlm;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import org.apereo.portal.layout.om.IStylesheetUserPreferences;
 import org.w3c.dom.Document;
 
@@ -22,6 +25,7 @@ public class DistributedUserLayout {
     private final Document layout;
     private final IStylesheetUserPreferences distributedStructureStylesheetUserPreferences;
     private final IStylesheetUserPreferences distributedThemeStylesheetUserPreferences;
+    private final Map<String, String> fragmentRevisions;
 
     /**
      * This constructor seems to be used with fragment owners.
@@ -32,6 +36,7 @@ public class DistributedUserLayout {
         this.layout = layout;
         this.distributedStructureStylesheetUserPreferences = null;
         this.distributedThemeStylesheetUserPreferences = null;
+        this.fragmentRevisions = null;
     }
 
     /**
@@ -47,6 +52,26 @@ public class DistributedUserLayout {
         this.distributedStructureStylesheetUserPreferences =
                 distributedStructureStylesheetUserPreferences;
         this.distributedThemeStylesheetUserPreferences = distributedThemeStylesheetUserPreferences;
+        this.fragmentRevisions = null;
+    }
+
+    /**
+     * Used with non-fragment owners whose layout incorporates fragments.
+     *
+     * @param fragmentRevisions {@link UserView#getRevision()} of each incorporated fragment, keyed
+     *     by fragment name
+     */
+    public DistributedUserLayout(
+            Document layout,
+            IStylesheetUserPreferences distributedStructureStylesheetUserPreferences,
+            IStylesheetUserPreferences distributedThemeStylesheetUserPreferences,
+            Map<String, String> fragmentRevisions) {
+        this.layout = layout;
+        this.distributedStructureStylesheetUserPreferences =
+                distributedStructureStylesheetUserPreferences;
+        this.distributedThemeStylesheetUserPreferences = distributedThemeStylesheetUserPreferences;
+        this.fragmentRevisions =
+                Collections.unmodifiableMap(new LinkedHashMap<>(fragmentRevisions));
     }
 
     /** @return The layout document */
@@ -61,4 +86,12 @@ public class DistributedUserLayout {
     public IStylesheetUserPreferences getDistributedThemeStylesheetUserPreferences() {
         return this.distributedThemeStylesheetUserPreferences;
     }
+
+    /**
+     * @return Revision of each fragment incorporated into the layout keyed by fragment name, null
+     *     if the incorporated fragments were not tracked
+     */
+    public Map<String, String> getFragmentRevisions() {
+        return this.fragmentRevisions;
+    }
 }
@@ -68,6 +68,11 @@ public abstract class Evaluator {
         return evaluatorId;
     }
 
+    /** @return The version of the persisted evaluator, -1 if it has not been persisted */
+    public long getEntityVersion() {
+        return entityVersion;
+    }
+
     public abstract boolean isApplicable(IPerson person);
 
     /**
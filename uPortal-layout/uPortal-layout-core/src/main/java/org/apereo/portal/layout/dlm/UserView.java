@@ -23,6 +23,7 @@ public class UserView {
     private Document layout = null;
     private int layoutId = 0;
     private int profileId = 1;
+    private String revision = null;
 
     UserView(int fragmentOwnerUserId) {
         this.userId = fragmentOwnerUserId;
@@ -55,4 +56,16 @@ public class UserView {
     public void setProfileId(int profileId) {
         this.profileId = profileId;
     }
+
+    /**
+     * @return Digest of the fragmentized layout content, two views with the same revision
+     *     incorporate the same nodes into user layouts
+     */
+    public String getRevision() {
+        return revision;
+    }
+
+    public void setRevision(String revision) {
+        this.revision = revision;
+    }
 }
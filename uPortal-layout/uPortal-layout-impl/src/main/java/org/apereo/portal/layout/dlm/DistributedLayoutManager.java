@@ -26,6 +26,7 @@ import java.util.Map.Entry;
 import java.util.Random;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.TimeUnit;
 import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
@@ -60,6 +61,7 @@ import org.apereo.portal.xml.XmlUtilities;
 import org.apereo.portal.xml.xpath.XPathOperations;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -99,6 +101,9 @@ public class DistributedLayoutManager implements IUserLayoutManager, Initializin
     private boolean channelsAdded = false;
     private boolean isFragmentOwner = false;
 
+    private long fragmentUpdateCheckInterval = -1;
+    private long lastFragmentUpdateCheck = 0;
+
     public DistributedLayoutManager(IPerson owner, IUserProfile profile) throws PortalException {
 
         if (owner == null) {
@@ -124,6 +129,19 @@ public class DistributedLayoutManager implements IUserLayoutManager, Initializin
         this.updateCacheKey();
     }
 
+    /**
+     * @param fragmentUpdateCheckInterval Minimum number of seconds between checks of the loaded
+     *     layout for changes published to the fragments it incorporates. A negative value
+     *     disables the checks, fragment changes are then seen when the layout is next loaded.
+     */
+    @Value("${org.apereo.portal.layout.dlm.fragmentUpdateCheckInterval:-1}")
+    public void setFragmentUpdateCheckInterval(int fragmentUpdateCheckInterval) {
+        this.fragmentUpdateCheckInterval =
+                fragmentUpdateCheckInterval < 0
+                        ? -1
+                        : TimeUnit.SECONDS.toMillis(fragmentUpdateCheckInterval);
+    }
+
     @Autowired
     public void setAuthorizationService(IAuthorizationService authorizationService) {
         this.authorizationService = authorizationService;
@@ -216,61 +234,89 @@ public class DistributedLayoutManager implements IUserLayoutManager, Initializin
                 LOG.debug("Load from store for " + owner.getAttribute(IPerson.USERNAME));
             }
             userLayout = this.distributedLayoutStore.getUserLayout(this.owner, this.profile);
+            this.lastFragmentUpdateCheck = System.currentTimeMillis();
 
-            final Document userLayoutDocument = userLayout.getLayout();
-
-            // DistributedLayoutManager shall gracefully remove channels
-            // that the user isn't authorized to render from folders of type
-            // 'header' and 'footer'.
-            IAuthorizationPrincipal principal =
-                    authorizationService.newPrincipal(owner.getUserName(), IPerson.class);
-            NodeList nodes = userLayoutDocument.getElementsByTagName("folder");
-            for (int i = 0; i < nodes.getLength(); i++) {
-                Element fd = (Element) nodes.item(i);
-                String type = fd.getAttribute("type");
-                if (type != null
-                        && (type.equals("header")
-                                || type.equals("footer")
-                                || type.equals("sidebar"))) {
-                    // Here's where we do the work...
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug(
-                                "RDBMUserLayoutStore examining the '"
-                                        + type
-                                        + "' folder of user '"
-                                        + owner.getUserName()
-                                        + "' for non-authorized channels.");
-                    }
-                    NodeList channels = fd.getElementsByTagName("channel");
-                    for (int j = 0; j < channels.getLength(); j++) {
-                        Element ch = (Element) channels.item(j);
-                        try {
-                            String chanId = ch.getAttribute("chanID");
-                            if (!principal.canRender(chanId)) {
-                                fd.removeChild(ch);
-                                if (LOG.isDebugEnabled()) {
-                                    LOG.debug(
-                                            "RDBMUserLayoutStore removing channel '"
-                                                    + ch.getAttribute("fname")
-                                                    + "' from the header or footer of user '"
-                                                    + owner.getUserName()
-                                                    + "' because he/she isn't authorized to render it.");
-                                }
+            removeUnauthorizedChannels(userLayout.getLayout());
+            setUserLayoutDOM(userLayout);
+        } else if (this.isFragmentUpdateCheckDue()) {
+            final DistributedUserLayout updatedLayout =
+                    this.distributedLayoutStore.getUpdatedUserLayout(
+                            this.owner, this.profile, userLayout);
+            if (updatedLayout != userLayout) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(
+                            "Updated fragments in layout of "
+                                    + owner.getAttribute(IPerson.USERNAME));
+                }
+                userLayout = updatedLayout;
+                removeUnauthorizedChannels(userLayout.getLayout());
+                setUserLayoutDOM(userLayout);
+            }
+        }
+        return userLayout;
+    }
+
+    private synchronized boolean isFragmentUpdateCheckDue() {
+        if (this.fragmentUpdateCheckInterval < 0) {
+            return false;
+        }
+        final long now = System.currentTimeMillis();
+        if (now - this.lastFragmentUpdateCheck < this.fragmentUpdateCheckInterval) {
+            return false;
+        }
+        this.lastFragmentUpdateCheck = now;
+        return true;
+    }
+
+    private void removeUnauthorizedChannels(Document userLayoutDocument) {
+        // DistributedLayoutManager shall gracefully remove channels
+        // that the user isn't authorized to render from folders of type
+        // 'header' and 'footer'.
+        IAuthorizationPrincipal principal =
+                authorizationService.newPrincipal(owner.getUserName(), IPerson.class);
+        NodeList nodes = userLayoutDocument.getElementsByTagName("folder");
+        for (int i = 0; i < nodes.getLength(); i++) {
+            Element fd = (Element) nodes.item(i);
+            String type = fd.getAttribute("type");
+            if (type != null
+                    && (type.equals("header")
+                            || type.equals("footer")
+                            || type.equals("sidebar"))) {
+                // Here's where we do the work...
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(
+                            "RDBMUserLayoutStore examining the '"
+                                    + type
+                                    + "' folder of user '"
+                                    + owner.getUserName()
+                                    + "' for non-authorized channels.");
+                }
+                NodeList channels = fd.getElementsByTagName("channel");
+                for (int j = 0; j < channels.getLength(); j++) {
+                    Element ch = (Element) channels.item(j);
+                    try {
+                        String chanId = ch.getAttribute("chanID");
+                        if (!principal.canRender(chanId)) {
+                            fd.removeChild(ch);
+                            if (LOG.isDebugEnabled()) {
+                                LOG.debug(
+                                        "RDBMUserLayoutStore removing channel '"
+                                                + ch.getAttribute("fname")
+                                                + "' from the header or footer of user '"
+                                                + owner.getUserName()
+                                                + "' because he/she isn't authorized to render it.");
                             }
-                        } catch (Throwable t) {
-                            // Log this...
-                            LOG.warn(
-                                    "RDBMUserLayoutStore was unable to analyze channel element with Id="
-                                            + ch.getAttribute("chanID"),
-                                    t);
                         }
+                    } catch (Throwable t) {
+                        // Log this...
+                        LOG.warn(
+                                "RDBMUserLayoutStore was unable to analyze channel element with Id="
+                                        + ch.getAttribute("chanID"),
+                                t);
                     }
                 }
             }
-
-            setUserLayoutDOM(userLayout);
         }
-        return userLayout;
     }
 
     @Override
@@ -17,7 +17,10 @@ package org.apereo.portal.layout.dlm;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
@@ -43,6 +46,7 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
@@ -232,6 +236,9 @@ public class FragmentActivator {
 
         loadPreferences(view, fd);
         fragmentizeLayout(view, fd);
+        if (view.getLayout() != null) {
+            view.setRevision(computeRevision(view.getLayout()));
+        }
 
         if (LOG.isInfoEnabled()) {
             LOG.info("Activated FragmentDefinition " + fd.getName() + " with locale " + locale);
@@ -491,6 +498,42 @@ public class FragmentActivator {
         }
     }
 
+    /**
+     * Digest of the fragmentized layout. User views are reloaded whenever their cache entry
+     * expires, comparing revisions tells a reload of the same content apart from a change
+     * published by the fragment owner.
+     */
+    private static String computeRevision(Document layout) {
+        final Hasher hasher = Hashing.murmur3_128().newHasher();
+        hashNode(layout.getDocumentElement(), hasher);
+        return hasher.hash().toString();
+    }
+
+    private static void hashNode(Node node, Hasher hasher) {
+        hashString(node.getNodeName(), hasher);
+        final NamedNodeMap attributes = node.getAttributes();
+        if (attributes != null) {
+            for (int i = 0; i < attributes.getLength(); i++) {
+                final Node attribute = attributes.item(i);
+                hashString(attribute.getNodeName(), hasher);
+                hashString(attribute.getNodeValue(), hasher);
+            }
+        }
+        final String value = node.getNodeValue();
+        if (value != null) {
+            hashString(value, hasher);
+        }
+        for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+            hashNode(child, hasher);
+        }
+        // Marks the end of the children so moving a node changes the digest
+        hasher.putByte((byte) 0);
+    }
+
+    private static void hashString(String value, Hasher hasher) {
+        hasher.putInt(value.length()).putString(value, StandardCharsets.UTF_8);
+    }
+
     public void clearChacheForOwner(final String ownerId) {
         final List<Locale> locales = fragmentOwnerLocales.getIfPresent(ownerId);
         if (locales == null) {
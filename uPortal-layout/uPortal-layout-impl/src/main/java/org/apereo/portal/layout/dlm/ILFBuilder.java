@@ -15,6 +15,7 @@
 package org.apereo.portal.layout.dlm;
 
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -35,6 +36,7 @@ import org.apereo.portal.services.AuthorizationServiceFacade;
 import org.apereo.portal.utils.DocumentFactory;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 
 /**
@@ -100,6 +102,104 @@ public class ILFBuilder {
         mergeChildren(fragmentRoot, compositeRoot, ap, new HashSet());
     }
 
+    /**
+     * Replaces the nodes a fragment contributed to an existing ILF with the children of a newer
+     * version of the fragment's layout, leaving the rest of the ILF as-is. This is only equivalent
+     * to rebuilding the ILF when the user's PLF doesn't reference any node of the fragment and the
+     * fragment's nodes are still a single run of children under the ILF root folder, in any other
+     * case nothing is changed and false is returned.
+     *
+     * @param fragment The new version of the fragment's layout
+     * @param fragmentId The value of the dlm:fragment attribute on the fragment's nodes
+     * @param composite The ILF to update in place
+     * @param PLF The user's PLF the ILF was built from
+     * @return true if the fragment's nodes were replaced
+     * @throws AuthorizationException
+     */
+    public static boolean replaceFragment(
+            Document fragment,
+            String fragmentId,
+            Document composite,
+            Document PLF,
+            IAuthorizationPrincipal ap)
+            throws AuthorizationException {
+        final Element fragmentLayout = fragment.getDocumentElement();
+        final Element fragmentRoot = (Element) fragmentLayout.getFirstChild();
+        final String idPrefix = fragmentLayout.getAttribute(Constants.ATT_ID);
+        if (idPrefix.isEmpty() || referencesFragment(PLF.getDocumentElement(), idPrefix)) {
+            return false;
+        }
+
+        final Element compositeRoot = (Element) composite.getDocumentElement().getFirstChild();
+        final List<Node> oldChildren = new ArrayList<>();
+        Node insertBefore = null;
+        for (Node item = compositeRoot.getFirstChild();
+                item != null;
+                item = item.getNextSibling()) {
+            if (!(item instanceof Element)) {
+                continue;
+            }
+            if (fragmentId.equals(((Element) item).getAttribute(Constants.ATT_FRAGMENT))) {
+                if (insertBefore != null) {
+                    // The fragment's nodes have been separated by the user's own
+                    return false;
+                }
+                oldChildren.add(item);
+            } else if (!oldChildren.isEmpty() && insertBefore == null) {
+                insertBefore = item;
+            }
+        }
+        if (oldChildren.isEmpty()) {
+            // Nowhere to put the new nodes that is sure to match a rebuild
+            return false;
+        }
+
+        for (final Node oldChild : oldChildren) {
+            compositeRoot.removeChild(oldChild);
+        }
+
+        final Set visitedNodes = new HashSet();
+        visitedNodes.add(fragmentRoot);
+        for (Node item = fragmentRoot.getFirstChild();
+                item != null;
+                item = item.getNextSibling()) {
+            if (item instanceof Element && mergeAllowed((Element) item, ap)) {
+                final Element child = (Element) item;
+                final Element newChild = (Element) composite.importNode(child, false);
+                compositeRoot.insertBefore(newChild, insertBefore);
+                String id = newChild.getAttribute(Constants.ATT_ID);
+                if (id != null && !id.equals("")) newChild.setIdAttribute(Constants.ATT_ID, true);
+                mergeChildren(child, newChild, ap, visitedNodes);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if an attribute in the PLF refers to a node id starting with the specified
+     *     fragment id prefix, e.g. an edit, delete or position set
+     */
+    private static boolean referencesFragment(Element plfNode, String idPrefix) {
+        final NamedNodeMap attributes = plfNode.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            final String value = attributes.item(i).getNodeValue();
+            if (value.length() > idPrefix.length() && value.startsWith(idPrefix)) {
+                final char type = value.charAt(idPrefix.length());
+                if (type == 'n' || type == 's') {
+                    return true;
+                }
+            }
+        }
+        for (Node child = plfNode.getFirstChild();
+                child != null;
+                child = child.getNextSibling()) {
+            if (child instanceof Element && referencesFragment((Element) child, idPrefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * @param source parent of children
      * @param dest receiver of children
@@ -24,16 +24,19 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 import net.sf.ehcache.Ehcache;
 import org.apache.commons.lang.StringUtils;
 import org.apereo.portal.AuthorizationException;
+import org.apereo.portal.EntityIdentifier;
 import org.apereo.portal.IUserIdentityStore;
 import org.apereo.portal.IUserProfile;
 import org.apereo.portal.PortalException;
@@ -56,9 +59,11 @@ import org.apereo.portal.portlet.om.IPortletPreference;
 import org.apereo.portal.portlet.om.PortletLifecycleState;
 import org.apereo.portal.portlet.registry.IPortletEntityRegistry;
 import org.apereo.portal.properties.PropertiesManager;
+import org.apereo.portal.security.IAuthorizationPrincipal;
 import org.apereo.portal.security.IPerson;
 import org.apereo.portal.security.provider.BrokenSecurityContext;
 import org.apereo.portal.security.provider.PersonImpl;
+import org.apereo.portal.services.AuthorizationServiceFacade;
 import org.apereo.portal.utils.DocumentFactory;
 import org.apereo.portal.utils.IFragmentDefinitionUtils;
 import org.apereo.portal.utils.MapPopulator;
@@ -75,6 +80,7 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataRetrievalFailureException;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.transaction.annotation.Transactional;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -91,7 +97,9 @@ import org.w3c.dom.NodeList;
  *
  * @since 2.5
  */
-public class RDBMDistributedLayoutStore extends RDBMUserLayoutStore {
+@ManagedResource("uPortal:section=Framework,name=DistributedLayoutStore")
+public class RDBMDistributedLayoutStore extends RDBMUserLayoutStore
+        implements RDBMDistributedLayoutStoreMXBean {
 
     private static final Pattern VALID_PATHREF_PATTERN = Pattern.compile(".+\\:/.+");
     private static final String BAD_PATHREF_MESSAGE = "## DLM: ORPHANED DATA ##";
@@ -108,6 +116,10 @@ public class RDBMDistributedLayoutStore extends RDBMUserLayoutStore {
     private boolean errorOnMissingPortlet = true;
     private boolean errorOnMissingUser = true;
 
+    private final AtomicLong compositeLayoutBuildCount = new AtomicLong();
+    private final AtomicLong incrementalFragmentUpdateCount = new AtomicLong();
+    private final AtomicLong incrementalFragmentUpdateFallbackCount = new AtomicLong();
+
     static final String TEMPLATE_USER_NAME =
             "org.apereo.portal.services.Authentication.defaultTemplateUserName";
 
@@ -348,6 +360,97 @@ public class RDBMDistributedLayoutStore extends RDBMUserLayoutStore {
         return layout;
     }
 
+    /**
+     * Brings a previously loaded layout up to date with the current version of the fragments it
+     * incorporates. Only the nodes of fragments whose content changed are replaced, see {@link
+     * ILFBuilder#replaceFragment(Document, String, Document, Document, IAuthorizationPrincipal)}
+     * for when that is possible.
+     */
+    @Override
+    public DistributedUserLayout getUpdatedUserLayout(
+            IPerson person, IUserProfile profile, DistributedUserLayout layout) {
+        final Map<String, String> fragmentRevisions = layout.getFragmentRevisions();
+        if (fragmentRevisions == null) {
+            // Fragment owner layouts don't incorporate other fragments
+            return layout;
+        }
+
+        final Locale locale = profile.getLocaleManager().getLocales().get(0);
+        final Map<String, String> currentRevisions = new LinkedHashMap<>(fragmentRevisions);
+        final Map<FragmentDefinition, UserView> changedFragments = new LinkedHashMap<>();
+        for (final Entry<String, String> revision : fragmentRevisions.entrySet()) {
+            final FragmentDefinition fragmentDefinition =
+                    this.fragmentUtils.getFragmentDefinitionByName(revision.getKey());
+            final UserView userView =
+                    fragmentDefinition != null
+                            ? this.fragmentUtils.getUserView(fragmentDefinition, locale)
+                            : null;
+            if (userView == null || userView.getRevision() == null) {
+                // The fragment is gone or failed to load, a rebuild drops it from the layout
+                return this.rebuildUserLayout(person, profile);
+            }
+            if (!userView.getRevision().equals(revision.getValue())) {
+                changedFragments.put(fragmentDefinition, userView);
+                currentRevisions.put(revision.getKey(), userView.getRevision());
+            }
+        }
+        if (changedFragments.isEmpty()) {
+            return layout;
+        }
+
+        // Other threads may be rendering the cached document, update a copy
+        final Document ILF = (Document) layout.getLayout().cloneNode(true);
+        final Document PLF = this.getPLF(person, profile);
+        final EntityIdentifier ei = person.getEntityIdentifier();
+        final IAuthorizationPrincipal ap =
+                AuthorizationServiceFacade.instance().newPrincipal(ei.getKey(), ei.getType());
+        for (final Entry<FragmentDefinition, UserView> changedFragment :
+                changedFragments.entrySet()) {
+            final boolean replaced =
+                    ILFBuilder.replaceFragment(
+                            changedFragment.getValue().getLayout(),
+                            Long.toString(changedFragment.getKey().getId()),
+                            ILF,
+                            PLF,
+                            ap);
+            if (!replaced) {
+                logger.debug(
+                        "Fragment '{}' can't be replaced in the layout of {}, rebuilding it",
+                        changedFragment.getKey().getName(),
+                        person.getUserName());
+                return this.rebuildUserLayout(person, profile);
+            }
+            logger.debug(
+                    "Replaced fragment '{}' in the layout of {}",
+                    changedFragment.getKey().getName(),
+                    person.getUserName());
+        }
+
+        this.incrementalFragmentUpdateCount.incrementAndGet();
+        return this.createDistributedUserLayout(
+                person, profile, ILF, currentRevisions.keySet(), currentRevisions);
+    }
+
+    private DistributedUserLayout rebuildUserLayout(IPerson person, IUserProfile profile) {
+        this.incrementalFragmentUpdateFallbackCount.incrementAndGet();
+        return this._getUserLayout(person, profile);
+    }
+
+    @Override
+    public long getCompositeLayoutBuildCount() {
+        return this.compositeLayoutBuildCount.get();
+    }
+
+    @Override
+    public long getIncrementalFragmentUpdateCount() {
+        return this.incrementalFragmentUpdateCount.get();
+    }
+
+    @Override
+    public long getIncrementalFragmentUpdateFallbackCount() {
+        return this.incrementalFragmentUpdateFallbackCount.get();
+    }
+
     private boolean layoutExistsForUser(IPerson person) {
 
         // Assertions.
@@ -1240,6 +1343,7 @@ public class RDBMDistributedLayoutStore extends RDBMUserLayoutStore {
                 this.fragmentUtils.getFragmentDefinitionByOwner(person);
         final boolean isLayoutOwnerDefault = this.isLayoutOwnerDefault(person);
         final Set<String> fragmentNames = new LinkedHashSet<>();
+        final Map<String, String> fragmentRevisions;
 
         final Document ILF;
         final Document PLF = this.getPLF(person, profile);
@@ -1251,6 +1355,7 @@ public class RDBMDistributedLayoutStore extends RDBMUserLayoutStore {
         // if a fragment owner, and return.
         if (ownedFragment != null || isLayoutOwnerDefault) {
             ILF = (Document) PLF.cloneNode(true);
+            fragmentRevisions = null;
             final Element layoutNode = ILF.getDocumentElement();
 
             final Element ownerDocument = layoutNode.getOwnerDocument().getDocumentElement();
@@ -1281,11 +1386,19 @@ public class RDBMDistributedLayoutStore extends RDBMUserLayoutStore {
             final Locale locale = profile.getLocaleManager().getLocales().get(0);
             final List<FragmentDefinition> applicableFragmentDefinitions =
                     this.fragmentUtils.getFragmentDefinitionsApplicableToPerson(person);
-            final List<Document> applicableLayouts =
-                    this.fragmentUtils.getFragmentDefinitionUserViewLayouts(
-                            applicableFragmentDefinitions, locale);
+            final List<Document> applicableLayouts = new ArrayList<>();
+            fragmentRevisions = new LinkedHashMap<>();
+            for (final FragmentDefinition fragmentDefinition : applicableFragmentDefinitions) {
+                final UserView userView =
+                        this.fragmentUtils.getUserView(fragmentDefinition, locale);
+                if (userView != null) {
+                    applicableLayouts.add(userView.getLayout());
+                    fragmentRevisions.put(fragmentDefinition.getName(), userView.getRevision());
+                }
+            }
             final IntegrationResult integrationResult = new IntegrationResult();
             ILF = this.createCompositeILF(person, PLF, applicableLayouts, integrationResult);
+            this.compositeLayoutBuildCount.incrementAndGet();
             // push optimizations made during merge back into db.
             if (integrationResult.isChangedPLF()) {
                 if (logger.isDebugEnabled()) {
@@ -1298,7 +1411,8 @@ public class RDBMDistributedLayoutStore extends RDBMUserLayoutStore {
             fragmentNames.addAll(
                     this.fragmentUtils.getFragmentNames(applicableFragmentDefinitions));
         }
-        return this.createDistributedUserLayout(person, profile, ILF, fragmentNames);
+        return this.createDistributedUserLayout(
+                person, profile, ILF, fragmentNames, fragmentRevisions);
     }
 
     private Document getPLF(final IPerson person, final IUserProfile profile) {
@@ -1344,7 +1458,8 @@ public class RDBMDistributedLayoutStore extends RDBMUserLayoutStore {
             final IPerson person,
             final IUserProfile profile,
             final Document ILF,
-            final Set<String> fragmentNames) {
+            final Set<String> fragmentNames,
+            final Map<String, String> fragmentRevisions) {
         final int structureStylesheetId = profile.getStructureStylesheetId();
         final IStylesheetUserPreferences distributedStructureStylesheetUserPreferences =
                 this.loadDistributedStylesheetUserPreferences(
@@ -1355,10 +1470,17 @@ public class RDBMDistributedLayoutStore extends RDBMUserLayoutStore {
                 this.loadDistributedStylesheetUserPreferences(
                         person, profile, themeStylesheetId, fragmentNames);
 
+        if (fragmentRevisions == null) {
+            return new DistributedUserLayout(
+                    ILF,
+                    distributedStructureStylesheetUserPreferences,
+                    distributedThemeStylesheetUserPreferences);
+        }
         return new DistributedUserLayout(
                 ILF,
                 distributedStructureStylesheetUserPreferences,
-                distributedThemeStylesheetUserPreferences);
+                distributedThemeStylesheetUserPreferences,
+                fragmentRevisions);
     }
 
     /**
@@ -0,0 +1,37 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.layout.dlm;
+
+/** JMX view of how user layouts are built by a {@link RDBMDistributedLayoutStore} */
+public interface RDBMDistributedLayoutStoreMXBean {
+
+    /**
+     * @return Number of layouts built from scratch by merging the applicable fragments and the
+     *     user's PLF since startup
+     */
+    long getCompositeLayoutBuildCount();
+
+    /**
+     * @return Number of cached layouts brought up to date with a changed fragment by replacing
+     *     only that fragment's nodes
+     */
+    long getIncrementalFragmentUpdateCount();
+
+    /**
+     * @return Number of cached layouts with a changed fragment that could not be updated in place
+     *     and were rebuilt from scratch instead
+     */
+    long getIncrementalFragmentUpdateFallbackCount();
+}
@@ -0,0 +1,418 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.layout.dlm.providers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apereo.portal.EntityIdentifier;
+import org.apereo.portal.groups.GroupsException;
+import org.apereo.portal.groups.IEntityGroup;
+import org.apereo.portal.groups.IGroupMember;
+import org.apereo.portal.layout.dlm.Evaluator;
+import org.apereo.portal.layout.dlm.FragmentDefinition;
+import org.apereo.portal.security.IPerson;
+import org.apereo.portal.services.GroupService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Determines which of a list of fragments apply to a person without evaluating each fragment's
+ * audience in turn. The audiences are compiled into expressions over distinct tests:
+ *
+ * <ul>
+ *   <li>{@link GroupMembershipEvaluator}s are indexed by group, a person's parent and ancestor
+ *       groups are read once and every test of those groups is answered in that single pass
+ *   <li>{@link AttributeEvaluator}s testing the same attribute, mode and value are evaluated once
+ *   <li>Any other evaluator is evaluated once, when a fragment's audience first needs it
+ * </ul>
+ *
+ * <p>The result is the same as calling {@link FragmentDefinition#isApplicable(IPerson)} on each
+ * fragment, including the order of the fragments and the tests that fail with an exception.
+ *
+ * <p>An index holds no state for the people it evaluates and may be shared between threads and
+ * reused for as long as {@link #isCompiledFrom(List)} holds for the current fragments.
+ */
+public class FragmentAudienceIndex {
+    private static final byte UNKNOWN = 0;
+    private static final byte FALSE = 1;
+    private static final byte TRUE = 2;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final List<FragmentDefinition> fragments;
+    private final List<Object> fragmentsKey;
+    private final List<Audience> audiences;
+    private final List<Evaluator> tests = new ArrayList<>();
+    private final Map<Evaluator, Integer> opaqueTests = new IdentityHashMap<>();
+    private final Map<String, Integer> attributeTests = new HashMap<>();
+    private final Map<String, Integer> memberOfTests = new LinkedHashMap<>();
+    private final Map<String, Integer> deepMemberOfTests = new LinkedHashMap<>();
+    private final BitSet groupTests = new BitSet();
+
+    public FragmentAudienceIndex(List<FragmentDefinition> fragments) {
+        this.fragments = fragments;
+        this.fragmentsKey = fragmentsKey(fragments);
+        this.audiences = new ArrayList<>(fragments.size());
+        for (final FragmentDefinition fragment : fragments) {
+            final List<Evaluator> evaluators = fragment.getEvaluators();
+            this.audiences.add(evaluators == null ? null : compileAny(evaluators, false));
+        }
+    }
+
+    /**
+     * @return true if the fragments have the same audiences as the ones this index was compiled
+     *     from. Persisted fragments and evaluators are compared by id and version, any others by
+     *     identity.
+     */
+    public boolean isCompiledFrom(List<FragmentDefinition> fragments) {
+        return this.fragmentsKey.equals(fragmentsKey(fragments));
+    }
+
+    /** @return The fragments that apply to the person, in the order they were passed in */
+    public List<FragmentDefinition> getApplicableFragments(IPerson person) {
+        return this.getApplicableFragments(person, this.fragments);
+    }
+
+    /**
+     * @param fragments Fragments this index {@link #isCompiledFrom(List) was compiled from}, such
+     *     as a newer copy of the same persisted fragments
+     * @return The fragments from the list that apply to the person, in the order of the list
+     */
+    public List<FragmentDefinition> getApplicableFragments(
+            IPerson person, List<FragmentDefinition> fragments) {
+        if (fragments.size() != this.audiences.size()) {
+            throw new IllegalArgumentException(
+                    "Index was compiled from "
+                            + this.audiences.size()
+                            + " fragments but "
+                            + fragments.size()
+                            + " were passed in");
+        }
+        final Evaluation evaluation = new Evaluation(person);
+        final List<FragmentDefinition> result = new ArrayList<>();
+        for (int i = 0; i < fragments.size(); i++) {
+            final FragmentDefinition fragment = fragments.get(i);
+            final Audience audience = this.audiences.get(i);
+            try {
+                if (audience != null && audience.isApplicable(evaluation)) {
+                    result.add(fragment);
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(
+                        "Failed to evaluate whether fragment '"
+                                + fragment.getName()
+                                + "' is applicable to user '"
+                                + person.getUserName()
+                                + "'",
+                        e);
+            }
+        }
+        logger.debug(
+                "{} of {} fragments apply to {}, {} distinct audience tests",
+                result.size(),
+                fragments.size(),
+                person.getUserName(),
+                this.tests.size());
+        return result;
+    }
+
+    private static List<Object> fragmentsKey(List<FragmentDefinition> fragments) {
+        final List<Object> key = new ArrayList<>();
+        for (final FragmentDefinition fragment : fragments) {
+            addKey(fragment, key);
+        }
+        return key;
+    }
+
+    /** Adds the evaluator and, for groups, the number of children and the children to the key */
+    private static void addKey(Evaluator evaluator, List<Object> key) {
+        if (evaluator.getId() < 0) {
+            key.add(evaluator);
+        } else {
+            key.add(Arrays.asList(evaluator.getId(), evaluator.getEntityVersion()));
+        }
+        if (evaluator instanceof EvaluatorGroup) {
+            final List<Evaluator> children = ((EvaluatorGroup) evaluator).evaluators;
+            key.add(children == null ? -1 : children.size());
+            if (children != null) {
+                for (final Evaluator child : children) {
+                    addKey(child, key);
+                }
+            }
+        }
+    }
+
+    private Audience compile(Evaluator evaluator) {
+        final Class<?> type = evaluator.getClass();
+        if (type == Paren.class) {
+            final Paren paren = (Paren) evaluator;
+            switch (paren.getType()) {
+                case OR:
+                    return compileAny(paren.evaluators, false);
+                case AND:
+                    return compileAll(paren.evaluators);
+                case NOT:
+                    return compileAny(paren.evaluators, true);
+                default:
+                    break;
+            }
+        } else if (type == GroupMembershipEvaluator.class) {
+            final GroupMembershipEvaluator groupEvaluator = (GroupMembershipEvaluator) evaluator;
+            if (groupEvaluator.getGroupKey() != null) {
+                final Map<String, Integer> keyTests =
+                        groupEvaluator.isDeepMemberOfMode()
+                                ? this.deepMemberOfTests
+                                : this.memberOfTests;
+                final int test =
+                        keyTests.computeIfAbsent(
+                                groupEvaluator.getGroupKey(), k -> this.addTest(evaluator));
+                this.groupTests.set(test);
+                return new Test(test);
+            }
+        } else if (type == AttributeEvaluator.class) {
+            final AttributeEvaluator attributeEvaluator = (AttributeEvaluator) evaluator;
+            final String key =
+                    attributeEvaluator.mode
+                            + ":"
+                            + attributeEvaluator.name
+                            + "="
+                            + attributeEvaluator.value;
+            return new Test(this.attributeTests.computeIfAbsent(key, k -> this.addTest(evaluator)));
+        }
+        return new Test(this.opaqueTests.computeIfAbsent(evaluator, this::addTest));
+    }
+
+    private Audience compileAny(List<Evaluator> evaluators, boolean negate) {
+        final Audience[] children = new Audience[evaluators.size()];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = this.compile(evaluators.get(i));
+        }
+        return new Any(children, negate);
+    }
+
+    private Audience compileAll(List<Evaluator> evaluators) {
+        final Audience[] children = new Audience[evaluators.size()];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = this.compile(evaluators.get(i));
+        }
+        return new All(children);
+    }
+
+    private int addTest(Evaluator evaluator) {
+        this.tests.add(evaluator);
+        return this.tests.size() - 1;
+    }
+
+    /** Results of the tests for one person */
+    private final class Evaluation {
+        private final IPerson person;
+        private final byte[] results = new byte[tests.size()];
+        private Map<Integer, RuntimeException> failures;
+        private boolean groupsLoaded = false;
+
+        Evaluation(IPerson person) {
+            this.person = person;
+        }
+
+        boolean getResult(int test) {
+            if (!this.groupsLoaded && groupTests.get(test)) {
+                this.loadGroups();
+            }
+            if (this.failures != null && this.failures.containsKey(test)) {
+                throw this.failures.get(test);
+            }
+            if (this.results[test] == UNKNOWN) {
+                final boolean result = tests.get(test).isApplicable(this.person);
+                this.results[test] = result ? TRUE : FALSE;
+            }
+            return this.results[test] == TRUE;
+        }
+
+        /**
+         * Answers every group test in one pass over the person's parent and, if needed, ancestor
+         * groups
+         */
+        private void loadGroups() {
+            this.groupsLoaded = true;
+
+            final Map<IEntityGroup, List<Integer>> testsByGroup = new HashMap<>();
+            this.indexGroups(memberOfTests, testsByGroup);
+            this.indexGroups(deepMemberOfTests, testsByGroup);
+
+            final EntityIdentifier ei = this.person.getEntityIdentifier();
+            final IGroupMember groupMember;
+            final Set<IEntityGroup> parentGroups;
+            try {
+                groupMember = GroupService.getGroupMember(ei);
+                parentGroups = groupMember.getParentGroups();
+            } catch (GroupsException e) {
+                this.failAll(testsByGroup, e);
+                return;
+            }
+
+            for (final List<Integer> groupTests : testsByGroup.values()) {
+                for (final int test : groupTests) {
+                    this.results[test] = FALSE;
+                }
+            }
+            for (final IEntityGroup group : parentGroups) {
+                this.setTrue(testsByGroup.get(group), false);
+            }
+
+            if (!deepMemberOfTests.isEmpty()) {
+                try {
+                    for (final IEntityGroup group : groupMember.getAncestorGroups()) {
+                        this.setTrue(testsByGroup.get(group), true);
+                    }
+                } catch (GroupsException e) {
+                    for (final int test : deepMemberOfTests.values()) {
+                        this.fail(test, e);
+                    }
+                }
+            }
+        }
+
+        private void indexGroups(
+                Map<String, Integer> keyTests, Map<IEntityGroup, List<Integer>> testsByGroup) {
+            for (final Map.Entry<String, Integer> entry : keyTests.entrySet()) {
+                final int test = entry.getValue();
+                final GroupMembershipEvaluator evaluator =
+                        (GroupMembershipEvaluator) tests.get(test);
+                final IEntityGroup group;
+                try {
+                    group = GroupService.findGroup(entry.getKey());
+                } catch (GroupsException e) {
+                    this.fail(test, e);
+                    continue;
+                }
+                if (group == null) {
+                    this.fail(
+                            test,
+                            new RuntimeException(
+                                    "Error in evaluation. Group key "
+                                            + entry.getKey()
+                                            + " for group name "
+                                            + evaluator.getGroupName()
+                                            + " did not find a group."));
+                    continue;
+                }
+                testsByGroup.computeIfAbsent(group, g -> new ArrayList<>(2)).add(test);
+            }
+        }
+
+        private void setTrue(List<Integer> groupTests, boolean deepOnly) {
+            if (groupTests == null) {
+                return;
+            }
+            for (final int test : groupTests) {
+                final GroupMembershipEvaluator evaluator =
+                        (GroupMembershipEvaluator) tests.get(test);
+                if (!deepOnly || evaluator.isDeepMemberOfMode()) {
+                    this.results[test] = TRUE;
+                }
+            }
+        }
+
+        private void failAll(Map<IEntityGroup, List<Integer>> testsByGroup, Exception cause) {
+            for (final List<Integer> groupTests : testsByGroup.values()) {
+                for (final int test : groupTests) {
+                    this.fail(test, cause);
+                }
+            }
+        }
+
+        private void fail(int test, Exception cause) {
+            if (this.failures == null) {
+                this.failures = new HashMap<>();
+            }
+            final RuntimeException failure =
+                    cause instanceof RuntimeException
+                            ? (RuntimeException) cause
+                            : new RuntimeException(
+                                    "Unable to determine if user '"
+                                            + this.person.getFullName()
+                                            + "' is in group '"
+                                            + ((GroupMembershipEvaluator) tests.get(test))
+                                                    .getGroupName()
+                                            + "'",
+                                    cause);
+            this.failures.put(test, failure);
+        }
+    }
+
+    /** A compiled audience expression */
+    private interface Audience {
+        boolean isApplicable(Evaluation evaluation);
+    }
+
+    private static final class Test implements Audience {
+        private final int test;
+
+        Test(int test) {
+            this.test = test;
+        }
+
+        @Override
+        public boolean isApplicable(Evaluation evaluation) {
+            return evaluation.getResult(this.test);
+        }
+    }
+
+    /** OR of the children, NOT is a negated OR as in {@link Paren} */
+    private static final class Any implements Audience {
+        private final Audience[] children;
+        private final boolean negate;
+
+        Any(Audience[] children, boolean negate) {
+            this.children = children;
+            this.negate = negate;
+        }
+
+        @Override
+        public boolean isApplicable(Evaluation evaluation) {
+            for (final Audience child : this.children) {
+                if (child.isApplicable(evaluation)) {
+                    return !this.negate;
+                }
+            }
+            return this.negate;
+        }
+    }
+
+    private static final class All implements Audience {
+        private final Audience[] children;
+
+        All(Audience[] children) {
+            this.children = children;
+        }
+
+        @Override
+        public boolean isApplicable(Evaluation evaluation) {
+            for (final Audience child : this.children) {
+                if (!child.isApplicable(evaluation)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -73,11 +73,26 @@ public class GroupMembershipEvaluator extends Evaluator {
                             + "supported at this time.");
         }
         this.groupName = name;
-        this.groupKey = getGroupKey();
+        this.groupKey = findGroupKey();
+    }
+
+    /** @return Key of the group members are tested against */
+    String getGroupKey() {
+        return groupKey;
+    }
+
+    /** @return true if members of descendant groups are also members */
+    boolean isDeepMemberOfMode() {
+        return evaluatorMode == DEEP_MEMBER_OF_MODE;
+    }
+
+    /** @return Name of the group members are tested against */
+    String getGroupName() {
+        return groupName;
     }
 
     // Internal search, thus case sensitive.
-    private String getGroupKey() {
+    private String findGroupKey() {
         EntityIdentifier[] groups = null;
         try {
             groups =
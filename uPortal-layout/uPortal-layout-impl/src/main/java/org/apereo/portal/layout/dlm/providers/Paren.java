@@ -53,6 +53,11 @@ public class Paren extends EvaluatorGroup {
         type = t;
     }
 
+    /** @return How the results of the contained evaluators are combined */
+    Type getType() {
+        return type;
+    }
+
     @Override
     public boolean isApplicable(IPerson toPerson) {
         boolean rslt = false;
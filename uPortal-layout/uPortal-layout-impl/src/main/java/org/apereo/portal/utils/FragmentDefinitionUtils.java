@@ -25,6 +25,7 @@ import org.apereo.portal.layout.dlm.ConfigurationLoader;
 import org.apereo.portal.layout.dlm.FragmentActivator;
 import org.apereo.portal.layout.dlm.FragmentDefinition;
 import org.apereo.portal.layout.dlm.UserView;
+import org.apereo.portal.layout.dlm.providers.FragmentAudienceIndex;
 import org.apereo.portal.security.IPerson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,6 +44,7 @@ public class FragmentDefinitionUtils implements IFragmentDefinitionUtils {
 
     private ConfigurationLoader configurationLoader;
     private FragmentActivator fragmentActivator;
+    private volatile FragmentAudienceIndex audienceIndex;
 
     @Autowired
     public void setConfigurationLoader(ConfigurationLoader configurationLoader) {
@@ -76,21 +78,21 @@ public class FragmentDefinitionUtils implements IFragmentDefinitionUtils {
 
     @Override
     public List<FragmentDefinition> getFragmentDefinitionsApplicableToPerson(final IPerson person) {
-        final List<FragmentDefinition> result = new ArrayList<FragmentDefinition>();
         final List<FragmentDefinition> definitions = this.configurationLoader.getFragments();
+        if (definitions == null) {
+            return new ArrayList<FragmentDefinition>();
+        }
         logger.debug("About to check applicability of {} fragments", definitions.size());
 
-        if (definitions != null) {
-            for (final FragmentDefinition fragmentDefinition : definitions) {
-                logger.debug(
-                        "Checking applicability of the following fragment: {}",
-                        fragmentDefinition.getName());
-                if (fragmentDefinition.isApplicable(person)) {
-                    result.add(fragmentDefinition);
-                }
-            }
+        // Answers the group and attribute tests shared by the fragments once rather than once per
+        // fragment, the index is only compiled again when the definitions change
+        FragmentAudienceIndex audienceIndex = this.audienceIndex;
+        if (audienceIndex == null || !audienceIndex.isCompiledFrom(definitions)) {
+            logger.debug("Compiling the audiences of {} fragments", definitions.size());
+            audienceIndex = new FragmentAudienceIndex(definitions);
+            this.audienceIndex = audienceIndex;
         }
-        return result;
+        return audienceIndex.getApplicableFragments(person, definitions);
     }
 
     @Override
@@ -0,0 +1,163 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.layout.dlm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.StringReader;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.apereo.portal.security.IAuthorizationPrincipal;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+public class ILFBuilderTest {
+    private static final String NS = "xmlns:dlm=\"" + Constants.NS_URI + "\"";
+
+    private IAuthorizationPrincipal ap;
+
+    @Before
+    public void setup() {
+        ap = mock(IAuthorizationPrincipal.class);
+        when(ap.canRender(anyString())).thenReturn(true);
+    }
+
+    @Test
+    public void testReplaceFragment() throws Exception {
+        final Document ilf =
+                parse(
+                        "<layout ID=\"u2l1\" "
+                                + NS
+                                + "><folder ID=\"s1\">"
+                                + "<folder ID=\"u5l1s2\" dlm:fragment=\"0\"/>"
+                                + "<folder ID=\"u5l1s3\" dlm:fragment=\"0\"/>"
+                                + "<folder ID=\"u7l1s2\" dlm:fragment=\"1\"/>"
+                                + "<folder ID=\"s4\"/>"
+                                + "</folder></layout>");
+        final Document fragment =
+                parse(
+                        "<layout ID=\"u5l1\" "
+                                + NS
+                                + "><folder ID=\"u5l1s1\">"
+                                + "<folder ID=\"u5l1s3\" dlm:fragment=\"0\">"
+                                + "<channel ID=\"u5l1n4\" chanID=\"10\" dlm:fragment=\"0\"/>"
+                                + "</folder>"
+                                + "<folder ID=\"u5l1s5\" dlm:fragment=\"0\"/>"
+                                + "</folder></layout>");
+        final Document plf = parse("<layout ID=\"u2l1\" " + NS + "><folder ID=\"s1\"/></layout>");
+
+        assertTrue(ILFBuilder.replaceFragment(fragment, "0", ilf, plf, ap));
+
+        assertEquals("u5l1s3 u5l1s5 u7l1s2 s4", childIds(ilf));
+        assertNull(ilf.getElementById("u5l1s2"));
+        assertNotNull(ilf.getElementById("u5l1n4"));
+    }
+
+    @Test
+    public void testReferencedByPlf() throws Exception {
+        final Document ilf =
+                parse(
+                        "<layout ID=\"u2l1\" "
+                                + NS
+                                + "><folder ID=\"s1\">"
+                                + "<folder ID=\"u5l1s2\" dlm:fragment=\"0\"/>"
+                                + "</folder></layout>");
+        final Document fragment =
+                parse(
+                        "<layout ID=\"u5l1\" "
+                                + NS
+                                + "><folder ID=\"u5l1s1\">"
+                                + "<folder ID=\"u5l1s3\" dlm:fragment=\"0\"/>"
+                                + "</folder></layout>");
+        final Document plf =
+                parse(
+                        "<layout ID=\"u2l1\" "
+                                + NS
+                                + "><folder ID=\"s1\">"
+                                + "<dlm:positionSet>"
+                                + "<dlm:position name=\"u5l1s2\"/>"
+                                + "</dlm:positionSet>"
+                                + "</folder></layout>");
+
+        assertFalse(ILFBuilder.replaceFragment(fragment, "0", ilf, plf, ap));
+        assertEquals("u5l1s2", childIds(ilf));
+    }
+
+    @Test
+    public void testSeparatedByUserNodes() throws Exception {
+        final Document ilf =
+                parse(
+                        "<layout ID=\"u2l1\" "
+                                + NS
+                                + "><folder ID=\"s1\">"
+                                + "<folder ID=\"u5l1s2\" dlm:fragment=\"0\"/>"
+                                + "<folder ID=\"s4\"/>"
+                                + "<folder ID=\"u5l1s3\" dlm:fragment=\"0\"/>"
+                                + "</folder></layout>");
+        final Document fragment =
+                parse(
+                        "<layout ID=\"u5l1\" "
+                                + NS
+                                + "><folder ID=\"u5l1s1\">"
+                                + "<folder ID=\"u5l1s3\" dlm:fragment=\"0\"/>"
+                                + "</folder></layout>");
+        final Document plf = parse("<layout ID=\"u2l1\" " + NS + "><folder ID=\"s1\"/></layout>");
+
+        assertFalse(ILFBuilder.replaceFragment(fragment, "0", ilf, plf, ap));
+        assertEquals("u5l1s2 s4 u5l1s3", childIds(ilf));
+    }
+
+    private String childIds(Document layout) {
+        final StringBuilder ids = new StringBuilder();
+        final Node root = layout.getDocumentElement().getFirstChild();
+        for (Node child = root.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (ids.length() > 0) {
+                ids.append(' ');
+            }
+            ids.append(((Element) child).getAttribute(Constants.ATT_ID));
+        }
+        return ids.toString();
+    }
+
+    private Document parse(String xml) throws Exception {
+        final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        final Document document =
+                factory.newDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+        markIds(document.getDocumentElement());
+        return document;
+    }
+
+    private void markIds(Element element) {
+        if (element.hasAttribute(Constants.ATT_ID)) {
+            element.setIdAttribute(Constants.ATT_ID, true);
+        }
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element) {
+                markIds((Element) child);
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.layout.dlm.providers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apereo.portal.layout.dlm.Evaluator;
+import org.apereo.portal.layout.dlm.FragmentDefinition;
+import org.apereo.portal.security.IPerson;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class FragmentAudienceIndexTest {
+    private IPerson person;
+
+    @Before
+    public void setup() {
+        person = mock(IPerson.class);
+        when(person.getAttribute("dept")).thenReturn("math");
+        when(person.getAttribute("role")).thenReturn("faculty");
+    }
+
+    @Test
+    public void testSameResultAsFragmentDefinitions() {
+        final FragmentDefinition math = fragment("math", attribute("dept", "equals", "math"));
+        final FragmentDefinition staff = fragment("staff", attribute("role", "equals", "staff"));
+        final FragmentDefinition notStaff =
+                fragment("notStaff", paren(Paren.Type.NOT, attribute("role", "equals", "staff")));
+        final FragmentDefinition mathFaculty =
+                fragment(
+                        "mathFaculty",
+                        paren(
+                                Paren.Type.AND,
+                                attribute("dept", "equals", "math"),
+                                attribute("role", "startsWith", "fac")));
+        final FragmentDefinition anyone =
+                fragment(
+                        "anyone",
+                        attribute("role", "equals", "staff"),
+                        new AllUsersEvaluatorFactory());
+        final FragmentDefinition noAudience = fragment("noAudience");
+        final List<FragmentDefinition> fragments =
+                Arrays.asList(math, staff, notStaff, mathFaculty, anyone, noAudience);
+
+        final List<FragmentDefinition> expected = new ArrayList<>();
+        for (final FragmentDefinition fragment : fragments) {
+            if (fragment.isApplicable(person)) {
+                expected.add(fragment);
+            }
+        }
+
+        final FragmentAudienceIndex index = new FragmentAudienceIndex(fragments);
+        assertEquals(expected, index.getApplicableFragments(person));
+        assertEquals(
+                Arrays.asList(math, notStaff, mathFaculty, anyone),
+                index.getApplicableFragments(person));
+    }
+
+    @Test
+    public void testSharedTestsEvaluatedOnce() {
+        final List<FragmentDefinition> fragments =
+                Arrays.asList(
+                        fragment("a", attribute("dept", "equals", "math")),
+                        fragment("b", attribute("dept", "equals", "math")),
+                        fragment(
+                                "c",
+                                paren(
+                                        Paren.Type.OR,
+                                        attribute("dept", "equals", "physics"),
+                                        attribute("dept", "equals", "math"))));
+
+        final FragmentAudienceIndex index = new FragmentAudienceIndex(fragments);
+        assertEquals(fragments, index.getApplicableFragments(person));
+
+        // One read for the 'equals math' test and one for the 'equals physics' test
+        verify(person, times(2)).getAttribute("dept");
+    }
+
+    @Test
+    public void testCompiledFromSameFragments() {
+        final List<FragmentDefinition> fragments =
+                Arrays.asList(fragment("math", attribute("dept", "equals", "math")));
+        final FragmentAudienceIndex index = new FragmentAudienceIndex(fragments);
+
+        assertTrue(index.isCompiledFrom(fragments));
+        assertTrue(index.isCompiledFrom(new ArrayList<>(fragments)));
+        // Unpersisted evaluators are only the same when they are the same instances
+        assertFalse(
+                index.isCompiledFrom(
+                        Arrays.asList(fragment("math", attribute("dept", "equals", "math")))));
+    }
+
+    @Test
+    public void testCompiledFromPersistedFragments() {
+        final FragmentAudienceIndex index =
+                new FragmentAudienceIndex(Arrays.asList(persistedMath("math", 0)));
+
+        // A copy of the same rows, as read in a later session
+        final List<FragmentDefinition> copy = Arrays.asList(persistedMath("math", 0));
+        assertTrue(index.isCompiledFrom(copy));
+        assertEquals(copy, index.getApplicableFragments(person, copy));
+
+        // The evaluator was updated
+        assertFalse(index.isCompiledFrom(Arrays.asList(persistedMath("physics", 1))));
+
+        // An evaluator was added
+        final FragmentDefinition withStaff = persistedMath("math", 0);
+        withStaff.addEvaluator(persisted(attribute("role", "equals", "staff"), 3, 0));
+        assertFalse(index.isCompiledFrom(Arrays.asList(withStaff)));
+
+        // A fragment was added
+        final List<FragmentDefinition> added = new ArrayList<>(copy);
+        final Evaluator staff = persisted(attribute("role", "equals", "staff"), 4, 0);
+        added.add(persisted(fragment("staff", staff), 5, 0));
+        assertFalse(index.isCompiledFrom(added));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testApplicableFragmentsOfOtherFragments() {
+        final FragmentAudienceIndex index =
+                new FragmentAudienceIndex(
+                        Arrays.asList(fragment("math", attribute("dept", "equals", "math"))));
+        index.getApplicableFragments(person, new ArrayList<FragmentDefinition>());
+    }
+
+    /** @return The persisted 'math' fragment with the version of its dept evaluator */
+    private static FragmentDefinition persistedMath(String dept, long version) {
+        final Evaluator evaluator = persisted(attribute("dept", "equals", dept), 2, version);
+        return persisted(fragment("math", evaluator), 1, 0);
+    }
+
+    private static <E extends Evaluator> E persisted(E evaluator, long id, long version) {
+        ReflectionTestUtils.setField(evaluator, "evaluatorId", id);
+        ReflectionTestUtils.setField(evaluator, "entityVersion", version);
+        return evaluator;
+    }
+
+    private static FragmentDefinition fragment(String name, Evaluator... evaluators) {
+        final FragmentDefinition fragment = new FragmentDefinition(name) {};
+        for (final Evaluator evaluator : evaluators) {
+            fragment.addEvaluator(evaluator);
+        }
+        return fragment;
+    }
+
+    private static Paren paren(Paren.Type type, Evaluator... evaluators) {
+        final Paren paren = new Paren(type);
+        for (final Evaluator evaluator : evaluators) {
+            paren.addEvaluator(evaluator);
+        }
+        return paren;
+    }
+
+    private static AttributeEvaluator attribute(String name, String mode, String value) {
+        return new AttributeEvaluator(name, mode, value);
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+import org.apereo.portal.layout.dlm.ConfigurationLoader;
+import org.apereo.portal.layout.dlm.Evaluator;
+import org.apereo.portal.layout.dlm.FragmentDefinition;
+import org.apereo.portal.security.IPerson;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class FragmentDefinitionUtilsTest {
+    private ConfigurationLoader configurationLoader;
+    private FragmentDefinitionUtils fragmentDefinitionUtils;
+    private IPerson person;
+
+    @Before
+    public void setup() {
+        configurationLoader = mock(ConfigurationLoader.class);
+        fragmentDefinitionUtils = new FragmentDefinitionUtils();
+        fragmentDefinitionUtils.setConfigurationLoader(configurationLoader);
+        person = mock(IPerson.class);
+    }
+
+    @Test
+    public void testAudienceIndexReusedForSameDefinitions() {
+        final Evaluator evaluator = evaluator(0);
+        final Evaluator reloaded = evaluator(0);
+        final List<FragmentDefinition> definitions = Arrays.asList(fragment(evaluator));
+        final List<FragmentDefinition> reloadedDefinitions = Arrays.asList(fragment(reloaded));
+        when(configurationLoader.getFragments()).thenReturn(definitions, reloadedDefinitions);
+
+        assertEquals(
+                definitions,
+                fragmentDefinitionUtils.getFragmentDefinitionsApplicableToPerson(person));
+        // The definitions were read again but have not changed, the compiled audiences are reused
+        // and the definitions returned are the ones just read
+        assertEquals(
+                reloadedDefinitions,
+                fragmentDefinitionUtils.getFragmentDefinitionsApplicableToPerson(person));
+
+        verify(evaluator, times(2)).isApplicable(person);
+        verify(reloaded, never()).isApplicable(person);
+    }
+
+    @Test
+    public void testAudienceIndexRebuiltWhenDefinitionsChange() {
+        final Evaluator evaluator = evaluator(0);
+        final Evaluator updated = evaluator(1);
+        final List<FragmentDefinition> definitions = Arrays.asList(fragment(evaluator));
+        final List<FragmentDefinition> updatedDefinitions = Arrays.asList(fragment(updated));
+        when(configurationLoader.getFragments()).thenReturn(definitions, updatedDefinitions);
+
+        assertEquals(
+                definitions,
+                fragmentDefinitionUtils.getFragmentDefinitionsApplicableToPerson(person));
+        assertEquals(
+                updatedDefinitions,
+                fragmentDefinitionUtils.getFragmentDefinitionsApplicableToPerson(person));
+
+        verify(evaluator, times(1)).isApplicable(person);
+        verify(updated, times(1)).isApplicable(person);
+    }
+
+    /** @return An evaluator persisted with the same id at the version, that applies to anyone */
+    private Evaluator evaluator(long version) {
+        final Evaluator evaluator = mock(Evaluator.class);
+        when(evaluator.getId()).thenReturn(2L);
+        when(evaluator.getEntityVersion()).thenReturn(version);
+        when(evaluator.isApplicable(person)).thenReturn(true);
+        return evaluator;
+    }
+
+    private static FragmentDefinition fragment(Evaluator evaluator) {
+        final FragmentDefinition fragment = new FragmentDefinition("fragment") {};
+        fragment.addEvaluator(evaluator);
+        ReflectionTestUtils.setField(fragment, "evaluatorId", 1L);
+        ReflectionTestUtils.setField(fragment, "entityVersion", 0L);
+        return fragment;
+    }
+}
@@ -21,8 +21,8 @@ import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.Serializable;
 import javax.portlet.CacheControl;
-import org.apache.commons.io.output.StringBuilderWriter;
 import org.apereo.portal.portlet.rendering.PortletOutputHandler;
+import org.apereo.portal.utils.ChunkedCharArrayWriter;
 
 /**
  * Captures the output of a portlet for later re-use. The maximumSize field allows for setting a max
@@ -36,7 +36,7 @@ public class CachingPortletOutputHandler implements PortletOutputHandler {
     private PrintWriter printWriter;
     private LimitingTeeOutputStream teeStream;
 
-    private StringBuilderWriter cachingWriter;
+    private ChunkedCharArrayWriter cachingWriter;
     private ByteArrayOutputStream cachingOutputStream;
 
     private String contentType;
@@ -93,7 +93,7 @@ public class CachingPortletOutputHandler implements PortletOutputHandler {
 
         if (this.printWriter == null) {
             final PrintWriter delegateWriter = this.portletOutputHandler.getPrintWriter();
-            this.cachingWriter = new StringBuilderWriter();
+            this.cachingWriter = new ChunkedCharArrayWriter();
 
             // Create the limiting tee writer to write to the actual PrintWriter and the
             // cachingWriter
@@ -193,10 +193,7 @@ public class CachingPortletOutputHandler implements PortletOutputHandler {
 
     private void clearCachedWriter() {
         if (this.cachingWriter != null) {
-            final StringBuilder builder = this.cachingWriter.getBuilder();
-            if (builder.length() > 0) {
-                builder.delete(0, builder.length());
-            }
+            this.cachingWriter.reset();
         }
     }
 
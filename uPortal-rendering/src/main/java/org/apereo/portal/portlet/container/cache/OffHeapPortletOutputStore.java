@@ -0,0 +1,490 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlet.container.cache;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import net.sf.ehcache.CacheException;
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.event.CacheEventListenerAdapter;
+import org.apache.commons.lang.SerializationException;
+import org.apache.commons.lang.SerializationUtils;
+import org.apereo.portal.utils.cache.CacheEntryTag;
+import org.apereo.portal.utils.cache.TaggedCacheEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Second, off-heap, tier for one of the portlet output {@link Ehcache}s. The Ehcache keeps the
+ * most recently used entries on the heap, entries it evicts are serialized into direct memory here
+ * and are moved back into the Ehcache when they are requested again. The tier is bounded by the
+ * number of bytes it stores, the least recently used entries are dropped once it is full.
+ *
+ * <p>The direct memory is an arena of fixed size blocks, allocated in slabs as the store fills up
+ * and never more than the configured size. An entry occupies as many blocks as its serialized form
+ * needs, blocks freed by dropped entries are reused, so storing output never allocates direct
+ * memory once the arena is full.
+ *
+ * <p>Entries put into, updated in or removed from the Ehcache are dropped from this tier so it
+ * never returns stale output. Tagged entries can be purged with {@link
+ * #purgeCacheEntries(CacheEntryTag)}.
+ *
+ * @since 5.2
+ */
+class OffHeapPortletOutputStore extends CacheEventListenerAdapter {
+    /** Size of the blocks the arena is divided into */
+    static final int BLOCK_SIZE = 1024;
+
+    /** Largest direct buffer allocated for the arena */
+    private static final int MAX_SLAB_SIZE = 16 * 1024 * 1024;
+
+    private static final int BLOCKS_PER_SLAB = MAX_SLAB_SIZE / BLOCK_SIZE;
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Ehcache cache;
+
+    // The arena, all guarded by the lock on this
+    private final int blockCount;
+    private final ByteBuffer[] slabs;
+    private long arenaBytes;
+    private int allocatedBlockCount;
+    private int[] freeBlocks = new int[16];
+    private int freeBlockCount;
+
+    // Access ordered so iteration starts at the least recently used entry
+    private final LinkedHashMap<Object, StoredOutput> entries =
+            new LinkedHashMap<Object, StoredOutput>(16, 0.75f, true);
+    private final Map<CacheEntryTag, Set<Object>> taggedKeys =
+            new HashMap<CacheEntryTag, Set<Object>>();
+    private long storedBytes;
+
+    private final AtomicLong heapHitCount = new AtomicLong();
+    private final AtomicLong heapMissCount = new AtomicLong();
+    private final AtomicLong offHeapHitCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * @param cache The on-heap cache this store is the second tier of
+     * @param maxBytes Maximum number of bytes of direct memory to use, rounded down to whole blocks
+     */
+    OffHeapPortletOutputStore(Ehcache cache, long maxBytes) {
+        this.cache = cache;
+        this.blockCount = (int) Math.min(Integer.MAX_VALUE, maxBytes / BLOCK_SIZE);
+        this.slabs = new ByteBuffer[(this.blockCount + BLOCKS_PER_SLAB - 1) / BLOCKS_PER_SLAB];
+    }
+
+    /** Record a lookup that was answered by the on-heap cache */
+    void recordHeapHit() {
+        this.heapHitCount.incrementAndGet();
+    }
+
+    /**
+     * Look for output the on-heap cache no longer holds. If found the output is moved back into
+     * the on-heap cache and the new {@link Element} is returned.
+     *
+     * @return The element put into the on-heap cache, null if there was no usable stored output
+     */
+    Element promote(Serializable cacheKey) {
+        this.heapMissCount.incrementAndGet();
+
+        final StoredOutput storedOutput;
+        final byte[] bytes;
+        synchronized (this) {
+            storedOutput = this.entries.get(cacheKey);
+            if (storedOutput == null) {
+                return null;
+            }
+            // Read before the blocks are freed, they may be reused right away
+            bytes = this.read(storedOutput);
+            this.removeEntry(cacheKey);
+        }
+
+        final Object data;
+        try {
+            data = SerializationUtils.deserialize(bytes);
+        } catch (SerializationException e) {
+            this.logger.warn("Failed to read off-heap output for key {}", cacheKey, e);
+            return null;
+        }
+
+        final CachedPortletResultHolder<?> cachedPortletData = (CachedPortletResultHolder<?>) data;
+        final long now = System.currentTimeMillis();
+        final Element element = new Element(cacheKey, cachedPortletData);
+        if (storedOutput.expirationTime <= now) {
+            if (cachedPortletData.getEtag() == null) {
+                // Expired and can't be validated, same as an expired on-heap element
+                return null;
+            }
+        } else if (storedOutput.eternal) {
+            element.setEternal(true);
+        } else if (storedOutput.timeToLive > 0) {
+            // Only what is left of the original lifespan, idle time restarts with the promotion
+            final long remaining = storedOutput.timeToLiveExpirationTime - now;
+            element.setTimeToLive((int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(remaining)));
+            element.setTimeToIdle(storedOutput.timeToIdle);
+        } else if (storedOutput.lifespanSet && storedOutput.timeToIdle > 0) {
+            element.setTimeToIdle(storedOutput.timeToIdle);
+        }
+        // Otherwise the cache's own configuration applies, as it did to the evicted element
+
+        this.offHeapHitCount.incrementAndGet();
+        this.cache.put(element);
+        return element;
+    }
+
+    /**
+     * Remove all entries with keys that have the specified tag
+     *
+     * @return The number of entries that were removed
+     */
+    synchronized int purgeCacheEntries(CacheEntryTag tag) {
+        final Set<Object> keys = this.taggedKeys.remove(tag);
+        if (keys == null) {
+            return 0;
+        }
+
+        int purgeCount = 0;
+        for (final Object key : keys) {
+            if (this.removeEntry(key)) {
+                purgeCount++;
+            }
+        }
+        return purgeCount;
+    }
+
+    long getHeapHitCount() {
+        return this.heapHitCount.get();
+    }
+
+    long getHeapMissCount() {
+        return this.heapMissCount.get();
+    }
+
+    long getOffHeapHitCount() {
+        return this.offHeapHitCount.get();
+    }
+
+    long getEvictionCount() {
+        return this.evictionCount.get();
+    }
+
+    synchronized int getEntryCount() {
+        return this.entries.size();
+    }
+
+    synchronized long getStoredBytes() {
+        return this.storedBytes;
+    }
+
+    /** @return Bytes of direct memory allocated for the arena */
+    synchronized long getArenaBytes() {
+        return this.arenaBytes;
+    }
+
+    /** Serialize an element evicted from the on-heap cache into this store */
+    protected void store(Element element) {
+        final Object key = element.getObjectKey();
+        final Object value = element.getObjectValue();
+        if (!(value instanceof CachedPortletResultHolder) || !(value instanceof Serializable)) {
+            return;
+        }
+
+        final long expirationTime = this.getExpirationTime(element);
+        if (expirationTime <= System.currentTimeMillis()
+                && ((CachedPortletResultHolder<?>) value).getEtag() == null) {
+            return;
+        }
+
+        final byte[] bytes;
+        try {
+            bytes = SerializationUtils.serialize((Serializable) value);
+        } catch (SerializationException e) {
+            this.logger.warn("Failed to serialize output for key {}, not storing it", key, e);
+            return;
+        }
+        final int blocksNeeded = (bytes.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        if (blocksNeeded > this.blockCount) {
+            return;
+        }
+
+        synchronized (this) {
+            this.removeEntry(key);
+
+            // Drop least recently used entries until the output fits
+            final Iterator<Map.Entry<Object, StoredOutput>> entryItr =
+                    this.entries.entrySet().iterator();
+            while (this.getAvailableBlockCount() < blocksNeeded && entryItr.hasNext()) {
+                final Map.Entry<Object, StoredOutput> lruEntry = entryItr.next();
+                entryItr.remove();
+                this.removeStored(lruEntry.getKey(), lruEntry.getValue());
+                this.evictionCount.incrementAndGet();
+            }
+
+            final StoredOutput storedOutput =
+                    new StoredOutput(this.write(bytes), bytes.length, element, expirationTime);
+            this.entries.put(key, storedOutput);
+            this.storedBytes += bytes.length;
+
+            if (key instanceof TaggedCacheEntry) {
+                final Set<CacheEntryTag> tags = ((TaggedCacheEntry) key).getTags();
+                if (tags != null) {
+                    for (final CacheEntryTag tag : tags) {
+                        Set<Object> keys = this.taggedKeys.get(tag);
+                        if (keys == null) {
+                            keys = new HashSet<Object>();
+                            this.taggedKeys.put(tag, keys);
+                        }
+                        keys.add(key);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Time in milliseconds the element expires at in the on-heap cache, using the cache's
+     * configuration for elements without their own lifespan
+     */
+    protected long getExpirationTime(Element element) {
+        if (element.isLifespanSet()) {
+            return element.getExpirationTime();
+        }
+
+        final CacheConfiguration cacheConfiguration = this.cache.getCacheConfiguration();
+        if (cacheConfiguration.isEternal()) {
+            return Long.MAX_VALUE;
+        }
+
+        long expirationTime = Long.MAX_VALUE;
+        final long timeToLive = cacheConfiguration.getTimeToLiveSeconds();
+        if (timeToLive > 0) {
+            expirationTime =
+                    element.getCreationTime() + TimeUnit.SECONDS.toMillis(timeToLive);
+        }
+        final long timeToIdle = cacheConfiguration.getTimeToIdleSeconds();
+        if (timeToIdle > 0) {
+            expirationTime =
+                    Math.min(
+                            expirationTime,
+                            System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(timeToIdle));
+        }
+        return expirationTime;
+    }
+
+    /** Must be called while holding the lock on this */
+    private boolean removeEntry(Object key) {
+        final StoredOutput storedOutput = this.entries.remove(key);
+        if (storedOutput == null) {
+            return false;
+        }
+        this.removeStored(key, storedOutput);
+        return true;
+    }
+
+    /**
+     * Update the byte count and tag index and free the blocks of an entry already removed from
+     * {@link #entries}
+     */
+    private void removeStored(Object key, StoredOutput storedOutput) {
+        this.storedBytes -= storedOutput.length;
+        this.freeBlocks(storedOutput.blocks);
+
+        if (key instanceof TaggedCacheEntry) {
+            final Set<CacheEntryTag> tags = ((TaggedCacheEntry) key).getTags();
+            if (tags != null) {
+                for (final CacheEntryTag tag : tags) {
+                    final Set<Object> keys = this.taggedKeys.get(tag);
+                    if (keys != null) {
+                        keys.remove(key);
+                        if (keys.isEmpty()) {
+                            this.taggedKeys.remove(tag);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private synchronized void remove(Object key) {
+        this.removeEntry(key);
+    }
+
+    private synchronized void clear() {
+        this.entries.clear();
+        this.taggedKeys.clear();
+        this.storedBytes = 0;
+
+        // Every block handed out so far is free again
+        this.freeBlockCount = 0;
+        for (int block = 0; block < this.allocatedBlockCount; block++) {
+            this.pushFreeBlock(block);
+        }
+    }
+
+    /*
+     * Arena, all methods must be called while holding the lock on this
+     */
+
+    private int getAvailableBlockCount() {
+        return this.freeBlockCount + (this.blockCount - this.allocatedBlockCount);
+    }
+
+    private int allocateBlock() {
+        if (this.freeBlockCount > 0) {
+            return this.freeBlocks[--this.freeBlockCount];
+        }
+
+        // Blocks are handed out in order, a new slab is needed at the start of each one
+        final int block = this.allocatedBlockCount++;
+        final int slabIndex = block / BLOCKS_PER_SLAB;
+        if (this.slabs[slabIndex] == null) {
+            final int slabBlocks =
+                    Math.min(BLOCKS_PER_SLAB, this.blockCount - slabIndex * BLOCKS_PER_SLAB);
+            this.slabs[slabIndex] = ByteBuffer.allocateDirect(slabBlocks * BLOCK_SIZE);
+            this.arenaBytes += slabBlocks * BLOCK_SIZE;
+        }
+        return block;
+    }
+
+    private void freeBlocks(int[] blocks) {
+        for (final int block : blocks) {
+            this.pushFreeBlock(block);
+        }
+    }
+
+    private void pushFreeBlock(int block) {
+        if (this.freeBlockCount == this.freeBlocks.length) {
+            this.freeBlocks = Arrays.copyOf(this.freeBlocks, this.freeBlocks.length * 2);
+        }
+        this.freeBlocks[this.freeBlockCount++] = block;
+    }
+
+    /** Copy the bytes into newly allocated blocks, the caller must ensure enough are available */
+    private int[] write(byte[] bytes) {
+        final int[] blocks = new int[(bytes.length + BLOCK_SIZE - 1) / BLOCK_SIZE];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = this.allocateBlock();
+            final int offset = i * BLOCK_SIZE;
+            this.positionAt(blocks[i])
+                    .put(bytes, offset, Math.min(BLOCK_SIZE, bytes.length - offset));
+        }
+        return blocks;
+    }
+
+    private byte[] read(StoredOutput storedOutput) {
+        final byte[] bytes = new byte[storedOutput.length];
+        for (int i = 0; i < storedOutput.blocks.length; i++) {
+            final int offset = i * BLOCK_SIZE;
+            this.positionAt(storedOutput.blocks[i])
+                    .get(bytes, offset, Math.min(BLOCK_SIZE, bytes.length - offset));
+        }
+        return bytes;
+    }
+
+    private ByteBuffer positionAt(int block) {
+        final ByteBuffer slab = this.slabs[block / BLOCKS_PER_SLAB];
+        slab.clear();
+        slab.position((block % BLOCKS_PER_SLAB) * BLOCK_SIZE);
+        return slab;
+    }
+
+    @Override
+    public void notifyElementEvicted(Ehcache cache, Element element) {
+        this.store(element);
+    }
+
+    @Override
+    public void notifyElementPut(Ehcache cache, Element element) throws CacheException {
+        this.remove(element.getObjectKey());
+    }
+
+    @Override
+    public void notifyElementUpdated(Ehcache cache, Element element) throws CacheException {
+        this.remove(element.getObjectKey());
+    }
+
+    @Override
+    public void notifyElementRemoved(Ehcache cache, Element element) throws CacheException {
+        this.remove(element.getObjectKey());
+    }
+
+    @Override
+    public void notifyRemoveAll(Ehcache cache) {
+        this.clear();
+    }
+
+    @Override
+    public Object clone() throws CloneNotSupportedException {
+        throw new CloneNotSupportedException(
+                "Off-heap stores are bound to a single cache and can't be cloned");
+    }
+
+    /**
+     * Serialized output held in blocks of the arena, along with the lifespan of the element it was
+     * evicted from
+     */
+    private final class StoredOutput {
+        private final int[] blocks;
+        private final int length;
+        private final long expirationTime;
+
+        private final boolean lifespanSet;
+        private final boolean eternal;
+        private final int timeToLive;
+        private final int timeToIdle;
+        private final long timeToLiveExpirationTime;
+
+        StoredOutput(int[] blocks, int length, Element element, long expirationTime) {
+            this.blocks = blocks;
+            this.length = length;
+            this.expirationTime = expirationTime;
+
+            // Elements without their own lifespan use the cache's configuration
+            this.lifespanSet = element.isLifespanSet();
+            if (this.lifespanSet) {
+                this.eternal = element.isEternal();
+                this.timeToLive = element.getTimeToLive();
+                this.timeToIdle = element.getTimeToIdle();
+            } else {
+                final CacheConfiguration cacheConfiguration = cache.getCacheConfiguration();
+                this.eternal = false;
+                this.timeToLive =
+                        cacheConfiguration.isEternal()
+                                ? 0
+                                : (int) cacheConfiguration.getTimeToLiveSeconds();
+                this.timeToIdle =
+                        cacheConfiguration.isEternal()
+                                ? 0
+                                : (int) cacheConfiguration.getTimeToIdleSeconds();
+            }
+            this.timeToLiveExpirationTime =
+                    this.timeToLive > 0
+                            ? element.getCreationTime() + TimeUnit.SECONDS.toMillis(this.timeToLive)
+                            : Long.MAX_VALUE;
+        }
+    }
+}
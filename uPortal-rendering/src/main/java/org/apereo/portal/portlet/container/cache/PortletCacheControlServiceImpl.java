@@ -15,8 +15,11 @@
 package org.apereo.portal.portlet.container.cache;
 
 import java.io.Serializable;
+import java.util.IdentityHashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.TreeMap;
+import javax.annotation.PostConstruct;
 import javax.portlet.CacheControl;
 import javax.portlet.MimeResponse;
 import javax.servlet.http.HttpServletRequest;
@@ -35,21 +38,28 @@ import org.apereo.portal.portlet.registry.IPortletWindowRegistry;
 import org.apereo.portal.portlet.rendering.PortletRenderResult;
 import org.apereo.portal.url.IPortalRequestInfo;
 import org.apereo.portal.url.IUrlSyntaxProvider;
+import org.apereo.portal.utils.cache.CacheEntryTag;
 import org.apereo.portal.utils.cache.TaggedCacheEntryPurger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.support.RequestContextUtils;
 
 /**
  * Default implementation of {@link IPortletCacheControlService}. {@link CacheControl}s are stored
  * in a {@link Map} stored as a {@link HttpServletRequest} attribute.
+ *
+ * <p>Each output cache can be backed by an {@link OffHeapPortletOutputStore} which holds the
+ * output the on-heap cache evicts, see {@link #setOffHeapCacheSize(long)}.
  */
 @Service
-public class PortletCacheControlServiceImpl implements IPortletCacheControlService {
+@ManagedResource("uPortal:section=Framework,name=PortletCacheControlService")
+public class PortletCacheControlServiceImpl
+        implements IPortletCacheControlService, PortletCacheControlServiceMXBean {
     private static final String IF_NONE_MATCH = "If-None-Match";
     private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
 
@@ -73,6 +83,13 @@ public class PortletCacheControlServiceImpl implements IPortletCacheControlServi
     // default to 100 KB
     private int cacheSizeThreshold = 102400;
 
+    // disabled by default
+    private long offHeapCacheSize = 0;
+
+    // Output cache -> off-heap tier, only written during initialization
+    private final Map<Ehcache, OffHeapPortletOutputStore> offHeapStores =
+            new IdentityHashMap<Ehcache, OffHeapPortletOutputStore>();
+
     @Autowired
     public void setTaggedCacheEntryPurger(TaggedCacheEntryPurger taggedCacheEntryPurger) {
         this.taggedCacheEntryPurger = taggedCacheEntryPurger;
@@ -139,6 +156,111 @@ public class PortletCacheControlServiceImpl implements IPortletCacheControlServi
         return cacheSizeThreshold;
     }
 
+    /**
+     * @param offHeapCacheSize Maximum number of bytes the off-heap tier of each of the six output
+     *     caches stores, 0 or less disables the off-heap tier. The tiers are allocated as direct
+     *     memory so -XX:MaxDirectMemorySize must allow for six times this size.
+     */
+    @Value(
+            "${org.apereo.portal.portlet.container.cache.PortletCacheControlServiceImpl.offHeapCacheSize:0}")
+    public void setOffHeapCacheSize(long offHeapCacheSize) {
+        this.offHeapCacheSize = offHeapCacheSize;
+    }
+
+    @Override
+    public long getOffHeapCacheSize() {
+        return this.offHeapStores.isEmpty() ? 0 : this.offHeapCacheSize;
+    }
+
+    /** Add the off-heap tier to the output caches if it is enabled */
+    @PostConstruct
+    public void init() {
+        if (this.offHeapCacheSize <= 0) {
+            return;
+        }
+
+        for (final Ehcache outputCache :
+                new Ehcache[] {
+                    this.privateScopePortletRenderHeaderOutputCache,
+                    this.publicScopePortletRenderHeaderOutputCache,
+                    this.privateScopePortletRenderOutputCache,
+                    this.publicScopePortletRenderOutputCache,
+                    this.privateScopePortletResourceOutputCache,
+                    this.publicScopePortletResourceOutputCache
+                }) {
+            final OffHeapPortletOutputStore offHeapStore =
+                    new OffHeapPortletOutputStore(outputCache, this.offHeapCacheSize);
+            outputCache.getCacheEventNotificationService().registerListener(offHeapStore);
+            this.offHeapStores.put(outputCache, offHeapStore);
+        }
+
+        logger.info(
+                "Added {} byte off-heap tiers to {} portlet output caches",
+                this.offHeapCacheSize,
+                this.offHeapStores.size());
+    }
+
+    @Override
+    public Map<String, Double> getHeapHitRatios() {
+        final Map<String, Double> ratios = new TreeMap<String, Double>();
+        for (final Map.Entry<Ehcache, OffHeapPortletOutputStore> storeEntry :
+                this.offHeapStores.entrySet()) {
+            final OffHeapPortletOutputStore offHeapStore = storeEntry.getValue();
+            final long hits = offHeapStore.getHeapHitCount();
+            ratios.put(
+                    storeEntry.getKey().getName(),
+                    getRatio(hits, hits + offHeapStore.getHeapMissCount()));
+        }
+        return ratios;
+    }
+
+    @Override
+    public Map<String, Double> getOffHeapHitRatios() {
+        final Map<String, Double> ratios = new TreeMap<String, Double>();
+        for (final Map.Entry<Ehcache, OffHeapPortletOutputStore> storeEntry :
+                this.offHeapStores.entrySet()) {
+            final OffHeapPortletOutputStore offHeapStore = storeEntry.getValue();
+            ratios.put(
+                    storeEntry.getKey().getName(),
+                    getRatio(offHeapStore.getOffHeapHitCount(), offHeapStore.getHeapMissCount()));
+        }
+        return ratios;
+    }
+
+    @Override
+    public Map<String, Integer> getOffHeapEntryCounts() {
+        final Map<String, Integer> counts = new TreeMap<String, Integer>();
+        for (final Map.Entry<Ehcache, OffHeapPortletOutputStore> storeEntry :
+                this.offHeapStores.entrySet()) {
+            counts.put(storeEntry.getKey().getName(), storeEntry.getValue().getEntryCount());
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getOffHeapStoredBytes() {
+        final Map<String, Long> sizes = new TreeMap<String, Long>();
+        for (final Map.Entry<Ehcache, OffHeapPortletOutputStore> storeEntry :
+                this.offHeapStores.entrySet()) {
+            sizes.put(storeEntry.getKey().getName(), storeEntry.getValue().getStoredBytes());
+        }
+        return sizes;
+    }
+
+    @Override
+    public Map<String, Long> getOffHeapEvictionCounts() {
+        final Map<String, Long> counts = new TreeMap<String, Long>();
+        for (final Map.Entry<Ehcache, OffHeapPortletOutputStore> storeEntry :
+                this.offHeapStores.entrySet()) {
+            counts.put(storeEntry.getKey().getName(), storeEntry.getValue().getEvictionCount());
+        }
+        return counts;
+    }
+
+    private static double getRatio(long count, long total) {
+        return total == 0 ? 0 : (double) count / total;
+    }
+
     @Autowired
     public void setPortletWindowRegistry(IPortletWindowRegistry portletWindowRegistry) {
         this.portletWindowRegistry = portletWindowRegistry;
@@ -397,7 +519,18 @@ public class PortletCacheControlServiceImpl implements IPortletCacheControlServi
     protected <T extends Serializable> CachedPortletResultHolder<T> getCachedPortletData(
             Serializable cacheKey, Ehcache outputCache, IPortletWindow portletWindow) {
 
-        final Element publicCacheElement = outputCache.get(cacheKey);
+        Element publicCacheElement = outputCache.get(cacheKey);
+
+        // Fall back to the off-heap tier if there is one
+        final OffHeapPortletOutputStore offHeapStore = this.offHeapStores.get(outputCache);
+        if (offHeapStore != null) {
+            if (publicCacheElement != null) {
+                offHeapStore.recordHeapHit();
+            } else {
+                publicCacheElement = offHeapStore.promote(cacheKey);
+            }
+        }
+
         if (publicCacheElement == null) {
             logger.debug("No cached output for key {}", cacheKey);
             return null;
@@ -558,14 +691,19 @@ public class PortletCacheControlServiceImpl implements IPortletCacheControlServi
         int purgeCount = 0;
 
         // Remove all publicly cached data
-        purgeCount +=
-                this.taggedCacheEntryPurger.purgeCacheEntries(
-                        PublicPortletCacheKey.createTag(definitionId));
+        final CacheEntryTag publicTag = PublicPortletCacheKey.createTag(definitionId);
+        purgeCount += this.taggedCacheEntryPurger.purgeCacheEntries(publicTag);
 
         // Remove all privately cached data
-        purgeCount +=
-                this.taggedCacheEntryPurger.purgeCacheEntries(
-                        PrivatePortletCacheKey.createTag(session.getId(), portletWindowId));
+        final CacheEntryTag privateTag =
+                PrivatePortletCacheKey.createTag(session.getId(), portletWindowId);
+        purgeCount += this.taggedCacheEntryPurger.purgeCacheEntries(privateTag);
+
+        // Remove data the on-heap caches evicted to the off-heap tier
+        for (final OffHeapPortletOutputStore offHeapStore : this.offHeapStores.values()) {
+            purgeCount += offHeapStore.purgeCacheEntries(publicTag);
+            purgeCount += offHeapStore.purgeCacheEntries(privateTag);
+        }
 
         logger.debug("Purging all cached data for {} removed {} keys", portletWindow, purgeCount);
 
@@ -0,0 +1,44 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlet.container.cache;
+
+import java.util.Map;
+
+/**
+ * JMX view of the portlet output caches of {@link PortletCacheControlServiceImpl}. The statistics
+ * are keyed by cache name and are only tracked while the off-heap tier is enabled.
+ *
+ * @since 5.2
+ */
+public interface PortletCacheControlServiceMXBean {
+
+    /** @return Maximum number of bytes each off-heap tier stores, 0 if the tier is disabled */
+    long getOffHeapCacheSize();
+
+    /** @return Ratio of lookups that were answered by the on-heap tier of each cache */
+    Map<String, Double> getHeapHitRatios();
+
+    /** @return Ratio of on-heap misses that were answered by the off-heap tier of each cache */
+    Map<String, Double> getOffHeapHitRatios();
+
+    /** @return Number of entries in the off-heap tier of each cache */
+    Map<String, Integer> getOffHeapEntryCounts();
+
+    /** @return Number of serialized bytes in the off-heap tier of each cache */
+    Map<String, Long> getOffHeapStoredBytes();
+
+    /** @return Number of entries dropped from the off-heap tier of each cache to stay in size */
+    Map<String, Long> getOffHeapEvictionCounts();
+}
@@ -15,10 +15,13 @@
 package org.apereo.portal.portlet.registry;
 
 import com.google.common.base.Function;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -83,6 +86,8 @@ public class PortletEntityRegistryImpl implements IPortletEntityRegistry {
             PortletEntityRegistryImpl.class.getName() + ".PORTLET_ENTITY.thread-";
     private static final String PORTLET_ENTITY_LOCK_MAP_ATTRIBUTE =
             PortletEntityRegistryImpl.class.getName() + ".PORTLET_ENTITY_LOCK_MAP_ATTRIBUTE";
+    private static final String PRELOADED_PORTLET_ENTITIES_ATTRIBUTE =
+            PortletEntityRegistryImpl.class.getName() + ".PRELOADED_PORTLET_ENTITIES";
     private static final String PORTLET_DEFINITION_LOOKUP_MAP_ATTRIBUTE =
             PortletEntityRegistryImpl.class.getName() + ".PORTLET_DEFINITION_LOOKUP_MAP_ATTRIBUTE";
 
@@ -222,6 +227,40 @@ public class PortletEntityRegistryImpl implements IPortletEntityRegistry {
         return null;
     }
 
+    @Override
+    public void preloadPortletEntities(
+            HttpServletRequest request, IUserInstance userInstance, Set<String> layoutNodeIds) {
+        final int userId = userInstance.getPerson().getID();
+
+        // Nodes with a session scoped entity never go to the persistent store
+        final PortletEntityCache<PortletEntityData> portletEntityDataMap =
+                this.getPortletEntityDataMap(request);
+        final Set<String> persistentLayoutNodeIds = new HashSet<String>(layoutNodeIds.size());
+        for (final String layoutNodeId : layoutNodeIds) {
+            if (portletEntityDataMap.getEntity(layoutNodeId, userId) == null) {
+                persistentLayoutNodeIds.add(layoutNodeId);
+            }
+        }
+
+        // Nothing to gain from a batch lookup for a single node
+        if (persistentLayoutNodeIds.size() < 2) {
+            return;
+        }
+
+        final Map<String, IPortletEntity> portletEntities =
+                this.portletEntityDao.getPortletEntities(persistentLayoutNodeIds, userId);
+        this.logger.debug(
+                "Preloaded {} persistent portlet entities for {} layout nodes of user {}",
+                portletEntities.size(),
+                persistentLayoutNodeIds.size(),
+                userId);
+
+        request = portalRequestUtils.getOriginalPortalRequest(request);
+        request.setAttribute(
+                PRELOADED_PORTLET_ENTITIES_ATTRIBUTE,
+                new PreloadedPortletEntities(userId, persistentLayoutNodeIds, portletEntities));
+    }
+
     /* (non-Javadoc)
      * @see org.apereo.portal.portlet.registry.IPortletEntityRegistry#getOrCreatePortletEntity(org.apereo.portal.portlet.om.IPortletDefinitionId, java.lang.String, int)
      */
@@ -682,7 +721,14 @@ public class PortletEntityRegistryImpl implements IPortletEntityRegistry {
                 portletEntity = this.portletEntityDao.getPortletEntity(portletEntityId);
             }
         } else {
-            portletEntity = this.portletEntityDao.getPortletEntity(layoutNodeId, userId);
+            final PreloadedPortletEntities preloadedPortletEntities =
+                    this.getPreloadedPortletEntities(request);
+            if (preloadedPortletEntities != null
+                    && preloadedPortletEntities.remove(layoutNodeId, userId)) {
+                portletEntity = preloadedPortletEntities.getPortletEntity(layoutNodeId);
+            } else {
+                portletEntity = this.portletEntityDao.getPortletEntity(layoutNodeId, userId);
+            }
         }
 
         // Found a persistent entity, wrap it to make the id consistent between the persistent and
@@ -868,6 +914,12 @@ public class PortletEntityRegistryImpl implements IPortletEntityRegistry {
         }
     }
 
+    protected PreloadedPortletEntities getPreloadedPortletEntities(HttpServletRequest request) {
+        request = portalRequestUtils.getOriginalPortalRequest(request);
+        return (PreloadedPortletEntities)
+                request.getAttribute(PRELOADED_PORTLET_ENTITIES_ATTRIBUTE);
+    }
+
     protected IPortletEntity wrapPortletEntityData(final PortletEntityData portletEntityData) {
         final IPortletDefinitionId portletDefinitionId = portletEntityData.getPortletDefinitionId();
         final IPortletDefinition portletDefinition =
@@ -1112,4 +1164,39 @@ public class PortletEntityRegistryImpl implements IPortletEntityRegistry {
                     return null;
                 }
             };
+
+    /**
+     * Persistent entities loaded by {@link #preloadPortletEntities(HttpServletRequest,
+     * IUserInstance, Set)}. Each node is only answered from here once, later lookups for the node
+     * go back to the persistent store so changes made during the request are seen.
+     */
+    protected static final class PreloadedPortletEntities {
+        private final int userId;
+        private final Set<String> layoutNodeIds;
+        private final Map<String, IPortletEntity> portletEntities;
+
+        PreloadedPortletEntities(
+                int userId,
+                Set<String> layoutNodeIds,
+                Map<String, IPortletEntity> portletEntities) {
+            this.userId = userId;
+            this.layoutNodeIds =
+                    Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+            this.layoutNodeIds.addAll(layoutNodeIds);
+            this.portletEntities = new ConcurrentHashMap<String, IPortletEntity>(portletEntities);
+        }
+
+        /**
+         * @return true if the node was preloaded and not yet removed, {@link
+         *     #getPortletEntity(String)} then returns its entity
+         */
+        boolean remove(String layoutNodeId, int userId) {
+            return this.userId == userId && this.layoutNodeIds.remove(layoutNodeId);
+        }
+
+        /** @return The preloaded entity for the node, null if the node has no persistent entity */
+        IPortletEntity getPortletEntity(String layoutNodeId) {
+            return this.portletEntities.remove(layoutNodeId);
+        }
+    }
 }
@@ -672,6 +672,10 @@ public class PortletWindowRegistryImpl implements IPortletWindowRegistry {
         final Set<IPortletWindow> allLayoutWindows =
                 new LinkedHashSet<IPortletWindow>(allSubscribedChannels.size());
 
+        // Load the persistent entities for the whole layout at once
+        this.portletEntityRegistry.preloadPortletEntities(
+                request, userInstance, allSubscribedChannels);
+
         for (final String channelSubscribeId : allSubscribedChannels) {
             final IPortletEntity portletEntity =
                     this.portletEntityRegistry.getOrCreatePortletEntity(
@@ -16,6 +16,7 @@ package org.apereo.portal.portlet.rendering;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import org.apereo.portal.character.stream.events.CharacterDataEvent;
 import org.apereo.portal.portlet.om.IPortletWindowId;
 
 /**
@@ -116,6 +117,30 @@ public interface IPortletExecutionManager {
             HttpServletRequest request,
             HttpServletResponse response);
 
+    /**
+     * Same as {@link #getPortletHeadOutput(IPortletWindowId, HttpServletRequest,
+     * HttpServletResponse)} but the output is returned as character data backed by the buffer the
+     * portlet rendered into instead of being copied into a String.
+     *
+     * @since 5.2
+     */
+    CharacterDataEvent getPortletHeadOutputEvent(
+            IPortletWindowId portletWindowId,
+            HttpServletRequest request,
+            HttpServletResponse response);
+
+    /**
+     * Same as {@link #getPortletOutput(IPortletWindowId, HttpServletRequest, HttpServletResponse)}
+     * but the output is returned as character data backed by the buffer the portlet rendered into
+     * instead of being copied into a String.
+     *
+     * @since 5.2
+     */
+    CharacterDataEvent getPortletOutputEvent(
+            IPortletWindowId portletWindowId,
+            HttpServletRequest request,
+            HttpServletResponse response);
+
     /** Gets the title for the specified portlet */
     String getPortletTitle(
             IPortletWindowId portletWindowId,
@@ -53,4 +53,22 @@ public interface PortletExecutionManagerMXBean {
 
     /** @return Number of times each portlet has been executed */
     Map<String, Integer> getPortletExecutionCounts();
+
+    /**
+     * @return Number of submitted executions of each portlet, by fname, that are waiting for a
+     *     thread. Empty if the portlet thread pool doesn't track executions per portlet.
+     */
+    Map<String, Integer> getPortletQueueDepths();
+
+    /**
+     * @return Mean time in milliseconds executions of each portlet, by fname, waited for a thread.
+     *     Empty if the portlet thread pool doesn't track executions per portlet.
+     */
+    Map<String, Long> getPortletMeanQueueWaitTimes();
+
+    /**
+     * @return Longest time in milliseconds an execution of each portlet, by fname, waited for a
+     *     thread. Empty if the portlet thread pool doesn't track executions per portlet.
+     */
+    Map<String, Long> getPortletMaxQueueWaitTimes();
 }
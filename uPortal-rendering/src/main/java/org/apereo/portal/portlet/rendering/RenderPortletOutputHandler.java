@@ -17,15 +17,15 @@ package org.apereo.portal.portlet.rendering;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintWriter;
-import org.apache.commons.io.output.StringBuilderWriter;
 import org.apache.commons.io.output.WriterOutputStream;
+import org.apereo.portal.utils.ChunkedCharArrayWriter;
 
 /**
- * PortletOutputHandler that stores all content written to a string. Requires that an encoding be
+ * PortletOutputHandler that buffers all content written in memory. Requires that an encoding be
  * specified in case the portlet writes to the output stream.
  */
 public class RenderPortletOutputHandler implements PortletOutputHandler {
-    private final StringBuilderWriter writer = new StringBuilderWriter();
+    private final ChunkedCharArrayWriter writer = new ChunkedCharArrayWriter();
     private final PrintWriter printWriter = new PrintWriter(this.writer);
     private final String characterEncoding;
     private OutputStream writerOutputStream;
@@ -40,7 +40,16 @@ public class RenderPortletOutputHandler implements PortletOutputHandler {
     /** @return The output the portlet has written, calls {@link #flushBuffer()} first */
     public String getOutput() {
         this.flushBuffer();
-        return writer.getBuilder().toString();
+        return writer.toString();
+    }
+
+    /**
+     * @return The buffer holding the output the portlet has written, calls {@link #flushBuffer()}
+     *     first. Allows the output to be written elsewhere without copying it into a String.
+     */
+    public ChunkedCharArrayWriter getOutputBuffer() {
+        this.flushBuffer();
+        return writer;
     }
 
     /** @return The content-type the portlet set */
@@ -96,10 +105,7 @@ public class RenderPortletOutputHandler implements PortletOutputHandler {
     @Override
     public void resetBuffer() {
         this.flushBuffer();
-        final StringBuilder builder = this.writer.getBuilder();
-        if (builder.length() > 0) {
-            builder.delete(0, builder.length());
-        }
+        this.writer.reset();
     }
 
     @Override
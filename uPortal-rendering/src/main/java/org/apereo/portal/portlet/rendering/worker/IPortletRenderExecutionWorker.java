@@ -15,6 +15,7 @@
 package org.apereo.portal.portlet.rendering.worker;
 
 import org.apereo.portal.portlet.rendering.PortletRenderResult;
+import org.apereo.portal.utils.ChunkedCharArrayWriter;
 
 /** Worker that executes a portlet render request */
 public interface IPortletRenderExecutionWorker
@@ -22,4 +23,11 @@ public interface IPortletRenderExecutionWorker
 
     /** @return The output written by the portlet */
     public String getOutput(long timeout) throws Exception;
+
+    /**
+     * @return The buffer holding the output written by the portlet, avoids copying the output into
+     *     a String when it is only going to be written elsewhere
+     * @since 5.2
+     */
+    public ChunkedCharArrayWriter getOutputBuffer(long timeout) throws Exception;
 }
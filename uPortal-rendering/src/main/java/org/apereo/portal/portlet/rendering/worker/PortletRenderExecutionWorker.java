@@ -23,6 +23,7 @@ import org.apereo.portal.portlet.om.IPortletWindowId;
 import org.apereo.portal.portlet.rendering.IPortletRenderer;
 import org.apereo.portal.portlet.rendering.PortletRenderResult;
 import org.apereo.portal.portlet.rendering.RenderPortletOutputHandler;
+import org.apereo.portal.utils.ChunkedCharArrayWriter;
 
 /**
  * {@link PortletExecutionWorker} capable of rendering the body markup for a portlet.
@@ -32,7 +33,7 @@ import org.apereo.portal.portlet.rendering.RenderPortletOutputHandler;
  */
 class PortletRenderExecutionWorker extends PortletExecutionWorker<PortletRenderResult>
         implements IPortletRenderExecutionWorker {
-    private String output = null;
+    private ChunkedCharArrayWriter output = null;
 
     public PortletRenderExecutionWorker(
             ExecutorService executorService,
@@ -69,13 +70,19 @@ class PortletRenderExecutionWorker extends PortletExecutionWorker<PortletRenderR
                 portletRenderer.doRenderMarkup(
                         portletWindowId, request, response, renderPortletOutputHandler);
 
-        this.output = renderPortletOutputHandler.getOutput();
+        this.output = renderPortletOutputHandler.getOutputBuffer();
 
         return result;
     }
 
     @Override
     public String getOutput(long timeout) throws Exception {
+        this.get(timeout);
+        return this.output != null ? this.output.toString() : null;
+    }
+
+    @Override
+    public ChunkedCharArrayWriter getOutputBuffer(long timeout) throws Exception {
         this.get(timeout);
         return this.output;
     }
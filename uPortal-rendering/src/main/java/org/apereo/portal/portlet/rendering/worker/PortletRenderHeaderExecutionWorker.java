@@ -22,12 +22,13 @@ import org.apereo.portal.portlet.om.IPortletWindow;
 import org.apereo.portal.portlet.rendering.IPortletRenderer;
 import org.apereo.portal.portlet.rendering.PortletRenderResult;
 import org.apereo.portal.portlet.rendering.RenderPortletOutputHandler;
+import org.apereo.portal.utils.ChunkedCharArrayWriter;
 
 /** {@link PortletExecutionWorker} capable of rendering the head content for a portlet. */
 class PortletRenderHeaderExecutionWorker extends PortletExecutionWorker<PortletRenderResult>
         implements IPortletRenderExecutionWorker {
 
-    private String output = null;
+    private ChunkedCharArrayWriter output = null;
 
     public PortletRenderHeaderExecutionWorker(
             ExecutorService executorService,
@@ -59,6 +60,12 @@ class PortletRenderHeaderExecutionWorker extends PortletExecutionWorker<PortletR
      */
     @Override
     public String getOutput(long timeout) throws Exception {
+        this.get(timeout);
+        return this.output != null ? this.output.toString() : null;
+    }
+
+    @Override
+    public ChunkedCharArrayWriter getOutputBuffer(long timeout) throws Exception {
         this.get(timeout);
         return this.output;
     }
@@ -92,7 +99,7 @@ class PortletRenderHeaderExecutionWorker extends PortletExecutionWorker<PortletR
                 portletRenderer.doRenderHeader(
                         portletWindowId, request, response, renderPortletOutputHandler);
 
-        this.output = renderPortletOutputHandler.getOutput();
+        this.output = renderPortletOutputHandler.getOutputBuffer();
 
         return result;
     }
@@ -0,0 +1,278 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlet.rendering.worker;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread pool for portlet executions that limits the number of concurrent executions of each
+ * portlet. Portlet executions, tasks that are an {@link IPortletExecutionContext}, are grouped by
+ * portlet fname into bulkheads. At most {@link #getMaxExecutionsPerPortlet()} executions from a
+ * bulkhead are handed to the pool at a time, the rest wait in the bulkhead in submission order.
+ * This keeps one slow portlet from occupying every thread in the pool.
+ *
+ * <p>The pool is intended to be used with a fixed number of threads and a bounded work queue, work
+ * beyond the available threads is queued instead of starting more threads. Tasks that are not
+ * portlet executions are passed straight to the pool.
+ */
+public class PortletThreadPoolExecutor extends ThreadPoolExecutor {
+    private final ConcurrentMap<String, PortletBulkhead> bulkheads =
+            new ConcurrentHashMap<String, PortletBulkhead>();
+    private final int maxExecutionsPerPortlet;
+
+    public PortletThreadPoolExecutor(
+            int corePoolSize,
+            int maximumPoolSize,
+            long keepAliveTime,
+            TimeUnit unit,
+            BlockingQueue<Runnable> workQueue,
+            ThreadFactory threadFactory,
+            RejectedExecutionHandler handler,
+            int maxExecutionsPerPortlet) {
+        super(
+                corePoolSize,
+                maximumPoolSize,
+                keepAliveTime,
+                unit,
+                workQueue,
+                threadFactory,
+                handler);
+
+        if (maxExecutionsPerPortlet <= 0) {
+            throw new IllegalArgumentException(
+                    "maxExecutionsPerPortlet must be greater than 0: " + maxExecutionsPerPortlet);
+        }
+        this.maxExecutionsPerPortlet = maxExecutionsPerPortlet;
+    }
+
+    /** @return The maximum number of concurrent executions of a single portlet */
+    public int getMaxExecutionsPerPortlet() {
+        return this.maxExecutionsPerPortlet;
+    }
+
+    /** @return Number of submitted executions that have not started yet, by portlet fname */
+    public Map<String, Integer> getQueueDepths() {
+        final Map<String, Integer> depths = new TreeMap<String, Integer>();
+        for (final PortletBulkhead bulkhead : this.bulkheads.values()) {
+            depths.put(bulkhead.fname, bulkhead.queued.get());
+        }
+        return depths;
+    }
+
+    /** @return Number of executions currently handed to the pool, by portlet fname */
+    public Map<String, Integer> getRunningCounts() {
+        final Map<String, Integer> counts = new TreeMap<String, Integer>();
+        for (final PortletBulkhead bulkhead : this.bulkheads.values()) {
+            counts.put(bulkhead.fname, bulkhead.running.get());
+        }
+        return counts;
+    }
+
+    /**
+     * @return Mean time in milliseconds executions waited between submission and starting on a
+     *     pool thread, by portlet fname
+     */
+    public Map<String, Long> getMeanQueueWaitTimes() {
+        final Map<String, Long> waitTimes = new TreeMap<String, Long>();
+        for (final PortletBulkhead bulkhead : this.bulkheads.values()) {
+            final long started = bulkhead.startedCount.get();
+            final long waitNanos = bulkhead.totalWaitNanos.get();
+            waitTimes.put(
+                    bulkhead.fname,
+                    started == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(waitNanos / started));
+        }
+        return waitTimes;
+    }
+
+    /**
+     * @return Longest time in milliseconds an execution waited between submission and starting on
+     *     a pool thread, by portlet fname
+     */
+    public Map<String, Long> getMaxQueueWaitTimes() {
+        final Map<String, Long> waitTimes = new TreeMap<String, Long>();
+        for (final PortletBulkhead bulkhead : this.bulkheads.values()) {
+            waitTimes.put(
+                    bulkhead.fname, TimeUnit.NANOSECONDS.toMillis(bulkhead.maxWaitNanos.get()));
+        }
+        return waitTimes;
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        if (callable instanceof IPortletExecutionContext) {
+            final String fname = ((IPortletExecutionContext) callable).getPortletFname();
+            return new PortletExecutionTask<T>(callable, this.getBulkhead(fname));
+        }
+        return super.newTaskFor(callable);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (!(command instanceof PortletExecutionTask)) {
+            super.execute(command);
+            return;
+        }
+
+        final PortletExecutionTask<?> task = (PortletExecutionTask<?>) command;
+        if (this.isShutdown()) {
+            // Let the pool apply its rejection policy
+            super.execute(task);
+            return;
+        }
+
+        final PortletBulkhead bulkhead = task.bulkhead;
+        task.submitted = System.nanoTime();
+        bulkhead.queued.incrementAndGet();
+        bulkhead.pending.add(task);
+        this.dispatch(bulkhead);
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        super.beforeExecute(t, r);
+
+        if (r instanceof PortletExecutionTask) {
+            final PortletExecutionTask<?> task = (PortletExecutionTask<?>) r;
+            task.bulkhead.started(System.nanoTime() - task.submitted);
+        }
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        super.afterExecute(r, t);
+
+        if (r instanceof PortletExecutionTask) {
+            final PortletBulkhead bulkhead = ((PortletExecutionTask<?>) r).bulkhead;
+            bulkhead.running.decrementAndGet();
+            this.dispatch(bulkhead);
+        }
+    }
+
+    private PortletBulkhead getBulkhead(String fname) {
+        PortletBulkhead bulkhead = this.bulkheads.get(fname);
+        if (bulkhead == null) {
+            bulkhead = new PortletBulkhead(fname);
+            final PortletBulkhead existing = this.bulkheads.putIfAbsent(fname, bulkhead);
+            if (existing != null) {
+                bulkhead = existing;
+            }
+        }
+        return bulkhead;
+    }
+
+    /**
+     * Hand pending executions from the bulkhead to the pool while the bulkhead is below its limit.
+     * Called after every submission and every completion so an execution added while the bulkhead
+     * was full is picked up by whichever execution frees the next slot.
+     */
+    private void dispatch(PortletBulkhead bulkhead) {
+        while (!bulkhead.pending.isEmpty() && bulkhead.tryAcquire(this.maxExecutionsPerPortlet)) {
+            final PortletExecutionTask<?> task = bulkhead.pending.poll();
+            if (task == null) {
+                bulkhead.running.decrementAndGet();
+                continue;
+            }
+
+            try {
+                super.execute(task);
+            } catch (RejectedExecutionException e) {
+                bulkhead.running.decrementAndGet();
+                bulkhead.queued.decrementAndGet();
+                // Fail the execution, the worker reports the failure when it gets the result
+                task.reject(e);
+            }
+        }
+    }
+
+    /** Pending executions and execution statistics for a single portlet */
+    private static final class PortletBulkhead {
+        private final String fname;
+        private final Queue<PortletExecutionTask<?>> pending =
+                new ConcurrentLinkedQueue<PortletExecutionTask<?>>();
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicLong startedCount = new AtomicLong();
+        private final AtomicLong totalWaitNanos = new AtomicLong();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+
+        PortletBulkhead(String fname) {
+            this.fname = fname;
+        }
+
+        boolean tryAcquire(int limit) {
+            while (true) {
+                final int current = this.running.get();
+                if (current >= limit) {
+                    return false;
+                }
+                if (this.running.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void started(long waitNanos) {
+            this.queued.decrementAndGet();
+            this.startedCount.incrementAndGet();
+            this.totalWaitNanos.addAndGet(waitNanos);
+
+            long max = this.maxWaitNanos.get();
+            while (waitNanos > max && !this.maxWaitNanos.compareAndSet(max, waitNanos)) {
+                max = this.maxWaitNanos.get();
+            }
+        }
+    }
+
+    /** Task for a portlet execution, tracks the bulkhead it belongs to */
+    private static final class PortletExecutionTask<V> extends FutureTask<V> {
+        private final PortletBulkhead bulkhead;
+        private volatile long submitted;
+
+        PortletExecutionTask(Callable<V> callable, PortletBulkhead bulkhead) {
+            super(callable);
+            this.bulkhead = bulkhead;
+        }
+
+        void reject(RejectedExecutionException e) {
+            this.setException(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return super.toString()
+                + "[maxExecutionsPerPortlet = "
+                + this.maxExecutionsPerPortlet
+                + ", queueDepths = "
+                + this.getQueueDepths()
+                + "]";
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlet.rendering.worker;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.apereo.portal.utils.threading.VirtualThreads;
+import org.springframework.scheduling.concurrent.ThreadPoolExecutorFactoryBean;
+
+/**
+ * Creates a {@link PortletThreadPoolExecutor}
+ *
+ * <p>With {@link #setVirtualThreads(boolean)} enabled, and on a JVM that supports them, the pool
+ * runs executions on virtual threads. A portlet blocked on remote I/O then no longer holds a
+ * platform thread. The pool keeps its {@link java.util.concurrent.ThreadPoolExecutor} API, per
+ * portlet limits and execution interceptors, the only difference is the threads it creates and
+ * that it grows to {@link #setMaxVirtualThreads(int)} threads before queueing.
+ */
+public class PortletThreadPoolExecutorFactoryBean extends ThreadPoolExecutorFactoryBean {
+    private static final long serialVersionUID = 1L;
+
+    private int maxExecutionsPerPortlet = 50;
+    private boolean virtualThreads = false;
+    private int maxVirtualThreads = 10000;
+
+    /** @param maxExecutionsPerPortlet The maximum number of concurrent executions of a portlet */
+    public void setMaxExecutionsPerPortlet(int maxExecutionsPerPortlet) {
+        this.maxExecutionsPerPortlet = maxExecutionsPerPortlet;
+    }
+
+    /**
+     * @param virtualThreads If executions should run on virtual threads, ignored if the JVM does
+     *     not support virtual threads. Defaults to false.
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * @param maxVirtualThreads Number of virtual threads the pool runs before queueing executions,
+     *     replaces the core and max pool sizes when virtual threads are used. Defaults to 10000.
+     */
+    public void setMaxVirtualThreads(int maxVirtualThreads) {
+        this.maxVirtualThreads = maxVirtualThreads;
+    }
+
+    @Override
+    protected ThreadPoolExecutor createExecutor(
+            int corePoolSize,
+            int maxPoolSize,
+            int keepAliveSeconds,
+            BlockingQueue<Runnable> queue,
+            ThreadFactory threadFactory,
+            RejectedExecutionHandler rejectedExecutionHandler) {
+
+        if (this.virtualThreads) {
+            if (VirtualThreads.isSupported()) {
+                logger.info(
+                        "Running portlet executions on up to "
+                                + this.maxVirtualThreads
+                                + " virtual threads");
+                threadFactory = VirtualThreads.newThreadFactory(this.getThreadNamePrefix());
+                corePoolSize = this.maxVirtualThreads;
+                maxPoolSize = this.maxVirtualThreads;
+            } else {
+                logger.warn(
+                        "Virtual threads were requested for portlet executions but Java "
+                                + System.getProperty("java.version")
+                                + " does not support them, using platform threads");
+            }
+        }
+
+        return new PortletThreadPoolExecutor(
+                corePoolSize,
+                maxPoolSize,
+                keepAliveSeconds,
+                TimeUnit.SECONDS,
+                queue,
+                threadFactory,
+                rejectedExecutionHandler,
+                this.maxExecutionsPerPortlet);
+    }
+}
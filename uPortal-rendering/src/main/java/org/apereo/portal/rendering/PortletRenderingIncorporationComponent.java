@@ -93,11 +93,9 @@ public class PortletRenderingIncorporationComponent extends CharacterPipelineCom
                         final IPortletWindowId portletWindowId =
                                 headerPlaceholderEvent.getPortletWindowId();
 
-                        final String output =
-                                portletExecutionManager.getPortletHeadOutput(
-                                        portletWindowId, this.request, this.response);
-
-                        return CharacterDataEventImpl.create(output);
+                        // Not interned, the output is specific to this request
+                        return portletExecutionManager.getPortletHeadOutputEvent(
+                                portletWindowId, this.request, this.response);
                     }
                 case PORTLET_CONTENT:
                     {
@@ -106,11 +104,8 @@ public class PortletRenderingIncorporationComponent extends CharacterPipelineCom
                         final IPortletWindowId portletWindowId =
                                 contentPlaceholderEvent.getPortletWindowId();
 
-                        final String output =
-                                portletExecutionManager.getPortletOutput(
-                                        portletWindowId, this.request, this.response);
-
-                        return CharacterDataEventImpl.create(output);
+                        return portletExecutionManager.getPortletOutputEvent(
+                                portletWindowId, this.request, this.response);
                     }
                 case PORTLET_TITLE:
                     {
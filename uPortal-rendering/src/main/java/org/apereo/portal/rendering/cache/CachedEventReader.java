@@ -14,6 +14,7 @@
  */
 package org.apereo.portal.rendering.cache;
 
+import com.google.common.collect.ImmutableList;
 import java.io.Serializable;
 import java.util.Collections;
 import java.util.List;
@@ -23,18 +24,33 @@ import java.util.Map;
 class CachedEventReader<E> implements Serializable {
     private static final long serialVersionUID = 1L;
 
-    private final List<E> eventCache;
+    private final ImmutableList<E> eventCache;
     private final Map<String, String> outputProperties;
+    private final long estimatedSize;
 
     public CachedEventReader(List<E> eventCache, Map<String, String> outputProperties) {
-        this.eventCache = Collections.unmodifiableList(eventCache);
+        this(eventCache, outputProperties, 0);
+    }
+
+    /**
+     * @param estimatedSize Estimated number of bytes retained by this entry, not counting events
+     *     shared with other entries
+     */
+    public CachedEventReader(
+            List<E> eventCache, Map<String, String> outputProperties, long estimatedSize) {
+        this.eventCache = ImmutableList.copyOf(eventCache);
         this.outputProperties = Collections.unmodifiableMap(outputProperties);
+        this.estimatedSize = estimatedSize;
     }
 
     public List<E> getEventCache() {
         return this.eventCache;
     }
 
+    public long getEstimatedSize() {
+        return this.estimatedSize;
+    }
+
     public Map<String, String> getOutputProperties() {
         return this.outputProperties;
     }
@@ -14,19 +14,82 @@
  */
 package org.apereo.portal.rendering.cache;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ListIterator;
 import org.apereo.portal.character.stream.CharacterEventBufferReader;
 import org.apereo.portal.character.stream.CharacterEventReader;
+import org.apereo.portal.character.stream.events.CharacterDataEvent;
 import org.apereo.portal.character.stream.events.CharacterEvent;
+import org.apereo.portal.character.stream.events.CharacterEventTypes;
+import org.apereo.portal.character.stream.events.EncodedCharacterDataEvent;
+import org.apereo.portal.character.stream.events.EncodedCharacterDataEventImpl;
 import org.apereo.portal.rendering.CharacterPipelineComponent;
 
-/** component that can cache character pipeline events */
+/**
+ * component that can cache character pipeline events
+ *
+ * <p>When {@link #setPreEncodeCharacterData(boolean)} is enabled the character data between
+ * placeholders is cached as {@link EncodedCharacterDataEvent}s, already encoded with the {@link
+ * #setCharset(Charset)} charset, so a renderer writing to a byte stream can copy it directly.
+ */
 public class CachingCharacterPipelineComponent
         extends CachingPipelineComponent<CharacterEventReader, CharacterEvent>
         implements CharacterPipelineComponent {
+    /** Estimated size of an event object */
+    private static final long EVENT_SIZE = 24;
+
+    /*
+     * CharacterEvent implementations are value objects so they can be interned directly. Weak so
+     * that events are dropped once no cache entry references them.
+     */
+    private final Interner<CharacterEvent> eventInterner = Interners.newWeakInterner();
+
+    private boolean preEncodeCharacterData = false;
+    private Charset charset = StandardCharsets.UTF_8;
+
+    /** If character data should be cached encoded instead of as Strings, defaults to false */
+    public void setPreEncodeCharacterData(boolean preEncodeCharacterData) {
+        this.preEncodeCharacterData = preEncodeCharacterData;
+    }
+
+    /** Charset pre-encoded character data is encoded with, defaults to UTF-8 */
+    public void setCharset(Charset charset) {
+        this.charset = charset;
+    }
 
     @Override
     protected CharacterEventReader createEventReader(ListIterator<CharacterEvent> eventCache) {
         return new CharacterEventBufferReader(eventCache);
     }
+
+    @Override
+    protected CharacterEvent prepareEvent(CharacterEvent event) {
+        if (this.preEncodeCharacterData
+                && event.getEventType() == CharacterEventTypes.CHARACTER
+                && !(event instanceof EncodedCharacterDataEvent)) {
+            return EncodedCharacterDataEventImpl.create(
+                    ((CharacterDataEvent) event).getData(), this.charset);
+        }
+        return event;
+    }
+
+    @Override
+    protected CharacterEvent internEvent(CharacterEvent event) {
+        return this.eventInterner.intern(event);
+    }
+
+    @Override
+    protected long estimateEventSize(CharacterEvent event) {
+        if (event instanceof EncodedCharacterDataEventImpl) {
+            // Object header, reference and hash plus the byte[]
+            return EVENT_SIZE + 16 + ((EncodedCharacterDataEventImpl) event).getEncodedLength();
+        }
+        if (event instanceof CharacterDataEvent) {
+            return EVENT_SIZE + estimateStringSize(((CharacterDataEvent) event).getData());
+        }
+        return EVENT_SIZE;
+    }
 }
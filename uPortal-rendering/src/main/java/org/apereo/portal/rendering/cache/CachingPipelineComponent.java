@@ -14,11 +14,18 @@
  */
 package org.apereo.portal.rendering.cache;
 
+import com.google.common.collect.ImmutableList;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import net.sf.ehcache.Ehcache;
@@ -33,12 +40,36 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.BeanNameAware;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 
-/** Component that caches events from a wrapped component */
+/**
+ * Component that caches events from a wrapped component. Events are stored in compact array backed
+ * buffers and events identical to ones already held by another cache entry are shared through
+ * {@link #internEvent(Object)}.
+ *
+ * <p>Concurrent requests that miss the cache for the same key are coalesced, the first request
+ * calls the wrapped component and populates the cache while the others wait up to {@link
+ * #setPopulationWaitTime(long)} for its result. A request that times out, or whose leader fails,
+ * calls the wrapped component itself.
+ */
 public abstract class CachingPipelineComponent<R, E> extends PipelineComponentWrapper<R, E>
-        implements BeanNameAware {
+        implements BeanNameAware, CachingPipelineComponentMXBean {
+    /** Estimated size of the buffer slot referencing each event */
+    protected static final long REFERENCE_SIZE = 8;
+
     protected final Logger logger = LoggerFactory.getLogger(getClass());
 
+    private final AtomicLong cachedEventCount = new AtomicLong();
+    private final AtomicLong sharedEventCount = new AtomicLong();
+    private final AtomicLong coalescedWaitCount = new AtomicLong();
+    private final AtomicLong populationWaitTimeoutCount = new AtomicLong();
+
+    /** Cache populations currently running, keyed by the cache key being populated */
+    private final ConcurrentMap<CacheKey, CompletableFuture<CachedEventReader<E>>> populations =
+            new ConcurrentHashMap<>();
+
+    private long populationWaitTime = 10000;
+
     private ResourcesElementsProvider resourcesElementsProvider;
     private Ehcache cache;
     private String beanName;
@@ -52,6 +83,15 @@ public abstract class CachingPipelineComponent<R, E> extends PipelineComponentWr
         this.cache = cache;
     }
 
+    /**
+     * Maximum time in milliseconds a request waits for another request that is populating the
+     * same cache entry before calling the wrapped component itself. Defaults to 10 seconds.
+     */
+    @Value("${org.apereo.portal.rendering.cache.populationWaitTime:10000}")
+    public void setPopulationWaitTime(long populationWaitTime) {
+        this.populationWaitTime = populationWaitTime;
+    }
+
     @Override
     public void setBeanName(String name) {
         this.beanName = name;
@@ -86,31 +126,7 @@ public abstract class CachingPipelineComponent<R, E> extends PipelineComponentWr
 
         // If there was a cached reader return it immediately
         if (cachedEventReader == null) {
-            // No cached data for key, call target component to get events and an updated cache key
-            logger.debug(
-                    "{} - No cached events found for key {}, calling parent",
-                    this.beanName,
-                    cacheKey);
-            final PipelineEventReader<R, E> pipelineEventReader =
-                    this.wrappedComponent.getEventReader(request, response);
-
-            // Copy the events from the reader into a buffer to be cached
-            final List<E> eventCache = new LinkedList<E>();
-            for (final E event : pipelineEventReader) {
-                // TODO add de-duplication logic here
-                eventCache.add(event);
-            }
-
-            final Map<String, String> outputProperties = pipelineEventReader.getOutputProperties();
-            cachedEventReader =
-                    new CachedEventReader<E>(
-                            eventCache, new LinkedHashMap<String, String>(outputProperties));
-
-            // Cache the buffer
-            element = new Element(cacheKey, cachedEventReader);
-            this.cache.put(element);
-            logger.debug(
-                    "{} - Cached {} events for key {}", this.beanName, eventCache.size(), cacheKey);
+            cachedEventReader = this.populateCache(cacheKey, request, response);
         } else {
             logger.debug("{} - Found cached events for key {}", this.beanName, cacheKey);
         }
@@ -122,6 +138,215 @@ public abstract class CachingPipelineComponent<R, E> extends PipelineComponentWr
         return new PipelineEventReaderImpl<R, E>(eventReader, outputProperties);
     }
 
+    /**
+     * Populate the cache entry for the key, coalescing with any population of the same key already
+     * running in another thread.
+     */
+    private CachedEventReader<E> populateCache(
+            CacheKey cacheKey, HttpServletRequest request, HttpServletResponse response) {
+        final CompletableFuture<CachedEventReader<E>> population = new CompletableFuture<>();
+        final CompletableFuture<CachedEventReader<E>> runningPopulation =
+                this.populations.putIfAbsent(cacheKey, population);
+
+        if (runningPopulation != null) {
+            final CachedEventReader<E> cachedEventReader =
+                    this.waitForPopulation(cacheKey, runningPopulation);
+            if (cachedEventReader != null) {
+                return cachedEventReader;
+            }
+
+            // The other population didn't produce a result in time, load the events directly
+            return this.loadEvents(cacheKey, request, response);
+        }
+
+        try {
+            final CachedEventReader<E> cachedEventReader =
+                    this.loadEvents(cacheKey, request, response);
+            population.complete(cachedEventReader);
+            return cachedEventReader;
+        } catch (RuntimeException | Error e) {
+            population.completeExceptionally(e);
+            throw e;
+        } finally {
+            this.populations.remove(cacheKey, population);
+        }
+    }
+
+    /**
+     * Wait for a population running in another thread.
+     *
+     * @return The events loaded by the other thread, null if it failed or did not finish within
+     *     the population wait time
+     */
+    private CachedEventReader<E> waitForPopulation(
+            CacheKey cacheKey, CompletableFuture<CachedEventReader<E>> runningPopulation) {
+        this.coalescedWaitCount.incrementAndGet();
+        logger.debug(
+                "{} - Waiting for events being cached by another request for key {}",
+                this.beanName,
+                cacheKey);
+
+        try {
+            return runningPopulation.get(this.populationWaitTime, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            this.populationWaitTimeoutCount.incrementAndGet();
+            logger.warn(
+                    "{} - Timed out after {}ms waiting for events being cached by another request for key {}, calling parent",
+                    this.beanName,
+                    this.populationWaitTime,
+                    cacheKey);
+        } catch (ExecutionException e) {
+            logger.debug(
+                    "{} - Another request failed to cache events for key {}, calling parent",
+                    this.beanName,
+                    cacheKey,
+                    e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.debug(
+                    "{} - Interrupted waiting for events being cached by another request for key {}, calling parent",
+                    this.beanName,
+                    cacheKey);
+        }
+        return null;
+    }
+
+    /** Call the wrapped component and store the resulting events in the cache */
+    private CachedEventReader<E> loadEvents(
+            CacheKey cacheKey, HttpServletRequest request, HttpServletResponse response) {
+        // No cached data for key, call target component to get events and an updated cache key
+        logger.debug(
+                "{} - No cached events found for key {}, calling parent",
+                this.beanName,
+                cacheKey);
+        final PipelineEventReader<R, E> pipelineEventReader =
+                this.wrappedComponent.getEventReader(request, response);
+
+        // Copy the events from the reader into a buffer to be cached, sharing events that are
+        // identical to ones held by other cache entries
+        final ImmutableList.Builder<E> eventCacheBuilder = ImmutableList.builder();
+        long estimatedSize = 0;
+        int eventCount = 0;
+        int sharedCount = 0;
+        for (final E event : pipelineEventReader) {
+            final E cachedEvent = this.prepareEvent(event);
+            final E internedEvent = this.internEvent(cachedEvent);
+            if (internedEvent == cachedEvent) {
+                estimatedSize += this.estimateEventSize(cachedEvent);
+            } else {
+                sharedCount++;
+            }
+            estimatedSize += REFERENCE_SIZE;
+            eventCount++;
+            eventCacheBuilder.add(internedEvent);
+        }
+        final List<E> eventCache = eventCacheBuilder.build();
+        this.cachedEventCount.addAndGet(eventCount);
+        this.sharedEventCount.addAndGet(sharedCount);
+
+        final Map<String, String> outputProperties = pipelineEventReader.getOutputProperties();
+        final CachedEventReader<E> cachedEventReader =
+                new CachedEventReader<E>(
+                        eventCache,
+                        new LinkedHashMap<String, String>(outputProperties),
+                        estimatedSize);
+
+        // Cache the buffer
+        final Element element = new Element(cacheKey, cachedEventReader);
+        this.cache.put(element);
+        logger.debug(
+                "{} - Cached {} events ({} shared, ~{} bytes) for key {}",
+                this.beanName,
+                eventCount,
+                sharedCount,
+                estimatedSize,
+                cacheKey);
+
+        return cachedEventReader;
+    }
+
+    @Override
+    public String getCacheName() {
+        return this.cache.getName();
+    }
+
+    @Override
+    public int getCachedEntryCount() {
+        return this.cache.getSize();
+    }
+
+    @Override
+    public long getEstimatedCacheSize() {
+        long size = 0;
+        for (final Object key : this.cache.getKeys()) {
+            final Element element = this.cache.getQuiet(key);
+            if (element != null) {
+                final CachedEventReader<?> cachedEventReader =
+                        (CachedEventReader<?>) element.getObjectValue();
+                size += cachedEventReader.getEstimatedSize();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public long getCachedEventCount() {
+        return this.cachedEventCount.get();
+    }
+
+    @Override
+    public long getSharedEventCount() {
+        return this.sharedEventCount.get();
+    }
+
+    @Override
+    public long getCoalescedWaitCount() {
+        return this.coalescedWaitCount.get();
+    }
+
+    @Override
+    public long getPopulationWaitTimeoutCount() {
+        return this.populationWaitTimeoutCount.get();
+    }
+
+    @Override
+    public int getRunningPopulationCount() {
+        return this.populations.size();
+    }
+
+    @Override
+    public long getPopulationWaitTime() {
+        return this.populationWaitTime;
+    }
+
     // Ugly!!! Needed because XMLEventReader implements Iterator but does not parameterize it
     protected abstract R createEventReader(ListIterator<E> eventCache);
+
+    /**
+     * Convert an event into the form it is cached in, called before {@link #internEvent(Object)}.
+     * The default implementation returns the event unchanged.
+     */
+    protected E prepareEvent(E event) {
+        return event;
+    }
+
+    /**
+     * Get the shared instance of an event that is about to be cached.
+     *
+     * @return An event identical to the specified event, or the event itself if no identical event
+     *     is held by another cache entry
+     */
+    protected abstract E internEvent(E event);
+
+    /** @return Estimated number of bytes retained by the event, not counting the buffer slot */
+    protected abstract long estimateEventSize(E event);
+
+    /** @return Estimated number of bytes retained by a String */
+    protected static long estimateStringSize(String string) {
+        if (string == null) {
+            return 0;
+        }
+        // String object + char[] header + 2 bytes per char
+        return 24 + 16 + 2L * string.length();
+    }
 }
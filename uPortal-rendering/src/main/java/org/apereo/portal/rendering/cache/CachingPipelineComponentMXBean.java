@@ -0,0 +1,59 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.rendering.cache;
+
+/** JMX view of the event cache held by a {@link CachingPipelineComponent} */
+public interface CachingPipelineComponentMXBean {
+
+    /** @return Name of the cache the events are stored in */
+    String getCacheName();
+
+    /** @return Number of entries currently in the cache */
+    int getCachedEntryCount();
+
+    /**
+     * @return Estimated number of bytes retained by the events in the cache. Events shared between
+     *     entries are only counted once.
+     */
+    long getEstimatedCacheSize();
+
+    /** @return Number of events that have been stored in the cache since startup */
+    long getCachedEventCount();
+
+    /**
+     * @return Number of stored events that were replaced by an identical event already held by
+     *     another cache entry
+     */
+    long getSharedEventCount();
+
+    /**
+     * @return Number of requests that missed the cache while another request was already
+     *     populating the same entry and waited for its result instead of calling the wrapped
+     *     component
+     */
+    long getCoalescedWaitCount();
+
+    /**
+     * @return Number of coalesced waits that timed out, the waiting request then called the
+     *     wrapped component itself
+     */
+    long getPopulationWaitTimeoutCount();
+
+    /** @return Number of cache entries currently being populated */
+    int getRunningPopulationCount();
+
+    /** @return Maximum time in milliseconds a request waits for another request's population */
+    long getPopulationWaitTime();
+}
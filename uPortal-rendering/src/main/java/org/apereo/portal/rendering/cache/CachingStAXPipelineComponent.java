@@ -14,18 +14,77 @@
  */
 package org.apereo.portal.rendering.cache;
 
+import java.util.Iterator;
 import java.util.ListIterator;
+import javax.xml.namespace.QName;
 import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Comment;
+import javax.xml.stream.events.StartElement;
 import javax.xml.stream.events.XMLEvent;
 import org.apereo.portal.rendering.StAXPipelineComponent;
 import org.apereo.portal.xml.stream.XMLEventBufferReader;
+import org.apereo.portal.xml.stream.XMLEventInterner;
 
 /** component that can cache StAX pipeline events */
 public class CachingStAXPipelineComponent extends CachingPipelineComponent<XMLEventReader, XMLEvent>
         implements StAXPipelineComponent {
+    /** Estimated size of an event object with its location */
+    private static final long EVENT_SIZE = 48;
+    /** Estimated size of a QName, its strings are generally shared by the parser */
+    private static final long QNAME_SIZE = 32;
+
+    private final XMLEventInterner eventInterner = new XMLEventInterner();
 
     @Override
     protected XMLEventReader createEventReader(ListIterator<XMLEvent> eventCache) {
         return new XMLEventBufferReader(eventCache);
     }
+
+    @Override
+    protected XMLEvent internEvent(XMLEvent event) {
+        return this.eventInterner.intern(event);
+    }
+
+    @Override
+    protected long estimateEventSize(XMLEvent event) {
+        switch (event.getEventType()) {
+            case XMLStreamConstants.START_ELEMENT:
+                {
+                    final StartElement startElement = event.asStartElement();
+                    long size = EVENT_SIZE + QNAME_SIZE;
+                    for (final Iterator<?> attributes = startElement.getAttributes();
+                            attributes.hasNext(); ) {
+                        final Attribute attribute = (Attribute) attributes.next();
+                        size += EVENT_SIZE + QNAME_SIZE;
+                        size += estimateStringSize(attribute.getValue());
+                    }
+                    for (final Iterator<?> namespaces = startElement.getNamespaces();
+                            namespaces.hasNext(); ) {
+                        namespaces.next();
+                        size += EVENT_SIZE + QNAME_SIZE;
+                    }
+                    return size;
+                }
+            case XMLStreamConstants.END_ELEMENT:
+                {
+                    return EVENT_SIZE + QNAME_SIZE;
+                }
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                {
+                    return EVENT_SIZE + estimateStringSize(event.asCharacters().getData());
+                }
+            case XMLStreamConstants.COMMENT:
+                {
+                    return EVENT_SIZE + estimateStringSize(((Comment) event).getText());
+                }
+            default:
+                {
+                    return EVENT_SIZE;
+                }
+        }
+    }
 }
@@ -0,0 +1,230 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.rendering.xslt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apereo.portal.layout.dao.IStylesheetDescriptorDao;
+import org.apereo.portal.layout.om.IStylesheetDescriptor;
+import org.apereo.portal.xml.XmlUtilities;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ResourceLoaderAware;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Compiles the stylesheet of every {@link IStylesheetDescriptor} when the portal's application
+ * context has been refreshed, so the first requests after a deploy do not pay for XSLT
+ * compilation. The compiled {@link javax.xml.transform.Templates} land in the same cache {@link
+ * BaseTransformerSource} reads from. The stylesheets are compiled in parallel and the listener
+ * does not return until all of them are done, which holds back the end of context startup (and
+ * with it the webapp reporting itself as available) until the warm-up is complete.
+ *
+ * <p>The compiled templates are keyed by stylesheet resource only, the skin and locale are
+ * transformation parameters, so each stylesheet is compiled once regardless of how many skins
+ * and locales use it.
+ *
+ * @since 5.2
+ */
+@Service
+@ManagedResource("uPortal:section=Framework,name=StylesheetWarmup")
+public class StylesheetWarmupService
+        implements ApplicationListener<ContextRefreshedEvent>,
+                ApplicationContextAware,
+                ResourceLoaderAware,
+                StylesheetWarmupServiceMXBean {
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final ConcurrentMap<String, Long> compileTimes = new ConcurrentHashMap<>();
+    private final AtomicInteger failedStylesheetCount = new AtomicInteger();
+    private volatile boolean warmupComplete = false;
+    private volatile long warmupTime = -1;
+
+    private IStylesheetDescriptorDao stylesheetDescriptorDao;
+    private XmlUtilities xmlUtilities;
+    private ResourceLoader resourceLoader;
+    private ApplicationContext applicationContext;
+    private boolean enabled = true;
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+
+    @Autowired
+    public void setStylesheetDescriptorDao(IStylesheetDescriptorDao stylesheetDescriptorDao) {
+        this.stylesheetDescriptorDao = stylesheetDescriptorDao;
+    }
+
+    @Autowired
+    public void setXmlUtilities(XmlUtilities xmlUtilities) {
+        this.xmlUtilities = xmlUtilities;
+    }
+
+    @Override
+    public void setApplicationContext(ApplicationContext applicationContext) {
+        this.applicationContext = applicationContext;
+    }
+
+    @Override
+    public void setResourceLoader(ResourceLoader resourceLoader) {
+        this.resourceLoader = resourceLoader;
+    }
+
+    /** If the stylesheets should be compiled at startup, defaults to true */
+    @Value("${org.apereo.portal.rendering.xslt.StylesheetWarmupService.enabled:true}")
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Number of threads compiling stylesheets during the warm-up, values less than 1 use the
+     * number of available processors
+     */
+    @Value("${org.apereo.portal.rendering.xslt.StylesheetWarmupService.threadCount:-1}")
+    public void setThreadCount(int threadCount) {
+        this.threadCount =
+                threadCount > 0 ? threadCount : Runtime.getRuntime().availableProcessors();
+    }
+
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+        // Child contexts (DispatcherServlets, etc) publish their own refresh events
+        if (!this.enabled
+                || this.warmupComplete
+                || event.getApplicationContext() != this.applicationContext) {
+            return;
+        }
+
+        try {
+            this.warmup();
+        } catch (RuntimeException e) {
+            // Never fail startup, the stylesheets will still be compiled on first use
+            this.logger.warn("Stylesheet warm-up failed, stylesheets will be compiled on use", e);
+        }
+    }
+
+    /** Compile the stylesheet of every stylesheet descriptor, returns once all are done */
+    protected void warmup() {
+        final long start = System.nanoTime();
+
+        final Set<String> stylesheetResources = new LinkedHashSet<>();
+        for (final IStylesheetDescriptor descriptor :
+                this.stylesheetDescriptorDao.getStylesheetDescriptors()) {
+            stylesheetResources.add(descriptor.getStylesheetResource());
+        }
+
+        final ExecutorService executor =
+                Executors.newFixedThreadPool(
+                        Math.max(1, Math.min(this.threadCount, stylesheetResources.size())),
+                        new CustomizableThreadFactory("StylesheetWarmup-"));
+        try {
+            final List<Future<?>> futures = new ArrayList<>(stylesheetResources.size());
+            for (final String stylesheetResource : stylesheetResources) {
+                futures.add(
+                        executor.submit(
+                                new Runnable() {
+                                    @Override
+                                    public void run() {
+                                        compile(stylesheetResource);
+                                    }
+                                }));
+            }
+
+            for (final Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    this.logger.warn("Stylesheet warm-up task failed", e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.logger.warn("Interrupted while waiting for the stylesheet warm-up to complete");
+        } finally {
+            executor.shutdownNow();
+        }
+
+        this.warmupTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        this.warmupComplete = true;
+        this.logger.info(
+                "Compiled {} of {} stylesheets in {}ms",
+                this.compileTimes.size(),
+                stylesheetResources.size(),
+                this.warmupTime);
+    }
+
+    /** Compile a single stylesheet, recording the time it took */
+    protected void compile(String stylesheetResource) {
+        final long start = System.nanoTime();
+        try {
+            final Resource resource = this.resourceLoader.getResource(stylesheetResource);
+            this.xmlUtilities.getTemplates(resource);
+        } catch (Exception e) {
+            this.failedStylesheetCount.incrementAndGet();
+            this.logger.warn(
+                    "Failed to compile stylesheet during warm-up: " + stylesheetResource, e);
+            return;
+        }
+
+        final long compileTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        this.compileTimes.put(stylesheetResource, compileTime);
+        this.logger.debug("Compiled stylesheet {} in {}ms", stylesheetResource, compileTime);
+    }
+
+    @Override
+    public boolean isWarmupComplete() {
+        return this.warmupComplete;
+    }
+
+    @Override
+    public long getWarmupTime() {
+        return this.warmupTime;
+    }
+
+    @Override
+    public int getCompiledStylesheetCount() {
+        return this.compileTimes.size();
+    }
+
+    @Override
+    public int getFailedStylesheetCount() {
+        return this.failedStylesheetCount.get();
+    }
+
+    @Override
+    public Map<String, Long> getCompileTimes() {
+        return Collections.unmodifiableMap(new TreeMap<>(this.compileTimes));
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.rendering.xslt;
+
+import java.util.Map;
+
+/**
+ * JMX view of the stylesheet compilation done by {@link StylesheetWarmupService} at startup
+ *
+ * @since 5.2
+ */
+public interface StylesheetWarmupServiceMXBean {
+
+    /** @return true once every stylesheet has been compiled (or failed to compile) */
+    boolean isWarmupComplete();
+
+    /** @return Wall clock time in milliseconds the warm-up took, -1 if it has not completed */
+    long getWarmupTime();
+
+    /** @return Number of stylesheets that compiled successfully */
+    int getCompiledStylesheetCount();
+
+    /** @return Number of stylesheets that failed to compile */
+    int getFailedStylesheetCount();
+
+    /** @return Compile time in milliseconds of each stylesheet resource that was warmed up */
+    Map<String, Long> getCompileTimes();
+}
@@ -30,7 +30,10 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.portlet.PortletMode;
@@ -100,13 +103,14 @@ public class UrlSyntaxProviderImpl implements IUrlSyntaxProvider {
     static final String FOLDER_PATH_PREFIX = "f";
     static final String REQUEST_TYPE_SUFFIX = ".uP";
 
-    private static final Pattern SLASH_PATTERN = Pattern.compile(SLASH);
     private static final String PORTAL_CANONICAL_URL =
             UrlSyntaxProviderImpl.class.getName() + ".PORTAL_CANONICAL_URL";
     private static final String PORTAL_REQUEST_INFO_ATTR =
             UrlSyntaxProviderImpl.class.getName() + ".PORTAL_REQUEST_INFO";
     private static final String PORTAL_REQUEST_PARSING_IN_PROGRESS_ATTR =
             UrlSyntaxProviderImpl.class.getName() + ".PORTAL_REQUEST_PARSING_IN_PROGRESS";
+    private static final String URL_TEMPLATES_ATTR =
+            UrlSyntaxProviderImpl.class.getName() + ".URL_TEMPLATES";
 
     private static final String CSRF_PARAMETER_NAME = "_csrf";
 
@@ -355,7 +359,7 @@ public class UrlSyntaxProviderImpl implements IUrlSyntaxProvider {
             IPortletWindowId targetedPortletWindowId = null;
             PortletRequestInfoImpl targetedPortletRequestInfo = null;
 
-            final String[] requestPathParts = SLASH_PATTERN.split(requestPath);
+            final String[] requestPathParts = splitPath(requestPath);
 
             UrlState requestedUrlState = null;
             ParseStep parseStep = ParseStep.FOLDER;
@@ -1136,16 +1140,10 @@ public class UrlSyntaxProviderImpl implements IUrlSyntaxProvider {
         // Convert the callback request to the portal request
         request = this.portalRequestUtils.getOriginalPortalRequest(request);
 
-        final IUrlNodeSyntaxHelper urlNodeSyntaxHelper =
-                this.urlNodeSyntaxHelperRegistry.getCurrentUrlNodeSyntaxHelper(request);
-
-        // Get the encoding and create a new URL string builder
+        // Get the encoding and the templates for URLs already generated during this request
         final String encoding = this.getEncoding(request);
-
-        // Add the portal's context path
-        final String contextPath = this.getCleanedContextPath(request);
-        final UrlStringBuilder url =
-                new UrlStringBuilder(encoding, contextPath.length() > 0 ? contextPath : null);
+        final ConcurrentMap<UrlTemplateKey, UrlTemplate> urlTemplates =
+                this.getUrlTemplates(request);
 
         final Map<IPortletWindowId, IPortletUrlBuilder> portletUrlBuilders =
                 portalUrlBuilder.getPortletUrlBuilders();
@@ -1155,27 +1153,16 @@ public class UrlSyntaxProviderImpl implements IUrlSyntaxProvider {
                 portalUrlBuilder.getTargetPortletWindowId();
         final UrlType urlType = portalUrlBuilder.getUrlType();
         final UrlState urlState;
-        final String resourceId;
+        final UrlStringBuilder url;
         if (targetedPortletWindowId != null) {
             final IPortletWindow portletWindow =
                     this.portletWindowRegistry.getPortletWindow(request, targetedPortletWindowId);
-            final IPortletEntity portletEntity = portletWindow.getPortletEntity();
-
-            // Add folder information if available: /f/tabId
-            final String channelSubscribeId = portletEntity.getLayoutNodeId();
-            final List<String> folderNames =
-                    urlNodeSyntaxHelper.getFolderNamesForLayoutNode(request, channelSubscribeId);
-            if (!folderNames.isEmpty()) {
-                url.addPath(FOLDER_PATH_PREFIX);
-                for (final String folderName : folderNames) {
-                    url.addPath(folderName);
-                }
-            }
 
             final IPortletUrlBuilder targetedPortletUrlBuilder =
                     portletUrlBuilders.get(targetedPortletWindowId);
 
             // Determine the resourceId for resource requests
+            final String resourceId;
             if (urlType == UrlType.RESOURCE && targetedPortletUrlBuilder != null) {
                 resourceId = targetedPortletUrlBuilder.getResourceId();
             } else {
@@ -1185,21 +1172,50 @@ public class UrlSyntaxProviderImpl implements IUrlSyntaxProvider {
             // Resource requests will never have a requested window state
             urlState = this.determineUrlState(portletWindow, targetedPortletUrlBuilder);
 
-            final String targetedPortletString =
-                    urlNodeSyntaxHelper.getFolderNameForPortlet(request, targetedPortletWindowId);
-
             // If a non-normal render url or an action/resource url stick the portlet info in the
             // path
-            if ((urlType == UrlType.RENDER && urlState != UrlState.NORMAL)
-                    || urlType == UrlType.ACTION
-                    || urlType == UrlType.RESOURCE) {
-                url.addPath(PORTLET_PATH_PREFIX);
-                url.addPath(targetedPortletString);
+            final boolean portletInPath =
+                    (urlType == UrlType.RENDER && urlState != UrlState.NORMAL)
+                            || urlType == UrlType.ACTION
+                            || urlType == UrlType.RESOURCE;
+
+            final UrlTemplateKey templateKey =
+                    new UrlTemplateKey(
+                            encoding, targetedPortletWindowId, urlType, urlState, resourceId);
+            UrlTemplate template = urlTemplates.get(templateKey);
+            if (template == null) {
+                final IUrlNodeSyntaxHelper urlNodeSyntaxHelper =
+                        this.urlNodeSyntaxHelperRegistry.getCurrentUrlNodeSyntaxHelper(request);
+                final UrlStringBuilder templateUrl = this.createUrlStringBuilder(request, encoding);
+
+                // Add folder information if available: /f/tabId
+                final IPortletEntity portletEntity = portletWindow.getPortletEntity();
+                final String channelSubscribeId = portletEntity.getLayoutNodeId();
+                final List<String> folderNames =
+                        urlNodeSyntaxHelper.getFolderNamesForLayoutNode(
+                                request, channelSubscribeId);
+                this.addFolderPath(templateUrl, folderNames);
+
+                final String targetedPortletString =
+                        urlNodeSyntaxHelper.getFolderNameForPortlet(
+                                request, targetedPortletWindowId);
+                if (portletInPath) {
+                    templateUrl.addPath(PORTLET_PATH_PREFIX);
+                    templateUrl.addPath(targetedPortletString);
+                }
+
+                this.addStateAndTypePath(templateUrl, urlState, urlType, resourceId);
+                template =
+                        this.cacheUrlTemplate(
+                                urlTemplates, templateKey, templateUrl, targetedPortletString);
             }
+
+            url = new UrlStringBuilder(template.url);
+
             // For normal render requests (generally multiple portlets on a page) add the targeted
             // portlet as a parameter
-            else {
-                url.addParameter(PARAM_TARGET_PORTLET, targetedPortletString);
+            if (!portletInPath) {
+                url.addParameter(PARAM_TARGET_PORTLET, template.targetedPortletString);
             }
 
             /*
@@ -1220,27 +1236,25 @@ public class UrlSyntaxProviderImpl implements IUrlSyntaxProvider {
 
         } else {
             final String targetFolderId = portalUrlBuilder.getTargetFolderId();
-            final List<String> folderNames =
-                    urlNodeSyntaxHelper.getFolderNamesForLayoutNode(request, targetFolderId);
-            if (folderNames != null && !folderNames.isEmpty()) {
-                url.addPath(FOLDER_PATH_PREFIX);
-                for (final String folderName : folderNames) {
-                    url.addPath(folderName);
-                }
-            }
-
             urlState = UrlState.NORMAL;
-            resourceId = null;
-        }
 
-        // Add the state of the URL
-        url.addPath(urlState.toLowercaseString());
+            final UrlTemplateKey templateKey =
+                    new UrlTemplateKey(encoding, targetFolderId, urlType, urlState, null);
+            UrlTemplate template = urlTemplates.get(templateKey);
+            if (template == null) {
+                final IUrlNodeSyntaxHelper urlNodeSyntaxHelper =
+                        this.urlNodeSyntaxHelperRegistry.getCurrentUrlNodeSyntaxHelper(request);
+                final UrlStringBuilder templateUrl = this.createUrlStringBuilder(request, encoding);
 
-        // File part specifying the type of URL, resource URLs include the resourceId
-        if (urlType == UrlType.RESOURCE && resourceId != null) {
-            url.addPath(resourceId + "." + urlType.toLowercaseString() + REQUEST_TYPE_SUFFIX);
-        } else {
-            url.addPath(urlType.toLowercaseString() + REQUEST_TYPE_SUFFIX);
+                final List<String> folderNames =
+                        urlNodeSyntaxHelper.getFolderNamesForLayoutNode(request, targetFolderId);
+                this.addFolderPath(templateUrl, folderNames);
+
+                this.addStateAndTypePath(templateUrl, urlState, urlType, null);
+                template = this.cacheUrlTemplate(urlTemplates, templateKey, templateUrl, null);
+            }
+
+            url = new UrlStringBuilder(template.url);
         }
 
         // Add all portal parameters
@@ -1268,6 +1282,78 @@ public class UrlSyntaxProviderImpl implements IUrlSyntaxProvider {
         return url.toString();
     }
 
+    /** Create a URL string builder for the portal's context path */
+    protected UrlStringBuilder createUrlStringBuilder(HttpServletRequest request, String encoding) {
+        final String contextPath = this.getCleanedContextPath(request);
+        return new UrlStringBuilder(encoding, contextPath.length() > 0 ? contextPath : null);
+    }
+
+    /** Add the folder path, /f/folderName/..., if there are any folder names */
+    protected void addFolderPath(UrlStringBuilder url, List<String> folderNames) {
+        if (folderNames != null && !folderNames.isEmpty()) {
+            url.addPath(FOLDER_PATH_PREFIX);
+            for (final String folderName : folderNames) {
+                url.addPath(folderName);
+            }
+        }
+    }
+
+    /** Add the state and the file part specifying the type of the URL */
+    protected void addStateAndTypePath(
+            UrlStringBuilder url, UrlState urlState, UrlType urlType, String resourceId) {
+        // Add the state of the URL
+        url.addPath(urlState.toLowercaseString());
+
+        // File part specifying the type of URL, resource URLs include the resourceId
+        if (urlType == UrlType.RESOURCE && resourceId != null) {
+            url.addPath(resourceId + "." + urlType.toLowercaseString() + REQUEST_TYPE_SUFFIX);
+        } else {
+            url.addPath(urlType.toLowercaseString() + REQUEST_TYPE_SUFFIX);
+        }
+    }
+
+    /**
+     * Get the URL templates for the request. The templates hold the path of URLs that were already
+     * generated during the request, which only depends on the layout and the targeted portlet or
+     * folder, so further URLs for the same target only need their parameters added. Portlets
+     * rendering in parallel share the templates so the returned map is thread safe.
+     */
+    @SuppressWarnings("unchecked")
+    protected ConcurrentMap<UrlTemplateKey, UrlTemplate> getUrlTemplates(
+            HttpServletRequest request) {
+        ConcurrentMap<UrlTemplateKey, UrlTemplate> urlTemplates =
+                (ConcurrentMap<UrlTemplateKey, UrlTemplate>)
+                        request.getAttribute(URL_TEMPLATES_ATTR);
+        if (urlTemplates != null) {
+            return urlTemplates;
+        }
+
+        synchronized (PortalWebUtils.getRequestAttributeMutex(request)) {
+            urlTemplates =
+                    (ConcurrentMap<UrlTemplateKey, UrlTemplate>)
+                            request.getAttribute(URL_TEMPLATES_ATTR);
+            if (urlTemplates == null) {
+                urlTemplates = new ConcurrentHashMap<UrlTemplateKey, UrlTemplate>();
+                request.setAttribute(URL_TEMPLATES_ATTR, urlTemplates);
+            }
+            return urlTemplates;
+        }
+    }
+
+    /**
+     * Store a URL template for the request, if another thread stored a template for the same key
+     * first that template is returned
+     */
+    protected UrlTemplate cacheUrlTemplate(
+            ConcurrentMap<UrlTemplateKey, UrlTemplate> urlTemplates,
+            UrlTemplateKey templateKey,
+            UrlStringBuilder templateUrl,
+            String targetedPortletString) {
+        final UrlTemplate template = new UrlTemplate(templateUrl, targetedPortletString);
+        final UrlTemplate existingTemplate = urlTemplates.putIfAbsent(templateKey, template);
+        return existingTemplate != null ? existingTemplate : template;
+    }
+
     /** Add the provided portlet url builder data to the url string builder */
     protected void addPortletUrlData(
             final HttpServletRequest request,
@@ -1460,6 +1546,39 @@ public class UrlSyntaxProviderImpl implements IUrlSyntaxProvider {
         return this.defaultEncoding;
     }
 
+    /**
+     * Split a request path on /, equivalent to {@link String#split(String)} with "/" but without
+     * the regular expression machinery. Leading and inner empty parts are kept, trailing empty
+     * parts are dropped.
+     */
+    static String[] splitPath(String path) {
+        // Drop trailing slashes, they would only produce trailing empty parts
+        int end = path.length();
+        while (end > 0 && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        if (end == 0) {
+            return path.isEmpty() ? new String[] {""} : new String[0];
+        }
+
+        int partCount = 1;
+        for (int i = 0; i < end; i++) {
+            if (path.charAt(i) == '/') {
+                partCount++;
+            }
+        }
+
+        final String[] parts = new String[partCount];
+        int start = 0;
+        for (int part = 0; part < partCount - 1; part++) {
+            final int slash = path.indexOf('/', start);
+            parts[part] = path.substring(start, slash);
+            start = slash + 1;
+        }
+        parts[partCount - 1] = path.substring(start, end);
+        return parts;
+    }
+
     protected String getCleanedContextPath(HttpServletRequest request) {
         String contextPath = request.getContextPath();
 
@@ -1606,4 +1725,64 @@ public class UrlSyntaxProviderImpl implements IUrlSyntaxProvider {
             return folder.equals(other.folder);
         }
     }
+
+    /** Identifies the URLs generated during a request that share their path */
+    protected static final class UrlTemplateKey {
+        private final String encoding;
+        private final Object target;
+        private final UrlType urlType;
+        private final UrlState urlState;
+        private final String resourceId;
+        private final int hash;
+
+        /**
+         * @param target The targeted {@link IPortletWindowId} or the id of the targeted folder
+         */
+        public UrlTemplateKey(
+                String encoding,
+                Object target,
+                UrlType urlType,
+                UrlState urlState,
+                String resourceId) {
+            this.encoding = encoding;
+            this.target = target;
+            this.urlType = urlType;
+            this.urlState = urlState;
+            this.resourceId = resourceId;
+            this.hash = Objects.hash(encoding, target, urlType, urlState, resourceId);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof UrlTemplateKey)) {
+                return false;
+            }
+            final UrlTemplateKey other = (UrlTemplateKey) obj;
+            return this.hash == other.hash
+                    && this.urlType == other.urlType
+                    && this.urlState == other.urlState
+                    && Objects.equals(this.encoding, other.encoding)
+                    && Objects.equals(this.target, other.target)
+                    && Objects.equals(this.resourceId, other.resourceId);
+        }
+    }
+
+    /** Path of the URLs generated for a {@link UrlTemplateKey}, copied for each URL */
+    protected static final class UrlTemplate {
+        private final UrlStringBuilder url;
+        private final String targetedPortletString;
+
+        public UrlTemplate(UrlStringBuilder url, String targetedPortletString) {
+            this.url = url;
+            this.targetedPortletString = targetedPortletString;
+        }
+    }
 }
@@ -0,0 +1,197 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlet.container.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Set;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import org.apereo.portal.utils.cache.CacheEntryTag;
+import org.apereo.portal.utils.cache.SimpleCacheEntryTag;
+import org.apereo.portal.utils.cache.TaggedCacheEntry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OffHeapPortletOutputStoreTest {
+    private CacheManager cacheManager;
+    private Cache cache;
+    private OffHeapPortletOutputStore offHeapStore;
+
+    @Before
+    public void setup() {
+        cacheManager = new CacheManager(new Configuration().name("OffHeapPortletOutputStoreTest"));
+        cache =
+                new Cache(
+                        new CacheConfiguration("output", 1)
+                                .timeToIdleSeconds(300)
+                                .memoryStoreEvictionPolicy("LRU"));
+        cacheManager.addCache(cache);
+
+        offHeapStore = new OffHeapPortletOutputStore(cache, 4096);
+        cache.getCacheEventNotificationService().registerListener(offHeapStore);
+    }
+
+    @After
+    public void shutdown() {
+        cacheManager.shutdown();
+    }
+
+    @Test
+    public void testEvictedOutputIsPromoted() {
+        cache.put(new Element("a", createData("<p>a</p>")));
+        cache.put(new Element("b", createData("<p>b</p>")));
+
+        // Only one element fits on the heap, a was evicted to the off-heap store
+        assertNull(cache.get("a"));
+        assertEquals(1, offHeapStore.getEntryCount());
+
+        final Element element = offHeapStore.promote("a");
+        assertNotNull(element);
+        final CachedPortletData<?> data = (CachedPortletData<?>) element.getObjectValue();
+        assertEquals("<p>a</p>", data.getCachedWriterOutput());
+
+        // a is back on the heap, b was evicted in its place
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(1, offHeapStore.getEntryCount());
+        assertEquals(1, offHeapStore.getOffHeapHitCount());
+    }
+
+    @Test
+    public void testPutReplacesStoredOutput() {
+        cache.put(new Element("a", createData("old")));
+        cache.put(new Element("b", createData("b")));
+        cache.put(new Element("a", createData("new")));
+
+        // The new a evicted b, the old a must not come back
+        assertEquals(1, offHeapStore.getEntryCount());
+        assertNull(offHeapStore.promote("c"));
+        assertNotNull(offHeapStore.promote("b"));
+
+        // Promoting b evicted the new a
+        final Element element = offHeapStore.promote("a");
+        final CachedPortletData<?> data = (CachedPortletData<?>) element.getObjectValue();
+        assertEquals("new", data.getCachedWriterOutput());
+    }
+
+    @Test
+    public void testSizeLimitAndPurge() {
+        final StringBuilder markup = new StringBuilder();
+        for (int i = 0; i < 150; i++) {
+            markup.append("<li>item</li>");
+        }
+
+        // Each entry is a little over 2KB serialized, only one fits in the 4KB store
+        for (int i = 0; i < 4; i++) {
+            cache.put(new Element(createKey(i), createData(markup.toString())));
+        }
+        assertEquals(1, offHeapStore.getEntryCount());
+        assertEquals(2, offHeapStore.getEvictionCount());
+
+        assertEquals(1, offHeapStore.purgeCacheEntries(createKey(2).getTags().iterator().next()));
+        assertEquals(0, offHeapStore.getEntryCount());
+        assertEquals(0, offHeapStore.getStoredBytes());
+    }
+
+    @Test
+    public void testArenaIsReused() {
+        // Entries of one to three blocks, far more than the four block arena holds
+        for (int i = 0; i < 30; i++) {
+            cache.put(new Element("k" + i, createData(createMarkup(i))));
+            assertTrue(offHeapStore.getArenaBytes() <= 4096);
+        }
+        assertEquals(4096, offHeapStore.getArenaBytes());
+
+        // k28 was the last element evicted, its blocks were reused many times over
+        final Element element = offHeapStore.promote("k28");
+        final CachedPortletData<?> data = (CachedPortletData<?>) element.getObjectValue();
+        assertEquals(createMarkup(28), data.getCachedWriterOutput());
+    }
+
+    @Test
+    public void testIdleExpirationRestored() {
+        cache.put(new Element("a", createData("a")));
+        cache.put(new Element("b", createData("b")));
+        assertNotNull(offHeapStore.promote("a"));
+
+        // Still expires on idle time only, as configured for the cache
+        final Element element = cache.get("a");
+        assertEquals(0, element.getTimeToLive());
+        assertEquals(300, element.getTimeToIdle());
+    }
+
+    @Test
+    public void testElementLifespanRestored() {
+        final Element original = new Element("a", createData("a"));
+        original.setTimeToLive(600);
+        original.setTimeToIdle(120);
+        cache.put(original);
+        cache.put(new Element("b", createData("b")));
+
+        final Element element = offHeapStore.promote("a");
+        assertEquals(120, element.getTimeToIdle());
+        assertTrue(element.getTimeToLive() > 0 && element.getTimeToLive() <= 600);
+    }
+
+    private String createMarkup(int i) {
+        final StringBuilder markup = new StringBuilder();
+        for (int j = 0; j < (i % 3 + 1) * 60; j++) {
+            markup.append("<li>").append(i).append("</li>");
+        }
+        return markup.toString();
+    }
+
+    private CachedPortletData<Long> createData(String markup) {
+        return new CachedPortletData<Long>(0L, markup, null, "text/html", true, null, -1);
+    }
+
+    private TestKey createKey(int i) {
+        return new TestKey(i);
+    }
+
+    private static final class TestKey implements Serializable, TaggedCacheEntry {
+        private final int id;
+
+        TestKey(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public Set<CacheEntryTag> getTags() {
+            return Collections.<CacheEntryTag>singleton(
+                    new SimpleCacheEntryTag<Integer>("test", this.id));
+        }
+
+        @Override
+        public int hashCode() {
+            return this.id;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof TestKey && ((TestKey) obj).id == this.id;
+        }
+    }
+}
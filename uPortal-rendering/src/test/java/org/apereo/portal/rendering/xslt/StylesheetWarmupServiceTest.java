@@ -0,0 +1,157 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.rendering.xslt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableSet;
+import java.util.Arrays;
+import java.util.List;
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+import org.apereo.portal.layout.dao.IStylesheetDescriptorDao;
+import org.apereo.portal.layout.om.IStylesheetDescriptor;
+import org.apereo.portal.xml.XmlUtilities;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+
+public class StylesheetWarmupServiceTest {
+    private IStylesheetDescriptorDao stylesheetDescriptorDao;
+    private XmlUtilities xmlUtilities;
+    private ApplicationContext applicationContext;
+    private StylesheetWarmupService warmupService;
+
+    @Before
+    public void setup() throws Exception {
+        this.stylesheetDescriptorDao = mock(IStylesheetDescriptorDao.class);
+        this.xmlUtilities = mock(XmlUtilities.class);
+        this.applicationContext = mock(ApplicationContext.class);
+
+        final List<IStylesheetDescriptor> descriptors =
+                Arrays.asList(
+                        mockDescriptor("classpath:/layout/structure/structure.xsl"),
+                        mockDescriptor("classpath:/layout/theme/theme.xsl"),
+                        mockDescriptor("classpath:/layout/theme/theme.xsl"),
+                        mockDescriptor("classpath:/layout/theme/broken.xsl"));
+        when(this.stylesheetDescriptorDao.getStylesheetDescriptors())
+                .thenAnswer(
+                        new Answer<List<IStylesheetDescriptor>>() {
+                            @Override
+                            public List<IStylesheetDescriptor> answer(
+                                    InvocationOnMock invocation) {
+                                return descriptors;
+                            }
+                        });
+        when(this.xmlUtilities.getTemplates(any(Resource.class)))
+                .thenAnswer(
+                        new Answer<Templates>() {
+                            @Override
+                            public Templates answer(InvocationOnMock invocation)
+                                    throws Exception {
+                                final Resource resource =
+                                        (Resource) invocation.getArguments()[0];
+                                if ("broken.xsl".equals(resource.getFilename())) {
+                                    throw new TransformerConfigurationException("broken");
+                                }
+                                return mock(Templates.class);
+                            }
+                        });
+
+        this.warmupService = new StylesheetWarmupService();
+        this.warmupService.setStylesheetDescriptorDao(this.stylesheetDescriptorDao);
+        this.warmupService.setXmlUtilities(this.xmlUtilities);
+        this.warmupService.setResourceLoader(new DefaultResourceLoader());
+        this.warmupService.setApplicationContext(this.applicationContext);
+        this.warmupService.setThreadCount(4);
+    }
+
+    @Test
+    public void testSharedStylesheetsCompiledOnce() throws Exception {
+        this.warmupService.onApplicationEvent(new ContextRefreshedEvent(this.applicationContext));
+
+        // Two descriptors share theme.xsl, it is only compiled once
+        verify(this.xmlUtilities, times(3)).getTemplates(any(Resource.class));
+        assertTrue(this.warmupService.isWarmupComplete());
+        assertTrue(this.warmupService.getWarmupTime() >= 0);
+        assertEquals(2, this.warmupService.getCompiledStylesheetCount());
+        assertEquals(
+                ImmutableSet.of(
+                        "classpath:/layout/structure/structure.xsl",
+                        "classpath:/layout/theme/theme.xsl"),
+                this.warmupService.getCompileTimes().keySet());
+    }
+
+    @Test
+    public void testFailuresCounted() throws Exception {
+        this.warmupService.onApplicationEvent(new ContextRefreshedEvent(this.applicationContext));
+
+        assertTrue(this.warmupService.isWarmupComplete());
+        assertEquals(1, this.warmupService.getFailedStylesheetCount());
+        assertFalse(
+                this.warmupService
+                        .getCompileTimes()
+                        .containsKey("classpath:/layout/theme/broken.xsl"));
+    }
+
+    @Test
+    public void testChildContextIgnoredAndWarmupRunsOnce() throws Exception {
+        final ApplicationContext childContext = mock(ApplicationContext.class);
+        when(childContext.getParent()).thenReturn(this.applicationContext);
+
+        this.warmupService.onApplicationEvent(new ContextRefreshedEvent(childContext));
+        verify(this.stylesheetDescriptorDao, never()).getStylesheetDescriptors();
+        assertFalse(this.warmupService.isWarmupComplete());
+        assertEquals(-1, this.warmupService.getWarmupTime());
+
+        this.warmupService.onApplicationEvent(new ContextRefreshedEvent(this.applicationContext));
+        this.warmupService.onApplicationEvent(new ContextRefreshedEvent(childContext));
+        this.warmupService.onApplicationEvent(new ContextRefreshedEvent(this.applicationContext));
+
+        verify(this.stylesheetDescriptorDao, times(1)).getStylesheetDescriptors();
+        verify(this.xmlUtilities, times(3)).getTemplates(any(Resource.class));
+        assertEquals(2, this.warmupService.getCompiledStylesheetCount());
+        assertEquals(1, this.warmupService.getFailedStylesheetCount());
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        this.warmupService.setEnabled(false);
+        this.warmupService.onApplicationEvent(new ContextRefreshedEvent(this.applicationContext));
+
+        verify(this.stylesheetDescriptorDao, never()).getStylesheetDescriptors();
+        assertFalse(this.warmupService.isWarmupComplete());
+        assertEquals(0, this.warmupService.getCompiledStylesheetCount());
+    }
+
+    private IStylesheetDescriptor mockDescriptor(String stylesheetResource) {
+        final IStylesheetDescriptor descriptor = mock(IStylesheetDescriptor.class);
+        when(descriptor.getStylesheetResource()).thenReturn(stylesheetResource);
+        return descriptor;
+    }
+}
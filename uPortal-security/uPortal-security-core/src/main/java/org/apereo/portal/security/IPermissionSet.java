@@ -14,6 +14,7 @@
  */
 package org.apereo.portal.security;
 
+import java.util.Set;
 import org.apereo.portal.IBasicEntity;
 
 /**
@@ -22,4 +23,18 @@ import org.apereo.portal.IBasicEntity;
  */
 public interface IPermissionSet extends IBasicEntity {
     public IPermission[] getPermissions();
+
+    /**
+     * Returns the permissions in the set matching the owner, activity and target. Null parameters
+     * match any value. When a target is given, permissions granted on one of the <code>
+     * targetGroups</code> also match.
+     *
+     * @param owner permission owner, may be null
+     * @param activity permission activity, may be null
+     * @param target permission target, may be null
+     * @param targetGroups keys of the groups containing the target, may be null
+     * @return the matching permissions in the order they appear in {@link #getPermissions()}
+     */
+    public IPermission[] getPermissions(
+            String owner, String activity, String target, Set<String> targetGroups);
 }
@@ -14,7 +14,14 @@
  */
 package org.apereo.portal.security.provider;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import org.apereo.portal.EntityIdentifier;
 import org.apereo.portal.security.IAuthorizationPrincipal;
 import org.apereo.portal.security.IPermission;
@@ -26,12 +33,19 @@ import org.apereo.portal.security.IPermissionSet;
  *
  * <p>Separating caching of principals and permissions lets a client keep a reference to a principal
  * over time while being guaranteed the latest version of its permissions.
+ *
+ * <p>Lookups that specify both an owner and an activity use an index keyed by owner, activity and
+ * target which is built the first time such a lookup is made. The target and each of its
+ * containing groups are then probed directly instead of scanning every permission in the set.
  */
 public class PermissionSetImpl implements IPermissionSet {
 
     private EntityIdentifier entityIdentifier;
     private IPermission[] permissions;
     private static Class IPS_TYPE = IPermissionSet.class;
+    private static final IPermission[] NO_PERMISSIONS = new IPermission[0];
+
+    private volatile Map<String, Map<String, ActivityPermissions>> index;
 
     public PermissionSetImpl(IPermission[] perms, IAuthorizationPrincipal principal) {
         this(perms, principal.getPrincipalString(), IPS_TYPE);
@@ -48,6 +62,187 @@ public class PermissionSetImpl implements IPermissionSet {
         return permissions;
     }
 
+    @Override
+    public IPermission[] getPermissions(
+            String owner, String activity, String target, Set<String> targetGroups) {
+        if (owner == null && activity == null && target == null) {
+            return permissions;
+        }
+        if (owner == null || activity == null) {
+            return scan(owner, activity, target, targetGroups);
+        }
+
+        final Map<String, ActivityPermissions> ownerPermissions = getIndex().get(owner);
+        if (ownerPermissions == null) {
+            return NO_PERMISSIONS;
+        }
+        final ActivityPermissions activityPermissions = ownerPermissions.get(activity);
+        if (activityPermissions == null) {
+            return NO_PERMISSIONS;
+        }
+        return activityPermissions.getPermissions(target, targetGroups);
+    }
+
+    /** Linear search used for lookups the index does not cover */
+    private IPermission[] scan(
+            String owner, String activity, String target, Set<String> targetGroups) {
+        final List<IPermission> result = new ArrayList<>();
+        for (final IPermission permission : permissions) {
+            if ((owner == null || owner.equals(permission.getOwner()))
+                    && (activity == null || activity.equals(permission.getActivity()))
+                    && (target == null
+                            || target.equals(permission.getTarget())
+                            || (targetGroups != null
+                                    && targetGroups.contains(permission.getTarget())))) {
+                result.add(permission);
+            }
+        }
+        return result.toArray(new IPermission[result.size()]);
+    }
+
+    private Map<String, Map<String, ActivityPermissions>> getIndex() {
+        Map<String, Map<String, ActivityPermissions>> index = this.index;
+        if (index == null) {
+            index = buildIndex(permissions);
+            this.index = index;
+        }
+        return index;
+    }
+
+    private static Map<String, Map<String, ActivityPermissions>> buildIndex(
+            IPermission[] permissions) {
+        final Map<String, Map<String, List<IPermission>>> grouped = new LinkedHashMap<>();
+        for (final IPermission permission : permissions) {
+            Map<String, List<IPermission>> ownerPermissions = grouped.get(permission.getOwner());
+            if (ownerPermissions == null) {
+                ownerPermissions = new LinkedHashMap<>();
+                grouped.put(permission.getOwner(), ownerPermissions);
+            }
+            List<IPermission> activityPermissions =
+                    ownerPermissions.get(permission.getActivity());
+            if (activityPermissions == null) {
+                activityPermissions = new ArrayList<>();
+                ownerPermissions.put(permission.getActivity(), activityPermissions);
+            }
+            activityPermissions.add(permission);
+        }
+
+        final Map<String, Map<String, ActivityPermissions>> index =
+                new HashMap<>(grouped.size() * 2);
+        for (final Map.Entry<String, Map<String, List<IPermission>>> ownerEntry :
+                grouped.entrySet()) {
+            final Map<String, ActivityPermissions> ownerIndex =
+                    new HashMap<>(ownerEntry.getValue().size() * 2);
+            for (final Map.Entry<String, List<IPermission>> activityEntry :
+                    ownerEntry.getValue().entrySet()) {
+                final List<IPermission> activityPermissions = activityEntry.getValue();
+                ownerIndex.put(
+                        activityEntry.getKey(),
+                        new ActivityPermissions(
+                                activityPermissions.toArray(
+                                        new IPermission[activityPermissions.size()])));
+            }
+            index.put(ownerEntry.getKey(), ownerIndex);
+        }
+        return index;
+    }
+
+    /** The permissions for one owner and activity, indexed by target */
+    private static final class ActivityPermissions {
+        private final IPermission[] permissions;
+        /** Positions in permissions of the permissions granted on each target */
+        private final Map<String, int[]> targetPositions;
+
+        ActivityPermissions(IPermission[] permissions) {
+            this.permissions = permissions;
+
+            final Map<String, List<Integer>> positions = new HashMap<>();
+            for (int i = 0; i < permissions.length; i++) {
+                final String target = permissions[i].getTarget();
+                List<Integer> targetPositions = positions.get(target);
+                if (targetPositions == null) {
+                    targetPositions = new ArrayList<>(1);
+                    positions.put(target, targetPositions);
+                }
+                targetPositions.add(i);
+            }
+
+            this.targetPositions = new HashMap<>(positions.size() * 2);
+            for (final Map.Entry<String, List<Integer>> entry : positions.entrySet()) {
+                final List<Integer> targetPositions = entry.getValue();
+                final int[] array = new int[targetPositions.size()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = targetPositions.get(i);
+                }
+                this.targetPositions.put(entry.getKey(), array);
+            }
+        }
+
+        IPermission[] getPermissions(String target, Set<String> targetGroups) {
+            if (target == null) {
+                return permissions.clone();
+            }
+
+            final List<int[]> matches = new ArrayList<>();
+            addMatch(targetPositions.get(target), matches);
+            if (targetGroups != null && !targetGroups.isEmpty()) {
+                if (targetGroups.size() < targetPositions.size()) {
+                    // Probe each containing group
+                    for (final String group : targetGroups) {
+                        if (!Objects.equals(group, target)) {
+                            addMatch(targetPositions.get(group), matches);
+                        }
+                    }
+                } else {
+                    // Fewer targets than groups, check each target against the groups. Permissions
+                    // without a target are indexed under null.
+                    for (final Map.Entry<String, int[]> entry : targetPositions.entrySet()) {
+                        if (!Objects.equals(entry.getKey(), target)
+                                && targetGroups.contains(entry.getKey())) {
+                            addMatch(entry.getValue(), matches);
+                        }
+                    }
+                }
+            }
+
+            switch (matches.size()) {
+                case 0:
+                    return NO_PERMISSIONS;
+                case 1:
+                    return toPermissions(matches.get(0));
+                default:
+                    // Each target has its own positions so the merged positions are distinct,
+                    // sort them to keep the permissions in their original order
+                    int matchCount = 0;
+                    for (final int[] positions : matches) {
+                        matchCount += positions.length;
+                    }
+                    final int[] merged = new int[matchCount];
+                    int offset = 0;
+                    for (final int[] positions : matches) {
+                        System.arraycopy(positions, 0, merged, offset, positions.length);
+                        offset += positions.length;
+                    }
+                    Arrays.sort(merged);
+                    return toPermissions(merged);
+            }
+        }
+
+        private static void addMatch(int[] positions, List<int[]> matches) {
+            if (positions != null) {
+                matches.add(positions);
+            }
+        }
+
+        private IPermission[] toPermissions(int[] positions) {
+            final IPermission[] result = new IPermission[positions.length];
+            for (int i = 0; i < positions.length; i++) {
+                result[i] = permissions[positions[i]];
+            }
+            return result;
+        }
+    }
+
     /** @return EntityIdentifier IPermission[] */
     @Override
     public EntityIdentifier getEntityIdentifier() {
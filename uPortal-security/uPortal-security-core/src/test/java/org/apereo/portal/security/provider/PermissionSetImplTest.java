@@ -0,0 +1,140 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.security.provider;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.apereo.portal.security.IPermission;
+import org.apereo.portal.security.IPermissionSet;
+import org.junit.Test;
+
+public class PermissionSetImplTest {
+    private static final String[] OWNERS = {"UP_PORTLET_SUBSCRIBE", "UP_SYSTEM", null};
+    private static final String[] ACTIVITIES = {"SUBSCRIBE", "BROWSE", "ALL_PERMISSIONS"};
+
+    @Test
+    public void testTargetAndContainingGroups() {
+        final IPermission p1 = newPermission("O", "A", "PORTLET_ID.1");
+        final IPermission p2 = newPermission("O", "A", "local.2");
+        final IPermission p3 = newPermission("O", "B", "PORTLET_ID.1");
+        final IPermission p4 = newPermission("O", "A", "local.3");
+        final IPermission p5 = newPermission("O", "A", "PORTLET_ID.1");
+        final IPermissionSet ps =
+                new PermissionSetImpl(
+                        new IPermission[] {p1, p2, p3, p4, p5}, "key", IPermissionSet.class);
+
+        assertArrayEquals(
+                new IPermission[] {p1, p5},
+                ps.getPermissions("O", "A", "PORTLET_ID.1", Collections.<String>emptySet()));
+        assertArrayEquals(
+                new IPermission[] {p1, p2, p4, p5},
+                ps.getPermissions(
+                        "O",
+                        "A",
+                        "PORTLET_ID.1",
+                        new HashSet<>(Arrays.asList("local.3", "local.2"))));
+        assertArrayEquals(
+                new IPermission[] {p1, p2, p4, p5},
+                ps.getPermissions("O", "A", null, Collections.<String>emptySet()));
+        assertArrayEquals(
+                new IPermission[] {p1, p3, p5},
+                ps.getPermissions(null, null, "PORTLET_ID.1", null));
+        assertEquals(0, ps.getPermissions("X", "A", "PORTLET_ID.1", null).length);
+        assertSame(ps.getPermissions(), ps.getPermissions(null, null, null, null));
+    }
+
+    @Test
+    public void testPermissionsWithoutTarget() {
+        final IPermission p1 = newPermission("O", "A", null);
+        final IPermission p2 = newPermission("O", "A", "local.2");
+        final IPermission p3 = newPermission("O", "A", "PORTLET_ID.1");
+        final IPermissionSet ps =
+                new PermissionSetImpl(new IPermission[] {p1, p2, p3}, "key", IPermissionSet.class);
+
+        // More groups than targets, each target is checked against the groups
+        final Set<String> groups =
+                new HashSet<>(Arrays.asList("local.2", "local.3", "local.4", "local.5"));
+        assertArrayEquals(
+                new IPermission[] {p2, p3}, ps.getPermissions("O", "A", "PORTLET_ID.1", groups));
+        assertArrayEquals(new IPermission[] {p2}, ps.getPermissions("O", "A", "local.6", groups));
+        assertArrayEquals(
+                new IPermission[] {p1, p2, p3},
+                ps.getPermissions("O", "A", null, Collections.<String>emptySet()));
+    }
+
+    @Test
+    public void testIndexMatchesScan() {
+        final Random random = new Random(7);
+        final IPermission[] permissions = new IPermission[2000];
+        for (int i = 0; i < permissions.length; i++) {
+            permissions[i] =
+                    newPermission(
+                            OWNERS[random.nextInt(OWNERS.length)],
+                            ACTIVITIES[random.nextInt(ACTIVITIES.length)],
+                            random.nextInt(10) == 0 ? null : "t" + random.nextInt(50));
+        }
+        final IPermissionSet ps = new PermissionSetImpl(permissions, "key", IPermissionSet.class);
+
+        for (int i = 0; i < 500; i++) {
+            final String owner = OWNERS[random.nextInt(OWNERS.length)];
+            final String activity = ACTIVITIES[random.nextInt(ACTIVITIES.length)];
+            final String target = random.nextInt(5) == 0 ? null : "t" + random.nextInt(60);
+            final Set<String> groups = new HashSet<>();
+            final int groupCount = random.nextInt(80);
+            for (int j = 0; j < groupCount; j++) {
+                groups.add("t" + random.nextInt(60));
+            }
+
+            assertArrayEquals(
+                    scan(permissions, owner, activity, target, groups),
+                    ps.getPermissions(owner, activity, target, groups));
+        }
+    }
+
+    private static IPermission[] scan(
+            IPermission[] permissions,
+            String owner,
+            String activity,
+            String target,
+            Set<String> groups) {
+        final List<IPermission> result = new ArrayList<>();
+        for (final IPermission permission : permissions) {
+            if ((owner == null || owner.equals(permission.getOwner()))
+                    && (activity == null || activity.equals(permission.getActivity()))
+                    && (target == null
+                            || target.equals(permission.getTarget())
+                            || groups.contains(permission.getTarget()))) {
+                result.add(permission);
+            }
+        }
+        return result.toArray(new IPermission[result.size()]);
+    }
+
+    private static IPermission newPermission(String owner, String activity, String target) {
+        final PermissionImpl permission = new PermissionImpl(owner);
+        permission.setActivity(activity);
+        permission.setTarget(target);
+        return permission;
+    }
+}
@@ -968,13 +968,14 @@ public class AuthorizationImpl implements IAuthorizationService {
      * Returns permissions for a principal. First check the entity caching service, and if the
      * permissions have not been cached, retrieve and cache them.
      *
-     * @return IPermission[]
+     * @return IPermissionSet
      * @param principal org.apereo.portal.security.IAuthorizationPrincipal
      */
-    private IPermission[] primGetPermissionsForPrincipal(IAuthorizationPrincipal principal)
+    private IPermissionSet primGetPermissionSetForPrincipal(IAuthorizationPrincipal principal)
             throws AuthorizationException {
         if (!this.cachePermissions) {
-            return getUncachedPermissionsForPrincipal(principal, null, null, null);
+            return new PermissionSetImpl(
+                    getUncachedPermissionsForPrincipal(principal, null, null, null), principal);
         }
 
         IPermissionSet ps = null;
@@ -991,7 +992,7 @@ public class AuthorizationImpl implements IAuthorizationService {
                     cacheAdd(ps);
                 }
             } // end synchronized
-        return ps.getPermissions();
+        return ps;
     }
 
     /**
@@ -1006,11 +1007,12 @@ public class AuthorizationImpl implements IAuthorizationService {
             throws AuthorizationException {
 
         /*
-         * Get a list of all permissions for the specified principal, then iterate
-         * through them to build a list of the permissions matching the specified criteria.
+         * Get the set of all permissions for the specified principal, then look up the
+         * permissions matching the specified criteria.
          */
 
-        IPermission[] perms = primGetPermissionsForPrincipal(principal);
+        final IPermissionSet ps = primGetPermissionSetForPrincipal(principal);
+        IPermission[] perms = ps.getPermissions();
         if (owner == null && activity == null && target == null) {
             return perms;
         }
@@ -1088,26 +1090,8 @@ public class AuthorizationImpl implements IAuthorizationService {
             containingGroups = new HashSet<>();
         }
 
-        List<IPermission> al = new ArrayList<>(perms.length);
-
-        for (int i = 0; i < perms.length; i++) {
-            String permissionTarget = perms[i].getTarget();
-
-            if (
-            // owner matches
-            (owner == null || owner.equals(perms[i].getOwner()))
-                    &&
-                    // activity matches
-                    (activity == null || activity.equals(perms[i].getActivity()))
-                    &&
-                    // target matches or is a member of the current permission target
-                    (target == null
-                            || target.equals(permissionTarget)
-                            || containingGroups.contains(permissionTarget))) {
-
-                al.add(perms[i]);
-            }
-        }
+        final IPermission[] result =
+                ps.getPermissions(owner, activity, target, containingGroups);
 
         logger.trace(
                 "AuthorizationImpl.primGetPermissionsForPrincipal(): "
@@ -1116,7 +1100,7 @@ public class AuthorizationImpl implements IAuthorizationService {
                 owner,
                 activity,
                 target,
-                al);
+                Arrays.asList(result));
         logger.debug(
                 "AuthorizationImpl.primGetPermissionsForPrincipal(): "
                         + "Principal: {} owner: {} activity: {} target: {} : number of permissions retrieved: {}",
@@ -1124,9 +1108,9 @@ public class AuthorizationImpl implements IAuthorizationService {
                 owner,
                 activity,
                 target,
-                al.size());
+                result.length);
 
-        return ((IPermission[]) al.toArray(new IPermission[al.size()]));
+        return result;
     }
 
     /**
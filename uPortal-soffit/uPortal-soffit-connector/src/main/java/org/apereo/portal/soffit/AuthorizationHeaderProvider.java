@@ -24,6 +24,8 @@ import java.util.Set;
 import javax.portlet.PortletSession;
 import javax.portlet.RenderRequest;
 import javax.portlet.RenderResponse;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.Element;
 import org.apache.http.Header;
 import org.apache.http.message.BasicHeader;
 import org.apereo.portal.groups.IEntityGroup;
@@ -37,6 +39,7 @@ import org.apereo.portal.soffit.service.BearerService;
 import org.apereo.services.persondir.IPersonAttributeDao;
 import org.apereo.services.persondir.IPersonAttributes;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 
 /**
  * Prepares the standard HTTP Authorization header. This component is defined explicitly in the
@@ -53,6 +56,11 @@ public class AuthorizationHeaderProvider extends AbstractHeaderProvider {
 
     @Autowired private BearerService bearerService;
 
+    /** Recently issued Authorization headers, keyed by username. */
+    @Autowired
+    @Qualifier(value = "org.apereo.portal.soffit.AuthorizationHeaderProvider.HEADER_CACHE")
+    private Cache headerCache;
+
     @Override
     public Header createHeader(RenderRequest renderRequest, RenderResponse renderResponse) {
 
@@ -64,6 +72,13 @@ public class AuthorizationHeaderProvider extends AbstractHeaderProvider {
         // Username
         final String username = getUsername(renderRequest);
 
+        // Reuse a recently issued Bearer token, if present
+        final Element cachedHeader = headerCache.get(username);
+        if (cachedHeader != null) {
+            logger.debug("Reusing a cached Authorization header for username='{}'", username);
+            return (Header) cachedHeader.getObjectValue();
+        }
+
         // Attributes
         final Map<String, List<String>> attributes = new HashMap<>();
         final IPersonAttributes person = personAttributeDao.getPerson(username);
@@ -111,6 +126,7 @@ public class AuthorizationHeaderProvider extends AbstractHeaderProvider {
                 username,
                 rslt);
 
+        cacheHeader(headerCache, username, rslt, expires);
         return rslt;
     }
 }
@@ -17,6 +17,7 @@ package org.apereo.portal.soffit;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
@@ -24,6 +25,8 @@ import java.util.Map;
 import javax.portlet.RenderRequest;
 import javax.portlet.RenderResponse;
 import javax.servlet.http.HttpServletRequest;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.Element;
 import org.apache.http.Header;
 import org.apache.http.message.BasicHeader;
 import org.apereo.portal.i18n.ILocaleStore;
@@ -44,7 +47,9 @@ import org.apereo.portal.soffit.connector.SoffitConnectorController;
 import org.apereo.portal.soffit.model.v1_0.Definition;
 import org.apereo.portal.soffit.service.DefinitionService;
 import org.apereo.portal.url.IPortalRequestUtils;
+import org.apereo.portal.utils.cache.CacheKey;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 
 /**
  * Prepares the custom HTTP X-Soffit-Definition header. This component is defined explicitly in the
@@ -71,6 +76,11 @@ public class DefinitionHeaderProvider extends AbstractHeaderProvider {
 
     @Autowired private LocaleManagerFactory localeManagerFactory;
 
+    /** Recently issued Definition headers, keyed by username, portlet definition & locale. */
+    @Autowired
+    @Qualifier(value = "org.apereo.portal.soffit.DefinitionHeaderProvider.HEADER_CACHE")
+    private Cache headerCache;
+
     @Override
     public Header createHeader(RenderRequest renderRequest, RenderResponse renderResponse) {
 
@@ -89,12 +99,26 @@ public class DefinitionHeaderProvider extends AbstractHeaderProvider {
         final IPortletWindow portletWindow =
                 portletWindowRegistry.getPortletWindow(httpr, portletWindowId);
         final IPortletDefinition pdef = portletWindow.getPortletEntity().getPortletDefinition();
-        final MarketplacePortletDefinition mpdef =
-                this.marketplaceService.getOrCreateMarketplacePortletDefinition(pdef);
 
         final IPerson user = personManager.getPerson(httpr);
         final Locale locale = getUserLocale(user);
 
+        // Reuse a recently issued Definition token, if present
+        final CacheKey cacheKey =
+                CacheKey.build(
+                        getClass().getName(),
+                        username,
+                        pdef.getPortletDefinitionId().getStringId(),
+                        locale.toString());
+        final Element cachedHeader = headerCache.get(cacheKey);
+        if (cachedHeader != null) {
+            logger.debug("Reusing a cached Definition header for username='{}'", username);
+            return (Header) cachedHeader.getObjectValue();
+        }
+
+        final MarketplacePortletDefinition mpdef =
+                this.marketplaceService.getOrCreateMarketplacePortletDefinition(pdef);
+
         // Title
         final String title = mpdef.getTitle(locale.toString());
 
@@ -116,15 +140,10 @@ public class DefinitionHeaderProvider extends AbstractHeaderProvider {
             parameters.put(param.getName(), Collections.singletonList(param.getValue()));
         }
 
+        final Date expires = getExpiration(renderRequest);
         final Definition definition =
                 definitionService.createDefinition(
-                        title,
-                        fname,
-                        description,
-                        categories,
-                        parameters,
-                        username,
-                        getExpiration(renderRequest));
+                        title, fname, description, categories, parameters, username, expires);
         final Header rslt =
                 new BasicHeader(Headers.DEFINITION.getName(), definition.getEncryptedToken());
         logger.debug(
@@ -133,6 +152,7 @@ public class DefinitionHeaderProvider extends AbstractHeaderProvider {
                 username,
                 rslt);
 
+        cacheHeader(headerCache, cacheKey, rslt, expires);
         return rslt;
     }
 
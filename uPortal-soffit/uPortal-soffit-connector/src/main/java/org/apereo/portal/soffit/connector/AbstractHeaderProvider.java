@@ -14,10 +14,14 @@
  */
 package org.apereo.portal.soffit.connector;
 
+import java.io.Serializable;
 import java.util.Date;
 import javax.portlet.PortletPreferences;
 import javax.portlet.PortletSession;
 import javax.portlet.RenderRequest;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.Element;
+import org.apache.http.Header;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
@@ -54,4 +58,22 @@ public abstract class AbstractHeaderProvider implements IHeaderProvider {
                                 + ((long) portletSession.getMaxInactiveInterval() * 1000L));
         return rslt;
     }
+
+    /**
+     * Stores a header for reuse by subsequent requests. The entry lives no longer than the
+     * timeToLiveSeconds of the cache and never past the expiration of the token in the header.
+     */
+    protected final void cacheHeader(Cache cache, Serializable key, Header header, Date expires) {
+        final long secondsRemaining = (expires.getTime() - System.currentTimeMillis()) / 1000L;
+        final long configuredTimeToLive = cache.getCacheConfiguration().getTimeToLiveSeconds();
+        final long timeToLive =
+                configuredTimeToLive > 0
+                        ? Math.min(configuredTimeToLive, secondsRemaining)
+                        : secondsRemaining;
+        if (timeToLive > 0) {
+            final Element element = new Element(key, header);
+            element.setTimeToLive((int) timeToLive);
+            cache.put(element);
+        }
+    }
 }
@@ -19,7 +19,18 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.portlet.PortletPreferences;
 import javax.portlet.RenderRequest;
 import javax.portlet.RenderResponse;
@@ -46,11 +57,19 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.portlet.bind.annotation.RenderMapping;
 
-/** @since 5.0 */
+/**
+ * Renders a remote soffit. A single pooled HTTP client is shared by all requests so connections to
+ * the soffits are kept alive between renders. Identical concurrent requests for a soffit share one
+ * remote call when the soffit last answered public-scope, and cached responses are served for up to
+ * staleWhileRevalidateSeconds past their max-age while a fresh copy is fetched in the background.
+ *
+ * @since 5.0
+ */
 @Controller
 @RequestMapping(value = {"VIEW", "EDIT", "HELP"})
 public class SoffitConnectorController implements ApplicationContextAware {
@@ -64,6 +83,9 @@ public class SoffitConnectorController implements ApplicationContextAware {
 
     private static final int TIMEOUT_SECONDS = 10;
 
+    /** Pooled connections unused for this long are closed. */
+    private static final int IDLE_CONNECTION_SECONDS = 30;
+
     @Value(
             "${org.apereo.portlet.soffit.connector.SoffitConnectorController.maxConnectionsPerRoute:20}")
     private Integer maxConnectionsPerRoute;
@@ -72,17 +94,43 @@ public class SoffitConnectorController implements ApplicationContextAware {
             "${org.apereo.portlet.soffit.connector.SoffitConnectorController.maxConnectionsTotal:50}")
     private Integer maxConnectionsTotal;
 
+    /**
+     * Seconds past its max-age that a cached response may still be served while it is refreshed in
+     * the background. Zero disables serving stale responses.
+     */
+    @Value(
+            "${org.apereo.portlet.soffit.connector.SoffitConnectorController.staleWhileRevalidateSeconds:60}")
+    private Integer staleWhileRevalidateSeconds;
+
+    /**
+     * Threads refreshing stale cached responses in the background. Kept well below the connection
+     * limits so that revalidation never holds the connections needed to render other requests.
+     */
+    @Value(
+            "${org.apereo.portlet.soffit.connector.SoffitConnectorController.maxRevalidationThreads:4}")
+    private Integer maxRevalidationThreads;
+
     private final RequestConfig requestConfig =
             RequestConfig.custom()
                     .setSocketTimeout(TIMEOUT_SECONDS * 1000)
                     .setConnectTimeout(TIMEOUT_SECONDS * 1000)
                     .build();
 
-    private final HttpClientBuilder httpClientBuilder =
-            HttpClientBuilder.create()
-                    .setDefaultRequestConfig(requestConfig)
-                    .setConnectionManagerShared(
-                            true); // Prevents the client from shutting down the pool
+    private CloseableHttpClient httpClient;
+
+    /** Runs the remote calls that refresh stale cached responses. */
+    private ThreadPoolExecutor revalidationExecutor;
+
+    /** Remote calls that are underway, keyed by the cache entry they would populate. */
+    private final ConcurrentMap<CacheTuple, FutureTask<RemoteResponse>> pendingRequests =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Public-scope cache keys of the soffits whose last response was public-scope; only calls to
+     * these soffits are shared between concurrent requests.
+     */
+    private final Set<CacheTuple> publicScopeKeys =
+            Collections.newSetFromMap(new ConcurrentHashMap<CacheTuple, Boolean>());
 
     private ApplicationContext applicationContext;
     private List<IHeaderProvider> headerProviders;
@@ -106,7 +154,25 @@ public class SoffitConnectorController implements ApplicationContextAware {
                 new PoolingHttpClientConnectionManager();
         poolingHttpClientConnectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
         poolingHttpClientConnectionManager.setMaxTotal(maxConnectionsTotal);
-        httpClientBuilder.setConnectionManager(poolingHttpClientConnectionManager);
+        httpClient =
+                HttpClientBuilder.create()
+                        .setDefaultRequestConfig(requestConfig)
+                        .setConnectionManager(poolingHttpClientConnectionManager)
+                        .evictExpiredConnections()
+                        .evictIdleConnections(IDLE_CONNECTION_SECONDS, TimeUnit.SECONDS)
+                        .build();
+
+        final CustomizableThreadFactory threadFactory =
+                new CustomizableThreadFactory("SoffitRevalidation-");
+        threadFactory.setDaemon(true);
+        revalidationExecutor =
+                new ThreadPoolExecutor(
+                        0,
+                        maxRevalidationThreads,
+                        IDLE_CONNECTION_SECONDS,
+                        TimeUnit.SECONDS,
+                        new SynchronousQueue<Runnable>(),
+                        threadFactory);
 
         final Map<String, IHeaderProvider> beans =
                 BeanFactoryUtils.beansOfTypeIncludingAncestors(
@@ -115,6 +181,17 @@ public class SoffitConnectorController implements ApplicationContextAware {
         headerProviders = Collections.unmodifiableList(values);
     }
 
+    @PreDestroy
+    public void destroy() {
+        revalidationExecutor.shutdownNow();
+        try {
+            // Also shuts down the connection pool
+            httpClient.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close the soffit HTTP client", e);
+        }
+    }
+
     @RenderMapping
     public void invokeService(final RenderRequest req, final RenderResponse res) {
 
@@ -125,51 +202,45 @@ public class SoffitConnectorController implements ApplicationContextAware {
                     "Missing portlet prefernce value for " + SERVICE_URL_PREFERENCE);
         }
 
+        final String mode = req.getPortletMode().toString();
+        final String windowState = req.getWindowState().toString();
+        final CacheTuple publicKey = new CacheTuple(serviceUrl, mode, windowState);
+        final CacheTuple privateKey =
+                new CacheTuple(serviceUrl, mode, windowState, req.getRemoteUser());
+
         // First look in cache for an existing response that applies to this request
-        ResponseWrapper responseValue = fetchContentFromCacheIfAvailable(req, serviceUrl);
-        if (responseValue != null) {
+        ResponseWrapper responseValue = null;
+        final Element cacheElement =
+                fetchContentFromCacheIfAvailable(req.getRemoteUser(), publicKey, privateKey);
+        if (cacheElement != null) {
             logger.debug("Response value obtained from cache for serviceUrl '{}'", serviceUrl);
+            responseValue = (ResponseWrapper) cacheElement.getObjectValue();
+            if (responseValue.isStale()) {
+                // Serve what we have;  a fresh copy will be there for subsequent requests
+                revalidateInBackground(
+                        (CacheTuple) cacheElement.getObjectKey(),
+                        serviceUrl,
+                        createHeaders(req, res),
+                        publicKey,
+                        privateKey);
+            }
         } else {
 
             logger.debug("No applicable response in cache;  invoking serviceUrl '{}'", serviceUrl);
 
-            final HttpGet getMethod = new HttpGet(serviceUrl);
-            try (final CloseableHttpClient httpClient = httpClientBuilder.build()) {
-
-                // Send the data model as encrypted JWT HTTP headers
-                for (IHeaderProvider headerProvider : headerProviders) {
-                    final Header header = headerProvider.createHeader(req, res);
-                    if (header != null) {
-                        getMethod.addHeader(header);
-                    }
-                }
-
-                // Send the request
-                final HttpResponse httpResponse = httpClient.execute(getMethod);
-                try {
-                    final int statusCode = httpResponse.getStatusLine().getStatusCode();
-                    logger.debug(
-                            "HTTP response code for url '{}' was '{}'", serviceUrl, statusCode);
-
-                    if (statusCode == HttpStatus.SC_OK) {
-                        responseValue =
-                                extractResponseAndCacheIfAppropriate(httpResponse, req, serviceUrl);
-                    } else {
-                        logger.error(
-                                "Failed to get content from remote service '{}';  HttpStatus={}",
-                                serviceUrl,
-                                statusCode);
-                        res.getWriter()
-                                .write(
-                                        "FAILED!  statusCode="
-                                                + statusCode); // TODO:  Better message
-                    }
-                } finally {
-                    if (null != httpResponse) {
-                        // Ensures that the entity content is fully consumed and the content stream,
-                        // if exists, is closed.
-                        EntityUtils.consumeQuietly(httpResponse.getEntity());
-                    }
+            try {
+                final RemoteResponse remoteResponse =
+                        invokeRemoteService(
+                                serviceUrl, createHeaders(req, res), publicKey, privateKey);
+                if (remoteResponse.getStatusCode() == HttpStatus.SC_OK) {
+                    responseValue = remoteResponse.getContent();
+                } else {
+                    logger.error(
+                            "Failed to get content from remote service '{}';  HttpStatus={}",
+                            serviceUrl,
+                            remoteResponse.getStatusCode());
+                    // TODO:  Better message
+                    res.getWriter().write("FAILED!  statusCode=" + remoteResponse.getStatusCode());
                 }
             } catch (IOException e) {
                 logger.error("Failed to invoke serviceUrl '{}'", serviceUrl, e);
@@ -190,51 +261,208 @@ public class SoffitConnectorController implements ApplicationContextAware {
      * Implementation
      */
 
-    private ResponseWrapper fetchContentFromCacheIfAvailable(
-            final RenderRequest req, final String serviceUrl) {
-
-        ResponseWrapper rslt = null; // default
+    private Element fetchContentFromCacheIfAvailable(
+            final String remoteUser, final CacheTuple publicKey, final CacheTuple privateKey) {
 
         final List<CacheTuple> cacheKeysToTry = new ArrayList<>();
         // Don't use private-scope caching for anonymous users
-        if (req.getRemoteUser() != null) {
-            cacheKeysToTry.add(
-                    // Private-scope cache key
-                    new CacheTuple(
-                            serviceUrl,
-                            req.getPortletMode().toString(),
-                            req.getWindowState().toString(),
-                            req.getRemoteUser()));
+        if (remoteUser != null) {
+            cacheKeysToTry.add(privateKey);
         }
-        cacheKeysToTry.add(
-                // Public-scope cache key
-                new CacheTuple(
-                        serviceUrl,
-                        req.getPortletMode().toString(),
-                        req.getWindowState().toString()));
+        cacheKeysToTry.add(publicKey);
 
         for (CacheTuple key : cacheKeysToTry) {
             final Element cacheElement = this.responseCache.get(key);
             if (cacheElement != null) {
-                rslt = (ResponseWrapper) cacheElement.getObjectValue();
-                break;
+                return cacheElement;
             }
         }
 
+        return null;
+    }
+
+    /**
+     * Headers must be created on the request thread, they carry the data model of the current
+     * request.
+     */
+    private List<Header> createHeaders(final RenderRequest req, final RenderResponse res) {
+        final List<Header> rslt = new ArrayList<>(headerProviders.size());
+        // Send the data model as encrypted JWT HTTP headers
+        for (IHeaderProvider headerProvider : headerProviders) {
+            final Header header = headerProvider.createHeader(req, res);
+            if (header != null) {
+                rslt.add(header);
+            }
+        }
         return rslt;
     }
 
-    private ResponseWrapper extractResponseAndCacheIfAppropriate(
-            final HttpResponse httpResponse, final RenderRequest req, final String serviceUrl) {
+    /**
+     * Invokes the remote soffit. If the soffit's last response was public-scope and the same soffit
+     * is already being invoked for the same mode and window state, the response of that call is
+     * used instead (provided it is still public-scope).
+     */
+    private RemoteResponse invokeRemoteService(
+            final String serviceUrl,
+            final List<Header> headers,
+            final CacheTuple publicKey,
+            final CacheTuple privateKey)
+            throws IOException {
+
+        if (!publicScopeKeys.contains(publicKey)) {
+            // Responses may be private;  sharing them would only delay this request
+            return doInvokeRemoteService(serviceUrl, headers, publicKey, privateKey);
+        }
+
+        final FutureTask<RemoteResponse> task =
+                new FutureTask<>(
+                        () -> doInvokeRemoteService(serviceUrl, headers, publicKey, privateKey));
+        final FutureTask<RemoteResponse> pending = pendingRequests.putIfAbsent(publicKey, task);
+        if (pending == null) {
+            try {
+                task.run();
+            } finally {
+                pendingRequests.remove(publicKey, task);
+            }
+            return getResult(task);
+        }
+
+        try {
+            final RemoteResponse rslt = pending.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            if (rslt.isPublicScope()) {
+                logger.debug("Shared a concurrent public-scope response for '{}'", serviceUrl);
+                return rslt;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting on a response from " + serviceUrl, e);
+        } catch (ExecutionException | TimeoutException e) {
+            // The other request failed or is slow;  try for ourselves
+            logger.debug("Concurrent request for '{}' did not complete", serviceUrl, e);
+        }
+
+        return doInvokeRemoteService(serviceUrl, headers, publicKey, privateKey);
+    }
+
+    /**
+     * Refreshes the cached response stored under the specified key on a separate thread. Does
+     * nothing if a call that will populate that key is already underway.
+     */
+    private void revalidateInBackground(
+            final CacheTuple cacheKey,
+            final String serviceUrl,
+            final List<Header> headers,
+            final CacheTuple publicKey,
+            final CacheTuple privateKey) {
+
+        final FutureTask<RemoteResponse> task =
+                new FutureTask<>(
+                        () -> {
+                            final RemoteResponse rslt =
+                                    doInvokeRemoteService(
+                                            serviceUrl, headers, publicKey, privateKey);
+                            if (!cacheKey.equals(rslt.getCacheKey())
+                                    && rslt.getStatusCode() == HttpStatus.SC_OK) {
+                                // The soffit no longer caches the response this way
+                                responseCache.remove(cacheKey);
+                            }
+                            return rslt;
+                        });
+        if (pendingRequests.putIfAbsent(cacheKey, task) != null) {
+            return;
+        }
+
+        logger.debug("Revalidating cached response '{}' in the background", cacheKey);
+        try {
+            revalidationExecutor.execute(
+                    () -> {
+                        try {
+                            task.run();
+                            getResult(task);
+                        } catch (IOException e) {
+                            logger.warn("Failed to revalidate serviceUrl '{}'", serviceUrl, e);
+                        } finally {
+                            pendingRequests.remove(cacheKey, task);
+                        }
+                    });
+        } catch (RejectedExecutionException e) {
+            // All threads are busy;  the stale response will be served until one frees up
+            pendingRequests.remove(cacheKey, task);
+            logger.debug("Revalidation of cached response '{}' was rejected", cacheKey);
+        }
+    }
+
+    private RemoteResponse getResult(FutureTask<RemoteResponse> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted invoking a remote soffit", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private RemoteResponse doInvokeRemoteService(
+            final String serviceUrl,
+            final List<Header> headers,
+            final CacheTuple publicKey,
+            final CacheTuple privateKey)
+            throws IOException {
+
+        final HttpGet getMethod = new HttpGet(serviceUrl);
+        for (Header header : headers) {
+            getMethod.addHeader(header);
+        }
+
+        // Send the request
+        final HttpResponse httpResponse = httpClient.execute(getMethod);
+        try {
+            final int statusCode = httpResponse.getStatusLine().getStatusCode();
+            logger.debug("HTTP response code for url '{}' was '{}'", serviceUrl, statusCode);
+
+            if (statusCode == HttpStatus.SC_OK) {
+                final RemoteResponse rslt =
+                        extractResponseAndCacheIfAppropriate(
+                                httpResponse, serviceUrl, publicKey, privateKey);
+                if (rslt.isPublicScope()) {
+                    publicScopeKeys.add(publicKey);
+                } else {
+                    publicScopeKeys.remove(publicKey);
+                }
+                return rslt;
+            }
+            return new RemoteResponse(statusCode, null, null);
+        } finally {
+            // Ensures that the entity content is fully consumed and the content stream, if
+            // exists, is closed;  the connection is then returned to the pool for reuse.
+            EntityUtils.consumeQuietly(httpResponse.getEntity());
+        }
+    }
+
+    private RemoteResponse extractResponseAndCacheIfAppropriate(
+            final HttpResponse httpResponse,
+            final String serviceUrl,
+            final CacheTuple publicKey,
+            final CacheTuple privateKey) {
 
         // Extract
         final HttpEntity entity = httpResponse.getEntity();
-        ResponseWrapper rslt;
+        final byte[] bytes;
         try {
-            rslt = new ResponseWrapper(IOUtils.toByteArray(entity.getContent()));
+            bytes = IOUtils.toByteArray(entity.getContent());
         } catch (UnsupportedOperationException | IOException e) {
             throw new RuntimeException("Failed to read the response", e);
         }
+        ResponseWrapper rslt = new ResponseWrapper(bytes);
+        CacheTuple cacheTuple = null;
 
         // Cache the response if indicated by the remote service
         final Header cacheControlHeader =
@@ -265,7 +493,6 @@ public class SoffitConnectorController implements ApplicationContextAware {
                         /*
                          * Looks like we're using the expiration cache feature.
                          */
-                        CacheTuple cacheTuple = null;
                         // TODO:  Need to find a polished utility that parses a cache-control
                         // header, or write one
                         final String[] tokens = cacheControlValue.split(",");
@@ -275,26 +502,24 @@ public class SoffitConnectorController implements ApplicationContextAware {
                             final String maxAge = tokens[1].trim().substring("max-age=".length());
                             int timeToLive = Integer.parseInt(maxAge);
                             if ("private".equals(tokens[0].trim())) {
-                                cacheTuple =
-                                        new CacheTuple(
-                                                serviceUrl,
-                                                req.getPortletMode().toString(),
-                                                req.getWindowState().toString(),
-                                                req.getRemoteUser());
+                                cacheTuple = privateKey;
                             } else if ("public".equals(tokens[0].trim())) {
-                                cacheTuple =
-                                        new CacheTuple(
-                                                serviceUrl,
-                                                req.getPortletMode().toString(),
-                                                req.getWindowState().toString());
+                                cacheTuple = publicKey;
                             }
                             logger.debug(
                                     "Produced cacheTuple='{}' for cacheControlValue='{}'",
                                     cacheTuple,
                                     cacheControlValue);
                             if (cacheTuple != null) {
+                                // Keep the element past max-age so it may be served while
+                                // it is revalidated
+                                rslt =
+                                        new ResponseWrapper(
+                                                bytes,
+                                                System.currentTimeMillis() + timeToLive * 1000L);
                                 final Element element = new Element(cacheTuple, rslt);
-                                element.setTimeToLive(timeToLive);
+                                element.setTimeToLive(
+                                        timeToLive + Math.max(staleWhileRevalidateSeconds, 0));
                                 responseCache.put(element);
                             } else {
                                 logger.warn(
@@ -307,7 +532,7 @@ public class SoffitConnectorController implements ApplicationContextAware {
             }
         }
 
-        return rslt;
+        return new RemoteResponse(HttpStatus.SC_OK, rslt, cacheTuple);
     }
 
     /*
@@ -389,15 +614,61 @@ public class SoffitConnectorController implements ApplicationContextAware {
         }
     }
 
+    /** Outcome of a call to a remote soffit. */
+    private static final class RemoteResponse {
+        private final int statusCode;
+        private final ResponseWrapper content;
+        private final CacheTuple cacheKey;
+
+        public RemoteResponse(int statusCode, ResponseWrapper content, CacheTuple cacheKey) {
+            this.statusCode = statusCode;
+            this.content = content;
+            this.cacheKey = cacheKey;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        /** @return The response body, if the status was OK */
+        public ResponseWrapper getContent() {
+            return content;
+        }
+
+        /** @return The key the response was cached under, or null if it was not cached */
+        public CacheTuple getCacheKey() {
+            return cacheKey;
+        }
+
+        /** @return True if the soffit allows the response to be shared by all users */
+        public boolean isPublicScope() {
+            return cacheKey != null && cacheKey.publicScope;
+        }
+    }
+
     public static final class ResponseWrapper {
         private final byte[] bytes;
+        private final long freshUntil;
 
         public ResponseWrapper(byte[] bytes) {
+            this(bytes, Long.MAX_VALUE);
+        }
+
+        /**
+         * @param freshUntil Time (milliseconds since the epoch) after which the response should be
+         *     revalidated
+         */
+        public ResponseWrapper(byte[] bytes, long freshUntil) {
             this.bytes = bytes;
+            this.freshUntil = freshUntil;
         }
 
         public byte[] getBytes() {
             return bytes;
         }
+
+        public boolean isStale() {
+            return System.currentTimeMillis() > freshUntil;
+        }
     }
 }
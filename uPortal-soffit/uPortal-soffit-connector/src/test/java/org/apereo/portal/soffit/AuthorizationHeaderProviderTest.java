@@ -0,0 +1,90 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.soffit;
+
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import javax.portlet.PortletPreferences;
+import javax.portlet.PortletSession;
+import javax.portlet.RenderRequest;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import org.apache.http.Header;
+import org.apache.http.message.BasicHeader;
+import org.apereo.portal.soffit.service.BearerService;
+import org.apereo.services.persondir.IPersonAttributeDao;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class AuthorizationHeaderProviderTest {
+
+    private CacheManager cacheManager;
+    private Cache headerCache;
+    private RenderRequest renderRequest;
+    private IPersonAttributeDao personAttributeDao;
+    private BearerService bearerService;
+    private AuthorizationHeaderProvider headerProvider;
+
+    @Before
+    public void setUp() {
+        cacheManager =
+                new CacheManager(new Configuration().name("AuthorizationHeaderProviderTest"));
+        headerCache = new Cache(new CacheConfiguration("headers", 100).timeToLiveSeconds(300));
+        cacheManager.addCache(headerCache);
+
+        final PortletPreferences preferences = mock(PortletPreferences.class);
+        when(preferences.getValue(AuthorizationHeaderProvider.INCLUDE_PREFERENCE, "false"))
+                .thenReturn("true");
+        final PortletSession portletSession = mock(PortletSession.class);
+        when(portletSession.getLastAccessedTime()).thenReturn(System.currentTimeMillis());
+        when(portletSession.getMaxInactiveInterval()).thenReturn(1800);
+        renderRequest = mock(RenderRequest.class);
+        when(renderRequest.getPreferences()).thenReturn(preferences);
+        when(renderRequest.getPortletSession()).thenReturn(portletSession);
+        when(renderRequest.getRemoteUser()).thenReturn("student");
+
+        personAttributeDao = mock(IPersonAttributeDao.class);
+        bearerService = mock(BearerService.class);
+        headerProvider = new AuthorizationHeaderProvider();
+        ReflectionTestUtils.setField(headerProvider, "personAttributeDao", personAttributeDao);
+        ReflectionTestUtils.setField(headerProvider, "bearerService", bearerService);
+        ReflectionTestUtils.setField(headerProvider, "headerCache", headerCache);
+    }
+
+    @After
+    public void tearDown() {
+        cacheManager.shutdown();
+    }
+
+    @Test
+    public void testCachedHeaderReusedWithinTimeToLive() {
+        final Header header = new BasicHeader(Headers.AUTHORIZATION.getName(), "Bearer token");
+        headerCache.put(new Element("student", header));
+
+        assertSame(header, headerProvider.createHeader(renderRequest, null));
+        assertSame(header, headerProvider.createHeader(renderRequest, null));
+
+        // No attributes were read and no Bearer token was issued
+        verifyZeroInteractions(personAttributeDao, bearerService);
+    }
+}
@@ -0,0 +1,222 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.soffit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.portlet.PortletPreferences;
+import javax.portlet.PortletSession;
+import javax.portlet.RenderRequest;
+import javax.servlet.http.HttpServletRequest;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import org.apache.http.Header;
+import org.apereo.portal.i18n.ILocaleStore;
+import org.apereo.portal.i18n.LocaleManager;
+import org.apereo.portal.i18n.LocaleManagerFactory;
+import org.apereo.portal.portlet.marketplace.IMarketplaceService;
+import org.apereo.portal.portlet.marketplace.MarketplacePortletDefinition;
+import org.apereo.portal.portlet.om.IPortletDefinition;
+import org.apereo.portal.portlet.om.IPortletDefinitionId;
+import org.apereo.portal.portlet.om.IPortletEntity;
+import org.apereo.portal.portlet.om.IPortletWindow;
+import org.apereo.portal.portlet.om.IPortletWindowId;
+import org.apereo.portal.portlet.registry.IPortletWindowRegistry;
+import org.apereo.portal.security.IPerson;
+import org.apereo.portal.security.IPersonManager;
+import org.apereo.portal.soffit.model.v1_0.Definition;
+import org.apereo.portal.soffit.service.DefinitionService;
+import org.apereo.portal.url.IPortalRequestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class DefinitionHeaderProviderTest {
+
+    private CacheManager cacheManager;
+    private Cache headerCache;
+    private RenderRequest renderRequest;
+    private PortletSession portletSession;
+    private IPortletDefinitionId portletDefinitionId;
+    private LocaleManager localeManager;
+    private DefinitionService definitionService;
+    private DefinitionHeaderProvider headerProvider;
+
+    @Before
+    public void setUp() {
+        cacheManager =
+                new CacheManager(new Configuration().name("DefinitionHeaderProviderTest"));
+        headerCache = new Cache(new CacheConfiguration("headers", 100).timeToLiveSeconds(300));
+        cacheManager.addCache(headerCache);
+
+        final PortletPreferences preferences = mock(PortletPreferences.class);
+        when(preferences.getValue(DefinitionHeaderProvider.INCLUDE_PREFERENCE, "false"))
+                .thenReturn("true");
+        portletSession = mock(PortletSession.class);
+        when(portletSession.getLastAccessedTime()).thenReturn(System.currentTimeMillis());
+        when(portletSession.getMaxInactiveInterval()).thenReturn(1800);
+        renderRequest = mock(RenderRequest.class);
+        when(renderRequest.getPreferences()).thenReturn(preferences);
+        when(renderRequest.getPortletSession()).thenReturn(portletSession);
+        when(renderRequest.getRemoteUser()).thenReturn("student");
+        when(renderRequest.getWindowID()).thenReturn("window");
+
+        final HttpServletRequest portalRequest = mock(HttpServletRequest.class);
+        final IPortalRequestUtils portalRequestUtils = mock(IPortalRequestUtils.class);
+        when(portalRequestUtils.getCurrentPortalRequest()).thenReturn(portalRequest);
+
+        portletDefinitionId = mock(IPortletDefinitionId.class);
+        when(portletDefinitionId.getStringId()).thenReturn("1");
+        final IPortletDefinition portletDefinition = mock(IPortletDefinition.class);
+        when(portletDefinition.getPortletDefinitionId()).thenReturn(portletDefinitionId);
+        final IPortletEntity portletEntity = mock(IPortletEntity.class);
+        when(portletEntity.getPortletDefinition()).thenReturn(portletDefinition);
+        final IPortletWindow portletWindow = mock(IPortletWindow.class);
+        when(portletWindow.getPortletEntity()).thenReturn(portletEntity);
+        final IPortletWindowId portletWindowId = mock(IPortletWindowId.class);
+        final IPortletWindowRegistry portletWindowRegistry = mock(IPortletWindowRegistry.class);
+        when(portletWindowRegistry.getPortletWindowId(portalRequest, "window"))
+                .thenReturn(portletWindowId);
+        when(portletWindowRegistry.getPortletWindow(portalRequest, portletWindowId))
+                .thenReturn(portletWindow);
+
+        final MarketplacePortletDefinition marketplaceDefinition =
+                mock(MarketplacePortletDefinition.class);
+        when(marketplaceDefinition.getFName()).thenReturn("soffit");
+        final IMarketplaceService marketplaceService = mock(IMarketplaceService.class);
+        when(marketplaceService.getOrCreateMarketplacePortletDefinition(portletDefinition))
+                .thenReturn(marketplaceDefinition);
+
+        final IPerson person = mock(IPerson.class);
+        final IPersonManager personManager = mock(IPersonManager.class);
+        when(personManager.getPerson(portalRequest)).thenReturn(person);
+        final ILocaleStore localeStore = mock(ILocaleStore.class);
+        when(localeStore.getUserLocales(person)).thenReturn(new Locale[0]);
+        localeManager = mock(LocaleManager.class);
+        when(localeManager.getLocales()).thenReturn(Collections.singletonList(Locale.US));
+        final LocaleManagerFactory localeManagerFactory = mock(LocaleManagerFactory.class);
+        when(localeManagerFactory.createLocaleManager(any(IPerson.class), anyListOf(Locale.class)))
+                .thenReturn(localeManager);
+
+        // Each Definition issued has a distinct token
+        final AtomicInteger tokens = new AtomicInteger();
+        definitionService = mock(DefinitionService.class);
+        when(definitionService.createDefinition(
+                        any(), any(), any(), any(), any(), any(), any(Date.class)))
+                .thenAnswer(
+                        invocation -> {
+                            final Definition definition = mock(Definition.class);
+                            when(definition.getEncryptedToken())
+                                    .thenReturn("token" + tokens.incrementAndGet());
+                            return definition;
+                        });
+
+        headerProvider = new DefinitionHeaderProvider();
+        ReflectionTestUtils.setField(headerProvider, "portalRequestUtils", portalRequestUtils);
+        ReflectionTestUtils.setField(
+                headerProvider, "portletWindowRegistry", portletWindowRegistry);
+        ReflectionTestUtils.setField(headerProvider, "marketplaceService", marketplaceService);
+        ReflectionTestUtils.setField(headerProvider, "personManager", personManager);
+        ReflectionTestUtils.setField(headerProvider, "localeStore", localeStore);
+        ReflectionTestUtils.setField(headerProvider, "definitionService", definitionService);
+        ReflectionTestUtils.setField(
+                headerProvider, "localeManagerFactory", localeManagerFactory);
+        ReflectionTestUtils.setField(headerProvider, "headerCache", headerCache);
+    }
+
+    @After
+    public void tearDown() {
+        cacheManager.shutdown();
+    }
+
+    @Test
+    public void testHeaderReusedWithinTimeToLive() {
+        final Header header = headerProvider.createHeader(renderRequest, null);
+        assertEquals(Headers.DEFINITION.getName(), header.getName());
+        assertEquals("token1", header.getValue());
+
+        assertSame(header, headerProvider.createHeader(renderRequest, null));
+        verifyDefinitionsCreated(1);
+    }
+
+    @Test
+    public void testHeaderKeyedByPortletAndLocale() {
+        final Header header = headerProvider.createHeader(renderRequest, null);
+
+        when(localeManager.getLocales()).thenReturn(Collections.singletonList(Locale.FRANCE));
+        final Header frenchHeader = headerProvider.createHeader(renderRequest, null);
+        assertNotSame(header, frenchHeader);
+
+        when(portletDefinitionId.getStringId()).thenReturn("2");
+        final Header otherPortletHeader = headerProvider.createHeader(renderRequest, null);
+        assertNotSame(frenchHeader, otherPortletHeader);
+
+        // Each combination was cached separately
+        assertSame(otherPortletHeader, headerProvider.createHeader(renderRequest, null));
+        when(portletDefinitionId.getStringId()).thenReturn("1");
+        assertSame(frenchHeader, headerProvider.createHeader(renderRequest, null));
+        when(localeManager.getLocales()).thenReturn(Collections.singletonList(Locale.US));
+        assertSame(header, headerProvider.createHeader(renderRequest, null));
+
+        verifyDefinitionsCreated(3);
+        assertEquals(3, headerCache.getSize());
+    }
+
+    @Test
+    public void testExpiredHeaderNotCached() {
+        // The session, and so the token, expired before the request
+        when(portletSession.getLastAccessedTime())
+                .thenReturn(System.currentTimeMillis() - 3600000L);
+
+        final Header header = headerProvider.createHeader(renderRequest, null);
+        assertNotSame(header, headerProvider.createHeader(renderRequest, null));
+
+        verifyDefinitionsCreated(2);
+        assertEquals(0, headerCache.getSize());
+    }
+
+    @Test
+    public void testCachedHeaderExpiresWithToken() {
+        final long lastAccessedTime = System.currentTimeMillis();
+        when(portletSession.getLastAccessedTime()).thenReturn(lastAccessedTime);
+        when(portletSession.getMaxInactiveInterval()).thenReturn(60);
+
+        headerProvider.createHeader(renderRequest, null);
+
+        final Object key = headerCache.getKeys().get(0);
+        assertTrue(headerCache.get(key).getExpirationTime() <= lastAccessedTime + 60000L);
+    }
+
+    private void verifyDefinitionsCreated(int count) {
+        verify(definitionService, times(count))
+                .createDefinition(any(), any(), any(), any(), any(), any(), any(Date.class));
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.soffit.connector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.Date;
+import javax.portlet.RenderRequest;
+import javax.portlet.RenderResponse;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.Element;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import org.apache.http.Header;
+import org.apache.http.message.BasicHeader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AbstractHeaderProviderTest {
+
+    private CacheManager cacheManager;
+    private TestHeaderProvider headerProvider;
+    private Header header;
+
+    @Before
+    public void setUp() {
+        cacheManager = new CacheManager(new Configuration().name("AbstractHeaderProviderTest"));
+        headerProvider = new TestHeaderProvider();
+        header = new BasicHeader("Authorization", "Bearer token");
+    }
+
+    @After
+    public void tearDown() {
+        cacheManager.shutdown();
+    }
+
+    @Test
+    public void testEntryExpiresWithToken() {
+        final Cache cache = addCache("headers", 300);
+        final Date expires = new Date(System.currentTimeMillis() + 60000L);
+        headerProvider.cache(cache, "student", header, expires);
+
+        final Element element = cache.get("student");
+        assertSame(header, element.getObjectValue());
+        assertTrue(element.getTimeToLive() <= 60);
+        assertTrue(element.getExpirationTime() <= expires.getTime());
+    }
+
+    @Test
+    public void testEntryExpiresWithCache() {
+        final Cache cache = addCache("headers", 30);
+        headerProvider.cache(
+                cache, "student", header, new Date(System.currentTimeMillis() + 600000L));
+
+        assertEquals(30, cache.get("student").getTimeToLive());
+    }
+
+    @Test
+    public void testEternalCacheEntryExpiresWithToken() {
+        final Cache cache = addCache("headers", 0);
+        final Date expires = new Date(System.currentTimeMillis() + 60000L);
+        headerProvider.cache(cache, "student", header, expires);
+
+        assertTrue(cache.get("student").getExpirationTime() <= expires.getTime());
+    }
+
+    @Test
+    public void testExpiredTokenNotCached() {
+        final Cache cache = addCache("headers", 300);
+        headerProvider.cache(cache, "expired", header, new Date(System.currentTimeMillis() - 1L));
+        // Less than a second left, the entry would outlive the token
+        headerProvider.cache(
+                cache, "expiring", header, new Date(System.currentTimeMillis() + 500L));
+
+        assertNull(cache.get("expired"));
+        assertNull(cache.get("expiring"));
+        assertEquals(0, cache.getSize());
+    }
+
+    private Cache addCache(String name, long timeToLiveSeconds) {
+        final Cache cache =
+                new Cache(new CacheConfiguration(name, 100).timeToLiveSeconds(timeToLiveSeconds));
+        cacheManager.addCache(cache);
+        return cache;
+    }
+
+    private static final class TestHeaderProvider extends AbstractHeaderProvider {
+        @Override
+        public Header createHeader(RenderRequest renderRequest, RenderResponse renderResponse) {
+            return null;
+        }
+
+        void cache(Cache cache, Serializable key, Header header, Date expires) {
+            cacheHeader(cache, key, header, expires);
+        }
+    }
+}
@@ -0,0 +1,320 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.soffit.connector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.portlet.PortletMode;
+import javax.portlet.PortletPreferences;
+import javax.portlet.RenderRequest;
+import javax.portlet.RenderResponse;
+import javax.portlet.WindowState;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.CacheConfiguration;
+import net.sf.ehcache.config.Configuration;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.apereo.portal.soffit.Headers;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class SoffitConnectorControllerTest {
+
+    private static final String SERVICE_URL = "http://localhost:8090/soffit";
+    private static final long WAIT_SECONDS = 5;
+
+    private CacheManager cacheManager;
+    private Cache responseCache;
+    private StubHttpClient httpClient;
+    private SoffitConnectorController controller;
+
+    @Before
+    public void setUp() throws IOException {
+        cacheManager =
+                new CacheManager(new Configuration().name("SoffitConnectorControllerTest"));
+        responseCache = new Cache(new CacheConfiguration("responses", 100));
+        cacheManager.addCache(responseCache);
+
+        controller = new SoffitConnectorController();
+        ReflectionTestUtils.setField(controller, "maxConnectionsPerRoute", 20);
+        ReflectionTestUtils.setField(controller, "maxConnectionsTotal", 50);
+        ReflectionTestUtils.setField(controller, "staleWhileRevalidateSeconds", 60);
+        ReflectionTestUtils.setField(controller, "maxRevalidationThreads", 1);
+        ReflectionTestUtils.setField(controller, "responseCache", responseCache);
+        controller.setApplicationContext(Mockito.mock(ApplicationContext.class));
+        controller.init();
+
+        // Replace the pooled client with one that answers from memory
+        ((CloseableHttpClient) ReflectionTestUtils.getField(controller, "httpClient")).close();
+        httpClient = new StubHttpClient();
+        ReflectionTestUtils.setField(controller, "httpClient", httpClient);
+    }
+
+    @After
+    public void tearDown() {
+        httpClient.release();
+        controller.destroy();
+        cacheManager.shutdown();
+    }
+
+    @Test
+    public void testConcurrentPublicRequestsShareOneCall() throws Exception {
+        httpClient.cacheControl = "public, max-age=300";
+
+        // Learn that the soffit answers public-scope, then drop the cached response
+        assertEquals("response-1", render("alice"));
+        responseCache.removeAll();
+
+        httpClient.block();
+        final RenderThread first = new RenderThread("bob");
+        first.start();
+        assertTrue(httpClient.entered.tryAcquire(WAIT_SECONDS, TimeUnit.SECONDS));
+
+        final RenderThread second = new RenderThread("carol");
+        second.start();
+        awaitWaiting(second);
+
+        httpClient.release();
+        assertEquals("response-2", first.await());
+        assertEquals("response-2", second.await());
+        assertEquals(2, httpClient.calls.get());
+    }
+
+    @Test
+    public void testConcurrentPrivateRequestsDoNotWait() throws Exception {
+        httpClient.cacheControl = "private, max-age=300";
+        assertEquals("response-1", render("alice"));
+
+        httpClient.block();
+        final RenderThread first = new RenderThread("bob");
+        final RenderThread second = new RenderThread("carol");
+        first.start();
+        second.start();
+
+        // Both calls reach the soffit while the first is still underway
+        assertTrue(httpClient.entered.tryAcquire(2, WAIT_SECONDS, TimeUnit.SECONDS));
+
+        httpClient.release();
+        first.await();
+        second.await();
+        assertEquals(3, httpClient.calls.get());
+    }
+
+    @Test
+    public void testStaleResponseRevalidatedOnceInBackground() throws Exception {
+        httpClient.cacheControl = "public, max-age=0";
+        assertEquals("response-1", render("alice"));
+        Thread.sleep(10L);
+
+        // Stale responses are served without waiting on the soffit
+        httpClient.block();
+        assertEquals("response-1", render("bob"));
+        assertEquals("response-1", render("carol"));
+        assertEquals("response-1", render("dave"));
+        assertTrue(httpClient.entered.tryAcquire(WAIT_SECONDS, TimeUnit.SECONDS));
+
+        httpClient.cacheControl = "public, max-age=300";
+        httpClient.release();
+        final long deadline = System.currentTimeMillis() + WAIT_SECONDS * 1000L;
+        while (!"response-2".equals(render("erin"))) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("The stale response was not revalidated");
+            }
+            Thread.sleep(10L);
+        }
+        assertEquals(2, httpClient.calls.get());
+    }
+
+    @Test
+    public void testRevalidationThreadsLimited() throws Exception {
+        final ThreadPoolExecutor executor =
+                (ThreadPoolExecutor)
+                        ReflectionTestUtils.getField(controller, "revalidationExecutor");
+        assertEquals(1, executor.getMaximumPoolSize());
+
+        httpClient.cacheControl = "public, max-age=0";
+        assertEquals("response-1", render("alice", WindowState.NORMAL));
+        assertEquals("response-2", render("alice", WindowState.MAXIMIZED));
+        httpClient.entered.drainPermits();
+        Thread.sleep(10L);
+
+        // The only revalidation thread is busy refreshing the first response
+        httpClient.block();
+        assertEquals("response-1", render("bob", WindowState.NORMAL));
+        assertTrue(httpClient.entered.tryAcquire(WAIT_SECONDS, TimeUnit.SECONDS));
+
+        // So the second stale response is served without starting another call
+        assertEquals("response-2", render("bob", WindowState.MAXIMIZED));
+        assertFalse(httpClient.entered.tryAcquire(200L, TimeUnit.MILLISECONDS));
+        assertEquals(3, httpClient.calls.get());
+    }
+
+    private String render(String username) throws IOException {
+        return render(username, WindowState.NORMAL);
+    }
+
+    private String render(String username, WindowState windowState) throws IOException {
+        final RenderRequest req = Mockito.mock(RenderRequest.class);
+        final PortletPreferences prefs = Mockito.mock(PortletPreferences.class);
+        Mockito.when(
+                        prefs.getValue(
+                                SoffitConnectorController.CONNECTOR_PREFERENCE_PREFIX
+                                        + ".serviceUrl",
+                                null))
+                .thenReturn(SERVICE_URL);
+        Mockito.when(req.getPreferences()).thenReturn(prefs);
+        Mockito.when(req.getPortletMode()).thenReturn(PortletMode.VIEW);
+        Mockito.when(req.getWindowState()).thenReturn(windowState);
+        Mockito.when(req.getRemoteUser()).thenReturn(username);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final RenderResponse res = Mockito.mock(RenderResponse.class);
+        Mockito.when(res.getPortletOutputStream())
+                .thenReturn(
+                        new OutputStream() {
+                            @Override
+                            public void write(int b) {
+                                out.write(b);
+                            }
+                        });
+
+        controller.invokeService(req, res);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void awaitWaiting(Thread thread) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + WAIT_SECONDS * 1000L;
+        while (thread.getState() != Thread.State.TIMED_WAITING) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Thread never waited on the shared call");
+            }
+            Thread.sleep(5L);
+        }
+    }
+
+    private final class RenderThread extends Thread {
+        private final String username;
+        private volatile String output;
+        private volatile Throwable failure;
+
+        RenderThread(String username) {
+            this.username = username;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                output = render(username);
+            } catch (Throwable t) {
+                failure = t;
+            }
+        }
+
+        String await() throws InterruptedException {
+            join(WAIT_SECONDS * 1000L);
+            if (failure != null) {
+                throw new AssertionError(failure);
+            }
+            return output;
+        }
+    }
+
+    /** Answers each request with "response-N" and the configured Cache-Control value. */
+    private static final class StubHttpClient extends CloseableHttpClient {
+        private final AtomicInteger calls = new AtomicInteger();
+        private final Semaphore entered = new Semaphore(0);
+        private volatile CountDownLatch gate = new CountDownLatch(0);
+        private volatile String cacheControl;
+
+        void block() {
+            gate = new CountDownLatch(1);
+        }
+
+        void release() {
+            gate.countDown();
+        }
+
+        @Override
+        protected CloseableHttpResponse doExecute(
+                HttpHost target, HttpRequest request, HttpContext context) throws IOException {
+            final int call = calls.incrementAndGet();
+            entered.release();
+            try {
+                gate.await(WAIT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+
+            final StubHttpResponse rslt = new StubHttpResponse();
+            rslt.setHeader(Headers.CACHE_CONTROL.getName(), cacheControl);
+            rslt.setEntity(
+                    new ByteArrayEntity(("response-" + call).getBytes(StandardCharsets.UTF_8)));
+            return rslt;
+        }
+
+        @Override
+        public void close() {}
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public HttpParams getParams() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public ClientConnectionManager getConnectionManager() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static final class StubHttpResponse extends BasicHttpResponse
+            implements CloseableHttpResponse {
+
+        StubHttpResponse() {
+            super(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, "OK");
+        }
+
+        @Override
+        public void close() {}
+    }
+}
@@ -18,9 +18,19 @@ import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jws;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
 import java.util.Date;
 import java.util.UUID;
 import javax.annotation.PostConstruct;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
 import org.apache.commons.lang3.StringUtils;
 import org.apereo.portal.soffit.ITokenizable;
 import org.jasypt.util.text.BasicTextEncryptor;
@@ -44,6 +54,45 @@ public class AbstractJwtService {
             "org.apereo.portal.soffit.jwt.encryptionPassword";
     public static final String DEFAULT_ENCRYPTION_PASSWORD = "CHANGEME";
 
+    public static final String ENCRYPTION_MODE_PROPERTY =
+            "org.apereo.portal.soffit.jwt.encryptionMode";
+    public static final String DEFAULT_ENCRYPTION_MODE = "PBE";
+
+    /**
+     * Marks tokens encrypted with {@link EncryptionMode#AES_GCM}. Never appears at the start of a
+     * {@link EncryptionMode#PBE} token, which is plain Base64.
+     */
+    static final String AES_GCM_TOKEN_PREFIX = "AESGCM:";
+
+    private static final String AES_GCM_TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final int AES_GCM_IV_LENGTH = 12;
+    private static final int AES_GCM_TAG_LENGTH_BITS = 128;
+    private static final String AES_KEY_ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int AES_KEY_LENGTH_BITS = 128;
+    private static final int AES_KEY_ITERATIONS = 65536;
+    /**
+     * Both ends of the transaction derive the same key from the shared password, so the salt is
+     * fixed. The key is derived once per service.
+     */
+    private static final byte[] AES_KEY_SALT =
+            "org.apereo.portal.soffit.jwt".getBytes(StandardCharsets.UTF_8);
+
+    /** How tokens are encrypted. Tokens in either format are always accepted by the parser. */
+    public enum EncryptionMode {
+
+        /**
+         * Jasypt password-based encryption; derives a key for every token. Supported by every
+         * Soffit renderer.
+         */
+        PBE,
+
+        /**
+         * AES-GCM with a key derived from the encryption password once, at startup. Requires
+         * Soffit renderers that include this version of AbstractJwtService.
+         */
+        AES_GCM
+    }
+
     protected final Logger logger = LoggerFactory.getLogger(getClass());
 
     @Value("${" + SIGNATURE_KEY_PROPERTY + ":" + DEFAULT_SIGNATURE_KEY + "}")
@@ -52,6 +101,9 @@ public class AbstractJwtService {
     @Value("${" + ENCRYPTION_PASSWORD_PROPERTY + ":" + DEFAULT_ENCRYPTION_PASSWORD + "}")
     private String encryptionPassword;
 
+    @Value("${" + ENCRYPTION_MODE_PROPERTY + ":" + DEFAULT_ENCRYPTION_MODE + "}")
+    private EncryptionMode encryptionMode = EncryptionMode.PBE;
+
     /*
      * NOTE:  There is also a StrongTextEncryptor, but it requires each deployment
      * to download and install the "Java Cryptography Extension (JCE) Unlimited
@@ -61,6 +113,9 @@ public class AbstractJwtService {
      */
     final BasicTextEncryptor textEncryptor = new BasicTextEncryptor();
 
+    private final SecureRandom secureRandom = new SecureRandom();
+    private SecretKey aesKey;
+
     @PostConstruct
     public void init() {
 
@@ -85,6 +140,8 @@ public class AbstractJwtService {
                     ENCRYPTION_PASSWORD_PROPERTY);
         }
         textEncryptor.setPassword(encryptionPassword);
+        aesKey = deriveAesKey(encryptionPassword);
+        logger.debug("Encrypting tokens using {}", encryptionMode);
     }
 
     protected Claims createClaims(
@@ -114,7 +171,10 @@ public class AbstractJwtService {
                         .compact();
 
         // Encryption
-        final String rslt = textEncryptor.encrypt(jwt);
+        final String rslt =
+                encryptionMode == EncryptionMode.AES_GCM
+                        ? encryptAesGcm(jwt)
+                        : textEncryptor.encrypt(jwt);
 
         return rslt;
     }
@@ -123,7 +183,10 @@ public class AbstractJwtService {
             String encryptedToken, Class<? extends ITokenizable> clazz) {
 
         // Decryption
-        final String jwt = textEncryptor.decrypt(encryptedToken);
+        final String jwt =
+                encryptedToken.startsWith(AES_GCM_TOKEN_PREFIX)
+                        ? decryptAesGcm(encryptedToken)
+                        : textEncryptor.decrypt(encryptedToken);
 
         final Jws<Claims> rslt = Jwts.parser().setSigningKey(signatureKey).parseClaimsJws(jwt);
 
@@ -145,4 +208,67 @@ public class AbstractJwtService {
 
         return rslt;
     }
+
+    /*
+     * Implementation
+     */
+
+    private static SecretKey deriveAesKey(String password) {
+        final PBEKeySpec spec =
+                new PBEKeySpec(
+                        password.toCharArray(),
+                        AES_KEY_SALT,
+                        AES_KEY_ITERATIONS,
+                        AES_KEY_LENGTH_BITS);
+        try {
+            final SecretKeyFactory factory = SecretKeyFactory.getInstance(AES_KEY_ALGORITHM);
+            return new SecretKeySpec(factory.generateSecret(spec).getEncoded(), "AES");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to derive the token encryption key", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private String encryptAesGcm(String jwt) {
+        final byte[] iv = new byte[AES_GCM_IV_LENGTH];
+        secureRandom.nextBytes(iv);
+        try {
+            final Cipher cipher = Cipher.getInstance(AES_GCM_TRANSFORMATION);
+            cipher.init(
+                    Cipher.ENCRYPT_MODE, aesKey, new GCMParameterSpec(AES_GCM_TAG_LENGTH_BITS, iv));
+            final byte[] cipherText = cipher.doFinal(jwt.getBytes(StandardCharsets.UTF_8));
+
+            // The IV travels in front of the cipher text
+            final byte[] token = new byte[iv.length + cipherText.length];
+            System.arraycopy(iv, 0, token, 0, iv.length);
+            System.arraycopy(cipherText, 0, token, iv.length, cipherText.length);
+            return AES_GCM_TOKEN_PREFIX
+                    + Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Failed to encrypt the token", e);
+        }
+    }
+
+    private String decryptAesGcm(String encryptedToken) {
+        try {
+            final byte[] token =
+                    Base64.getUrlDecoder()
+                            .decode(encryptedToken.substring(AES_GCM_TOKEN_PREFIX.length()));
+            if (token.length <= AES_GCM_IV_LENGTH) {
+                throw new SecurityException("The specified token is truncated");
+            }
+            final Cipher cipher = Cipher.getInstance(AES_GCM_TRANSFORMATION);
+            cipher.init(
+                    Cipher.DECRYPT_MODE,
+                    aesKey,
+                    new GCMParameterSpec(AES_GCM_TAG_LENGTH_BITS, token, 0, AES_GCM_IV_LENGTH));
+            final byte[] jwt =
+                    cipher.doFinal(token, AES_GCM_IV_LENGTH, token.length - AES_GCM_IV_LENGTH);
+            return new String(jwt, StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException | GeneralSecurityException e) {
+            // Includes tokens that were tampered with or encrypted with another password
+            throw new SecurityException("Failed to decrypt the specified token", e);
+        }
+    }
 }
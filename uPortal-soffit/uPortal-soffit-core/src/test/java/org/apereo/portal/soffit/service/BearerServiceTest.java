@@ -0,0 +1,107 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.soffit.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import org.apereo.portal.soffit.model.v1_0.Bearer;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class BearerServiceTest {
+
+    private static final Map<String, List<String>> ATTRIBUTES =
+            Collections.singletonMap("mail", Collections.singletonList("student@example.edu"));
+
+    private static final List<String> GROUPS = Arrays.asList("Everyone", "Students");
+
+    @Test
+    public void testPbeRoundTrip() {
+        final BearerService service = createService(AbstractJwtService.EncryptionMode.PBE);
+        final Bearer bearer = createBearer(service);
+
+        assertFalse(bearer.getEncryptedToken().startsWith(AbstractJwtService.AES_GCM_TOKEN_PREFIX));
+        assertParsed(service.parseBearerToken(bearer.getEncryptedToken()));
+    }
+
+    @Test
+    public void testAesGcmRoundTrip() {
+        final BearerService service = createService(AbstractJwtService.EncryptionMode.AES_GCM);
+        final Bearer bearer = createBearer(service);
+
+        assertTrue(bearer.getEncryptedToken().startsWith(AbstractJwtService.AES_GCM_TOKEN_PREFIX));
+        assertParsed(service.parseBearerToken(bearer.getEncryptedToken()));
+    }
+
+    @Test
+    public void testParseEitherMode() {
+        final BearerService pbe = createService(AbstractJwtService.EncryptionMode.PBE);
+        final BearerService aesGcm = createService(AbstractJwtService.EncryptionMode.AES_GCM);
+
+        // Renderers accept tokens from connectors in either mode
+        assertParsed(pbe.parseBearerToken(createBearer(aesGcm).getEncryptedToken()));
+        assertParsed(aesGcm.parseBearerToken(createBearer(pbe).getEncryptedToken()));
+    }
+
+    @Test(expected = SecurityException.class)
+    public void testAesGcmTamperedToken() {
+        final BearerService service = createService(AbstractJwtService.EncryptionMode.AES_GCM);
+        final String token = createBearer(service).getEncryptedToken();
+
+        final int i = token.length() / 2;
+        final char replacement = token.charAt(i) == 'A' ? 'B' : 'A';
+        final String tampered = token.substring(0, i) + replacement + token.substring(i + 1);
+        service.parseBearerToken(tampered);
+    }
+
+    @Test(expected = SecurityException.class)
+    public void testAesGcmWrongPassword() {
+        final BearerService service = createService(AbstractJwtService.EncryptionMode.AES_GCM);
+        final BearerService other = createService(AbstractJwtService.EncryptionMode.AES_GCM);
+        ReflectionTestUtils.setField(other, "encryptionPassword", "SOMETHINGELSE");
+        other.init();
+
+        other.parseBearerToken(createBearer(service).getEncryptedToken());
+    }
+
+    private BearerService createService(AbstractJwtService.EncryptionMode encryptionMode) {
+        final BearerService rslt = new BearerService();
+        ReflectionTestUtils.setField(
+                rslt, "signatureKey", AbstractJwtService.DEFAULT_SIGNATURE_KEY);
+        ReflectionTestUtils.setField(
+                rslt, "encryptionPassword", AbstractJwtService.DEFAULT_ENCRYPTION_PASSWORD);
+        ReflectionTestUtils.setField(rslt, "encryptionMode", encryptionMode);
+        rslt.init();
+        return rslt;
+    }
+
+    private Bearer createBearer(BearerService service) {
+        final Date expires = new Date(System.currentTimeMillis() + 60000L);
+        return service.createBearer("student", ATTRIBUTES, GROUPS, expires);
+    }
+
+    private void assertParsed(Bearer bearer) {
+        assertEquals("student", bearer.getUsername());
+        assertEquals(ATTRIBUTES, bearer.getAttributes());
+        assertEquals(GROUPS, bearer.getGroups());
+    }
+}
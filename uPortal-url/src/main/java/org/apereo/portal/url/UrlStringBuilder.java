@@ -18,7 +18,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -27,7 +26,10 @@ import org.apache.commons.lang.Validate;
 /**
  * Builds a URL.
  *
- * <p>This class is not thread safe.
+ * <p>This class is not thread safe. A builder that is no longer modified can be copied by
+ * several threads at once, which allows it to be shared as a template for URLs that only differ
+ * in their parameters. The encoded path is computed once and reused by copies until the path is
+ * changed.
  */
 public final class UrlStringBuilder extends BaseEncodedStringBuilder {
     private static final long serialVersionUID = 1L;
@@ -36,8 +38,10 @@ public final class UrlStringBuilder extends BaseEncodedStringBuilder {
     private final String host;
     private final Integer port;
     private final String context;
-    private final List<String> path = new LinkedList<String>();
+    private final List<String> path = new ArrayList<String>();
     private final Map<String, List<String>> parameters = new LinkedHashMap<String, List<String>>();
+    /** Encoded form of {@link #path}, null until computed or after the path changes */
+    private transient volatile String encodedPath;
 
     /**
      * Creates a URL with no host, protocol or port. The URL will start with a /
@@ -88,6 +92,7 @@ public final class UrlStringBuilder extends BaseEncodedStringBuilder {
         this.port = urlBuilder.port;
         this.context = urlBuilder.context;
         this.path.addAll(urlBuilder.path);
+        this.encodedPath = urlBuilder.getEncodedPath();
         for (final Map.Entry<String, List<String>> paramEntry : urlBuilder.parameters.entrySet()) {
             final String key = paramEntry.getKey();
             List<String> value = paramEntry.getValue();
@@ -244,6 +249,7 @@ public final class UrlStringBuilder extends BaseEncodedStringBuilder {
         Validate.noNullElements(elements, "elements cannot be null");
 
         this.path.clear();
+        this.encodedPath = null;
         this.addPath(elements);
         return this;
     }
@@ -257,6 +263,7 @@ public final class UrlStringBuilder extends BaseEncodedStringBuilder {
     public UrlStringBuilder addPath(String element) {
         Validate.notNull(element, "element cannot be null");
         this.path.add(element);
+        this.encodedPath = null;
         return this;
     }
 
@@ -272,6 +279,7 @@ public final class UrlStringBuilder extends BaseEncodedStringBuilder {
         for (final String element : elements) {
             this.path.add(element);
         }
+        this.encodedPath = null;
         return this;
     }
 
@@ -329,9 +337,7 @@ public final class UrlStringBuilder extends BaseEncodedStringBuilder {
         }
 
         // Add the path
-        for (final String element : this.path) {
-            url.append("/").append(this.encode(element));
-        }
+        url.append(this.getEncodedPath());
 
         // Add parameters
         if (this.parameters.size() > 0) {
@@ -373,4 +379,18 @@ public final class UrlStringBuilder extends BaseEncodedStringBuilder {
 
         return url.toString();
     }
+
+    /** @return The encoded path elements, each preceded by a /, computed once per path */
+    private String getEncodedPath() {
+        String encodedPath = this.encodedPath;
+        if (encodedPath == null) {
+            final StringBuilder pathBuilder = new StringBuilder();
+            for (final String element : this.path) {
+                pathBuilder.append("/").append(this.encode(element));
+            }
+            encodedPath = pathBuilder.toString();
+            this.encodedPath = encodedPath;
+        }
+        return encodedPath;
+    }
 }
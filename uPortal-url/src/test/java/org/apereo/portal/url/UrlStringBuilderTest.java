@@ -155,4 +155,27 @@ public class UrlStringBuilderTest {
         final String url2 = builder2.toString();
         Assert.assertEquals("/?p1=v1&p1=&p1=v2&p2=va%2C%3F&p2=v+b", url2);
     }
+
+    @Test
+    public void testTemplateCopies() {
+        final UrlStringBuilder template = new UrlStringBuilder("UTF-8", "uPortal");
+        template.addPath("f", "a b", "normal");
+
+        // Generating the URL computes the encoded path the copies reuse
+        Assert.assertEquals("/uPortal/f/a+b/normal", template.toString());
+
+        final UrlStringBuilder first = new UrlStringBuilder(template);
+        first.addParameter("p1", "v1");
+        Assert.assertEquals("/uPortal/f/a+b/normal?p1=v1", first.toString());
+
+        final UrlStringBuilder second = new UrlStringBuilder(template);
+        second.addPath("render.uP");
+        Assert.assertEquals("/uPortal/f/a+b/normal/render.uP", second.toString());
+
+        second.setPath("max");
+        Assert.assertEquals("/uPortal/max", second.toString());
+
+        // The template is not changed by its copies
+        Assert.assertEquals("/uPortal/f/a+b/normal", template.toString());
+    }
 }
@@ -0,0 +1,103 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.character.stream.events;
+
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.io.Writer;
+import org.apereo.portal.utils.ChunkedCharArrayWriter;
+import org.springframework.util.Assert;
+
+/**
+ * Character data held in the {@link ChunkedCharArrayWriter} it was rendered into. Intended for
+ * large, per-request data such as portlet output that is written once and never cached, so unlike
+ * {@link CharacterDataEventImpl} the data is not interned. Equal to any {@link CharacterDataEvent}
+ * with the same data, serializes as a {@link CharacterDataEventImpl}.
+ *
+ * @since 5.2
+ */
+public final class BufferedCharacterDataEventImpl implements WritableCharacterDataEvent {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param buffer The buffer holding the data, must not be written to after the event is created
+     */
+    public static CharacterDataEvent create(ChunkedCharArrayWriter buffer) {
+        if (buffer.size() == 0) {
+            return CharacterDataEventImpl.EMPTY_CHARACTER_DATA;
+        }
+        return new BufferedCharacterDataEventImpl(buffer);
+    }
+
+    private final transient ChunkedCharArrayWriter buffer;
+    private transient int hash;
+
+    private BufferedCharacterDataEventImpl(ChunkedCharArrayWriter buffer) {
+        Assert.notNull(buffer);
+        this.buffer = buffer;
+    }
+
+    @Override
+    public void writeTo(Writer out) throws IOException {
+        this.buffer.writeTo(out);
+    }
+
+    /** The data is copied into a new String on every call */
+    @Override
+    public String getData() {
+        return this.buffer.toString();
+    }
+
+    /* (non-Javadoc)
+     * @see org.apereo.portal.character.stream.events.CharacterEvent#getEventType()
+     */
+    @Override
+    public CharacterEventTypes getEventType() {
+        return CharacterEventTypes.CHARACTER;
+    }
+
+    @Override
+    public String toString() {
+        return "BufferedCharacterDataEvent [data=" + this.getData() + "]";
+    }
+
+    @Override
+    public int hashCode() {
+        int h = this.hash;
+        if (h == 0) {
+            // Must match CharacterDataEventImpl so equal events from either class hash the same
+            final int prime = 31;
+            h = 1;
+            h = prime * h + getEventType().hashCode();
+            h = prime * h + this.getData().hashCode();
+            this.hash = h;
+        }
+        return h;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null) return false;
+        if (!(obj instanceof CharacterDataEvent)) return false;
+        final CharacterDataEvent other = (CharacterDataEvent) obj;
+
+        return getEventType().equals(other.getEventType()) && getData().equals(other.getData());
+    }
+
+    private Object writeReplace() throws ObjectStreamException {
+        return CharacterDataEventImpl.create(this.getData());
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.character.stream.events;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import org.springframework.util.Assert;
+
+/**
+ * Holds character data as encoded bytes instead of a String. Equal to any {@link
+ * CharacterDataEvent} with the same data.
+ */
+public final class EncodedCharacterDataEventImpl implements EncodedCharacterDataEvent {
+    private static final long serialVersionUID = 1L;
+
+    public static EncodedCharacterDataEvent create(String data, Charset charset) {
+        return new EncodedCharacterDataEventImpl(data, charset);
+    }
+
+    private final byte[] encodedData;
+    // Charset is not Serializable
+    private final String charsetName;
+    // Not serialized, the hash of the event type changes between JVMs
+    private transient int hash;
+
+    private EncodedCharacterDataEventImpl(String data, Charset charset) {
+        Assert.notNull(data);
+        Assert.notNull(charset);
+        this.encodedData = data.getBytes(charset);
+        this.charsetName = charset.name();
+        this.hash = internalHashCode(data);
+    }
+
+    @Override
+    public Charset getCharset() {
+        return Charset.forName(this.charsetName);
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(this.encodedData);
+    }
+
+    /** The data is decoded on every call */
+    @Override
+    public String getData() {
+        return new String(this.encodedData, getCharset());
+    }
+
+    /* (non-Javadoc)
+     * @see org.apereo.portal.character.stream.events.CharacterEvent#getEventType()
+     */
+    @Override
+    public CharacterEventTypes getEventType() {
+        return CharacterEventTypes.CHARACTER;
+    }
+
+    /** @return Number of bytes in the encoded data */
+    public int getEncodedLength() {
+        return this.encodedData.length;
+    }
+
+    @Override
+    public String toString() {
+        return "EncodedCharacterDataEvent [charset="
+                + this.charsetName
+                + ", data="
+                + this.getData()
+                + "]";
+    }
+
+    @Override
+    public int hashCode() {
+        int h = this.hash;
+        if (h == 0) {
+            h = internalHashCode(this.getData());
+            this.hash = h;
+        }
+        return h;
+    }
+
+    // Must match CharacterDataEventImpl so equal events from either class hash the same
+    private int internalHashCode(String data) {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + getEventType().hashCode();
+        result = prime * result + data.hashCode();
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null) return false;
+        if (obj instanceof EncodedCharacterDataEventImpl) {
+            final EncodedCharacterDataEventImpl other = (EncodedCharacterDataEventImpl) obj;
+            if (this.hashCode() != other.hashCode()) return false;
+            if (this.charsetName.equals(other.charsetName)) {
+                return Arrays.equals(this.encodedData, other.encodedData);
+            }
+        }
+        if (!(obj instanceof CharacterDataEvent)) return false;
+        final CharacterDataEvent other = (CharacterDataEvent) obj;
+
+        return getEventType().equals(other.getEventType()) && getData().equals(other.getData());
+    }
+}
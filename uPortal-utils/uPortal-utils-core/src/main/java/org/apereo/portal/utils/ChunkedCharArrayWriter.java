@@ -0,0 +1,150 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link Writer} that buffers characters in a list of chunks. Unlike a {@link StringBuilder} the
+ * characters already written are never copied when the buffer grows and the content can be written
+ * to another {@link Writer} with {@link #writeTo(Writer)} without first being copied into a {@link
+ * String}. Not thread safe.
+ *
+ * @since 5.2
+ */
+public class ChunkedCharArrayWriter extends Writer {
+    private static final int INITIAL_CHUNK_SIZE = 1024;
+    private static final int MAXIMUM_CHUNK_SIZE = 16384;
+
+    private final List<char[]> chunks = new ArrayList<>();
+    private char[] currentChunk;
+    private int currentPosition;
+    private int size;
+
+    @Override
+    public void write(int c) {
+        if (this.currentChunk == null || this.currentPosition == this.currentChunk.length) {
+            this.addChunk();
+        }
+        this.currentChunk[this.currentPosition++] = (char) c;
+        this.size++;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+        if (off < 0 || len < 0 || off + len > cbuf.length) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        while (len > 0) {
+            if (this.currentChunk == null || this.currentPosition == this.currentChunk.length) {
+                this.addChunk();
+            }
+            final int count = Math.min(len, this.currentChunk.length - this.currentPosition);
+            System.arraycopy(cbuf, off, this.currentChunk, this.currentPosition, count);
+            this.currentPosition += count;
+            this.size += count;
+            off += count;
+            len -= count;
+        }
+    }
+
+    @Override
+    public void write(char[] cbuf) {
+        this.write(cbuf, 0, cbuf.length);
+    }
+
+    @Override
+    public void write(String str) {
+        this.write(str, 0, str.length());
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+        if (off < 0 || len < 0 || off + len > str.length()) {
+            throw new IndexOutOfBoundsException();
+        }
+
+        while (len > 0) {
+            if (this.currentChunk == null || this.currentPosition == this.currentChunk.length) {
+                this.addChunk();
+            }
+            final int count = Math.min(len, this.currentChunk.length - this.currentPosition);
+            str.getChars(off, off + count, this.currentChunk, this.currentPosition);
+            this.currentPosition += count;
+            this.size += count;
+            off += count;
+            len -= count;
+        }
+    }
+
+    /** Write all buffered characters to the specified {@link Writer} */
+    public void writeTo(Writer out) throws IOException {
+        for (final char[] chunk : this.chunks) {
+            final int length = chunk == this.currentChunk ? this.currentPosition : chunk.length;
+            out.write(chunk, 0, length);
+        }
+    }
+
+    /** @return Number of characters buffered */
+    public int size() {
+        return this.size;
+    }
+
+    /** Discard all buffered characters */
+    public void reset() {
+        this.chunks.clear();
+        this.currentChunk = null;
+        this.currentPosition = 0;
+        this.size = 0;
+    }
+
+    /** Chunks double in size up to {@link #MAXIMUM_CHUNK_SIZE} so small output stays small */
+    private void addChunk() {
+        final int chunkSize;
+        if (this.currentChunk == null) {
+            chunkSize = INITIAL_CHUNK_SIZE;
+        } else {
+            chunkSize = Math.min(this.currentChunk.length * 2, MAXIMUM_CHUNK_SIZE);
+        }
+        this.currentChunk = new char[chunkSize];
+        this.currentPosition = 0;
+        this.chunks.add(this.currentChunk);
+    }
+
+    @Override
+    public void flush() {
+        // Nothing to flush
+    }
+
+    @Override
+    public void close() {
+        // Nothing to close, the buffer remains readable
+    }
+
+    /** @return The buffered characters copied into a new String */
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder(this.size);
+        for (final char[] chunk : this.chunks) {
+            final int length = chunk == this.currentChunk ? this.currentPosition : chunk.length;
+            builder.append(chunk, 0, length);
+        }
+        return builder.toString();
+    }
+}
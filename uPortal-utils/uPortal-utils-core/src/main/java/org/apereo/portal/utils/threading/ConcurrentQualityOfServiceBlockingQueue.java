@@ -0,0 +1,582 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.utils.threading;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apereo.portal.utils.ConcurrentMapUtils;
+
+/**
+ * A {@link QualityOfServiceBlockingQueue} alternative for queues with many concurrent producers.
+ * Elements are placed into sub-queues based on {@link #getElementKey(Object)} and consumed in the
+ * order determined by {@link #getNextElementKey()}, with the same contract as {@link
+ * QualityOfServiceBlockingQueue}.
+ *
+ * <p>Instead of a single lock guarding every operation producers and consumers are split, in the
+ * same way as {@link java.util.concurrent.LinkedBlockingQueue}. Adding an element does not lock
+ * unless the queue was empty, to wake a waiting consumer, or is full and the producer waits for
+ * space. Consumers share a take lock, {@link #getNextElementKey()} is only ever called while
+ * holding it and so is still never called concurrently.
+ *
+ * <p>{@link #iterator()}, {@link #toArray()} and {@link #size()} are weakly consistent, elements
+ * being added concurrently may or may not be included.
+ *
+ * @param <K> The type of key used for grouping elements in the queue
+ * @param <T> The type of elements in the queue
+ */
+public abstract class ConcurrentQualityOfServiceBlockingQueue<K, T> extends AbstractQueue<T>
+        implements BlockingQueue<T> {
+    private final ConcurrentMap<K, Queue<T>> keyedQueues = new ConcurrentHashMap<K, Queue<T>>();
+    private final Set<K> queueKeySet = Collections.unmodifiableSet(this.keyedQueues.keySet());
+
+    private final int capacity;
+
+    /** Elements added and visible to consumers, only incremented after the element is added */
+    private final AtomicInteger count = new AtomicInteger();
+    /** Capacity claimed by producers, claimed before an element is added */
+    private final AtomicInteger reserved = new AtomicInteger();
+
+    private final ReentrantLock takeLock = new ReentrantLock();
+    private final Condition notEmpty = takeLock.newCondition();
+    private final ReentrantLock putLock = new ReentrantLock();
+    private final Condition notFull = putLock.newCondition();
+
+    // MUST only be accessed while holding the takeLock
+    private K peekedKey = null;
+
+    public ConcurrentQualityOfServiceBlockingQueue() {
+        this.capacity = Integer.MAX_VALUE;
+    }
+
+    public ConcurrentQualityOfServiceBlockingQueue(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException();
+        }
+
+        this.capacity = capacity;
+    }
+
+    /** @return the key for the specified element */
+    protected abstract K getElementKey(T e);
+
+    /**
+     * Get the next key to use for a call to {@link #take()}, {@link #poll()}, {@link #poll(long,
+     * TimeUnit)}, {@link #remove()}, {@link #element()}, {@link #peek()}, {@link
+     * #drainTo(Collection)}, or {@link #drainTo(Collection, int)}
+     *
+     * <p>This method will only be called if {@link #isEmpty()} is false and will never be called
+     * concurrently. It must only return a key for which {@link #isKeyEmpty(Object)} returns false;
+     */
+    protected abstract K getNextElementKey();
+
+    /** @return A read only Set of the keys in the queue */
+    public final Set<K> getKeySet() {
+        return queueKeySet;
+    }
+
+    /** @return true if there are no elements for the specified key */
+    public final boolean isKeyEmpty(K key) {
+        final Queue<T> queue = this.keyedQueues.get(key);
+        if (queue == null) {
+            return true;
+        }
+
+        return queue.isEmpty();
+    }
+
+    /** @return The number of elements in the queue for the specified key */
+    public final int getKeySize(K key) {
+        final Queue<T> queue = this.keyedQueues.get(key);
+        if (queue == null) {
+            return 0;
+        }
+
+        return queue.size();
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.Queue#offer(java.lang.Object)
+     */
+    @Override
+    public final boolean offer(T e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+
+        if (!this.tryReserve()) {
+            return false;
+        }
+
+        this.enqueue(e);
+        return true;
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.concurrent.BlockingQueue#put(java.lang.Object)
+     */
+    @Override
+    public final void put(T e) throws InterruptedException {
+        this.offer(e, -1, TimeUnit.MILLISECONDS);
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.concurrent.BlockingQueue#offer(java.lang.Object, long, java.util.concurrent.TimeUnit)
+     */
+    @Override
+    public final boolean offer(T e, long timeout, TimeUnit unit) throws InterruptedException {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+
+        if (!this.tryReserve()) {
+            long nanos = unit.toNanos(timeout);
+
+            this.putLock.lockInterruptibly();
+            try {
+                while (!this.tryReserve()) {
+                    if (timeout < 0) {
+                        this.notFull.await();
+                    } else {
+                        if (nanos <= 0) {
+                            return false;
+                        }
+                        nanos = this.notFull.awaitNanos(nanos);
+                    }
+                }
+
+                // Wake up other waiting producers if there is still space
+                if (this.reserved.get() < this.capacity) {
+                    this.notFull.signal();
+                }
+            } finally {
+                this.putLock.unlock();
+            }
+        }
+
+        this.enqueue(e);
+        return true;
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.concurrent.BlockingQueue#take()
+     */
+    @Override
+    public final T take() throws InterruptedException {
+        return this.poll(-1, TimeUnit.MILLISECONDS);
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.concurrent.BlockingQueue#poll(long, java.util.concurrent.TimeUnit)
+     */
+    @Override
+    public final T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+
+        final T e;
+        this.takeLock.lockInterruptibly();
+        try {
+            // Wait for an element to be available to return
+            while (this.count.get() <= 0) {
+                if (timeout < 0) {
+                    this.notEmpty.await();
+                } else {
+                    if (nanos <= 0) {
+                        return null;
+                    }
+                    nanos = this.notEmpty.awaitNanos(nanos);
+                }
+            }
+
+            e = this.dequeue();
+        } finally {
+            this.takeLock.unlock();
+        }
+
+        this.release(1);
+        return e;
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.Queue#poll()
+     */
+    @Override
+    public final T poll() {
+        // Short circuit without locking
+        if (this.count.get() <= 0) {
+            return null;
+        }
+
+        final T e;
+        this.takeLock.lock();
+        try {
+            // Re-check size within the lock
+            if (this.count.get() <= 0) {
+                return null;
+            }
+
+            e = this.dequeue();
+        } finally {
+            this.takeLock.unlock();
+        }
+
+        this.release(1);
+        return e;
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.Queue#peek()
+     */
+    @Override
+    public final T peek() {
+        // Short circuit without locking
+        if (this.count.get() <= 0) {
+            return null;
+        }
+
+        this.takeLock.lock();
+        try {
+            // Re-check size within the lock
+            if (this.count.get() <= 0) {
+                return null;
+            }
+
+            if (this.peekedKey == null) {
+                this.peekedKey = this.getNextElementKey();
+            }
+
+            return this.getKeyQueue(this.peekedKey).peek();
+        } finally {
+            this.takeLock.unlock();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.concurrent.BlockingQueue#drainTo(java.util.Collection)
+     */
+    @Override
+    public final int drainTo(Collection<? super T> c) {
+        return this.drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.concurrent.BlockingQueue#drainTo(java.util.Collection, int)
+     */
+    @Override
+    public final int drainTo(Collection<? super T> c, int maxElements) {
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+
+        // Short circuit without locking
+        if (this.count.get() <= 0 || maxElements <= 0) {
+            return 0;
+        }
+
+        int drained = 0;
+        this.takeLock.lock();
+        try {
+            while (drained < maxElements && this.count.get() > 0) {
+                c.add(this.dequeue());
+                drained++;
+            }
+        } finally {
+            this.takeLock.unlock();
+        }
+
+        this.release(drained);
+        return drained;
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.concurrent.BlockingQueue#remove(java.lang.Object)
+     */
+    @Override
+    public final boolean remove(Object o) {
+        if (o == null) {
+            return false;
+        }
+
+        @SuppressWarnings("unchecked")
+        final K key = this.getElementKey((T) o);
+        final Queue<T> queue = this.keyedQueues.get(key);
+        if (queue == null) {
+            return false;
+        }
+
+        this.takeLock.lock();
+        try {
+            if (!queue.remove(o)) {
+                return false;
+            }
+            this.removed(key, queue);
+        } finally {
+            this.takeLock.unlock();
+        }
+
+        this.release(1);
+        return true;
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.concurrent.BlockingQueue#contains(java.lang.Object)
+     */
+    @Override
+    public final boolean contains(Object o) {
+        if (o == null) {
+            return false;
+        }
+
+        @SuppressWarnings("unchecked")
+        final K key = this.getElementKey((T) o);
+        final Queue<T> queue = this.keyedQueues.get(key);
+        if (queue == null) {
+            return false;
+        }
+
+        return queue.contains(o);
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.concurrent.BlockingQueue#remainingCapacity()
+     */
+    @Override
+    public final int remainingCapacity() {
+        return this.capacity - this.reserved.get();
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.Collection#size()
+     */
+    @Override
+    public final int size() {
+        return Math.max(0, this.count.get());
+    }
+
+    /* (non-Javadoc)
+     * @see java.util.Collection#iterator()
+     */
+    @Override
+    public final Iterator<T> iterator() {
+        return new ElementIterator();
+    }
+
+    /** Claim capacity for one element */
+    private boolean tryReserve() {
+        while (true) {
+            final int current = this.reserved.get();
+            if (current >= this.capacity) {
+                return false;
+            }
+            if (this.reserved.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /** Add an element that capacity has been reserved for and make it visible to consumers */
+    private void enqueue(T e) {
+        this.getOrCreateQueue(e).add(e);
+
+        final int c = this.count.getAndIncrement();
+        if (c == 0) {
+            // Queue was empty, wake a waiting consumer
+            this.takeLock.lock();
+            try {
+                this.notEmpty.signal();
+            } finally {
+                this.takeLock.unlock();
+            }
+        }
+    }
+
+    /** Remove the next element, MUST be called while holding the takeLock with count > 0 */
+    private T dequeue() {
+        final K key;
+        if (this.peekedKey != null) {
+            // If there is a peeked key use it
+            key = this.peekedKey;
+            this.peekedKey = null;
+        } else {
+            key = this.getNextElementKey();
+        }
+
+        final T e = this.getKeyQueue(key).poll();
+
+        final int c = this.count.getAndDecrement();
+        if (c > 1) {
+            // Still elements left, wake the next waiting consumer
+            this.notEmpty.signal();
+        }
+        return e;
+    }
+
+    /** Called after an element is removed from a sub-queue, MUST hold the takeLock */
+    private void removed(K key, Queue<T> queue) {
+        this.count.decrementAndGet();
+        if (key.equals(this.peekedKey) && queue.isEmpty()) {
+            this.peekedKey = null;
+        }
+    }
+
+    /** Return capacity claimed by removed elements, waking a waiting producer if it was full */
+    private void release(int elements) {
+        if (elements <= 0) {
+            return;
+        }
+
+        final int r = this.reserved.getAndAdd(-elements);
+        if (r >= this.capacity) {
+            this.putLock.lock();
+            try {
+                this.notFull.signal();
+            } finally {
+                this.putLock.unlock();
+            }
+        }
+    }
+
+    /** @return The non-empty sub-queue for the key, MUST hold the takeLock */
+    private Queue<T> getKeyQueue(K key) {
+        final Queue<T> queue = this.keyedQueues.get(key);
+        if (queue == null || queue.isEmpty()) {
+            throw new IllegalStateException(
+                    "getNextElementKey returned key='"
+                            + key
+                            + "' but there are no elements available for the key. This violates the contract specified for getNextElementKey: "
+                            + this.toString());
+        }
+        return queue;
+    }
+
+    /** @return The Queue to use for the specified element */
+    private Queue<T> getOrCreateQueue(T e) {
+        final K key = this.getElementKey(e);
+        Queue<T> queue = this.keyedQueues.get(key);
+        if (queue == null) {
+            queue = new ConcurrentLinkedQueue<T>();
+            queue = ConcurrentMapUtils.putIfAbsent(this.keyedQueues, key, queue);
+        }
+        return queue;
+    }
+
+    /** Iterates over the Queue's in the keyedQueues Map */
+    private final class ElementIterator implements Iterator<T> {
+        private final Iterator<Entry<K, Queue<T>>> queueIterator;
+        private K key = null;
+        private Queue<T> queue = null;
+        private Iterator<T> elementIterator = null;
+        private T lastReturned = null;
+
+        public ElementIterator() {
+            this.queueIterator = keyedQueues.entrySet().iterator();
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.Iterator#hasNext()
+         */
+        @Override
+        public boolean hasNext() {
+            while (this.elementIterator == null || !this.elementIterator.hasNext()) {
+                if (!this.queueIterator.hasNext()) {
+                    return false;
+                }
+
+                final Entry<K, Queue<T>> entry = this.queueIterator.next();
+                this.key = entry.getKey();
+                this.queue = entry.getValue();
+                this.elementIterator = this.queue.iterator();
+            }
+            return true;
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.Iterator#next()
+         */
+        @Override
+        public T next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            this.lastReturned = this.elementIterator.next();
+            return this.lastReturned;
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.Iterator#remove()
+         */
+        @Override
+        public void remove() {
+            if (this.lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            final T e = this.lastReturned;
+            this.lastReturned = null;
+
+            // A consumer may have taken the element since it was returned, only account for it if
+            // it is still in the queue. Consumers hold the takeLock so it cannot be taken while
+            // removing it here.
+            takeLock.lock();
+            try {
+                if (!this.queue.remove(e)) {
+                    return;
+                }
+                removed(this.key, this.queue);
+            } finally {
+                takeLock.unlock();
+            }
+
+            release(1);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        final StringBuilder str = new StringBuilder();
+
+        str.append("{");
+
+        for (final Iterator<Entry<K, Queue<T>>> entryItr =
+                        this.keyedQueues.entrySet().iterator();
+                entryItr.hasNext(); ) {
+            final Entry<K, Queue<T>> entry = entryItr.next();
+            str.append(entry.getKey()).append("=").append(entry.getValue().size());
+
+            if (entryItr.hasNext()) {
+                str.append(", ");
+            }
+        }
+
+        str.append("}");
+        return str.toString();
+    }
+}
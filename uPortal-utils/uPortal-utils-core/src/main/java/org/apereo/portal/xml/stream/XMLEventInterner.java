@@ -0,0 +1,223 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.xml.stream;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Characters;
+import javax.xml.stream.events.Comment;
+import javax.xml.stream.events.EndElement;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+/**
+ * Shares identical {@link XMLEvent} instances between event buffers. Two events are identical if
+ * they would serialize the same way: the same element name, attributes (in order) and declared
+ * namespaces for elements and the same text for character data and comments. Other event types
+ * are returned as-is.
+ *
+ * <p>The shared instance is the first one seen, so its {@link javax.xml.stream.Location} and
+ * {@link javax.xml.namespace.NamespaceContext} are what later callers get back.
+ *
+ * <p>Shared events are weakly referenced, once no buffer references an event it is dropped from
+ * the interner.
+ */
+public class XMLEventInterner {
+    private static final Object[] EMPTY = new Object[0];
+
+    private final Cache<EventKey, XMLEvent> eventCache =
+            CacheBuilder.newBuilder().weakValues().recordStats().build();
+
+    /**
+     * @return An event identical to the specified event, the specified event is returned if it is
+     *     the first of its kind or of a type that is not shared.
+     */
+    public XMLEvent intern(final XMLEvent event) {
+        final EventKey key = createKey(event);
+        if (key == null) {
+            return event;
+        }
+
+        try {
+            return this.eventCache.get(key, () -> event);
+        } catch (ExecutionException e) {
+            // Can't happen, the loader just returns the event
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** @return Number of distinct events currently shared */
+    public long getSize() {
+        return this.eventCache.size();
+    }
+
+    /** @return Hit/miss statistics for calls to {@link #intern(XMLEvent)} */
+    public CacheStats getStats() {
+        return this.eventCache.stats();
+    }
+
+    private static EventKey createKey(XMLEvent event) {
+        switch (event.getEventType()) {
+            case XMLStreamConstants.START_ELEMENT:
+                {
+                    final StartElement startElement = event.asStartElement();
+                    return new EventKey(
+                            XMLStreamConstants.START_ELEMENT,
+                            startElement.getName(),
+                            null,
+                            toAttributeArray(startElement.getAttributes()),
+                            toNamespaceArray(startElement.getNamespaces()));
+                }
+            case XMLStreamConstants.END_ELEMENT:
+                {
+                    final EndElement endElement = event.asEndElement();
+                    return new EventKey(
+                            XMLStreamConstants.END_ELEMENT,
+                            endElement.getName(),
+                            null,
+                            EMPTY,
+                            toNamespaceArray(endElement.getNamespaces()));
+                }
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+                {
+                    final Characters characters = event.asCharacters();
+                    // Fold the flags that change how the text is serialized into the type
+                    final int type =
+                            characters.isCData()
+                                    ? XMLStreamConstants.CDATA
+                                    : characters.isIgnorableWhiteSpace()
+                                            ? XMLStreamConstants.SPACE
+                                            : XMLStreamConstants.CHARACTERS;
+                    return new EventKey(type, null, characters.getData(), EMPTY, EMPTY);
+                }
+            case XMLStreamConstants.COMMENT:
+                {
+                    return new EventKey(
+                            XMLStreamConstants.COMMENT,
+                            null,
+                            ((Comment) event).getText(),
+                            EMPTY,
+                            EMPTY);
+                }
+            default:
+                {
+                    return null;
+                }
+        }
+    }
+
+    private static Object[] toAttributeArray(Iterator<?> attributes) {
+        if (!attributes.hasNext()) {
+            return EMPTY;
+        }
+
+        final List<Object> parts = new ArrayList<Object>();
+        while (attributes.hasNext()) {
+            final Attribute attribute = (Attribute) attributes.next();
+            final QName name = attribute.getName();
+            // QName.equals ignores the prefix but it is part of the serialized form
+            parts.add(name);
+            parts.add(name.getPrefix());
+            parts.add(attribute.getValue());
+        }
+        return parts.toArray();
+    }
+
+    private static Object[] toNamespaceArray(Iterator<?> namespaces) {
+        if (!namespaces.hasNext()) {
+            return EMPTY;
+        }
+
+        final List<Object> parts = new ArrayList<Object>();
+        while (namespaces.hasNext()) {
+            final Namespace namespace = (Namespace) namespaces.next();
+            parts.add(namespace.getPrefix());
+            parts.add(namespace.getNamespaceURI());
+        }
+        return parts.toArray();
+    }
+
+    /**
+     * Identity of an event. Only holds the values that make up the event and never the event
+     * itself so that the interned event can still be collected.
+     */
+    private static final class EventKey {
+        private final int eventType;
+        private final QName name;
+        private final String prefix;
+        private final String text;
+        private final Object[] attributes;
+        private final Object[] namespaces;
+        private final int hash;
+
+        EventKey(int eventType, QName name, String text, Object[] attrs, Object[] namespaces) {
+            this.eventType = eventType;
+            this.name = name;
+            this.prefix = (name == null) ? null : name.getPrefix();
+            this.text = text;
+            this.attributes = attrs;
+            this.namespaces = namespaces;
+            this.hash = internalHashCode();
+        }
+
+        private int internalHashCode() {
+            final int prime = 31;
+            int result = 1;
+            result = prime * result + this.eventType;
+            result = prime * result + ((this.name == null) ? 0 : this.name.hashCode());
+            result = prime * result + ((this.prefix == null) ? 0 : this.prefix.hashCode());
+            result = prime * result + ((this.text == null) ? 0 : this.text.hashCode());
+            result = prime * result + Arrays.hashCode(this.attributes);
+            result = prime * result + Arrays.hashCode(this.namespaces);
+            return result;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof EventKey)) return false;
+            final EventKey other = (EventKey) obj;
+            if (this.hash != other.hash || this.eventType != other.eventType) return false;
+            if (this.name == null) {
+                if (other.name != null) return false;
+            } else if (!this.name.equals(other.name)) return false;
+            if (this.prefix == null) {
+                if (other.prefix != null) return false;
+            } else if (!this.prefix.equals(other.prefix)) return false;
+            if (this.text == null) {
+                if (other.text != null) return false;
+            } else if (!this.text.equals(other.text)) return false;
+            return Arrays.equals(this.attributes, other.attributes)
+                    && Arrays.equals(this.namespaces, other.namespaces);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringWriter;
+import org.junit.Test;
+
+public class ChunkedCharArrayWriterTest {
+
+    @Test
+    public void testWriteAcrossChunks() throws Exception {
+        final StringBuilder expected = new StringBuilder();
+        final ChunkedCharArrayWriter writer = new ChunkedCharArrayWriter();
+        for (int i = 0; i < 10000; i++) {
+            final String line = "<li>" + i + "</li>";
+            expected.append(line);
+            writer.write(line);
+            expected.append('\n');
+            writer.write('\n');
+        }
+        final char[] chars = expected.substring(0, 5000).toCharArray();
+        expected.append(chars, 100, 4000);
+        writer.write(chars, 100, 4000);
+
+        assertEquals(expected.length(), writer.size());
+        assertEquals(expected.toString(), writer.toString());
+
+        final StringWriter out = new StringWriter();
+        writer.writeTo(out);
+        assertEquals(expected.toString(), out.toString());
+    }
+
+    @Test
+    public void testReset() throws Exception {
+        final ChunkedCharArrayWriter writer = new ChunkedCharArrayWriter();
+        writer.write("discarded");
+        writer.reset();
+        assertEquals(0, writer.size());
+        assertEquals("", writer.toString());
+
+        writer.write("kept");
+        assertEquals("kept", writer.toString());
+    }
+}
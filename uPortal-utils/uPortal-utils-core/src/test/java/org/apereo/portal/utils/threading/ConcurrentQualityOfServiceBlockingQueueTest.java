@@ -0,0 +1,256 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.utils.threading;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class ConcurrentQualityOfServiceBlockingQueueTest {
+
+    @Test
+    public void testRoundRobinByKey() throws Exception {
+        final RoundRobinQueue queue = new RoundRobinQueue(10);
+        queue.add("a1");
+        queue.add("a2");
+        queue.add("a3");
+        queue.add("b1");
+        queue.add("c1");
+        queue.add("c2");
+
+        assertEquals(6, queue.size());
+        assertEquals(3, queue.getKeySize("a"));
+        assertEquals("a1", queue.peek());
+
+        final List<String> order = new ArrayList<String>();
+        queue.drainTo(order, 4);
+        assertEquals(2, queue.size());
+        order.add(queue.poll());
+        order.add(queue.take());
+
+        assertEquals(6, order.size());
+        // Peeked key is returned first, then one element per key in turn
+        assertEquals("a1", order.get(0));
+        assertEquals("b1", order.get(1));
+        assertEquals("c1", order.get(2));
+        assertEquals("a2", order.get(3));
+        assertEquals("c2", order.get(4));
+        assertEquals("a3", order.get(5));
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testCapacity() throws Exception {
+        final RoundRobinQueue queue = new RoundRobinQueue(2);
+        assertTrue(queue.offer("a1"));
+        assertTrue(queue.offer("b1"));
+        assertFalse(queue.offer("c1"));
+        assertFalse(queue.offer("c1", 10, TimeUnit.MILLISECONDS));
+        assertEquals(0, queue.remainingCapacity());
+
+        assertTrue(queue.remove("a1"));
+        assertFalse(queue.contains("a1"));
+        assertEquals(1, queue.remainingCapacity());
+        assertTrue(queue.offer("c1"));
+
+        final Iterator<String> itr = queue.iterator();
+        itr.next();
+        itr.remove();
+        assertEquals(1, queue.size());
+        assertEquals(1, queue.remainingCapacity());
+    }
+
+    @Test
+    public void testPeekedElementRemoved() throws Exception {
+        final RoundRobinQueue queue = new RoundRobinQueue(10);
+        queue.add("a1");
+        queue.add("b1");
+
+        assertEquals("a1", queue.peek());
+        assertTrue(queue.remove("a1"));
+        assertEquals("b1", queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testIteratorRemoveAfterTake() throws Exception {
+        final RoundRobinQueue queue = new RoundRobinQueue(2);
+        queue.add("a1");
+
+        final Iterator<String> itr = queue.iterator();
+        assertEquals("a1", itr.next());
+        assertEquals("a1", queue.poll());
+        // Already taken, the removal must not be counted a second time
+        itr.remove();
+
+        assertEquals(0, queue.size());
+        assertEquals(2, queue.remainingCapacity());
+        queue.add("b1");
+        assertEquals(1, queue.size());
+        assertEquals("b1", queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testConcurrentTakeAndIteratorRemove() throws Exception {
+        final int elements = 20000;
+        final RoundRobinQueue queue = new RoundRobinQueue(elements);
+        for (int i = 0; i < elements; i++) {
+            queue.add(Character.toString((char) ('a' + i % 4)) + i);
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            final Future<?> taken =
+                    executor.submit(() -> {
+                        start.await();
+                        while (queue.poll() != null) {}
+                        return null;
+                    });
+            final Future<?> removed =
+                    executor.submit(() -> {
+                        start.await();
+                        for (final Iterator<String> itr = queue.iterator(); itr.hasNext(); ) {
+                            itr.next();
+                            itr.remove();
+                        }
+                        return null;
+                    });
+
+            start.countDown();
+            taken.get(30, TimeUnit.SECONDS);
+            removed.get(30, TimeUnit.SECONDS);
+
+            // Each element was counted once, whether it was taken or removed
+            assertEquals(0, queue.size());
+            assertEquals(elements, queue.remainingCapacity());
+            queue.add("a1");
+            assertEquals(1, queue.size());
+            assertEquals("a1", queue.poll());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBlockedPutAndTake() throws Exception {
+        final RoundRobinQueue queue = new RoundRobinQueue(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<String> taken = executor.submit(queue::take);
+            queue.put("a1");
+            assertEquals("a1", taken.get(5, TimeUnit.SECONDS));
+
+            queue.put("a2");
+            final Future<?> put = executor.submit(() -> {
+                queue.put("b1");
+                return null;
+            });
+            assertEquals("a2", queue.take());
+            put.get(5, TimeUnit.SECONDS);
+            assertEquals("b1", queue.poll(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testConcurrentProducersAndConsumers() throws Exception {
+        final int producers = 4;
+        final int consumers = 3;
+        final int perProducer = 5000;
+        final RoundRobinQueue queue = new RoundRobinQueue(100);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(producers + consumers);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            for (int p = 0; p < producers; p++) {
+                final String key = Character.toString((char) ('a' + p));
+                executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < perProducer; i++) {
+                        queue.put(key + i);
+                    }
+                    return null;
+                });
+            }
+
+            final List<Future<Integer>> taken = new ArrayList<Future<Integer>>();
+            for (int c = 0; c < consumers; c++) {
+                taken.add(executor.submit(() -> {
+                    start.await();
+                    int count = 0;
+                    while (queue.poll(500, TimeUnit.MILLISECONDS) != null) {
+                        count++;
+                    }
+                    return count;
+                }));
+            }
+
+            start.countDown();
+            int total = 0;
+            for (final Future<Integer> future : taken) {
+                total += future.get(30, TimeUnit.SECONDS);
+            }
+
+            assertEquals(producers * perProducer, total);
+            assertEquals(0, queue.size());
+            assertEquals(100, queue.remainingCapacity());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /** Keys elements by their first character and returns keys in turn */
+    private static final class RoundRobinQueue
+            extends ConcurrentQualityOfServiceBlockingQueue<String, String> {
+        private Iterator<String> keys;
+
+        RoundRobinQueue(int capacity) {
+            super(capacity);
+        }
+
+        @Override
+        protected String getElementKey(String e) {
+            return e.substring(0, 1);
+        }
+
+        @Override
+        protected String getNextElementKey() {
+            while (true) {
+                if (this.keys == null || !this.keys.hasNext()) {
+                    this.keys = this.getKeySet().iterator();
+                }
+                final String key = this.keys.next();
+                if (!this.isKeyEmpty(key)) {
+                    return key;
+                }
+            }
+        }
+    }
+}
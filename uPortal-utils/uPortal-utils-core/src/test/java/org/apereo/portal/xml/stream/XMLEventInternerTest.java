@@ -0,0 +1,100 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.xml.stream;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.events.XMLEvent;
+import org.junit.Test;
+
+public class XMLEventInternerTest {
+    private static final XMLEventFactory EVENT_FACTORY = XMLEventFactory.newFactory();
+
+    @Test
+    public void testIdenticalDocumentsShareEvents() throws Exception {
+        final String xml = "<a xmlns:p=\"urn:p\"><p:b c=\"1\" d=\"2\">text</p:b><!--note--></a>";
+        final List<XMLEvent> first = readEvents(xml);
+        final List<XMLEvent> second = readEvents(xml);
+
+        final XMLEventInterner interner = new XMLEventInterner();
+        final List<XMLEvent> internedFirst = new ArrayList<XMLEvent>();
+        for (final XMLEvent event : first) {
+            internedFirst.add(interner.intern(event));
+        }
+
+        for (int i = 0; i < second.size(); i++) {
+            final XMLEvent event = second.get(i);
+            final XMLEvent interned = interner.intern(event);
+            if (event.isStartDocument() || event.isEndDocument()) {
+                // Not shared
+                assertSame(event, interned);
+            } else {
+                assertSame(internedFirst.get(i), interned);
+            }
+        }
+    }
+
+    @Test
+    public void testDifferentPrefixNotShared() throws Exception {
+        final XMLEventInterner interner = new XMLEventInterner();
+
+        final XMLEvent first = EVENT_FACTORY.createStartElement("a", "urn:x", "b");
+        final XMLEvent second = EVENT_FACTORY.createStartElement("c", "urn:x", "b");
+
+        assertSame(first, interner.intern(first));
+        assertSame(second, interner.intern(second));
+    }
+
+    @Test
+    public void testAttributeValueNotShared() throws Exception {
+        final XMLEventInterner interner = new XMLEventInterner();
+
+        final XMLEvent first = readEvents("<a b=\"1\" c=\"2\"/>").get(1);
+        final XMLEvent second = readEvents("<a b=\"1\" c=\"3\"/>").get(1);
+
+        assertSame(first, interner.intern(first));
+        assertSame(second, interner.intern(second));
+    }
+
+    @Test
+    public void testCDataNotSharedWithCharacters() throws Exception {
+        final XMLEventInterner interner = new XMLEventInterner();
+
+        final XMLEvent characters = EVENT_FACTORY.createCharacters("text");
+        final XMLEvent cdata = EVENT_FACTORY.createCData("text");
+
+        assertSame(characters, interner.intern(characters));
+        assertSame(cdata, interner.intern(cdata));
+        assertNotSame(characters, interner.intern(cdata));
+    }
+
+    private List<XMLEvent> readEvents(String xml) throws Exception {
+        final XMLInputFactory xmlInputFactory = XMLInputFactory.newFactory();
+        final XMLEventReader reader = xmlInputFactory.createXMLEventReader(new StringReader(xml));
+
+        final List<XMLEvent> events = new ArrayList<XMLEvent>();
+        while (reader.hasNext()) {
+            events.add(reader.nextEvent());
+        }
+        return events;
+    }
+}
@@ -15,8 +15,11 @@
 package org.apereo.portal.portlet.dao.jpa;
 
 import com.google.common.base.Function;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import javax.persistence.EntityManager;
 import javax.persistence.TypedQuery;
@@ -233,6 +236,30 @@ public class JpaPortletEntityDao extends BasePortalJpaDao implements IPortletEnt
         return new HashSet<IPortletEntity>(portletEntities);
     }
 
+    @Override
+    @DialectAwareTransactional(value = PostgreSQL81Dialect.class, exclude = false)
+    @PortalTransactionalReadOnly
+    @OpenEntityManager(unitName = PERSISTENCE_UNIT_NAME)
+    public Map<String, IPortletEntity> getPortletEntities(
+            Collection<String> layoutNodeIds, int userId) {
+        Validate.notNull(layoutNodeIds, "layoutNodeIds can not be null");
+
+        final Map<String, IPortletEntity> rslt = new HashMap<String, IPortletEntity>();
+        if (layoutNodeIds.isEmpty()) {
+            return rslt;
+        }
+
+        // A single query for all of the user's entities, the same one getPortletEntity runs
+        for (final IPortletEntity entity : getPortletEntitiesForUser(userId)) {
+            final String layoutNodeId = entity.getLayoutNodeId();
+            if (layoutNodeIds.contains(layoutNodeId)) {
+                rslt.put(layoutNodeId, entity);
+            }
+        }
+
+        return rslt;
+    }
+
     @Override
     @PortalTransactional
     public void updatePortletEntity(IPortletEntity portletEntity) {
@@ -14,7 +14,11 @@
  */
 package org.apereo.portal.portlet.dao.trans;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 import javax.servlet.http.HttpServletRequest;
 import org.apache.commons.logging.Log;
@@ -126,6 +130,32 @@ public class TransientPortletEntityDao implements IPortletEntityDao {
         return this.wrapEntities(portletEntities);
     }
 
+    /* (non-Javadoc)
+     * @see org.apereo.portal.portlet.dao.IPortletEntityDao#getPortletEntities(java.util.Collection, int)
+     */
+    @Override
+    public Map<String, IPortletEntity> getPortletEntities(
+            Collection<String> layoutNodeIds, int userId) {
+        // Transient nodes map to a different persistent node id, look those up one at a time
+        final Set<String> persistentLayoutNodeIds = new HashSet<String>(layoutNodeIds.size());
+        final Map<String, IPortletEntity> portletEntities =
+                new HashMap<String, IPortletEntity>();
+        for (final String layoutNodeId : layoutNodeIds) {
+            if (layoutNodeId.startsWith(TransientUserLayoutManagerWrapper.SUBSCRIBE_PREFIX)) {
+                final IPortletEntity portletEntity = this.getPortletEntity(layoutNodeId, userId);
+                if (portletEntity != null) {
+                    portletEntities.put(layoutNodeId, portletEntity);
+                }
+            } else {
+                persistentLayoutNodeIds.add(layoutNodeId);
+            }
+        }
+
+        portletEntities.putAll(
+                this.delegatePortletEntityDao.getPortletEntities(persistentLayoutNodeIds, userId));
+        return portletEntities;
+    }
+
     /* (non-Javadoc)
      * @see org.apereo.portal.portlet.dao.IPortletEntityDao#getPortletEntity(org.apereo.portal.portlet.om.IPortletEntityId)
      */
@@ -16,6 +16,7 @@ package org.apereo.portal.portlet.rendering;
 
 import com.google.common.base.Function;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -26,6 +27,7 @@ import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import javax.portlet.Event;
@@ -35,6 +37,9 @@ import javax.servlet.http.HttpSession;
 import org.apache.commons.lang.StringUtils;
 import org.apache.pluto.container.om.portlet.ContainerRuntimeOption;
 import org.apache.pluto.container.om.portlet.PortletDefinition;
+import org.apereo.portal.character.stream.events.BufferedCharacterDataEventImpl;
+import org.apereo.portal.character.stream.events.CharacterDataEvent;
+import org.apereo.portal.character.stream.events.CharacterDataEventImpl;
 import org.apereo.portal.events.IPortletExecutionEventFactory;
 import org.apereo.portal.portlet.om.IPortletDefinition;
 import org.apereo.portal.portlet.om.IPortletDefinitionParameter;
@@ -50,12 +55,15 @@ import org.apereo.portal.portlet.rendering.worker.IPortletExecutionWorker;
 import org.apereo.portal.portlet.rendering.worker.IPortletFailureExecutionWorker;
 import org.apereo.portal.portlet.rendering.worker.IPortletRenderExecutionWorker;
 import org.apereo.portal.portlet.rendering.worker.IPortletWorkerFactory;
+import org.apereo.portal.portlet.rendering.worker.PortletThreadPoolExecutor;
 import org.apereo.portal.portlets.error.MaintenanceModeException;
+import org.apereo.portal.utils.ChunkedCharArrayWriter;
 import org.apereo.portal.utils.ConcurrentMapUtils;
 import org.apereo.portal.utils.web.PortalWebUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -117,6 +125,7 @@ public class PortletExecutionManager extends HandlerInterceptorAdapter
     private IPortletEventCoordinationService eventCoordinationService;
     private IPortletWorkerFactory portletWorkerFactory;
     private IPortletExecutionEventFactory portletExecutionEventFactory;
+    private PortletThreadPoolExecutor portletThreadPool;
 
     /**
      * @param maxEventIterations The maximum number of iterations to spend dispatching events.
@@ -180,6 +189,39 @@ public class PortletExecutionManager extends HandlerInterceptorAdapter
         return counts;
     }
 
+    @Override
+    public Map<String, Integer> getPortletQueueDepths() {
+        if (this.portletThreadPool == null) {
+            return Collections.emptyMap();
+        }
+        return this.portletThreadPool.getQueueDepths();
+    }
+
+    @Override
+    public Map<String, Long> getPortletMeanQueueWaitTimes() {
+        if (this.portletThreadPool == null) {
+            return Collections.emptyMap();
+        }
+        return this.portletThreadPool.getMeanQueueWaitTimes();
+    }
+
+    @Override
+    public Map<String, Long> getPortletMaxQueueWaitTimes() {
+        if (this.portletThreadPool == null) {
+            return Collections.emptyMap();
+        }
+        return this.portletThreadPool.getMaxQueueWaitTimes();
+    }
+
+    /** Per portlet queue statistics are only available from a {@link PortletThreadPoolExecutor} */
+    @Autowired(required = false)
+    public void setPortletThreadPool(
+            @Qualifier("portletThreadPool") ExecutorService portletThreadPool) {
+        if (portletThreadPool instanceof PortletThreadPoolExecutor) {
+            this.portletThreadPool = (PortletThreadPoolExecutor) portletThreadPool;
+        }
+    }
+
     @Autowired
     public void setPortletWorkerFactory(IPortletWorkerFactory portletWorkerFactory) {
         this.portletWorkerFactory = portletWorkerFactory;
@@ -641,21 +683,34 @@ public class PortletExecutionManager extends HandlerInterceptorAdapter
             IPortletWindowId portletWindowId,
             HttpServletRequest request,
             HttpServletResponse response) {
+        return this.getPortletHeadOutputEvent(portletWindowId, request, response).getData();
+    }
+
+    /* (non-Javadoc)
+     * @see org.apereo.portal.portlet.rendering.IPortletExecutionManager#getPortletHeadOutputEvent(org.apereo.portal.portlet.om.IPortletWindowId, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+     */
+    @Override
+    public CharacterDataEvent getPortletHeadOutputEvent(
+            IPortletWindowId portletWindowId,
+            HttpServletRequest request,
+            HttpServletResponse response) {
         if (doesPortletNeedHeaderWorker(portletWindowId, request)) {
             final IPortletRenderExecutionWorker tracker =
                     getRenderedPortletHeaderWorker(portletWindowId, request, response);
             final long timeout = getPortletRenderTimeout(portletWindowId, request);
             try {
-                final String output = tracker.getOutput(timeout);
-                return output == null ? "" : output;
+                final ChunkedCharArrayWriter output = tracker.getOutputBuffer(timeout);
+                return output == null
+                        ? CharacterDataEventImpl.EMPTY_CHARACTER_DATA
+                        : BufferedCharacterDataEventImpl.create(output);
             } catch (Exception e) {
                 logger.error("failed to render header output for " + portletWindowId, e);
-                return "";
+                return CharacterDataEventImpl.EMPTY_CHARACTER_DATA;
             }
         }
 
         logger.debug(portletWindowId + " does not produce output for header");
-        return "";
+        return CharacterDataEventImpl.EMPTY_CHARACTER_DATA;
     }
 
     /* (non-Javadoc)
@@ -666,13 +721,26 @@ public class PortletExecutionManager extends HandlerInterceptorAdapter
             IPortletWindowId portletWindowId,
             HttpServletRequest request,
             HttpServletResponse response) {
+        return this.getPortletOutputEvent(portletWindowId, request, response).getData();
+    }
+
+    /* (non-Javadoc)
+     * @see org.apereo.portal.portlet.rendering.IPortletExecutionManager#getPortletOutputEvent(org.apereo.portal.portlet.om.IPortletWindowId, javax.servlet.http.HttpServletRequest, javax.servlet.http.HttpServletResponse)
+     */
+    @Override
+    public CharacterDataEvent getPortletOutputEvent(
+            IPortletWindowId portletWindowId,
+            HttpServletRequest request,
+            HttpServletResponse response) {
         final IPortletRenderExecutionWorker tracker =
                 getRenderedPortletBodyWorker(portletWindowId, request, response);
         final long timeout = getPortletRenderTimeout(portletWindowId, request);
 
         try {
-            final String output = tracker.getOutput(timeout);
-            return output == null ? "" : output;
+            final ChunkedCharArrayWriter output = tracker.getOutputBuffer(timeout);
+            return output == null
+                    ? CharacterDataEventImpl.EMPTY_CHARACTER_DATA
+                    : BufferedCharacterDataEventImpl.create(output);
         } catch (Exception e) {
             final IPortletFailureExecutionWorker failureWorker =
                     this.portletWorkerFactory.createFailureWorker(
@@ -680,10 +748,14 @@ public class PortletExecutionManager extends HandlerInterceptorAdapter
             // TODO publish portlet error event?
             try {
                 failureWorker.submit();
-                return failureWorker.getOutput(timeout);
+                final ChunkedCharArrayWriter output = failureWorker.getOutputBuffer(timeout);
+                return output == null
+                        ? CharacterDataEventImpl.EMPTY_CHARACTER_DATA
+                        : BufferedCharacterDataEventImpl.create(output);
             } catch (Exception e1) {
                 logger.error("Failed to render error portlet for: " + portletWindowId, e1);
-                return "Error Portlet Unavailable. Please contact your portal administrators.";
+                return CharacterDataEventImpl.create(
+                        "Error Portlet Unavailable. Please contact your portal administrators.");
             }
         }
     }
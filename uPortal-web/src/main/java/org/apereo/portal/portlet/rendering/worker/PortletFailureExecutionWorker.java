@@ -27,6 +27,7 @@ import org.apereo.portal.portlet.rendering.IPortletRenderer;
 import org.apereo.portal.portlet.rendering.PortletRenderResult;
 import org.apereo.portal.portlet.rendering.RenderPortletOutputHandler;
 import org.apereo.portal.portlets.error.PortletErrorController;
+import org.apereo.portal.utils.ChunkedCharArrayWriter;
 import org.apereo.portal.utils.web.PortletHttpServletRequestWrapper;
 
 /**
@@ -51,7 +52,7 @@ final class PortletFailureExecutionWorker implements IPortletFailureExecutionWor
     private final Exception cause;
 
     private PortletRenderResult portletRenderResult;
-    private String output;
+    private ChunkedCharArrayWriter output;
 
     private boolean retrieved = false;
     private long submitted = 0;
@@ -116,6 +117,12 @@ final class PortletFailureExecutionWorker implements IPortletFailureExecutionWor
 
     @Override
     public String getOutput(long timeout) throws Exception {
+        this.get(timeout);
+        return this.output != null ? this.output.toString() : null;
+    }
+
+    @Override
+    public ChunkedCharArrayWriter getOutputBuffer(long timeout) throws Exception {
         this.get(timeout);
         return this.output;
     }
@@ -183,11 +190,13 @@ final class PortletFailureExecutionWorker implements IPortletFailureExecutionWor
                             response,
                             renderPortletOutputHandler);
             doPostExecution(null);
-            this.output = renderPortletOutputHandler.getOutput();
+            this.output = renderPortletOutputHandler.getOutputBuffer();
         } catch (Exception e) {
             doPostExecution(e);
             this.logger.error("Exception while dispatching to error handling portlet", e);
-            this.output = "Error Portlet Unavailable. Please contact your portal adminstrators.";
+            this.output = new ChunkedCharArrayWriter();
+            this.output.write(
+                    "Error Portlet Unavailable. Please contact your portal adminstrators.");
         }
 
         this.completed = System.currentTimeMillis();
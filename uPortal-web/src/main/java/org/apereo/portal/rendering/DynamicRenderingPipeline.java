@@ -15,7 +15,10 @@
 package org.apereo.portal.rendering;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.nio.charset.Charset;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.xml.transform.OutputKeys;
@@ -23,6 +26,8 @@ import org.apereo.portal.character.stream.CharacterEventReader;
 import org.apereo.portal.character.stream.events.CharacterDataEvent;
 import org.apereo.portal.character.stream.events.CharacterEvent;
 import org.apereo.portal.character.stream.events.CharacterEventTypes;
+import org.apereo.portal.character.stream.events.EncodedCharacterDataEvent;
+import org.apereo.portal.character.stream.events.WritableCharacterDataEvent;
 import org.apereo.portal.events.IPortletExecutionEventFactory;
 import org.apereo.portal.url.IPortalRequestInfo;
 import org.apereo.portal.url.IUrlSyntaxProvider;
@@ -35,11 +40,14 @@ public class DynamicRenderingPipeline implements IPortalRenderingPipeline {
     public static final String CHARACTER_SET = "UTF-8";
     public static final String DEFAULT_MEDIA_TYPE = "text/html";
 
+    private static final Charset CHARSET = Charset.forName(CHARACTER_SET);
+
     protected final Logger logger = LoggerFactory.getLogger(getClass());
 
     private CharacterPipelineComponent pipeline;
     private IPortletExecutionEventFactory portalEventFactory;
     private IUrlSyntaxProvider urlSyntaxProvider;
+    private boolean writeEncodedOutput = false;
 
     @Autowired
     public void setUrlSyntaxProvider(IUrlSyntaxProvider urlSyntaxProvider) {
@@ -59,6 +67,16 @@ public class DynamicRenderingPipeline implements IPortalRenderingPipeline {
         this.pipeline = pipeline;
     }
 
+    /**
+     * If the response should be written as bytes to {@link HttpServletResponse#getOutputStream()}
+     * instead of to {@link HttpServletResponse#getWriter()}. Pre-encoded {@link
+     * EncodedCharacterDataEvent}s are then copied to the response without decoding, other
+     * character data is encoded as it is written. Defaults to false.
+     */
+    public void setWriteEncodedOutput(boolean writeEncodedOutput) {
+        this.writeEncodedOutput = writeEncodedOutput;
+    }
+
     @Override
     public void renderState(HttpServletRequest req, HttpServletResponse res) throws IOException {
         // Disable page caching
@@ -76,29 +94,71 @@ public class DynamicRenderingPipeline implements IPortalRenderingPipeline {
         final String contentType = mediaType + "; charset=" + CHARACTER_SET;
         res.setContentType(contentType);
 
+        if (this.writeEncodedOutput) {
+            this.writeEncoded(pipelineEventReader, res);
+        } else {
+            this.write(pipelineEventReader, res);
+        }
+
+        final long executionTime = System.nanoTime() - startTime;
+        final IPortalRequestInfo portalRequestInfo =
+                this.urlSyntaxProvider.getPortalRequestInfo(req);
+        this.portalEventFactory.publishPortalRenderEvent(
+                req, this, req.getPathInfo(), executionTime, portalRequestInfo);
+    }
+
+    private void write(
+            PipelineEventReader<CharacterEventReader, CharacterEvent> pipelineEventReader,
+            HttpServletResponse res)
+            throws IOException {
         final PrintWriter writer = res.getWriter();
 
         for (final CharacterEvent event : pipelineEventReader) {
-            if (CharacterEventTypes.CHARACTER != event.getEventType()) {
-                throw new RenderingPipelineConfigurationException(
-                        "Only "
-                                + CharacterEventTypes.CHARACTER
-                                + " events are supported in the top level renderer. "
-                                + event.getEventType()
-                                + " is not supported.");
+            final CharacterDataEvent dataEvent = getCharacterData(event);
+            if (dataEvent instanceof WritableCharacterDataEvent) {
+                ((WritableCharacterDataEvent) dataEvent).writeTo(writer);
+            } else {
+                writer.print(dataEvent.getData());
             }
-
-            final String data = ((CharacterDataEvent) event).getData();
-            writer.print(data);
             writer.flush();
             res.flushBuffer();
         }
+    }
 
-        final long executionTime = System.nanoTime() - startTime;
-        final IPortalRequestInfo portalRequestInfo =
-                this.urlSyntaxProvider.getPortalRequestInfo(req);
-        this.portalEventFactory.publishPortalRenderEvent(
-                req, this, req.getPathInfo(), executionTime, portalRequestInfo);
+    private void writeEncoded(
+            PipelineEventReader<CharacterEventReader, CharacterEvent> pipelineEventReader,
+            HttpServletResponse res)
+            throws IOException {
+        final OutputStream out = res.getOutputStream();
+
+        for (final CharacterEvent event : pipelineEventReader) {
+            final CharacterDataEvent dataEvent = getCharacterData(event);
+            if (dataEvent instanceof EncodedCharacterDataEvent
+                    && CHARSET.equals(((EncodedCharacterDataEvent) dataEvent).getCharset())) {
+                ((EncodedCharacterDataEvent) dataEvent).writeTo(out);
+            } else if (dataEvent instanceof WritableCharacterDataEvent) {
+                // Encode the data as it is written instead of copying it to a String first
+                final OutputStreamWriter encodingWriter = new OutputStreamWriter(out, CHARSET);
+                ((WritableCharacterDataEvent) dataEvent).writeTo(encodingWriter);
+                encodingWriter.flush();
+            } else {
+                out.write(dataEvent.getData().getBytes(CHARSET));
+            }
+            out.flush();
+            res.flushBuffer();
+        }
+    }
+
+    private CharacterDataEvent getCharacterData(CharacterEvent event) {
+        if (CharacterEventTypes.CHARACTER != event.getEventType()) {
+            throw new RenderingPipelineConfigurationException(
+                    "Only "
+                            + CharacterEventTypes.CHARACTER
+                            + " events are supported in the top level renderer. "
+                            + event.getEventType()
+                            + " is not supported.");
+        }
+        return (CharacterDataEvent) event;
     }
 
     /** Determine the media type to use for the response */
@@ -149,6 +149,9 @@ public class RenderingPipelineConfiguration {
     @Resource(name = "org.apereo.portal.rendering.THEME_TRANSFORM")
     private Cache themeTransformCache;
 
+    @Value("${org.apereo.portal.rendering.preEncodeThemeOutput:false}")
+    private boolean preEncodeThemeOutput;
+
     @Autowired(required = false)
     private List<RenderingPipelineBranchPoint> branchPoints;
 
@@ -223,6 +226,7 @@ public class RenderingPipelineConfiguration {
     public IPortalRenderingPipeline getStandardRenderingPipeline() {
         final DynamicRenderingPipeline rslt = new DynamicRenderingPipeline();
         rslt.setPipeline(getAnalyticsIncorporationComponent());
+        rslt.setWriteEncodedOutput(preEncodeThemeOutput);
         return rslt;
     }
 
@@ -568,6 +572,7 @@ public class RenderingPipelineConfiguration {
         final CachingCharacterPipelineComponent rslt = new CachingCharacterPipelineComponent();
         rslt.setWrappedComponent(getPostSerializerLogger());
         rslt.setCache(themeTransformCache);
+        rslt.setPreEncodeCharacterData(preEncodeThemeOutput);
         return rslt;
     }
 
@@ -0,0 +1,108 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.events.handlers.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apereo.portal.events.LoginEvent;
+import org.apereo.portal.events.PortalEvent;
+import org.apereo.portal.events.TestEventFactory;
+import org.apereo.portal.security.SystemPerson;
+import org.apereo.portal.spring.beans.factory.ObjectMapperFactoryBean;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SmilePortalEventCodecTest {
+    private JsonPortalEventCodec jsonCodec;
+    private SmilePortalEventCodec smileCodec;
+    private LoginEvent loginEvent;
+
+    @Before
+    public void setup() throws Exception {
+        final ObjectMapperFactoryBean omfb = new ObjectMapperFactoryBean();
+        omfb.afterPropertiesSet();
+        final ObjectMapper mapper = omfb.getObject();
+
+        this.jsonCodec = new JsonPortalEventCodec(mapper);
+        this.smileCodec = new SmilePortalEventCodec();
+
+        final Set<String> groups = ImmutableSet.of("Student", "Employee");
+        final Map<String, List<String>> attributes =
+                ImmutableMap.of(
+                        "username",
+                        (List<String>) ImmutableList.of("system"),
+                        "roles",
+                        (List<String>) ImmutableList.of("student", "employee"));
+        this.loginEvent =
+                TestEventFactory.newLoginEvent(
+                        this,
+                        "example.com",
+                        "1234567890123_system_AAAAAAAAAAA",
+                        SystemPerson.INSTANCE,
+                        groups,
+                        attributes);
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        final String json = encode(this.jsonCodec, this.loginEvent);
+        final String smile = encode(this.smileCodec, this.loginEvent);
+
+        assertTrue(smile.startsWith(SmilePortalEventCodec.HEADER));
+        assertTrue(smile.length() < json.length());
+
+        final PortalEvent event =
+                this.smileCodec.decode(new PersistentPortalEvent(this.loginEvent, smile));
+        assertEquals(LoginEvent.class, event.getClass());
+        assertEquals(this.loginEvent.getTimestamp(), event.getTimestamp());
+        assertEquals("example.com", event.getServerId());
+        assertEquals("1234567890123_system_AAAAAAAAAAA", event.getEventSessionId());
+        assertEquals("system", event.getUserName());
+        assertEquals(this.loginEvent.getGroups(), ((LoginEvent) event).getGroups());
+        assertEquals(this.loginEvent.getAttributes(), ((LoginEvent) event).getAttributes());
+
+        // Both formats decode to the same event
+        final PortalEvent jsonEvent =
+                this.jsonCodec.decode(new PersistentPortalEvent(this.loginEvent, json));
+        assertEquals(encode(this.jsonCodec, jsonEvent), encode(this.jsonCodec, event));
+    }
+
+    @Test
+    public void testFormatsRecognized() throws Exception {
+        final String json = encode(this.jsonCodec, this.loginEvent);
+        final String smile = encode(this.smileCodec, this.loginEvent);
+
+        assertTrue(this.jsonCodec.canDecode(json));
+        assertFalse(this.jsonCodec.canDecode(smile));
+        assertTrue(this.smileCodec.canDecode(smile));
+        assertFalse(this.smileCodec.canDecode(json));
+    }
+
+    private String encode(IPortalEventCodec codec, PortalEvent event) throws Exception {
+        final StringWriter writer = new StringWriter();
+        codec.encode(event, writer);
+        return writer.toString();
+    }
+}
@@ -0,0 +1,299 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.groups;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.naming.CompositeName;
+import net.sf.ehcache.Cache;
+import net.sf.ehcache.CacheManager;
+import net.sf.ehcache.config.Configuration;
+import org.apereo.portal.EntityTypes;
+import org.apereo.portal.security.IPerson;
+import org.apereo.portal.spring.locator.ApplicationContextLocator;
+import org.apereo.portal.spring.locator.EntityTypesLocator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.context.ApplicationContext;
+
+/**
+ * Tests deep membership through the cached ancestor groups. Memberships are kept in a map standing
+ * in for the group store, and parent groups are read from it directly so only the ancestor cache
+ * can go stale.
+ */
+public class EntityGroupImplTest {
+    private final Map<IEntityGroup, Set<IGroupMember>> store = new HashMap<>();
+    private final List<EntityGroupImpl> groups = new ArrayList<>();
+    private CacheManager cacheManager;
+    private ApplicationContextLocator applicationContextLocator;
+    private EntityTypesLocator entityTypesLocator;
+    private IIndividualGroupService groupService;
+
+    @Before
+    public void setup() throws Exception {
+        this.cacheManager = new CacheManager(new Configuration().name("EntityGroupImplTest"));
+        this.cacheManager.addCache(
+                new Cache(
+                        "org.apereo.portal.groups.EntityGroupImpl.children",
+                        100,
+                        false,
+                        true,
+                        0,
+                        0));
+        this.cacheManager.addCache(
+                new Cache(
+                        "org.apereo.portal.groups.GroupMemberImpl.parentGroups",
+                        100,
+                        false,
+                        true,
+                        0,
+                        0));
+        this.cacheManager.addCache(
+                new Cache(
+                        "org.apereo.portal.groups.GroupMemberImpl.ancestorGroups",
+                        100,
+                        false,
+                        true,
+                        0,
+                        0));
+
+        final ApplicationContext applicationContext = mock(ApplicationContext.class);
+        when(applicationContext.getBean("cacheManager", CacheManager.class))
+                .thenReturn(this.cacheManager);
+        this.applicationContextLocator = new ApplicationContextLocator(applicationContext);
+        this.applicationContextLocator.afterPropertiesSet();
+
+        final EntityTypes entityTypes = mock(EntityTypes.class);
+        when(entityTypes.getEntityIDFromType(any(Class.class))).thenReturn(1);
+        this.entityTypesLocator = new EntityTypesLocator(entityTypes);
+        this.entityTypesLocator.afterPropertiesSet();
+
+        this.groupService = mock(IIndividualGroupService.class);
+        when(this.groupService.getServiceName()).thenReturn(new CompositeName("local"));
+        when(this.groupService.findMembers(any(IEntityGroup.class)))
+                .thenAnswer(
+                        new Answer<Iterator<IGroupMember>>() {
+                            @Override
+                            public Iterator<IGroupMember> answer(InvocationOnMock invocation) {
+                                final IEntityGroup group =
+                                        (IEntityGroup) invocation.getArguments()[0];
+                                return new HashSet<>(getStoredMembers(group)).iterator();
+                            }
+                        });
+        doAnswer(
+                        new Answer<Void>() {
+                            @Override
+                            public Void answer(InvocationOnMock invocation) {
+                                final EntityGroupImpl group =
+                                        (EntityGroupImpl) invocation.getArguments()[0];
+                                getStoredMembers(group).addAll(group.getAddedMembers().values());
+                                getStoredMembers(group)
+                                        .removeAll(group.getRemovedMembers().values());
+                                return null;
+                            }
+                        })
+                .when(this.groupService)
+                .updateGroupMembers(any(IEntityGroup.class));
+        doAnswer(
+                        new Answer<Void>() {
+                            @Override
+                            public Void answer(InvocationOnMock invocation) {
+                                final IEntityGroup group =
+                                        (IEntityGroup) invocation.getArguments()[0];
+                                store.remove(group);
+                                for (final Set<IGroupMember> members : store.values()) {
+                                    members.remove(group);
+                                }
+                                return null;
+                            }
+                        })
+                .when(this.groupService)
+                .deleteGroup(any(IEntityGroup.class));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (final EntityGroupImpl group : this.groups) {
+            group.clearPendingUpdates();
+        }
+        this.entityTypesLocator.destroy();
+        this.applicationContextLocator.destroy();
+        this.cacheManager.shutdown();
+    }
+
+    @Test
+    public void testDeepMembershipAfterAddAndRemove() throws Exception {
+        final TestGroup a = newGroup("A");
+        final TestGroup b = newGroup("B");
+        final TestPerson person = new TestPerson("person");
+        getStoredMembers(a).add(b);
+
+        assertFalse(person.isDeepMemberOf(a));
+        assertEquals(Collections.singleton(a), b.getAncestorGroups());
+
+        b.addChild(person);
+        b.updateMembers();
+        assertTrue(person.isDeepMemberOf(a));
+        assertTrue(a.deepContains(person));
+        assertEquals(ImmutableSet.of(a, b), person.getAncestorGroups());
+
+        b.removeChild(person);
+        b.updateMembers();
+        assertFalse(person.isDeepMemberOf(a));
+        assertFalse(a.deepContains(person));
+        assertEquals(Collections.emptySet(), person.getAncestorGroups());
+    }
+
+    @Test
+    public void testInvalidationCascadesToDescendantGroups() throws Exception {
+        final TestGroup a = newGroup("A");
+        final TestGroup b = newGroup("B");
+        final TestGroup c = newGroup("C");
+        final TestGroup x = newGroup("X");
+        final TestPerson person = new TestPerson("person");
+        getStoredMembers(a).add(b);
+        getStoredMembers(b).add(c);
+        getStoredMembers(c).add(person);
+
+        assertEquals(ImmutableSet.of(a, b), c.getAncestorGroups());
+        assertFalse(x.deepContains(person));
+
+        x.addChild(b);
+        x.updateMembers();
+        assertEquals(ImmutableSet.of(a, b, x), c.getAncestorGroups());
+        assertTrue(x.deepContains(c));
+        assertTrue(x.deepContains(person));
+
+        x.removeChild(b);
+        x.updateMembers();
+        assertEquals(ImmutableSet.of(a, b), c.getAncestorGroups());
+        assertFalse(x.deepContains(c));
+        assertFalse(x.deepContains(person));
+    }
+
+    @Test
+    public void testDeleteInvalidatesMemberAncestors() throws Exception {
+        final TestGroup a = newGroup("A");
+        final TestGroup b = newGroup("B");
+        final TestGroup c = newGroup("C");
+        final TestPerson person = new TestPerson("person");
+        getStoredMembers(a).add(b);
+        getStoredMembers(b).add(c);
+        getStoredMembers(c).add(person);
+
+        assertEquals(ImmutableSet.of(a, b), c.getAncestorGroups());
+        assertTrue(person.isDeepMemberOf(a));
+
+        b.delete();
+        assertEquals(Collections.emptySet(), c.getAncestorGroups());
+        assertFalse(person.isDeepMemberOf(a));
+        assertFalse(a.deepContains(person));
+    }
+
+    @Test
+    public void testDeepContainsSeesUncommittedChanges() throws Exception {
+        final TestGroup a = newGroup("A");
+        final TestGroup b = newGroup("B");
+        final TestGroup c = newGroup("C");
+        final TestPerson person = new TestPerson("person");
+        getStoredMembers(a).add(b);
+        getStoredMembers(a).add(c);
+        getStoredMembers(c).add(person);
+
+        assertFalse(b.deepContains(person));
+        assertTrue(a.deepContains(person));
+
+        // Not committed, only visible through the children of the groups
+        b.addChild(person);
+        c.removeChild(person);
+        assertTrue(b.deepContains(person));
+        assertTrue(person.isDeepMemberOf(b));
+        assertFalse(c.deepContains(person));
+        assertTrue(a.deepContains(person));
+
+        // Cancelling the changes leaves nothing pending
+        b.removeChild(person);
+        c.addChild(person);
+        assertFalse(EntityGroupImpl.hasPendingUpdates());
+        assertFalse(b.deepContains(person));
+        assertTrue(c.deepContains(person));
+    }
+
+    private Set<IGroupMember> getStoredMembers(IEntityGroup group) {
+        Set<IGroupMember> members = this.store.get(group);
+        if (members == null) {
+            members = new HashSet<>();
+            this.store.put(group, members);
+        }
+        return members;
+    }
+
+    private TestGroup newGroup(String key) throws GroupsException {
+        final TestGroup group = new TestGroup(key);
+        group.setLocalGroupService(this.groupService);
+        this.groups.add(group);
+        return group;
+    }
+
+    private Set<IEntityGroup> getStoredParentGroups(IGroupMember member) {
+        final Set<IEntityGroup> rslt = new HashSet<>();
+        for (final Map.Entry<IEntityGroup, Set<IGroupMember>> entry : this.store.entrySet()) {
+            if (entry.getValue().contains(member)) {
+                rslt.add(entry.getKey());
+            }
+        }
+        return rslt;
+    }
+
+    private final class TestGroup extends EntityGroupImpl {
+        TestGroup(String key) throws GroupsException {
+            super(key, IPerson.class);
+        }
+
+        @Override
+        public Set<IEntityGroup> getParentGroups() {
+            return getStoredParentGroups(this);
+        }
+    }
+
+    private final class TestPerson extends EntityImpl {
+        TestPerson(String key) throws GroupsException {
+            super(key, IPerson.class);
+        }
+
+        @Override
+        public Set<IEntityGroup> getParentGroups() {
+            return getStoredParentGroups(this);
+        }
+    }
+}
@@ -18,6 +18,8 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.concurrent.Callable;
 import javax.servlet.http.HttpServletRequest;
@@ -1067,4 +1069,59 @@ public class PortletEntityRegistryImplTest extends BasePortalJpaDaoTest {
                     }
                 });
     }
+
+    // preloaded persistent and interim entities - found without per node lookups
+    @Test
+    public void testPreloadPortletEntities() throws Exception {
+        final IPortletDefinitionId portletDefId = this.createDefaultPorltetDefinition();
+        final String persistentNodeId = "u1l1n1";
+        final String interimNodeId = "u1l1n2";
+
+        // Mock setup
+        final MockHttpServletRequest request = new MockHttpServletRequest();
+
+        when(portalRequestUtils.getOriginalPortalRequest(request)).thenReturn(request);
+        when(portalRequestUtils.getOriginalPortletOrPortalRequest(request)).thenReturn(request);
+
+        when(userInstanceManager.getUserInstance(request)).thenReturn(userInstance);
+        when(userInstance.getPreferencesManager()).thenReturn(preferencesManager);
+        when(userInstance.getPerson()).thenReturn(person);
+        when(person.getID()).thenReturn(12);
+        when(preferencesManager.getUserLayoutManager()).thenReturn(userLayoutManager);
+
+        this.execute(
+                new Callable<Object>() {
+                    @Override
+                    public Object call() throws Exception {
+                        jpaPortletEntityDao.createPortletEntity(
+                                portletDefId, persistentNodeId, 12);
+                        return null;
+                    }
+                });
+
+        this.execute(
+                new Callable<Object>() {
+                    @Override
+                    public Object call() throws Exception {
+                        portletEntityRegistry.preloadPortletEntities(
+                                request,
+                                userInstance,
+                                new HashSet<String>(
+                                        Arrays.asList(persistentNodeId, interimNodeId)));
+
+                        IPortletEntity portletEntity =
+                                portletEntityRegistry.getOrCreatePortletEntity(
+                                        request, portletDefId, persistentNodeId, 12);
+                        assertEquals(
+                                PersistentPortletEntityWrapper.class, portletEntity.getClass());
+
+                        portletEntity =
+                                portletEntityRegistry.getOrCreatePortletEntity(
+                                        request, portletDefId, interimNodeId, 12);
+                        assertEquals(SessionPortletEntityImpl.class, portletEntity.getClass());
+
+                        return null;
+                    }
+                });
+    }
 }
@@ -0,0 +1,187 @@
+/**
+ * Licensed to Apereo under one or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information regarding copyright ownership. Apereo
+ * licenses this file to you under the Apache License, Version 2.0 (the "License"); you may not use
+ * this file except in compliance with the License. You may obtain a copy of the License at the
+ * following location:
+ *
+ * <p>http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * <p>Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+ * express or implied. See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apereo.portal.portlet.rendering.worker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apereo.portal.utils.threading.VirtualThreads;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PortletThreadPoolExecutorTest {
+    private PortletThreadPoolExecutor executor;
+
+    @Before
+    public void setup() {
+        this.executor =
+                new PortletThreadPoolExecutor(
+                        4,
+                        4,
+                        60,
+                        TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<Runnable>(),
+                        r -> new Thread(r),
+                        new ThreadPoolExecutor.AbortPolicy(),
+                        2);
+    }
+
+    @After
+    public void tearDown() {
+        this.executor.shutdownNow();
+    }
+
+    @Test
+    public void testExecutionsLimitedPerPortlet() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+
+        final List<Future<String>> slowFutures = new ArrayList<Future<String>>();
+        for (int i = 0; i < 4; i++) {
+            slowFutures.add(
+                    this.executor.submit(
+                            execution(
+                                    "slow",
+                                    () -> {
+                                        final int current = running.incrementAndGet();
+                                        maxRunning.accumulateAndGet(current, Math::max);
+                                        release.await();
+                                        running.decrementAndGet();
+                                        return "slow";
+                                    })));
+        }
+
+        // Two slow executions run, the other two wait in the bulkhead
+        waitFor(() -> running.get() == 2);
+        assertEquals(Integer.valueOf(2), this.executor.getRunningCounts().get("slow"));
+        assertEquals(Integer.valueOf(2), this.executor.getQueueDepths().get("slow"));
+
+        // Another portlet still gets a thread
+        final Future<String> fast = this.executor.submit(execution("fast", () -> "fast"));
+        assertEquals("fast", fast.get(10, TimeUnit.SECONDS));
+
+        release.countDown();
+        for (final Future<String> future : slowFutures) {
+            assertEquals("slow", future.get(10, TimeUnit.SECONDS));
+        }
+
+        assertEquals(2, maxRunning.get());
+        waitFor(() -> this.executor.getRunningCounts().get("slow") == 0);
+        assertEquals(Integer.valueOf(0), this.executor.getQueueDepths().get("slow"));
+        assertTrue(this.executor.getMaxQueueWaitTimes().get("slow") >= 0);
+    }
+
+    @Test
+    public void testNonPortletTasksNotLimited() throws Exception {
+        final Future<String> future = this.executor.submit(() -> "task");
+        assertEquals("task", future.get(10, TimeUnit.SECONDS));
+        assertTrue(this.executor.getQueueDepths().isEmpty());
+    }
+
+    @Test
+    public void testVirtualThreads() throws Exception {
+        Assume.assumeTrue(VirtualThreads.isSupported());
+
+        final PortletThreadPoolExecutorFactoryBean factoryBean = virtualThreadsFactoryBean();
+        try {
+            final PortletThreadPoolExecutor executorService =
+                    (PortletThreadPoolExecutor) factoryBean.getObject();
+            assertEquals(16, executorService.getMaximumPoolSize());
+
+            final Future<Boolean> virtual =
+                    executorService.submit(
+                            execution(
+                                    "portlet",
+                                    () ->
+                                            (Boolean)
+                                                    Thread.class
+                                                            .getMethod("isVirtual")
+                                                            .invoke(Thread.currentThread())));
+            assertTrue(virtual.get(10, TimeUnit.SECONDS));
+        } finally {
+            factoryBean.destroy();
+        }
+    }
+
+    @Test
+    public void testVirtualThreadsUnsupported() throws Exception {
+        Assume.assumeFalse(VirtualThreads.isSupported());
+
+        final PortletThreadPoolExecutorFactoryBean factoryBean = virtualThreadsFactoryBean();
+        try {
+            // Falls back to the configured pool of platform threads
+            final PortletThreadPoolExecutor executorService =
+                    (PortletThreadPoolExecutor) factoryBean.getObject();
+            assertEquals(2, executorService.getCorePoolSize());
+            assertEquals(3, executorService.getMaximumPoolSize());
+
+            final Future<String> threadName =
+                    executorService.submit(
+                            execution("portlet", () -> Thread.currentThread().getName()));
+            assertTrue(threadName.get(10, TimeUnit.SECONDS).startsWith("test-"));
+        } finally {
+            factoryBean.destroy();
+        }
+
+        try {
+            VirtualThreads.newThreadFactory("test-");
+            fail("Creating virtual threads should fail when they are not supported");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    private static PortletThreadPoolExecutorFactoryBean virtualThreadsFactoryBean() {
+        final PortletThreadPoolExecutorFactoryBean factoryBean =
+                new PortletThreadPoolExecutorFactoryBean();
+        factoryBean.setThreadNamePrefix("test-");
+        factoryBean.setCorePoolSize(2);
+        factoryBean.setMaxPoolSize(3);
+        factoryBean.setVirtualThreads(true);
+        factoryBean.setMaxVirtualThreads(16);
+        factoryBean.afterPropertiesSet();
+        return factoryBean;
+    }
+
+    private static void waitFor(Callable<Boolean> condition) throws Exception {
+        final long end = System.currentTimeMillis() + 10000;
+        while (!condition.call()) {
+            assertTrue("Timed out waiting for condition", System.currentTimeMillis() < end);
+            Thread.sleep(10);
+        }
+    }
+
+    /** @return A callable that identifies itself as an execution of the named portlet */
+    private static <V> Callable<V> execution(String fname, Callable<V> callable) {
+        final IPortletExecutionContext context = mock(IPortletExecutionContext.class);
+        when(context.getPortletFname()).thenReturn(fname);
+        return new PortletExecutionCallable<V>(context, callable);
+    }
+}
@@ -21,13 +21,19 @@ import static org.easymock.EasyMock.notNull;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import net.sf.ehcache.Ehcache;
 import net.sf.ehcache.Element;
 import org.apereo.portal.character.stream.CharacterEventBufferReader;
 import org.apereo.portal.character.stream.CharacterEventReader;
+import org.apereo.portal.character.stream.events.CharacterDataEventImpl;
 import org.apereo.portal.character.stream.events.CharacterEvent;
+import org.apereo.portal.character.stream.events.EncodedCharacterDataEvent;
+import org.apereo.portal.character.stream.events.PortletContentPlaceholderEventImpl;
 import org.apereo.portal.rendering.CharacterPipelineComponent;
 import org.apereo.portal.rendering.PipelineEventReader;
 import org.apereo.portal.rendering.PipelineEventReaderImpl;
@@ -119,4 +125,61 @@ public class CachingCharacterPipelineComponentTest {
 
         verify(cache, targetComponent, elementsProvider);
     }
+
+    @Test
+    public void testCacheMissPreEncoded() throws Exception {
+        final MockHttpServletRequest mockReq = new MockHttpServletRequest();
+        final MockHttpServletResponse mockRes = new MockHttpServletResponse();
+        final CacheKey cacheKey = CacheKey.build("testCacheKey");
+        final CharacterEvent placeholder = new PortletContentPlaceholderEventImpl(null);
+        final List<CharacterEvent> eventBuffer =
+                Arrays.asList(
+                        CharacterDataEventImpl.create("<div>caf\u00e9</div>"),
+                        placeholder,
+                        CharacterDataEventImpl.create("</body>"));
+        final PipelineEventReader<CharacterEventReader, CharacterEvent> eventReader =
+                new PipelineEventReaderImpl<CharacterEventReader, CharacterEvent>(
+                        new CharacterEventBufferReader(eventBuffer.listIterator()));
+
+        final Ehcache cache = createMock(Ehcache.class);
+        final CharacterPipelineComponent targetComponent =
+                createMock(CharacterPipelineComponent.class);
+        final ResourcesElementsProvider elementsProvider =
+                createMock(ResourcesElementsProvider.class);
+
+        expect(elementsProvider.getDefaultIncludedType()).andReturn(Included.AGGREGATED);
+        expect(targetComponent.getCacheKey(mockReq, mockRes)).andReturn(cacheKey);
+        expect(cache.get(cacheKey)).andReturn(null);
+        expect(targetComponent.getEventReader(mockReq, mockRes)).andReturn(eventReader);
+        cache.put((Element) notNull());
+        expectLastCall();
+
+        replay(cache, targetComponent, elementsProvider);
+
+        final CachingCharacterPipelineComponent cachingComponent =
+                new CachingCharacterPipelineComponent();
+        cachingComponent.setCache(cache);
+        cachingComponent.setWrappedComponent(targetComponent);
+        cachingComponent.setResourcesElementsProvider(elementsProvider);
+        cachingComponent.setPreEncodeCharacterData(true);
+
+        final CharacterEventReader actualEventReader =
+                cachingComponent.getEventReader(mockReq, mockRes).getEventReader();
+
+        final CharacterEvent first = actualEventReader.next();
+        Assert.assertTrue(first instanceof EncodedCharacterDataEvent);
+        Assert.assertEquals(eventBuffer.get(0), first);
+        Assert.assertEquals(eventBuffer.get(0).hashCode(), first.hashCode());
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ((EncodedCharacterDataEvent) first).writeTo(out);
+        Assert.assertArrayEquals(
+                "<div>caf\u00e9</div>".getBytes(StandardCharsets.UTF_8), out.toByteArray());
+
+        // Placeholders are not encoded
+        Assert.assertSame(placeholder, actualEventReader.next());
+        Assert.assertTrue(actualEventReader.next() instanceof EncodedCharacterDataEvent);
+        Assert.assertFalse(actualEventReader.hasNext());
+
+        verify(cache, targetComponent, elementsProvider);
+    }
 }
@@ -23,6 +23,14 @@ import static org.easymock.EasyMock.verify;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.events.XMLEvent;
 import net.sf.ehcache.Ehcache;
@@ -114,4 +122,84 @@ public class CachingStAXPipelineComponentTest {
 
         verify(cache, targetComponent, elementsProvider);
     }
+
+    @Test
+    public void testConcurrentCacheMissCoalesced() throws Exception {
+        final MockHttpServletRequest mockReq = new MockHttpServletRequest();
+        final MockHttpServletResponse mockRes = new MockHttpServletResponse();
+        final CacheKey cacheKey = CacheKey.build("testCacheKey");
+        final List<XMLEvent> eventBuffer = Collections.emptyList();
+        final PipelineEventReader<XMLEventReader, XMLEvent> eventReader =
+                new PipelineEventReaderImpl<XMLEventReader, XMLEvent>(
+                        new XMLEventBufferReader(eventBuffer.listIterator()));
+        final CountDownLatch populationStarted = new CountDownLatch(1);
+        final CountDownLatch releasePopulation = new CountDownLatch(1);
+
+        final AtomicInteger eventReaderCalls = new AtomicInteger();
+
+        // EasyMock serializes calls to a mock so the blocking target is implemented directly
+        final StAXPipelineComponent targetComponent =
+                new StAXPipelineComponent() {
+                    @Override
+                    public CacheKey getCacheKey(
+                            HttpServletRequest request, HttpServletResponse response) {
+                        return cacheKey;
+                    }
+
+                    @Override
+                    public PipelineEventReader<XMLEventReader, XMLEvent> getEventReader(
+                            HttpServletRequest request, HttpServletResponse response) {
+                        eventReaderCalls.incrementAndGet();
+                        populationStarted.countDown();
+                        try {
+                            releasePopulation.await();
+                        } catch (InterruptedException e) {
+                            throw new IllegalStateException(e);
+                        }
+                        return eventReader;
+                    }
+                };
+        final Ehcache cache = createMock(Ehcache.class);
+        final ResourcesElementsProvider elementsProvider =
+                createMock(ResourcesElementsProvider.class);
+
+        expect(elementsProvider.getDefaultIncludedType()).andReturn(Included.AGGREGATED).times(2);
+        expect(cache.get(cacheKey)).andReturn(null).times(2);
+        cache.put((Element) notNull());
+        expectLastCall();
+
+        replay(cache, elementsProvider);
+
+        final CachingStAXPipelineComponent cachingComponent = new CachingStAXPipelineComponent();
+        cachingComponent.setCache(cache);
+        cachingComponent.setWrappedComponent(targetComponent);
+        cachingComponent.setResourcesElementsProvider(elementsProvider);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<PipelineEventReader<XMLEventReader, XMLEvent>> first =
+                    executor.submit(() -> cachingComponent.getEventReader(mockReq, mockRes));
+            Assert.assertTrue(populationStarted.await(10, TimeUnit.SECONDS));
+
+            final Future<PipelineEventReader<XMLEventReader, XMLEvent>> second =
+                    executor.submit(() -> cachingComponent.getEventReader(mockReq, mockRes));
+            while (cachingComponent.getCoalescedWaitCount() == 0) {
+                Thread.sleep(10);
+            }
+            releasePopulation.countDown();
+
+            Assert.assertFalse(first.get(10, TimeUnit.SECONDS).getEventReader().hasNext());
+            Assert.assertFalse(second.get(10, TimeUnit.SECONDS).getEventReader().hasNext());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Only the first request called the wrapped component
+        Assert.assertEquals(1, eventReaderCalls.get());
+        Assert.assertEquals(1, cachingComponent.getCoalescedWaitCount());
+        Assert.assertEquals(0, cachingComponent.getPopulationWaitTimeoutCount());
+        Assert.assertEquals(0, cachingComponent.getRunningPopulationCount());
+
+        verify(cache, elementsProvider);
+    }
 }
@@ -90,6 +90,26 @@ public class UrlSyntaxProviderImplTest {
         assertEquals("", path);
     }
 
+    @Test
+    public void testSplitPath() throws Exception {
+        final String[] paths = {
+            "",
+            "/",
+            "//",
+            "/f/n2/normal/render.uP",
+            "/f/n2//p/fname.s3/max/render.uP",
+            "f/n2/",
+            "/p/fname.s3/max//",
+            "render.uP"
+        };
+        for (final String path : paths) {
+            assertEquals(
+                    path,
+                    Arrays.asList(path.split("/")),
+                    Arrays.asList(UrlSyntaxProviderImpl.splitPath(path)));
+        }
+    }
+
     @Test
     public void testNonTargetedGeneration() throws Exception {
         final MockHttpServletRequest request = new MockHttpServletRequest();